@@ -0,0 +1,190 @@
+package com.egehurturk.archives;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read side of a packed web root, built by {@link WebrootPacker}. The whole
+ * archive is mapped into memory with a single {@link FileChannel#map} call
+ * when it is opened, nothing else is read or parsed at startup.
+ *
+ * <p>A lookup is a binary search over the fixed size index records, comparing
+ * the requested path with the path bytes directly in the mapping, followed by
+ * slicing the content out of the mapping. No file system call is made.
+ *
+ * <p>Layout (big endian), see {@link WebrootPacker}:
+ * <pre>
+ *     header   MAGIC, VERSION, entry count, index offset, strings offset, data offset
+ *     index    one {@link #RECORD_SIZE} byte record per file, sorted by path bytes
+ *     strings  UTF-8 paths, MIME types and ETags
+ *     data     file contents and gzip variants
+ * </pre>
+ *
+ * <p>Instances are immutable and safe to share between connection threads.
+ */
+public class WebrootArchive implements Closeable {
+
+    public static final int MAGIC   = 0x42414E5A; // "BANZ"
+    public static final int VERSION = 1;
+
+    /**
+     * Header: magic, version, count (ints) and three offsets (ints)
+     */
+    public static final int HEADER_SIZE = 6 * 4;
+
+    /**
+     * Index record: path, mime, etag, data, gzip (offset and length ints) and last modified (long)
+     */
+    public static final int RECORD_SIZE = 10 * 4 + 8;
+
+    private final File file;
+    private final ByteBuffer mapping;
+    private final int count;
+    private final int indexOffset;
+
+    private WebrootArchive(File file, ByteBuffer mapping) throws IOException {
+        this.file    = file;
+        this.mapping = mapping;
+        if (mapping.limit() < HEADER_SIZE || mapping.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a web root archive");
+        }
+        if (mapping.getInt(4) != VERSION) {
+            throw new IOException("Unsupported web root archive version " + mapping.getInt(4) + " in " + file);
+        }
+        this.count       = mapping.getInt(8);
+        this.indexOffset = mapping.getInt(12);
+    }
+
+    /**
+     * Maps an archive file
+     * @param file                  - archive built by {@link WebrootPacker}
+     * @return                      - opened archive
+     * @throws IOException          - the file cannot be mapped or is not an archive
+     */
+    public static WebrootArchive open(File file) throws IOException {
+        try (RandomAccessFile rFile = new RandomAccessFile(file, "r");
+             FileChannel channel = rFile.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Web root archive " + file + " is larger than 2 GB and cannot be mapped at once");
+            }
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new WebrootArchive(file, mapping);
+        }
+    }
+
+    /**
+     * Finds a file
+     * @param path                  - URL path relative to the web root, e.g. "/css/main.css"
+     * @return                      - entry, or null if the archive does not contain the path
+     */
+    public Entry find(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = indexOffset + mid * RECORD_SIZE;
+            int cmp = compare(mapping.getInt(record), mapping.getInt(record + 4), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return new Entry(path, record);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Unsigned lexicographic comparison of the path stored at {@code offset} with {@code key}
+     */
+    private int compare(int offset, int length, byte[] key) {
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int a = mapping.get(offset + i) & 0xFF, b = key[i] & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = mapping.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = mapping.duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return number of files in the archive
+     */
+    public int size() {
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The mapping is released by the garbage collector, there is no way to
+     * unmap it explicitly before Java 9
+     */
+    @Override
+    public void close() {}
+
+    /**
+     * A file of the archive. Content buffers are read-only slices of the mapping
+     */
+    public class Entry {
+        private final String path;
+        private final int record;
+
+        private Entry(String path, int record) {
+            this.path   = path;
+            this.record = record;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getMimeType() {
+            return string(mapping.getInt(record + 8), mapping.getInt(record + 12));
+        }
+
+        public String getETag() {
+            return string(mapping.getInt(record + 16), mapping.getInt(record + 20));
+        }
+
+        public ByteBuffer getContent() {
+            return slice(mapping.getInt(record + 24), mapping.getInt(record + 28));
+        }
+
+        /**
+         * @return gzip compressed content, or null when the archive has no gzip variant of this file
+         */
+        public ByteBuffer getGzipContent() {
+            int length = mapping.getInt(record + 36);
+            return (length == 0) ? null : slice(mapping.getInt(record + 32), length);
+        }
+
+        public long getLastModified() {
+            return mapping.getLong(record + 40);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.egehurturk.archives;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Packs a web root directory into a single archive file that is served by
+ * {@link WebrootArchive}. MIME types and ETags are computed once while packing,
+ * compressible files optionally get a pre-compressed gzip variant.
+ *
+ * <p>The archive is written to a temporary file first and moved over the
+ * target at the end, so a running server never sees a half written archive.
+ *
+ * <p>Can be run from the command line:
+ * <code>
+ *     java -cp banzai.jar com.egehurturk.archives.WebrootPacker www www.pack --gzip
+ * </code>
+ * or on startup with the <i>server.archive.build</i> property.
+ */
+public class WebrootPacker {
+
+    protected static Logger logger = LogManager.getLogger(WebrootPacker.class);
+
+    /**
+     * gzip variants that do not save at least this ratio are dropped
+     */
+    private static final double MIN_GZIP_SAVING = 0.1;
+
+    private final boolean gzip;
+
+    /**
+     * @param gzip                  - store gzip variants of compressible files
+     */
+    public WebrootPacker(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Packs a web root
+     * @param webRoot               - directory to pack
+     * @param target                - archive file to (over)write
+     * @return                      - number of packed files
+     * @throws IOException          - IO operation error, or the archive would be larger than 2 GB
+     */
+    public int pack(File webRoot, File target) throws IOException {
+        Path root = webRoot.toPath().toAbsolutePath().normalize();
+        Path targetPath = target.toPath().toAbsolutePath().normalize();
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(p -> !p.equals(targetPath))
+                    .collect(Collectors.toList());
+        }
+
+        List<Record> records = new ArrayList<>();
+        for (Path file : files) {
+            records.add(describe(root, file));
+        }
+        records.sort((a, b) -> compareUnsigned(a.path, b.path));
+
+        // strings region: path, mime, etag of every record
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        int stringsOffset = WebrootArchive.HEADER_SIZE + records.size() * WebrootArchive.RECORD_SIZE;
+        for (Record record : records) {
+            record.pathOffset = stringsOffset + strings.size();
+            strings.write(record.path);
+            record.mimeOffset = stringsOffset + strings.size();
+            strings.write(record.mime);
+            record.etagOffset = stringsOffset + strings.size();
+            strings.write(record.etag);
+        }
+        long offset = (long) stringsOffset + strings.size();
+        int dataOffset = (int) offset;
+        for (Record record : records) {
+            record.dataOffset = offset;
+            offset += record.length;
+            if (record.gzip != null) {
+                record.gzipOffset = offset;
+                offset += record.gzip.length;
+            }
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Web root " + webRoot + " does not fit into a single 2 GB archive");
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(stringsOffset);
+        head.putInt(WebrootArchive.MAGIC).putInt(WebrootArchive.VERSION).putInt(records.size())
+                .putInt(WebrootArchive.HEADER_SIZE).putInt(stringsOffset).putInt(dataOffset);
+        for (Record record : records) {
+            head.putInt(record.pathOffset).putInt(record.path.length)
+                    .putInt(record.mimeOffset).putInt(record.mime.length)
+                    .putInt(record.etagOffset).putInt(record.etag.length)
+                    .putInt((int) record.dataOffset).putInt((int) record.length)
+                    .putInt((int) record.gzipOffset).putInt(record.gzip == null ? 0 : record.gzip.length)
+                    .putLong(record.lastModified);
+        }
+        head.flip();
+
+        File parent = targetPath.getParent().toFile();
+        Path temp = Files.createTempFile(parent.toPath(), target.getName(), ".tmp");
+        try {
+            try (RandomAccessFile rFile = new RandomAccessFile(temp.toFile(), "rw");
+                 FileChannel out = rFile.getChannel()) {
+                write(out, head);
+                write(out, ByteBuffer.wrap(strings.toByteArray()));
+                for (Record record : records) {
+                    try (RandomAccessFile source = new RandomAccessFile(record.file.toFile(), "r");
+                         FileChannel in = source.getChannel()) {
+                        long position = 0;
+                        while (position < record.length) {
+                            long n = in.transferTo(position, record.length - position, out);
+                            if (n <= 0) {
+                                throw new IOException(record.file + " changed while packing");
+                            }
+                            position += n;
+                        }
+                    }
+                    if (record.gzip != null) {
+                        write(out, ByteBuffer.wrap(record.gzip));
+                    }
+                }
+                out.force(false);
+            }
+            Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return records.size();
+    }
+
+    private Record describe(Path root, Path file) throws IOException {
+        Record record = new Record();
+        record.file = file;
+        StringBuilder urlPath = new StringBuilder();
+        for (Path part : root.relativize(file)) {
+            urlPath.append('/').append(part.toString());
+        }
+        record.path = urlPath.toString().getBytes(StandardCharsets.UTF_8);
+        record.length = Files.size(file);
+        record.lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        String mime = Files.probeContentType(file);
+        if (mime == null) {
+            mime = "application/octet-stream";
+        }
+        record.mime = mime.getBytes(StandardCharsets.UTF_8);
+
+        MessageDigest md5 = md5();
+        if (gzip && isCompressible(mime)) {
+            byte[] content = Files.readAllBytes(file);
+            md5.update(content);
+            byte[] compressed = gzip(content);
+            if (compressed.length <= content.length * (1 - MIN_GZIP_SAVING)) {
+                record.gzip = compressed;
+            }
+        } else {
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), md5)) {
+                while (in.read(buffer) != -1) {
+                    // digest only
+                }
+            }
+        }
+        record.etag = ("\"" + hex(md5.digest()) + "\"").getBytes(StandardCharsets.UTF_8);
+        return record;
+    }
+
+    /**
+     * @param mime                  - MIME type
+     * @return                      - true for text like content that gzip can shrink
+     */
+    public static boolean isCompressible(String mime) {
+        return mime.startsWith("text/") || mime.contains("javascript") || mime.contains("json")
+                || mime.contains("xml") || mime.contains("svg");
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static class Record {
+        Path file;
+        byte[] path, mime, etag, gzip;
+        int pathOffset, mimeOffset, etagOffset;
+        long dataOffset, gzipOffset, length, lastModified;
+    }
+
+    /**
+     * Command line entry: {@code WebrootPacker <webroot> <archive> [--gzip]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: WebrootPacker <webroot> <archive> [--gzip]");
+            System.exit(1);
+        }
+        boolean gzip = args.length > 2 && args[2].equals("--gzip");
+        long start = System.nanoTime();
+        int files = new WebrootPacker(gzip).pack(new File(args[0]), new File(args[1]));
+        System.out.println("Packed " + files + " files from " + args[0] + " into " + args[1] + " in " +
+                (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,149 @@
+package com.egehurturk.caches;
+
+import com.egehurturk.readers.ReadStrategySelector;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the files of the web root into a {@link StaticContentCache} before
+ * traffic arrives, so the first requests after a restart do not wait for the
+ * disk. Directories are walked in parallel on a {@link ForkJoinPool}, one task
+ * per directory.
+ *
+ * <p>Warm-up never evicts: a file is only loaded when it fits into the
+ * remaining budget of its tier, so the cache ends up holding as much of the
+ * web root as its budget allows. Symbolic links to directories are not followed.
+ *
+ * <p>Keys are {@link File#getAbsolutePath()} of files built from the web root
+ * path, the same keys {@link com.egehurturk.handlers.HttpHandler} uses.
+ */
+public class CacheWarmer {
+
+    private final StaticContentCache cache;
+    private final ReadStrategySelector readers;
+    private final long maxFileSize;
+    private final int parallelism;
+
+    private final AtomicInteger files   = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicLong bytes      = new AtomicLong();
+
+    protected static Logger logger = LogManager.getLogger(CacheWarmer.class);
+
+    /**
+     * @param cache                 - cache to fill
+     * @param readers               - strategies used to read the files
+     * @param maxFileSize           - larger files are not loaded
+     * @param parallelism           - number of threads walking the web root
+     */
+    public CacheWarmer(StaticContentCache cache, ReadStrategySelector readers, long maxFileSize, int parallelism) {
+        this.cache       = cache;
+        this.readers     = readers;
+        this.maxFileSize = maxFileSize;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Loads the web root, blocking until every directory is visited
+     * @param webRoot               - web root directory
+     */
+    public void warm(File webRoot) {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new WarmDirectory(webRoot));
+        } finally {
+            pool.shutdown();
+        }
+        logger.info("Cache warm-up of " + webRoot + " loaded " + files.get() + " files (" + bytes.get() +
+                " bytes) in " + (System.nanoTime() - start) / 1000000 + " ms, skipped " + skipped.get() +
+                " files. " + cache);
+    }
+
+    /**
+     * @return number of files loaded
+     */
+    public int getFiles() {
+        return files.get();
+    }
+
+    /**
+     * @return number of bytes loaded
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return number of files over the size cutoff or the remaining budget, or that could not be read
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    private void load(File file) {
+        long length = file.length();
+        if (length > maxFileSize || !cache.hasRoom(length)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        long stamp = cache.generation();
+        try {
+            ByteBuffer content = readers.select(length).read(file);
+            if (cache.put(file.getAbsolutePath(), content, false, stamp)) {
+                files.incrementAndGet();
+                bytes.addAndGet(content.remaining());
+            } else {
+                skipped.incrementAndGet();
+            }
+        } catch (IOException e) {
+            skipped.incrementAndGet();
+            logger.error("Cache warm-up cannot read " + file + ": " + e.getMessage());
+        }
+    }
+
+    private class WarmDirectory extends RecursiveAction {
+        private final File directory;
+
+        WarmDirectory(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            File[] children = directory.listFiles();
+            if (children == null) {
+                return;
+            }
+            // fork subdirectories first so other workers can steal them while this one reads files
+            List<WarmDirectory> subdirectories = new ArrayList<>();
+            for (File child : children) {
+                if (Files.isDirectory(child.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+                    WarmDirectory task = new WarmDirectory(child);
+                    task.fork();
+                    subdirectories.add(task);
+                }
+            }
+            for (File child : children) {
+                if (child.isFile()) {
+                    load(child);
+                }
+            }
+            for (WarmDirectory task : subdirectories) {
+                task.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.egehurturk.caches;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A borrowed view of cached file contents. The view is a read-only
+ * {@link ByteBuffer#duplicate()} of the stored bytes, nothing is copied.
+ *
+ * <p>Off-heap storage is reused after eviction, so every successful
+ * {@link StaticContentCache#acquire(String)} must be paired with
+ * {@link #release()} once the bytes are written (see
+ * {@link com.egehurturk.httpd.HttpResponseBuilder#afterSend(Runnable)}).
+ */
+public interface CachedContent {
+
+    /**
+     * @return read-only view positioned at 0, limit is the content length
+     */
+    ByteBuffer buffer();
+
+    /**
+     * Gives the content back to the cache. Calling it more than once has no effect
+     */
+    void release();
+}
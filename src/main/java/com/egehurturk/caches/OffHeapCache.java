@@ -0,0 +1,300 @@
+package com.egehurturk.caches;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Cache tier that keeps file contents in chunks of direct buffers handed out
+ * by a {@link SlabAllocator}. Entries are evicted least recently used first.
+ * When the least recently used entry is of another size class than the one
+ * that needs room, the whole slab holding it is emptied and reassigned, so
+ * memory follows the sizes that are requested instead of staying with the
+ * classes that were filled first.
+ *
+ * <p>Each entry is reference counted: the cache holds one reference and every
+ * {@link #acquire(String)} adds one. The chunk goes back to the allocator only
+ * when an evicted or invalidated entry is no longer being written to a client.
+ */
+public class OffHeapCache {
+
+    private final SlabAllocator allocator;
+
+    /**
+     * Key to entry, used for lookups
+     */
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Access ordered entries of every size class, eldest first. Used for eviction
+     */
+    private final LinkedHashMap<String, Entry>[] lru;
+
+    /**
+     * Bytes of content stored (not counting unused chunk space)
+     */
+    private long storedBytes;
+
+    /**
+     * Counts puts and hits, to compare the recency of entries of different classes
+     */
+    private long clock;
+
+    /**
+     * @param allocator             - allocator that owns the off-heap memory and the byte budget
+     */
+    @SuppressWarnings("unchecked")
+    public OffHeapCache(SlabAllocator allocator) {
+        this.allocator = allocator;
+        int classes = allocator.classOf(allocator.getSlabSize()) + 1;
+        this.lru = new LinkedHashMap[classes];
+        for (int i = 0; i < classes; i++) {
+            lru[i] = new LinkedHashMap<>(16, 0.75f, true);
+        }
+    }
+
+    /**
+     * Looks up an entry and borrows it
+     * @param key                   - cache key
+     * @return                      - borrowed content, or null on a miss
+     */
+    public synchronized CachedContent acquire(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        lru[entry.sizeClass].get(key); // touch
+        entry.lastUse = ++clock;
+        entry.refs.incrementAndGet();
+        return new Lease(entry);
+    }
+
+    /**
+     * Copies content into off-heap storage, evicting least recently used
+     * entries when the budget is exhausted
+     *
+     * @param key                   - cache key
+     * @param content               - bytes to store, from position to limit. The buffer is not modified
+     * @return                      - true if stored
+     */
+    public boolean put(String key, ByteBuffer content) {
+        return put(key, content, true);
+    }
+
+    /**
+     * Copies content into off-heap storage
+     *
+     * @param key                   - cache key
+     * @param content               - bytes to store, from position to limit. The buffer is not modified
+     * @param evict                 - evict least recently used entries, or reassign the slab of one of
+     *                              another size class, when the budget is exhausted. When false the
+     *                              content is only stored if it fits
+     * @return                      - true if stored
+     */
+    public synchronized boolean put(String key, ByteBuffer content, boolean evict) {
+        int length = content.remaining();
+        int sizeClass = allocator.classOf(length);
+        if (sizeClass == -1) {
+            return false;
+        }
+        remove(key);
+
+        ByteBuffer chunk = allocator.allocate(sizeClass);
+        // every round drops at least one entry. A borrowed chunk is freed later, so
+        // a round may not make room yet
+        while (chunk == null && evict) {
+            Entry own   = eldest(sizeClass);
+            Entry other = eldestOutside(sizeClass);
+            if (own != null && (other == null || own.lastUse <= other.lastUse)) {
+                evict(own);
+            } else if (other != null) {
+                evictSlab(allocator.slabOf(other.chunk), other.sizeClass);
+            } else {
+                break;
+            }
+            chunk = allocator.allocate(sizeClass);
+        }
+        if (chunk == null) {
+            return false;
+        }
+        chunk.put(content.duplicate());
+        chunk.flip();
+
+        Entry entry = new Entry(key, chunk, sizeClass);
+        entry.lastUse = ++clock;
+        entries.put(key, entry);
+        lru[sizeClass].put(key, entry);
+        storedBytes += length;
+        return true;
+    }
+
+    /**
+     * Drops an entry. Its memory is reused once every borrowed view is released
+     * @param key                   - cache key
+     * @return                      - true if the entry existed
+     */
+    public synchronized boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        lru[entry.sizeClass].remove(key);
+        retire(entry);
+        return true;
+    }
+
+    /**
+     * Drops every entry whose key matches
+     * @param filter                - key predicate
+     * @return                      - number of dropped entries
+     */
+    public synchronized int removeIf(Predicate<String> filter) {
+        int removed = 0;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> next = it.next();
+            if (filter.test(next.getKey())) {
+                it.remove();
+                lru[next.getValue().sizeClass].remove(next.getKey());
+                retire(next.getValue());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Drops every entry
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            retire(entry);
+        }
+        entries.clear();
+        for (LinkedHashMap<String, Entry> map : lru) {
+            map.clear();
+        }
+    }
+
+    /**
+     * @param length                - content length
+     * @return                      - true if content of this length can be stored without evicting
+     */
+    public boolean hasRoom(int length) {
+        int sizeClass = allocator.classOf(length);
+        return sizeClass != -1 && allocator.canAllocate(sizeClass);
+    }
+
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    public SlabAllocator getAllocator() {
+        return allocator;
+    }
+
+    /**
+     * @return                      - least recently used entry of the class, null if it has none
+     */
+    private Entry eldest(int sizeClass) {
+        Iterator<Entry> it = lru[sizeClass].values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * @return                      - least recently used entry of the other classes, null if they have none
+     */
+    private Entry eldestOutside(int sizeClass) {
+        Entry eldest = null;
+        for (int i = 0; i < lru.length; i++) {
+            Entry candidate = (i == sizeClass) ? null : eldest(i);
+            if (candidate != null && (eldest == null || candidate.lastUse < eldest.lastUse)) {
+                eldest = candidate;
+            }
+        }
+        return eldest;
+    }
+
+    private void evict(Entry entry) {
+        entries.remove(entry.key);
+        lru[entry.sizeClass].remove(entry.key);
+        retire(entry);
+    }
+
+    /**
+     * Drops every entry stored in the slab and hands the slab back for another class
+     */
+    private void evictSlab(SlabAllocator.Slab slab, int sizeClass) {
+        allocator.reassign(slab);
+        Iterator<Entry> it = lru[sizeClass].values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (allocator.slabOf(entry.chunk) == slab) {
+                it.remove();
+                entries.remove(entry.key);
+                retire(entry);
+            }
+        }
+    }
+
+    private void retire(Entry entry) {
+        storedBytes -= entry.view.capacity();
+        entry.unref();
+    }
+
+    private class Entry {
+        final String key;
+        final ByteBuffer chunk;
+        final ByteBuffer view;
+        final int sizeClass;
+        final AtomicInteger refs = new AtomicInteger(1);
+        long lastUse;
+
+        Entry(String key, ByteBuffer chunk, int sizeClass) {
+            this.key       = key;
+            this.chunk     = chunk;
+            this.view      = chunk.slice().asReadOnlyBuffer();
+            this.sizeClass = sizeClass;
+        }
+
+        void unref() {
+            if (refs.decrementAndGet() == 0) {
+                allocator.free(chunk, sizeClass);
+            }
+        }
+    }
+
+    private static class Lease implements CachedContent {
+        private final Entry entry;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public ByteBuffer buffer() {
+            return entry.view.duplicate();
+        }
+
+        @Override
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                entry.unref();
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.egehurturk.caches;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * What {@link com.egehurturk.handlers.HttpHandler} needs to know about a
+ * web root file before reading it: whether it exists, whether it is a
+ * directory, its length, modification time and MIME type. Immutable.
+ */
+public class ResourceMetadata {
+
+    /**
+     * Shared value for paths that do not exist (negative lookups)
+     */
+    public static final ResourceMetadata MISSING = new ResourceMetadata(false, false, 0, 0, null);
+
+    private final boolean exists;
+    private final boolean directory;
+    private final long length;
+    private final long lastModified;
+    private final String mimeType;
+
+    private ResourceMetadata(boolean exists, boolean directory, long length, long lastModified, String mimeType) {
+        this.exists       = exists;
+        this.directory    = directory;
+        this.length       = length;
+        this.lastModified = lastModified;
+        this.mimeType     = mimeType;
+    }
+
+    /**
+     * Reads the metadata of a file from the file system
+     * @param file              - file or directory
+     * @return                  - metadata, {@link #MISSING} if the file does not exist
+     */
+    public static ResourceMetadata of(File file) {
+        Path path = file.toPath();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            String mime = attributes.isRegularFile() ? Files.probeContentType(path) : null;
+            return new ResourceMetadata(true, attributes.isDirectory(), attributes.size(),
+                    attributes.lastModifiedTime().toMillis(), mime);
+        } catch (NoSuchFileException e) {
+            return MISSING;
+        } catch (IOException e) {
+            return MISSING;
+        }
+    }
+
+    public boolean exists() {
+        return exists;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return MIME type, null if it cannot be determined
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+}
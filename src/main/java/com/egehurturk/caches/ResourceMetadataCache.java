@@ -0,0 +1,107 @@
+package com.egehurturk.caches;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches {@link ResourceMetadata} of web root files, so a request does not
+ * need {@code stat} calls and MIME type probing. Paths that do not exist are
+ * remembered too (negative lookups), in a separate bounded map so that
+ * requests for random paths cannot grow it without limit.
+ *
+ * <p>Entries are never expired by time. The cache is only coherent together
+ * with a {@link WebrootWatcher} that calls {@link #invalidate(String)} when files change.
+ * Metadata read while an invalidation runs is returned but not stored, it may
+ * describe the file as it was before the change.
+ *
+ * <p>Keys are absolute file paths.
+ */
+public class ResourceMetadataCache {
+
+    private final Map<String, ResourceMetadata> existing = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Boolean> missing;
+
+    /**
+     * Moved before the entries of an invalidation are removed
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param maxMissing            - maximum number of remembered negative lookups
+     */
+    public ResourceMetadataCache(final int maxMissing) {
+        this.missing = new LinkedHashMap<String, Boolean>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxMissing;
+            }
+        };
+    }
+
+    /**
+     * Returns cached metadata, reading it from the file system on a miss
+     * @param file                  - file or directory
+     * @return                      - metadata, {@link ResourceMetadata#MISSING} if the file does not exist
+     */
+    public ResourceMetadata lookup(File file) {
+        String key = file.getAbsolutePath();
+        ResourceMetadata metadata = existing.get(key);
+        if (metadata != null) {
+            return metadata;
+        }
+        synchronized (missing) {
+            if (missing.get(key) != null) {
+                return ResourceMetadata.MISSING;
+            }
+        }
+        long stamp = generation.get();
+        metadata = ResourceMetadata.of(file);
+        if (metadata.exists()) {
+            existing.put(key, metadata);
+            // an invalidation that ran before the entry was stored could not remove it
+            if (generation.get() != stamp) {
+                existing.remove(key, metadata);
+            }
+        } else {
+            synchronized (missing) {
+                if (generation.get() == stamp) {
+                    missing.put(key, Boolean.TRUE);
+                }
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Forgets a path and everything below it
+     * @param key                   - absolute path of a file or directory
+     */
+    public void invalidate(String key) {
+        String prefix = key + File.separator;
+        generation.incrementAndGet();
+        existing.keySet().removeIf(path -> path.equals(key) || path.startsWith(prefix));
+        synchronized (missing) {
+            missing.keySet().removeIf(path -> path.equals(key) || path.startsWith(prefix));
+        }
+    }
+
+    /**
+     * Forgets everything
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        existing.clear();
+        synchronized (missing) {
+            missing.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (missing) {
+            return existing.size() + missing.size();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.egehurturk.caches;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out chunks of direct {@link ByteBuffer} slabs. Memory is reserved in
+ * slabs of {@link #slabSize} bytes with {@link ByteBuffer#allocateDirect(int)},
+ * so it lives outside the Java heap and is never scanned by the garbage collector.
+ *
+ * <p>Chunks are grouped in size classes that grow by {@link #GROWTH_FACTOR},
+ * a slab is carved into equally sized chunks of one class when that class runs
+ * out of free chunks. Freed chunks go back to the free list of their class.
+ *
+ * <p>Once the budget is spent a class without a slab could never store
+ * anything, so a slab can be moved to another class (like memcached's slab
+ * reassignment): {@link #reassign(Slab)} takes its free chunks out of its
+ * class, and once its last chunk in use is freed the slab becomes a spare
+ * that the next class running out of chunks carves again.
+ *
+ * <p>All methods are synchronized, the allocator is shared by every connection thread.
+ */
+public class SlabAllocator {
+
+    /**
+     * Smallest chunk size
+     */
+    public static final int MIN_CHUNK = 1024;
+
+    /**
+     * Size ratio between two neighbouring classes
+     */
+    public static final double GROWTH_FACTOR = 1.25;
+
+    private final int slabSize;
+    private final long budget;
+    private long reserved;
+
+    /**
+     * Chunk size of each class, ascending. The last class is a whole slab
+     */
+    private final int[] classSizes;
+    private final ArrayDeque<ByteBuffer>[] free;
+
+    /**
+     * Slab of every chunk ever carved, chunks are reused as they are
+     */
+    private final Map<ByteBuffer, Slab> slabs = new IdentityHashMap<>();
+
+    /**
+     * Reassigned slabs without a chunk in use, ready to be carved for any class
+     */
+    private final ArrayDeque<Slab> spare = new ArrayDeque<>();
+
+    /**
+     * @param slabSize              - size of a single slab, also the largest chunk
+     * @param budget                - maximum number of bytes reserved for slabs
+     */
+    @SuppressWarnings("unchecked")
+    public SlabAllocator(int slabSize, long budget) {
+        if (slabSize < MIN_CHUNK) {
+            throw new IllegalArgumentException("Slab size should be at least " + MIN_CHUNK + " bytes");
+        }
+        this.slabSize = slabSize;
+        this.budget   = budget;
+
+        List<Integer> sizes = new ArrayList<>();
+        for (double size = MIN_CHUNK; size < slabSize; size *= GROWTH_FACTOR) {
+            sizes.add(((int) size + 7) & ~7); // 8 byte aligned
+        }
+        sizes.add(slabSize);
+        this.classSizes = new int[sizes.size()];
+        this.free = new ArrayDeque[sizes.size()];
+        for (int i = 0; i < classSizes.length; i++) {
+            classSizes[i] = sizes.get(i);
+            free[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @param size                  - number of bytes to be stored
+     * @return                      - smallest class that fits, or -1 if the size is larger than a slab
+     */
+    public int classOf(int size) {
+        for (int i = 0; i < classSizes.length; i++) {
+            if (size <= classSizes[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Takes a free chunk of the class, carving a spare slab or reserving a new
+     * one when needed and the budget allows it
+     *
+     * @param sizeClass             - class from {@link #classOf(int)}
+     * @return                      - chunk whose capacity is the class size, or null when the budget is exhausted
+     */
+    public synchronized ByteBuffer allocate(int sizeClass) {
+        ArrayDeque<ByteBuffer> chunks = free[sizeClass];
+        if (chunks.isEmpty()) {
+            if (!spare.isEmpty()) {
+                carve(spare.poll().memory, sizeClass);
+            } else if (reserved + slabSize <= budget) {
+                carve(ByteBuffer.allocateDirect(slabSize), sizeClass);
+                reserved += slabSize;
+            } else {
+                return null;
+            }
+        }
+        ByteBuffer chunk = chunks.poll();
+        slabs.get(chunk).used++;
+        chunk.clear();
+        return chunk;
+    }
+
+    /**
+     * @param sizeClass             - class from {@link #classOf(int)}
+     * @return                      - true if {@link #allocate(int)} would return a chunk
+     */
+    public synchronized boolean canAllocate(int sizeClass) {
+        return !free[sizeClass].isEmpty() || !spare.isEmpty() || reserved + slabSize <= budget;
+    }
+
+    /**
+     * Gives a chunk back to its class, or to the spare slabs when its slab is being reassigned
+     * @param chunk                 - chunk from {@link #allocate(int)}
+     * @param sizeClass             - class the chunk was allocated from
+     */
+    public synchronized void free(ByteBuffer chunk, int sizeClass) {
+        Slab slab = slabs.get(chunk);
+        slab.used--;
+        if (!slab.reassigned) {
+            free[sizeClass].push(chunk);
+        } else if (slab.used == 0) {
+            retire(slab);
+        }
+    }
+
+    /**
+     * @param chunk                 - chunk from {@link #allocate(int)}
+     * @return                      - slab the chunk was carved from
+     */
+    public synchronized Slab slabOf(ByteBuffer chunk) {
+        return slabs.get(chunk);
+    }
+
+    /**
+     * Takes a slab away from its class. The caller drops the entries stored in
+     * it; the slab is carved for another class once all of its chunks are freed
+     * @param slab                  - slab from {@link #slabOf(ByteBuffer)}
+     */
+    public synchronized void reassign(Slab slab) {
+        if (slab.reassigned) {
+            return;
+        }
+        slab.reassigned = true;
+        Iterator<ByteBuffer> chunks = free[slab.sizeClass].iterator();
+        while (chunks.hasNext()) {
+            if (slabs.get(chunks.next()) == slab) {
+                chunks.remove();
+            }
+        }
+        if (slab.used == 0) {
+            retire(slab);
+        }
+    }
+
+    private void retire(Slab slab) {
+        for (ByteBuffer chunk : slab.chunks) {
+            slabs.remove(chunk);
+        }
+        spare.add(new Slab(slab.memory));
+    }
+
+    private void carve(ByteBuffer memory, int sizeClass) {
+        Slab slab = new Slab(memory);
+        slab.sizeClass = sizeClass;
+        int chunkSize = classSizes[sizeClass];
+        for (int offset = 0; offset + chunkSize <= slabSize; offset += chunkSize) {
+            ByteBuffer region = memory.duplicate();
+            region.limit(offset + chunkSize).position(offset);
+            ByteBuffer chunk = region.slice();
+            slab.chunks.add(chunk);
+            slabs.put(chunk, slab);
+            free[sizeClass].add(chunk);
+        }
+    }
+
+    /**
+     * @return bytes reserved for slabs
+     */
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    public int getClassSize(int sizeClass) {
+        return classSizes[sizeClass];
+    }
+
+    /**
+     * Memory of one slab, carved into the chunks of a single class. Guarded by the allocator
+     */
+    public static final class Slab {
+        private final ByteBuffer memory;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private int sizeClass;
+        private int used;
+        private boolean reassigned;
+
+        private Slab(ByteBuffer memory) {
+            this.memory = memory;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.egehurturk.caches;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * In-memory cache for static files of the web root, used by
+ * {@link com.egehurturk.handlers.HttpHandler}. It has two tiers:
+ * <ul>
+ *     <li>Heap tier: files smaller than {@link #minOffHeapSize}, stored as
+ *     {@code byte[]} and evicted least recently used first</li>
+ *     <li>Off-heap tier: files from {@link #minOffHeapSize} up to {@link #maxFileSize},
+ *     stored in direct buffers by {@link OffHeapCache}, so large assets do
+ *     not grow the old generation</li>
+ * </ul>
+ * Each tier has its own byte budget. Files larger than {@link #maxFileSize} are
+ * never cached.
+ *
+ * <p>Keys are the absolute paths of the files.
+ *
+ * <p>Every invalidation moves the {@link #generation()}. A reader takes the
+ * generation before it reads a file and passes it to
+ * {@link #put(String, ByteBuffer, boolean, long)}, which drops the content when
+ * an invalidation happened in between, since it may have been read before the change.
+ */
+public class StaticContentCache {
+
+    private final long heapBudget;
+    private final int minOffHeapSize;
+    private final int maxFileSize;
+    private long heapBytes;
+
+    /**
+     * Moved before the entries of an invalidation are removed
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Heap tier, access ordered (eldest first)
+     */
+    private final LinkedHashMap<String, byte[]> heap = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Off-heap tier, null when its budget is 0
+     */
+    private final OffHeapCache offHeap;
+
+    /**
+     * @param heapBudget            - bytes of the heap tier
+     * @param offHeapBudget         - bytes of the off-heap tier
+     * @param minOffHeapSize        - files of at least this size go to the off-heap tier
+     * @param maxFileSize           - files larger than this are not cached. Also the off-heap slab size
+     */
+    public StaticContentCache(long heapBudget, long offHeapBudget, int minOffHeapSize, int maxFileSize) {
+        this.heapBudget     = heapBudget;
+        this.minOffHeapSize = minOffHeapSize;
+        this.maxFileSize    = maxFileSize;
+        this.offHeap = (offHeapBudget > 0 && maxFileSize >= SlabAllocator.MIN_CHUNK)
+                ? new OffHeapCache(new SlabAllocator(maxFileSize, offHeapBudget))
+                : null;
+    }
+
+    /**
+     * Looks up a file
+     * @param key                   - absolute file path
+     * @return                      - borrowed content that must be released, or null on a miss
+     */
+    public CachedContent acquire(String key) {
+        byte[] bytes;
+        synchronized (heap) {
+            bytes = heap.get(key);
+        }
+        if (bytes != null) {
+            return new HeapContent(bytes);
+        }
+        return (offHeap == null) ? null : offHeap.acquire(key);
+    }
+
+    /**
+     * Stores a file in the tier that matches its size, evicting least recently
+     * used files of the tier when its budget is exhausted
+     * @param key                   - absolute file path
+     * @param content               - file contents, from position to limit. The buffer is not modified
+     * @return                      - true if the file is cached
+     */
+    public boolean put(String key, ByteBuffer content) {
+        return put(key, content, true);
+    }
+
+    /**
+     * Stores a file in the tier that matches its size
+     * @param key                   - absolute file path
+     * @param content               - file contents, from position to limit. The buffer is not modified
+     * @param evict                 - evict least recently used files when the tier's budget is exhausted.
+     *                              When false the file is only stored if it fits
+     * @return                      - true if the file is cached
+     */
+    public boolean put(String key, ByteBuffer content, boolean evict) {
+        return put(key, content, evict, generation.get());
+    }
+
+    /**
+     * Stores a file in the tier that matches its size, unless the cache was
+     * invalidated after {@code stamp} was taken
+     * @param key                   - absolute file path
+     * @param content               - file contents, from position to limit. The buffer is not modified
+     * @param evict                 - evict least recently used files when the tier's budget is exhausted.
+     *                              When false the file is only stored if it fits
+     * @param stamp                 - {@link #generation()} taken before the file was read
+     * @return                      - true if the file is cached
+     */
+    public boolean put(String key, ByteBuffer content, boolean evict, long stamp) {
+        int length = content.remaining();
+        if (length > maxFileSize || generation.get() != stamp) {
+            return false;
+        }
+        remove(key);
+        if (length >= minOffHeapSize && offHeap != null) {
+            if (!offHeap.put(key, content, evict)) {
+                return false;
+            }
+            // an invalidation that ran before the entry was stored could not remove it
+            if (generation.get() != stamp) {
+                offHeap.remove(key);
+                return false;
+            }
+            return true;
+        }
+        if (length > heapBudget) {
+            return false;
+        }
+        byte[] bytes = new byte[length];
+        content.duplicate().get(bytes);
+        synchronized (heap) {
+            if (generation.get() != stamp) {
+                return false;
+            }
+            if (!evict && heapBytes + length > heapBudget) {
+                return false;
+            }
+            Iterator<Map.Entry<String, byte[]>> eldest = heap.entrySet().iterator();
+            while (heapBytes + length > heapBudget && eldest.hasNext()) {
+                heapBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+            heap.put(key, bytes);
+            heapBytes += length;
+        }
+        return true;
+    }
+
+    /**
+     * @return                      - current generation, moved by every invalidation
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * @param length                - file length
+     * @return                      - true if a file of this length can be cached at all
+     */
+    public boolean accepts(long length) {
+        return length <= maxFileSize;
+    }
+
+    /**
+     * @param length                - file length
+     * @return                      - true if a file of this length can be stored without evicting
+     */
+    public boolean hasRoom(long length) {
+        if (!accepts(length)) {
+            return false;
+        }
+        if (length >= minOffHeapSize && offHeap != null) {
+            return offHeap.hasRoom((int) length);
+        }
+        synchronized (heap) {
+            return heapBytes + length <= heapBudget;
+        }
+    }
+
+    /**
+     * Removes a file from both tiers
+     * @param key                   - absolute file path
+     */
+    public void invalidate(String key) {
+        generation.incrementAndGet();
+        remove(key);
+    }
+
+    private void remove(String key) {
+        synchronized (heap) {
+            byte[] removed = heap.remove(key);
+            if (removed != null) {
+                heapBytes -= removed.length;
+            }
+        }
+        if (offHeap != null) {
+            offHeap.remove(key);
+        }
+    }
+
+    /**
+     * Removes a file, or every file below a directory, from both tiers
+     * @param key                   - absolute path of a file or directory
+     */
+    public void invalidateTree(String key) {
+        String prefix = key + File.separator;
+        Predicate<String> below = path -> path.equals(key) || path.startsWith(prefix);
+        generation.incrementAndGet();
+        synchronized (heap) {
+            Iterator<Map.Entry<String, byte[]>> it = heap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, byte[]> next = it.next();
+                if (below.test(next.getKey())) {
+                    heapBytes -= next.getValue().length;
+                    it.remove();
+                }
+            }
+        }
+        if (offHeap != null) {
+            offHeap.removeIf(below);
+        }
+    }
+
+    /**
+     * Removes every file
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        synchronized (heap) {
+            heap.clear();
+            heapBytes = 0;
+        }
+        if (offHeap != null) {
+            offHeap.clear();
+        }
+    }
+
+    public long getHeapBytes() {
+        synchronized (heap) {
+            return heapBytes;
+        }
+    }
+
+    public long getOffHeapBytes() {
+        return (offHeap == null) ? 0 : offHeap.getStoredBytes();
+    }
+
+    public int getMinOffHeapSize() {
+        return minOffHeapSize;
+    }
+
+    public int getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    @Override
+    public String toString() {
+        return "StaticContentCache{" +
+                "heapBytes=" + getHeapBytes() + "/" + heapBudget +
+                ", offHeapBytes=" + getOffHeapBytes() + "/" + ((offHeap == null) ? 0 : offHeap.getAllocator().getBudget()) +
+                ", minOffHeapSize=" + minOffHeapSize +
+                ", maxFileSize=" + maxFileSize +
+                '}';
+    }
+
+    private static class HeapContent implements CachedContent {
+        private final byte[] bytes;
+
+        HeapContent(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public ByteBuffer buffer() {
+            // the array is shared by every request, HttpResponse writes the view through a channel
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+
+        @Override
+        public void release() {}
+    }
+}
@@ -0,0 +1,176 @@
+package com.egehurturk.caches;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the web root (and every directory below it) with a {@link WatchService}
+ * and tells a {@link Listener} which paths changed, so caches can drop exactly
+ * those entries instead of checking modification times on every request.
+ *
+ * <p>Editors and deploy scripts touch many files at once, so events are
+ * debounced: changed paths are collected until no event arrives for
+ * {@link #quietPeriod} milliseconds (or events keep arriving for
+ * {@link #maxDelay} milliseconds), then delivered in a single call.
+ *
+ * <p>Directories created later are registered as they appear. Since files can be
+ * created in a new directory before it is registered, the directory itself is
+ * reported and listeners must treat a path as "this path and everything below it".
+ * When the event queue overflows the web root itself is reported.
+ */
+public class WebrootWatcher implements Closeable {
+
+    /**
+     * Receives debounced changes. Called on the watcher thread
+     */
+    public interface Listener {
+        /**
+         * @param paths                 - absolute paths of changed files or directories
+         */
+        void changed(Set<Path> paths);
+    }
+
+    private final Path root;
+    private final long quietPeriod;
+    private final long maxDelay;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Set<Path> pending = new HashSet<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    protected static Logger logger = LogManager.getLogger(WebrootWatcher.class);
+
+    /**
+     * Registers the web root. Call {@link #start()} to begin delivering changes
+     * @param root                  - web root directory
+     * @param quietPeriod           - milliseconds without events before changes are delivered
+     * @param listener              - receives the changed paths
+     * @throws IOException          - if the directories cannot be registered
+     */
+    public WebrootWatcher(Path root, long quietPeriod, Listener listener) throws IOException {
+        this.root         = root.toAbsolutePath();
+        this.quietPeriod  = Math.max(1, quietPeriod);
+        this.maxDelay     = this.quietPeriod * 10;
+        this.listener     = listener;
+        this.watchService = this.root.getFileSystem().newWatchService();
+        registerTree(this.root);
+        this.thread = new Thread(this::run, "webroot-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return number of watched directories
+     */
+    public synchronized int getDirectoryCount() {
+        return directories.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.error("Cannot close web root watch service: " + e.getMessage());
+        }
+    }
+
+    private void run() {
+        long firstEvent = 0, lastEvent = 0;
+        while (running) {
+            WatchKey key;
+            try {
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long now  = System.currentTimeMillis();
+                    long wait = Math.min(lastEvent + quietPeriod, firstEvent + maxDelay) - now;
+                    key = (wait > 0) ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            if (key != null) {
+                long now = System.currentTimeMillis();
+                if (pending.isEmpty()) {
+                    firstEvent = now;
+                }
+                lastEvent = now;
+                process(key);
+                if (now - firstEvent < maxDelay) {
+                    continue;
+                }
+            }
+            if (!pending.isEmpty()) {
+                Set<Path> changed = new HashSet<>(pending);
+                pending.clear();
+                try {
+                    listener.changed(changed);
+                } catch (RuntimeException e) {
+                    logger.error("Web root change listener failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void process(WatchKey key) {
+        Path directory;
+        synchronized (this) {
+            directory = directories.get(key);
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || directory == null) {
+                pending.add(root);
+                continue;
+            }
+            Path changed = directory.resolve((Path) event.context());
+            pending.add(changed);
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    registerTree(changed);
+                } catch (IOException e) {
+                    logger.error("Cannot watch new directory " + changed + ": " + e.getMessage());
+                }
+            }
+        }
+        if (!key.reset()) {
+            // directory was deleted
+            synchronized (this) {
+                directories.remove(key);
+            }
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                synchronized (WebrootWatcher.this) {
+                    directories.put(key, dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
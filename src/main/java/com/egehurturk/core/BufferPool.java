@@ -0,0 +1,210 @@
+package com.egehurturk.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct {@link ByteBuffer}s for socket reads and writes, so handling
+ * a request in the steady state allocates no I/O buffers. Channels read into
+ * and write from direct buffers without copying them through a temporary
+ * direct buffer of their own.
+ *
+ * <p>Buffers are grouped in size classes of {@link #SIZE_CLASSES} bytes; a
+ * request gets a buffer of the smallest class that fits. Each class keeps at
+ * most {@code retainedPerClass} released buffers, the rest are left to the
+ * garbage collector. Larger requests get a buffer that is not pooled. Acquiring
+ * and releasing are lock-free, the pool is shared by every connection thread.
+ *
+ * <p>A buffer is released exactly once, by its owner, when the request or the
+ * connection ends. In debug mode the pool remembers where every buffer that is
+ * out was acquired: a buffer released twice, or not by this pool, is logged,
+ * and {@link #reportLeaks()} logs those never released.
+ */
+public class BufferPool {
+
+    private static final Logger logger = LogManager.getLogger(BufferPool.class);
+
+    /**
+     * Capacities of the pooled buffers, ascending
+     */
+    public static final int[] SIZE_CLASSES = {4096, 16384, 65536};
+
+    public static final int DEFAULT_RETAINED_PER_CLASS = 256;
+
+    private static volatile BufferPool defaultPool = new BufferPool(DEFAULT_RETAINED_PER_CLASS, false);
+
+    private final int retainedPerClass;
+    private final boolean debugMode;
+
+    private final Queue<ByteBuffer>[] free;
+    private final AtomicInteger[] freeCount;
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong allocated   = new AtomicLong();
+
+    /**
+     * Acquisition site of every buffer that is out, only in debug mode
+     */
+    private final Map<ByteBuffer, Throwable> acquired = new IdentityHashMap<>();
+
+    /**
+     * @param retainedPerClass      - most released buffers kept in each size class
+     * @param debugMode             - whether to record where buffers are acquired
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int retainedPerClass, boolean debugMode) {
+        if (retainedPerClass < 0) {
+            throw new IllegalArgumentException("Retained buffers per class must not be negative");
+        }
+        this.retainedPerClass = retainedPerClass;
+        this.debugMode        = debugMode;
+        this.free      = new Queue[SIZE_CLASSES.length];
+        this.freeCount = new AtomicInteger[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            free[i]      = new ConcurrentLinkedQueue<>();
+            freeCount[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @return                      - pool of the buffers of the connections
+     */
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    public static void setDefault(BufferPool pool) {
+        defaultPool = pool;
+    }
+
+    /**
+     * @param size                  - least capacity
+     * @return                      - cleared buffer of the smallest class that fits, unpooled when none does
+     */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = classOf(size);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = free[sizeClass].poll();
+            if (buffer != null) {
+                freeCount[sizeClass].decrementAndGet();
+                buffer.clear();
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(sizeClass >= 0 ? SIZE_CLASSES[sizeClass] : size);
+            allocated.incrementAndGet();
+        }
+        outstanding.incrementAndGet();
+        if (debugMode) {
+            synchronized (acquired) {
+                acquired.put(buffer, new Throwable("Buffer of " + buffer.capacity() + " bytes acquired by "
+                        + Thread.currentThread().getName()));
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back. It must not be used afterwards
+     * @param buffer                - buffer from {@link #acquire(int)}, null is ignored
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (debugMode) {
+            synchronized (acquired) {
+                if (acquired.remove(buffer) == null) {
+                    logger.error("Buffer of " + buffer.capacity() + " bytes released twice or not acquired from the pool",
+                            new Throwable("Released by " + Thread.currentThread().getName()));
+                    return;
+                }
+            }
+        }
+        outstanding.decrementAndGet();
+        int sizeClass = exactClassOf(buffer.capacity());
+        if (sizeClass < 0 || !buffer.isDirect()) {
+            return;
+        }
+        // a racing release may keep one more than the limit, which does no harm
+        if (freeCount[sizeClass].incrementAndGet() <= retainedPerClass) {
+            free[sizeClass].add(buffer);
+        } else {
+            freeCount[sizeClass].decrementAndGet();
+        }
+    }
+
+    /**
+     * @return                      - buffers acquired and not yet released
+     */
+    public long outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return                      - buffers allocated because none was free, a steady number once warm
+     */
+    public long allocated() {
+        return allocated.get();
+    }
+
+    /**
+     * @return                      - released buffers kept for reuse
+     */
+    public int retained() {
+        int retained = 0;
+        for (AtomicInteger count : freeCount) {
+            retained += count.get();
+        }
+        return retained;
+    }
+
+    public boolean isDebugMode() {
+        return debugMode;
+    }
+
+    /**
+     * Logs the acquisition site of every buffer that is out. Only buffers of
+     * finished requests and closed connections should be, so call it when the
+     * server is idle or stopping. Does nothing unless in debug mode
+     * @return                      - number of buffers that are out
+     */
+    public int reportLeaks() {
+        List<Throwable> sites;
+        synchronized (acquired) {
+            sites = new ArrayList<>(acquired.values());
+        }
+        for (Throwable site : sites) {
+            logger.error("Leaked buffer, never released", site);
+        }
+        return sites.size();
+    }
+
+    private static int classOf(int size) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (size <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int exactClassOf(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity == SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
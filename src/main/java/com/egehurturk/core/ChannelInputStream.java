@@ -0,0 +1,114 @@
+package com.egehurturk.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Buffered input of a blocking channel, over a direct buffer of a
+ * {@link BufferPool}. Takes the place of a {@link java.io.BufferedInputStream}
+ * on the socket, without a heap buffer per connection.
+ *
+ * <p>{@link #release()} gives the buffer back to the pool and keeps the channel
+ * open, for a connection whose response is still being sent. Reads fail afterwards.
+ */
+public class ChannelInputStream extends InputStream {
+
+    private final ReadableByteChannel channel;
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+
+    /**
+     * @param channel               - channel in blocking mode
+     * @param pool                  - pool of the buffer
+     * @param size                  - size of the buffer
+     */
+    public ChannelInputStream(ReadableByteChannel channel, BufferPool pool, int size) {
+        this.channel = channel;
+        this.pool    = pool;
+        this.buffer  = pool.acquire(size);
+        this.buffer.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer().hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer().hasRemaining() && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (!buffer().hasRemaining() && !fill()) {
+            return 0;
+        }
+        int skipped = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return buffer().remaining();
+    }
+
+    /**
+     * Returns the buffer to the pool, once. The channel stays open
+     */
+    public void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Releases the buffer and closes the channel
+     */
+    @Override
+    public void close() throws IOException {
+        release();
+        channel.close();
+    }
+
+    private ByteBuffer buffer() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream is closed");
+        }
+        return buffer;
+    }
+
+    /**
+     * @return                      - false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int n = channel.read(buffer);
+        buffer.flip();
+        if (n == 0) {
+            throw new IOException("Channel is not in blocking mode");
+        }
+        return n > 0;
+    }
+}
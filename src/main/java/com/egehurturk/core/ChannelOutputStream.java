@@ -0,0 +1,368 @@
+package com.egehurturk.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Output of a connection that queues what is written as buffers, so a handler
+ * does not wait for the client to read its response.
+ *
+ * <p>The stream starts in blocking mode, for a request whose body the worker
+ * may still be reading from the same channel: writes are queued and sent by
+ * the writing thread on {@link #flush()}, or once {@code capacity} bytes are
+ * queued. After {@link #startAsync()} the channel is non-blocking and the
+ * queued buffers are sent by a {@link WriteLoop} as the socket becomes
+ * writable; a writer that gets {@code capacity} bytes ahead of the client
+ * waits until the loop has sent some (backpressure). {@link #close()} hands
+ * the rest of the queue to the loop, which closes the connection once it is
+ * sent, and returns at once.
+ *
+ * <p>The connection is closed, and writing fails, if the client does not read
+ * anything for {@code writeTimeoutMillis} while data is queued.
+ *
+ * <p>The buffers of the queue are direct buffers of a {@link BufferPool}, each
+ * is released as soon as it has been sent.
+ */
+public class ChannelOutputStream extends OutputStream implements WritableByteChannel {
+
+    /**
+     * Size of the buffers of the queue
+     */
+    private static final int CHUNK = 16384;
+
+    private final SocketChannel channel;
+    private final WriteLoop loop;
+    private final BufferPool pool;
+    private final int capacity;
+    private final long writeTimeoutNanos;
+
+    // guarded by this
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    private ByteBuffer tail;
+    private long queued;
+    private boolean async;
+    private boolean finished;
+    private IOException failure;
+    private long lastProgress;
+    private boolean waiting;
+
+    /**
+     * Owned by the write loop thread
+     */
+    private SelectionKey key;
+
+    /**
+     * @param channel               - connection, in blocking mode
+     * @param loop                  - loop that sends the queue in non-blocking mode
+     * @param pool                  - pool of the buffers of the queue
+     * @param capacity              - most bytes queued before a writer waits
+     * @param writeTimeoutMillis    - longest wait for the client to read, 0 for none
+     */
+    public ChannelOutputStream(SocketChannel channel, WriteLoop loop, BufferPool pool, int capacity,
+                               long writeTimeoutMillis) {
+        this.channel           = channel;
+        this.loop              = loop;
+        this.pool              = pool;
+        this.capacity          = Math.max(capacity, 1);
+        this.writeTimeoutNanos = writeTimeoutMillis * 1000000L;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureWritable();
+        if (async) {
+            awaitRoom();
+        }
+        tail().put((byte) b);
+        queued++;
+        afterWrite();
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureWritable();
+        while (len > 0) {
+            if (async) {
+                awaitRoom();
+            }
+            ByteBuffer buffer = tail();
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            queued += n;
+            off    += n;
+            len    -= n;
+            afterWrite();
+        }
+    }
+
+    /**
+     * Queues the remaining bytes of {@code src}, copied straight into the buffers of the queue
+     */
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        ensureWritable();
+        int written = 0;
+        while (src.hasRemaining()) {
+            if (async) {
+                awaitRoom();
+            }
+            ByteBuffer buffer = tail();
+            int n = Math.min(src.remaining(), buffer.remaining());
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + n);
+            buffer.put(part);
+            src.position(src.position() + n);
+            queued  += n;
+            written += n;
+            afterWrite();
+        }
+        return written;
+    }
+
+    /**
+     * @return                      - false once the response is complete or the connection failed
+     */
+    @Override
+    public synchronized boolean isOpen() {
+        return !finished && failure == null && channel.isOpen();
+    }
+
+    /**
+     * Sends the queue: in blocking mode before returning, otherwise through the loop
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        queueTail();
+        if (async) {
+            submit();
+        } else if (!finished) {
+            drainBlocking();
+        }
+    }
+
+    /**
+     * Switches the channel to non-blocking mode; from now on the loop sends the
+     * queue. Nothing may read from the channel in blocking mode afterwards
+     */
+    public synchronized void startAsync() throws IOException {
+        if (async || failure != null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        async = true;
+        queueTail();
+        submit();
+    }
+
+    /**
+     * @return                      - whether the loop sends the queue
+     */
+    public synchronized boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * @return                      - bytes written but not yet sent
+     */
+    public synchronized long queued() {
+        return queued;
+    }
+
+    /**
+     * Ends the response. The loop sends what is queued and closes the connection
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (!async && channel.isOpen()) {
+            startAsync();
+        }
+        finished = true;
+        queueTail();
+        pool.release(tail);
+        tail = null;
+        loop.requestWrite(this);
+    }
+
+    /**
+     * Sends as much of the queue as the socket takes without blocking. Called by
+     * the loop, which registers the channel with {@code selector} while data is left
+     */
+    synchronized void writeReady(Selector selector) {
+        try {
+            if (!channel.isOpen()) {
+                fail(new IOException("Connection is closed"));
+                return;
+            }
+            while (!queue.isEmpty()) {
+                ByteBuffer head = queue.peek();
+                int n = channel.write(head);
+                if (n > 0) {
+                    queued      -= n;
+                    lastProgress = System.nanoTime();
+                }
+                if (head.hasRemaining()) {
+                    break;
+                }
+                pool.release(queue.poll());
+            }
+            waiting = !queue.isEmpty();
+            notifyAll();
+            if (queue.isEmpty() && finished) {
+                closeChannel();
+                return;
+            }
+            int ops = queue.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+            if (key == null) {
+                if (ops != 0) {
+                    key = channel.register(selector, ops, this);
+                }
+            } else {
+                key.interestOps(ops);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Closes the connection if the client has not read anything for the write timeout
+     */
+    synchronized void checkStalled(long now) {
+        if (writeTimeoutNanos > 0 && waiting && now - lastProgress > writeTimeoutNanos) {
+            fail(new IOException("Client did not read the response for " + (writeTimeoutNanos / 1000000L) + " ms"));
+        }
+    }
+
+    /**
+     * Drops the queue and closes the connection, waking a waiting writer
+     */
+    synchronized void fail(IOException cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        ByteBuffer buffer;
+        while ((buffer = queue.poll()) != null) {
+            pool.release(buffer);
+        }
+        pool.release(tail);
+        tail   = null;
+        queued = 0;
+        closeChannel();
+        notifyAll();
+    }
+
+    private void closeChannel() {
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+    }
+
+    private void ensureWritable() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (finished) {
+            throw new IOException("Response is already complete");
+        }
+    }
+
+    /**
+     * Waits while the queue is full. The loop wakes the writer when it sends
+     * something, the timeout only guards against a connection closed elsewhere
+     */
+    private void awaitRoom() throws IOException {
+        while (queued >= capacity) {
+            queueTail();
+            submit();
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the client to read");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (!channel.isOpen()) {
+                throw new IOException("Connection is closed");
+            }
+        }
+    }
+
+    private void afterWrite() throws IOException {
+        if (!tail.hasRemaining()) {
+            queueTail();
+            if (async) {
+                submit();
+            }
+        }
+        if (!async && queued >= capacity) {
+            drainBlocking();
+        }
+    }
+
+    private ByteBuffer tail() {
+        if (tail == null) {
+            tail = pool.acquire(CHUNK);
+        }
+        return tail;
+    }
+
+    private void queueTail() {
+        if (tail != null && tail.position() > 0) {
+            tail.flip();
+            queue.add(tail);
+            tail = null;
+        }
+    }
+
+    /**
+     * Hands the queue to the loop
+     */
+    private void submit() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        if (!waiting) {
+            waiting      = true;
+            lastProgress = System.nanoTime();
+        }
+        loop.requestWrite(this);
+    }
+
+    /**
+     * Sends the queue from the calling thread, in blocking mode
+     */
+    private void drainBlocking() throws IOException {
+        queueTail();
+        try {
+            while (!queue.isEmpty()) {
+                ByteBuffer head = queue.peek();
+                while (head.hasRemaining()) {
+                    queued -= channel.write(head);
+                }
+                pool.release(queue.poll());
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.egehurturk.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timer for a large number of timeouts that are mostly cancelled before they
+ * expire, such as the read and write timeouts of connections (after Varghese
+ * and Lauck, "Hashed and Hierarchical Timing Wheels").
+ *
+ * <p>Time is divided into ticks of a fixed duration. A timeout goes into the
+ * bucket of the tick it expires in, modulo the number of buckets, and counts
+ * how many more turns of the wheel it waits. A single thread wakes up once per
+ * tick and visits one bucket, so scheduling and cancelling are O(1) and a tick
+ * costs the size of one bucket, whatever the number of timeouts: there is no
+ * per-timeout task in a scheduler queue.
+ *
+ * <p>Timeouts fire up to one tick late, never early. Tasks run on the wheel
+ * thread and must be short; a task that blocks delays every other timeout.
+ * New and cancelled timeouts are handed to the wheel thread through lock-free
+ * queues, so buckets are only touched by that thread.
+ */
+public class HashedTimingWheel implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(HashedTimingWheel.class);
+
+    private static final int STATE_WAITING   = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED   = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    private final Queue<Timeout> added     = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending       = new AtomicLong();
+
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * Starts the wheel thread
+     * @param tickDuration          - duration of a tick, the precision of the timeouts
+     * @param unit                  - unit of {@code tickDuration}
+     * @param ticksPerWheel         - number of buckets, rounded up to a power of two
+     * @param name                  - name of the wheel thread
+     */
+    public HashedTimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, String name) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Tick duration and ticks per wheel must be positive");
+        }
+        int buckets = 1;
+        while (buckets < ticksPerWheel) {
+            buckets <<= 1;
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel     = new Bucket[buckets];
+        this.mask      = buckets - 1;
+        for (int i = 0; i < buckets; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.startTime = System.nanoTime();
+        this.worker    = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Runs {@code task} on the wheel thread after {@code delay}, unless the
+     * returned timeout is cancelled before
+     * @param task                  - short task
+     * @param delay                 - delay, at least one tick is waited
+     * @param unit                  - unit of {@code delay}
+     * @return                      - handle to cancel the timeout
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timing wheel is closed");
+        }
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0)));
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return                      - number of timeouts that are neither expired nor cancelled
+     */
+    public long pending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the wheel thread. Pending timeouts never run
+     */
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long deadline = waitForNextTick(tick);
+            if (deadline < 0) {
+                break;
+            }
+            removeCancelled();
+            transferAdded(tick);
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * @return                      - time of the end of the tick since {@link #startTime}, -1 when closed
+     */
+    private long waitForNextTick(long tick) {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos <= 0) {
+                return deadline;
+            }
+            try {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(sleepNanos + 999999));
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts new timeouts into their buckets. A timeout that is already due goes
+     * into the current bucket and expires in this tick
+     */
+    private void transferAdded(long tick) {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != STATE_WAITING) {
+                continue;
+            }
+            long dueTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            wheel[(int) (Math.max(dueTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled task
+     */
+    public static final class Timeout {
+        private final HashedTimingWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(STATE_WAITING);
+
+        // owned by the wheel thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HashedTimingWheel wheel, Runnable task, long deadline) {
+            this.wheel    = wheel;
+            this.task     = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Keeps the task from running, O(1)
+         * @return                      - false if it has already run or been cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(STATE_WAITING, STATE_CANCELLED)) {
+                return false;
+            }
+            wheel.pending.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(STATE_WAITING, STATE_EXPIRED)) {
+                return;
+            }
+            wheel.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.error("Timeout task failed: " + t);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts of one tick, so a cancelled timeout is
+     * unlinked in O(1)
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next    = timeout;
+                timeout.prev = tail;
+                tail         = timeout;
+            }
+        }
+
+        /**
+         * Runs the timeouts due by {@code deadline}, the others wait another turn
+         */
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        timeout.expire();
+                    } else {
+                        logger.error("Timeout went into the wrong bucket, deadline " + timeout.deadline + " > " + deadline);
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev   = null;
+            timeout.next   = null;
+            timeout.bucket = null;
+        }
+    }
+}
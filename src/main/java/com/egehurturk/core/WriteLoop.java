@@ -0,0 +1,117 @@
+package com.egehurturk.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single thread that sends the queued responses of {@link ChannelOutputStream}s
+ * as their sockets become writable, so the workers that produced them are free
+ * for the next request while slow clients read.
+ *
+ * <p>Writers hand their streams over through a lock-free queue and wake the
+ * selector; registration and interest changes happen on the loop thread only.
+ * Once a second the loop closes connections whose clients stopped reading
+ * (see {@link ChannelOutputStream#checkStalled(long)}).
+ */
+public class WriteLoop implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(WriteLoop.class);
+
+    private static final long CHECK_INTERVAL = 1000;
+
+    private final Selector selector;
+    private final Queue<ChannelOutputStream> ready = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Starts the loop thread
+     * @param name                  - name of the thread
+     */
+    public WriteLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread   = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Asks the loop to send the queue of {@code out}, from any thread
+     */
+    void requestWrite(ChannelOutputStream out) {
+        if (!running) {
+            out.fail(new IOException("Write loop is closed"));
+            return;
+        }
+        ready.add(out);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the loop and closes the connections that still have data to send
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long lastCheck = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(CHECK_INTERVAL);
+            } catch (IOException e) {
+                logger.error("Write loop cannot select: " + e.getMessage());
+                break;
+            }
+            ChannelOutputStream out;
+            while ((out = ready.poll()) != null) {
+                out.writeReady(selector);
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isWritable()) {
+                    ((ChannelOutputStream) key.attachment()).writeReady(selector);
+                }
+            }
+            long now = System.nanoTime();
+            if (now - lastCheck >= TimeUnit.MILLISECONDS.toNanos(CHECK_INTERVAL)) {
+                lastCheck = now;
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid()) {
+                        ((ChannelOutputStream) key.attachment()).checkStalled(now);
+                    }
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((ChannelOutputStream) key.attachment()).fail(new IOException("Write loop is closed"));
+        }
+        ChannelOutputStream out;
+        while ((out = ready.poll()) != null) {
+            out.fail(new IOException("Write loop is closed"));
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error("Could not close the selector of the write loop");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.egehurturk.exceptions;
+
+import java.io.IOException;
+
+/**
+ * JSON input that is not well formed, or does not have the shape of the type
+ * it is bound to. Thrown while the input is read, so it is an {@link IOException}
+ */
+public class MalformedJsonException extends IOException {
+    public MalformedJsonException(String errMsg) {
+        super(errMsg);
+    }
+
+    public MalformedJsonException(String errMsg, Throwable cause) {
+        super(errMsg, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package com.egehurturk.exceptions;
+
+import java.io.IOException;
+
+/**
+ * A request body that is not {@code multipart/form-data}, or breaks its framing
+ * (missing boundary, part headers that never end, a body that ends before the
+ * closing boundary). Thrown while the body is read, so it is an {@link IOException}
+ */
+public class MalformedMultipartException extends IOException {
+    public MalformedMultipartException(String errMsg) {
+        super(errMsg);
+    }
+}
@@ -0,0 +1,17 @@
+package com.egehurturk.exceptions;
+
+/**
+ * Thrown while a request is parsed, as soon as it exceeds one of the
+ * {@link com.egehurturk.httpd.RequestLimits}. Carries the status to answer
+ * with: 414 for the request line, 431 for the headers, 413 for the body.
+ */
+public class RequestTooLargeException extends HttpRequestException {
+    public int code;
+    public String message;
+
+    public RequestTooLargeException(String errMsg, int code, String message) {
+        super(errMsg);
+        this.code = code;
+        this.message = message;
+    }
+}
@@ -1,9 +1,16 @@
 package com.egehurturk.handlers;
 
+import com.egehurturk.core.BufferPool;
+import com.egehurturk.core.ChannelInputStream;
+import com.egehurturk.core.ChannelOutputStream;
+import com.egehurturk.core.HashedTimingWheel;
+import com.egehurturk.core.WriteLoop;
 import com.egehurturk.exceptions.BadRequest400Exception;
 import com.egehurturk.exceptions.HttpRequestException;
 import com.egehurturk.exceptions.MethodNotAllowedException;
 import com.egehurturk.exceptions.NotFound404Exception;
+import com.egehurturk.exceptions.RequestTooLargeException;
+import com.egehurturk.httpd.ConnectionTimeouts;
 import com.egehurturk.httpd.HttpRequest;
 import com.egehurturk.httpd.HttpResponse;
 import com.egehurturk.httpd.HttpResponseBuilder;
@@ -16,12 +23,20 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manager class for handling {@link java.net.Socket} object client. Using
@@ -75,12 +90,27 @@ public class HttpController implements Closeable, Runnable {
     private Socket client;
 
     /**
-     * Input for client socket. Everything
-     * that the client requests to the server is
-     * read by the {@link BufferedReader} object's
-     * readline methods.
+     * Input for client socket. The request head is parsed
+     * from it and the body is left on it for the handler,
+     * see {@link HttpRequest#getBodyStream()}.
      */
-    private BufferedReader in;
+    private InputStream in;
+
+    /**
+     * {@link #in} when the socket has a channel, reading into a pooled direct buffer
+     */
+    private ChannelInputStream channelInput;
+
+    /**
+     * Size of the pooled input buffer, one size class with the output buffers
+     */
+    private static final int INPUT_BUFFER = 16384;
+
+    /**
+     * Output for client socket, for the raw bytes of responses. Writes are
+     * watched for the write timeout
+     */
+    private OutputStream output;
 
     /**
      * Output for client socket. Send anything
@@ -89,6 +119,33 @@ public class HttpController implements Closeable, Runnable {
      */
     private PrintWriter out;
 
+    /**
+     * Queued output of the socket channel, under {@link #output}. Null when the
+     * responses are written by the worker, see {@link #setWriteLoop(WriteLoop, int)}
+     */
+    private ChannelOutputStream channelOutput;
+
+    /**
+     * Sends the queued responses. Null if the worker writes them
+     */
+    private WriteLoop writeLoop;
+    private int writeBufferSize;
+
+    /**
+     * Responses to requests over the {@link com.egehurturk.httpd.RequestLimits},
+     * serialized once. They are written straight to the socket, without building
+     * a response, and close the connection as the rest of the request is never read
+     */
+    private static final EnumMap<StatusEnum, byte[]> REJECTIONS = new EnumMap<>(StatusEnum.class);
+
+    static {
+        for (StatusEnum status : new StatusEnum[] {StatusEnum._408_REQUEST_TIMEOUT, StatusEnum._413_PAYLOAD_TOO_LARGE,
+                StatusEnum._414_URI_TOO_LONG, StatusEnum._431_REQUEST_HEADER_FIELDS_TOO_LARGE}) {
+            REJECTIONS.put(status, ("HTTP/1.1 " + status.STATUS_CODE + " " + status.MESSAGE + "\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
 
     /**
      * Logging manager
@@ -104,6 +161,40 @@ public class HttpController implements Closeable, Runnable {
     public List<HandlerTemplate> handlers;
     private Boolean allowForCustomMapping = false;
 
+    /**
+     * Phases of the connection, each with its own timeout, see {@link ConnectionTimeouts}
+     */
+    private static final int PHASE_IDLE     = 0;
+    private static final int PHASE_HEAD     = 1;
+    private static final int PHASE_HANDLING = 2;
+    private static final int PHASE_DONE     = 3;
+
+    /**
+     * {@link #readingSince} and {@link #writingSince} when no read or write is blocked
+     */
+    private static final long NOT_BLOCKED = Long.MIN_VALUE;
+
+    /**
+     * Timer of the timeouts, shared by every connection. Null if they are not enforced
+     */
+    private HashedTimingWheel timingWheel;
+    private ConnectionTimeouts timeouts;
+
+    /**
+     * The single pending timeout of this connection. It checks the phase and the
+     * blocked reads and writes when it fires and schedules the next check, so
+     * reads and writes only store a timestamp and never touch the wheel
+     */
+    private HashedTimingWheel.Timeout watchdog;
+    private final Object watchdogLock = new Object();
+
+    private volatile int phase = PHASE_IDLE;
+    private volatile long phaseStart;
+    private volatile long readingSince = NOT_BLOCKED;
+    private volatile long writingSince = NOT_BLOCKED;
+    private volatile boolean committed;
+    private volatile boolean timedOut;
+
     /**
      * Default constructor for this class.
      * @param socket                        - the client socket that server accepts. All
@@ -114,6 +205,28 @@ public class HttpController implements Closeable, Runnable {
         this.handlers = handlers;
     }
 
+    /**
+     * Enforces {@code timeouts} on this connection
+     * @param timingWheel           - timer shared by the connections of the server
+     * @param timeouts              - timeouts, in milliseconds
+     */
+    public void setTimeouts(HashedTimingWheel timingWheel, ConnectionTimeouts timeouts) {
+        this.timingWheel = timingWheel;
+        this.timeouts    = timeouts;
+    }
+
+    /**
+     * Queues the responses of this connection and lets {@code writeLoop} send
+     * them, so the worker is free as soon as the handler returns. Sockets
+     * without a channel keep writing from the worker
+     * @param writeLoop             - loop shared by the connections of the server
+     * @param writeBufferSize       - most bytes queued before a handler waits for the client
+     */
+    public void setWriteLoop(WriteLoop writeLoop, int writeBufferSize) {
+        this.writeLoop       = writeLoop;
+        this.writeBufferSize = writeBufferSize;
+    }
+
     public void setDebugMode(boolean debugMode) {
         this.debugMode = debugMode;
     }
@@ -147,20 +260,33 @@ public class HttpController implements Closeable, Runnable {
      */
     @Override
     public void run() {
+        HttpRequest req = null;
         try {
             // if client input stream is null close the server gracefully
             if (client.getInputStream() == null) {
                 close();
                 return;
             }
-            this.in = new BufferedReader(
-                    new InputStreamReader(client.getInputStream())
-            );
-            this.out = new PrintWriter(client.getOutputStream(), false);
+            enterPhase(PHASE_IDLE);
+            SocketChannel channel = client.getChannel();
+            if (channel != null) {
+                this.channelInput = new ChannelInputStream(new WatchedChannel(channel), BufferPool.getDefault(), INPUT_BUFFER);
+                this.in = this.channelInput;
+            } else {
+                this.in = new BufferedInputStream(new WatchedInputStream(client.getInputStream()));
+            }
+            if (this.writeLoop != null && channel != null) {
+                this.channelOutput = new ChannelOutputStream(channel, this.writeLoop, BufferPool.getDefault(),
+                        this.writeBufferSize, (this.timeouts == null) ? 0 : this.timeouts.getWrite());
+                this.output = new WatchedOutputStream(this.channelOutput);
+            } else {
+                this.output = new WatchedOutputStream(client.getOutputStream());
+            }
+            this.out = new PrintWriter(this.output, false);
             // parse request
-            HttpRequest req = new HttpRequest(in);
-            boolean foundHandler = false;
-            HttpResponse res = new HttpResponse(this.out);
+            req = HttpRequest.fromStream(in);
+            enterPhase(PHASE_HANDLING);
+            HttpResponse res = new HttpResponse(this.out, this.output);
 
             // get all handlers that implements {@code req.getMethod}. E.g, this list can contain all handlers
             // that accepts GET request
@@ -169,47 +295,39 @@ public class HttpController implements Closeable, Runnable {
                 throw new MethodNotAllowedException("Method is not allowed at path " + req.getPath(), 405, "Method Not Allowed");
             }
 
-            if (this.allowForCustomMapping) {
-                // iterate over all handlers and find the handler template that is assigned to path
-                for (HandlerTemplate templ: methodTemplates) {
-                    // if exists
-                    if (templ.path.equals(req.getPath())) {
-                        res = templ.handler.handle(req, res); // let handler to handle the request
-                        try {
-                            res.send();
-                        } catch (NullPointerException pointerException) {
-                            FileResponse fil = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("500.html"), new PrintWriter(client.getOutputStream(), false));
-                            respond(fil.toHttpResponse(StatusEnum.valueOf("Internal Server Error"), this.out));
-                        }
-
-                        logger.info("[" + req.getMethod() + " " + req.getPath() + " " + req.getScheme() + "] " + res.getCode());
-                        foundHandler = true; // we found a handler
-                        break;
-                    }
-                }
+            // the route is resolved before the body is touched, so a request that no handler
+            // takes is refused before a client waiting for "100 Continue" uploads its body
+            HandlerTemplate template = findHandlerTemplate(req, methodTemplates);
+            if (template == null) {
+                throw new NotFound404Exception("No handler at path " + req.getPath(), 404, "Not Found");
+            }
+            // sent by the first read of the body, a handler that answers without reading it never asks for it
+            req.continueOnRead(this.output);
+            // nothing is left to read, the response can be sent without blocking the worker.
+            // A request with a body keeps the channel blocking until the handler has read it
+            if (this.channelOutput != null && !req.hasBody()) {
+                this.channelOutput.startAsync();
             }
 
-            if (!foundHandler) {
-                // check for default handler (all paths)
-                for (HandlerTemplate template: methodTemplates) {
-                    if (template.path.equals("/*")) {
-                        res = template.handler.handle(req, res);
-                        try {
-                            res.send();
-                        } catch (NullPointerException nullPointerException) {
-                            FileResponse fil = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("500.html"), new PrintWriter(client.getOutputStream(), false));
-                            respond(fil.toHttpResponse(StatusEnum.valueOf("Internal Server Error"), this.out));
-                        }
-                        logger.info("[" + req.getMethod() + " " + req.getPath() + " " + req.getScheme() + "] " + res.getCode());
-                        break;
-                    }
-                }
-
+            res = template.handler.handle(req, res); // let handler to handle the request
+            // nothing is sent yet, a body that went past its limit gets the 413 instead of the handler's answer
+            req.checkBodySize();
+            attachOutput(res, req);
+            try {
+                res.send();
+            } catch (NullPointerException pointerException) {
+                FileResponse fil = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("500.html"), new PrintWriter(output(), false));
+                respond(fil.toHttpResponse(StatusEnum.valueOf("Internal Server Error"), this.out));
             }
+            logger.info("[" + req.getMethod() + " " + req.getPath() + " " + req.getScheme() + "] " + res.getCode());
 
         } catch (IOException e) {
+            if (this.timedOut) {
+                // the socket was closed under a blocked read or write
+                return;
+            }
             try {
-                FileResponse response = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("500.html"), new PrintWriter(client.getOutputStream(), false));
+                FileResponse response = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("500.html"), new PrintWriter(output(), false));
                 respond(response.toHttpResponse(StatusEnum.valueOf("Internal Server Error"), this.out));
                 close();
             } catch (IOException ioException) {
@@ -228,7 +346,7 @@ public class HttpController implements Closeable, Runnable {
             }
         } catch (BadRequest400Exception e) {
             try {
-                FileResponse response = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("400.html"), new PrintWriter(client.getOutputStream(), false));
+                FileResponse response = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("400.html"), new PrintWriter(output(), false));
                 respond(response.toHttpResponse(StatusEnum.valueOf(Utility.enumStatusToString(e.message)), this.out));
                 close();
             } catch (IOException ioException) {
@@ -247,7 +365,7 @@ public class HttpController implements Closeable, Runnable {
             }
         } catch (MethodNotAllowedException e) {
             try {
-                FileResponse response = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("403.html"), new PrintWriter(client.getOutputStream(), false));
+                FileResponse response = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("403.html"), new PrintWriter(output(), false));
                 respond(response.toHttpResponse(StatusEnum.valueOf(Utility.enumStatusToString(e.message)), this.out));
                 close();
             } catch (IOException ioException) {
@@ -266,7 +384,7 @@ public class HttpController implements Closeable, Runnable {
             }
         } catch (NotFound404Exception e) {
             try {
-                FileResponse response = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("404.html"), new PrintWriter(client.getOutputStream(), false));
+                FileResponse response = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("404.html"), new PrintWriter(output(), false));
                 respond(response.toHttpResponse(StatusEnum.valueOf(Utility.enumStatusToString(e.message)), this.out));
                 close();
             } catch (IOException  ioException) {
@@ -283,9 +401,29 @@ public class HttpController implements Closeable, Runnable {
                     logger.error("Could not close client stream");
                 }
             }
+        } catch (RequestTooLargeException e) {
+            logger.info(e.getMessage() + ", answered with " + e.code);
+            try {
+                OutputStream raw = output();
+                raw.write(REJECTIONS.get(StatusEnum.valueOf(Utility.enumStatusToString(e.message))));
+                raw.flush();
+                // a FIN instead of a reset while the client is still sending, so the response is read
+                client.shutdownOutput();
+            } catch (IOException ioException) {
+                logger.error("Could not reject the request: " + ioException.getMessage());
+            }
         } catch (HttpRequestException e) {
             e.printStackTrace();
         } finally {
+            enterPhase(PHASE_DONE);
+            if (req != null) {
+                // gives a pooled inflater of an unread or broken body back, the connection stays open
+                try {
+                    req.getBodyStream().close();
+                } catch (IOException e) {
+                    logger.error("Could not close the request body: " + e.getMessage());
+                }
+            }
             try {
                 close();
             } catch (IOException e) {
@@ -299,6 +437,28 @@ public class HttpController implements Closeable, Runnable {
         return this.handlers.indexOf(template);
     }
 
+    /**
+     * Finds the handler of the request: the one assigned to its path when custom
+     * mapping is allowed, otherwise the default handler (<i>/*</i>) of its method
+     * @param methodTemplates       - handlers of the request method
+     * @return                      - handler, null if there is none
+     */
+    private HandlerTemplate findHandlerTemplate(HttpRequest req, List<HandlerTemplate> methodTemplates) {
+        if (this.allowForCustomMapping) {
+            for (HandlerTemplate template : methodTemplates) {
+                if (template.path.equals(req.getPath())) {
+                    return template;
+                }
+            }
+        }
+        for (HandlerTemplate template : methodTemplates) {
+            if (template.path.equals("/*")) {
+                return template;
+            }
+        }
+        return null;
+    }
+
     private List<HandlerTemplate> findHandlerTemplateListFromMethod(String method) {
         List<HandlerTemplate> returnTemplate = new ArrayList<>();
         for (HandlerTemplate handler : handlers) {
@@ -310,13 +470,310 @@ public class HttpController implements Closeable, Runnable {
     }
 
 
+    /**
+     * Starts a phase and schedules the check of its timeout
+     */
+    private void enterPhase(int phase) {
+        if (this.timingWheel == null) {
+            return;
+        }
+        this.phaseStart = System.nanoTime();
+        this.phase      = phase;
+        arm(phase == PHASE_DONE ? -1 : nextCheck(phase, this.phaseStart));
+    }
+
+    /**
+     * Replaces the pending timeout of the connection
+     * @param delayNanos            - delay of the next check, negative for none
+     */
+    private void arm(long delayNanos) {
+        synchronized (this.watchdogLock) {
+            if (this.watchdog != null) {
+                this.watchdog.cancel();
+                this.watchdog = null;
+            }
+            if (delayNanos >= 0 && this.phase != PHASE_DONE) {
+                this.watchdog = this.timingWheel.newTimeout(this::checkTimeouts, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Runs on the timing wheel thread. Closes the connection if the timeout of
+     * its phase, or of a blocked read or write, has passed; otherwise checks
+     * again when the earliest of them can pass
+     */
+    private void checkTimeouts() {
+        int phase = this.phase;
+        long now  = System.nanoTime();
+        switch (phase) {
+            case PHASE_IDLE:
+                if (passed(this.timeouts.getIdle(), this.phaseStart, now)) {
+                    expire(false, "idle");
+                    return;
+                }
+                break;
+            case PHASE_HEAD:
+                if (passed(this.timeouts.getHeader(), this.phaseStart, now)) {
+                    expire(true, "request head");
+                    return;
+                }
+                break;
+            case PHASE_HANDLING:
+                if (passed(this.timeouts.getBody(), this.readingSince, now)) {
+                    expire(true, "body read");
+                    return;
+                }
+                if (passed(this.timeouts.getWrite(), this.writingSince, now)) {
+                    expire(false, "write");
+                    return;
+                }
+                break;
+            default:
+                return;
+        }
+        arm(nextCheck(phase, now));
+    }
+
+    /**
+     * @return                      - nanoseconds until a timeout of {@code phase} can pass, -1 if all are disabled
+     */
+    private long nextCheck(int phase, long now) {
+        long next;
+        switch (phase) {
+            case PHASE_IDLE:
+                next = remaining(this.timeouts.getIdle(), this.phaseStart, now);
+                break;
+            case PHASE_HEAD:
+                next = remaining(this.timeouts.getHeader(), this.phaseStart, now);
+                break;
+            case PHASE_HANDLING:
+                // a read or write that blocks later is caught at most one timeout late
+                long reading = this.readingSince;
+                long writing = this.writingSince;
+                long body    = remaining(this.timeouts.getBody(), reading == NOT_BLOCKED ? now : reading, now);
+                long write   = remaining(this.timeouts.getWrite(), writing == NOT_BLOCKED ? now : writing, now);
+                next = (body < 0) ? write : (write < 0) ? body : Math.min(body, write);
+                break;
+            default:
+                next = -1;
+        }
+        return next;
+    }
+
+    private static boolean passed(long timeoutMillis, long since, long now) {
+        return timeoutMillis > 0 && since != NOT_BLOCKED && now - since >= TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    private static long remaining(long timeoutMillis, long since, long now) {
+        return (timeoutMillis <= 0) ? -1 : Math.max(0, TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - (now - since));
+    }
+
+    /**
+     * Closes the connection, which fails the read or write the worker is blocked in
+     * @param respond               - whether to answer with 408 if nothing has been sent yet
+     */
+    private void expire(boolean respond, String timeout) {
+        this.timedOut = true;
+        this.phase    = PHASE_DONE;
+        logger.info("Closing connection { " + client.getPort() + "/" + client.getInetAddress() + " } after the "
+                + timeout + " timeout");
+        try {
+            if (respond && !this.committed) {
+                // a few bytes into an empty send buffer, does not block the wheel. A channel is
+                // written directly, its socket streams may wait for the read of the worker
+                byte[] rejection = REJECTIONS.get(StatusEnum._408_REQUEST_TIMEOUT);
+                SocketChannel channel = client.getChannel();
+                if (channel != null) {
+                    channel.write(ByteBuffer.wrap(rejection));
+                } else {
+                    OutputStream raw = client.getOutputStream();
+                    raw.write(rejection);
+                    raw.flush();
+                }
+            }
+        } catch (IOException ignored) {
+            // closed anyway
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.error("Could not close client stream");
+        }
+    }
+
+    /**
+     * Socket input that records when a read blocks, and when the request starts
+     */
+    private class WatchedInputStream extends FilterInputStream {
+        WatchedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            readingSince = System.nanoTime();
+            try {
+                int b = super.read();
+                readStarted(b == -1 ? 0 : 1);
+                return b;
+            } finally {
+                readingSince = NOT_BLOCKED;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            readingSince = System.nanoTime();
+            try {
+                int n = super.read(b, off, len);
+                readStarted(n);
+                return n;
+            } finally {
+                readingSince = NOT_BLOCKED;
+            }
+        }
+    }
+
+    /**
+     * Socket channel that records when a read blocks, and when the request starts
+     */
+    private class WatchedChannel implements ReadableByteChannel {
+        private final SocketChannel channel;
+
+        WatchedChannel(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            readingSince = System.nanoTime();
+            try {
+                int n = channel.read(dst);
+                readStarted(n);
+                return n;
+            } finally {
+                readingSince = NOT_BLOCKED;
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private void readStarted(int n) {
+        if (n > 0 && phase == PHASE_IDLE) {
+            enterPhase(PHASE_HEAD);
+        }
+    }
+
+    /**
+     * Socket output that records when a write blocks. Large writes are split so
+     * a slow but steady client is not mistaken for one that stopped reading.
+     * Takes buffers without copying them into an array when the socket output does
+     */
+    private class WatchedOutputStream extends FilterOutputStream implements WritableByteChannel {
+        private static final int SLICE = 65536;
+
+        WatchedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            committed    = true;
+            writingSince = System.nanoTime();
+            try {
+                out.write(b);
+            } finally {
+                writingSince = NOT_BLOCKED;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            committed = true;
+            while (len > 0) {
+                int n = Math.min(len, SLICE);
+                writingSince = System.nanoTime();
+                try {
+                    out.write(b, off, n);
+                } finally {
+                    writingSince = NOT_BLOCKED;
+                }
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!(out instanceof WritableByteChannel)) {
+                return Channels.newChannel((OutputStream) this).write(src);
+            }
+            committed = true;
+            int written = 0;
+            while (src.hasRemaining()) {
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + Math.min(slice.remaining(), SLICE));
+                writingSince = System.nanoTime();
+                try {
+                    written += ((WritableByteChannel) out).write(slice);
+                } finally {
+                    writingSince = NOT_BLOCKED;
+                }
+                src.position(slice.position());
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !(out instanceof WritableByteChannel) || ((WritableByteChannel) out).isOpen();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writingSince = System.nanoTime();
+            try {
+                out.flush();
+            } finally {
+                writingSince = NOT_BLOCKED;
+            }
+        }
+    }
+
+    /**
+     * Ends the connection. Queued output is handed to the write loop, which
+     * closes the socket once the client has read it
+     */
     @Override
     public void close() throws IOException {
+        if (this.channelOutput != null && !this.timedOut) {
+            // closing the socket streams would close the channel under the queue
+            this.out.close();
+            this.channelInput.release();
+            return;
+        }
         this.client.close();
         this.in.close();
         this.out.close();
     }
 
+    /**
+     * @return                      - output for responses, the queued one if the channel is used
+     */
+    private OutputStream output() throws IOException {
+        return (this.output != null) ? this.output : client.getOutputStream();
+    }
+
     private void respond(String scheme, String status, byte[] body, PrintWriter stream, String name) {
         HttpResponseBuilder builder = new HttpResponseBuilder();
         HttpResponse res = builder
@@ -342,6 +799,19 @@ public class HttpController implements Closeable, Runnable {
         }
     }
 
+    /**
+     * Gives responses built by custom handlers access to the raw socket
+     * output, so buffer bodies can be written without a String copy
+     */
+    private void attachOutput(HttpResponse res, HttpRequest req) throws IOException {
+        if (res != null && res.getOutput() == null) {
+            res.setOutput(this.output);
+        }
+        if (res != null && res.getRequestScheme() == null) {
+            res.setRequestScheme(req.getScheme());
+        }
+    }
+
     private void respond(HttpResponse res) {
         try {
             res.send();
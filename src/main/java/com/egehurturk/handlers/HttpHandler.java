@@ -1,18 +1,26 @@
 package com.egehurturk.handlers;
 
-import com.egehurturk.exceptions.FileSizeOverflowException;
+import com.egehurturk.archives.WebrootArchive;
+import com.egehurturk.caches.CachedContent;
+import com.egehurturk.caches.ResourceMetadata;
+import com.egehurturk.caches.ResourceMetadataCache;
+import com.egehurturk.caches.StaticContentCache;
 import com.egehurturk.httpd.HttpRequest;
 import com.egehurturk.httpd.HttpResponse;
 import com.egehurturk.httpd.HttpResponseBuilder;
+import com.egehurturk.readers.FileReadStrategy;
+import com.egehurturk.readers.HeapReadStrategy;
+import com.egehurturk.readers.ReadStrategySelector;
+import com.egehurturk.resolvers.ContentNegotiator;
 import com.egehurturk.util.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
-import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -39,9 +47,25 @@ public class HttpHandler implements Handler {
      */
     public final String _NOT_IMPLEMENTED = "501.html";
     /**
-     * Fastest IO method that reads and stores file
+     * Picks the fastest {@link FileReadStrategy} for the size of the requested
+     * file. Defaults to {@link HeapReadStrategy} for every size, {@link com.egehurturk.httpd.HttpServer}
+     * replaces it with a calibrated selector on startup
      */
-    public String FASTEST_IO = "readFile_IO";
+    private ReadStrategySelector readers = ReadStrategySelector.fixed(new HeapReadStrategy());
+    /**
+     * Cache of web root files, null when caching is disabled
+     */
+    private StaticContentCache cache;
+    /**
+     * Metadata of web root files, null when every request reads it from the
+     * file system. Only set together with a {@link com.egehurturk.caches.WebrootWatcher}
+     */
+    private ResourceMetadataCache metadata;
+    /**
+     * Packed web root mapped into memory, null when not configured. Replaced
+     * while serving when the web root changes
+     */
+    private volatile WebrootArchive archive;
     /**
      * Web Root that HTML files live in. This is a directory
      * that is the base URL. This directory will be considered and
@@ -73,6 +97,7 @@ public class HttpHandler implements Handler {
      */
     public final String WEBROOT_PROP = "server.webroot";
     public final String NAME_PROP = "server.name";
+    public final String IO_STRATEGY_PROP = "server.io.strategy";
     /**
      * Status (e.g. 404, 500, 200)
      */
@@ -155,6 +180,67 @@ public class HttpHandler implements Handler {
         this.debugMode = debugMode;
     }
 
+    /**
+     * @return selector used for reading files
+     */
+    public ReadStrategySelector getReadStrategySelector() {
+        return readers;
+    }
+
+    /**
+     * Setter for the file read strategy selector
+     * @param readers selector, e.g. the result of {@link com.egehurturk.readers.ReadStrategyCalibrator}
+     */
+    public void setReadStrategySelector(ReadStrategySelector readers) {
+        this.readers = readers;
+    }
+
+    /**
+     * @return web root archive, or null if files are served from the file system only
+     */
+    public WebrootArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Setter for the web root archive. Paths found in the archive are served from
+     * its memory mapping, other paths from the file system
+     * @param archive archive built by {@link com.egehurturk.archives.WebrootPacker}, or null
+     */
+    public void setArchive(WebrootArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * @return static content cache, or null if caching is disabled
+     */
+    public StaticContentCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Setter for the static content cache
+     * @param cache cache shared with the server, or null to disable caching
+     */
+    public void setCache(StaticContentCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return metadata cache, or null if metadata is read on every request
+     */
+    public ResourceMetadataCache getMetadataCache() {
+        return metadata;
+    }
+
+    /**
+     * Setter for the metadata cache. The cache must be invalidated when the web root changes
+     * @param metadata cache shared with the server's web root watcher, or null
+     */
+    public void setMetadataCache(ResourceMetadataCache metadata) {
+        this.metadata = metadata;
+    }
+
     /**
      * Handle method overriding {@link Handler}
      * @param request                       - client HTTP request parsed into {@link HttpRequest}
@@ -200,6 +286,15 @@ public class HttpHandler implements Handler {
         return resolved.toString();
     }
 
+    /**
+     * Metadata of a web root file, from the metadata cache if there is one
+     * @param file              - file or directory
+     * @return                  - metadata
+     */
+    private ResourceMetadata metadataOf(File file) {
+        return (this.metadata == null) ? ResourceMetadata.of(file) : this.metadata.lookup(file);
+    }
+
     /**
      * Prepare the HTML file given request
      * @param req                   - {@link HttpRequest} object storing path
@@ -214,11 +309,12 @@ public class HttpHandler implements Handler {
             // resolve the file and get the file that is stored in www/${resolvedFilePathUrl}
             String resolvedFilePathUrl = resolvePath(req.getPath());
             outputFile = new File(this._strWebRoot, resolvedFilePathUrl);
+            ResourceMetadata meta = metadataOf(outputFile);
 
             // if the file does not exists throw 404
-            Utility.debug(this.debugMode, "Outputfile.exists? " + outputFile.exists(), logger);
+            Utility.debug(this.debugMode, "Outputfile.exists? " + meta.exists(), logger);
 
-            if (!outputFile.exists()) {
+            if (!meta.exists()) {
                 Utility.debug(this.debugMode,"Status: 404", logger);
                 this.status = StatusEnum._404_NOT_FOUND.MESSAGE;
                 stream      = ClassLoader.getSystemClassLoader().getResourceAsStream(_404_NOT_FOUND);
@@ -226,11 +322,12 @@ public class HttpHandler implements Handler {
                 Utility.debug(this.debugMode,"Stream: " + stream, logger);
                 Utility.debug(this.debugMode,"Stream: " + ((stream == null ) ? "null" : "nonnull"), logger);
             } else {
-                if (outputFile.isDirectory()) {
+                if (meta.isDirectory()) {
                     // /file -> index.html
                     outputFile = new File(outputFile, INDEX);
+                    meta       = metadataOf(outputFile);
                 }
-                if (outputFile.exists()) {
+                if (meta.exists()) {
                     this.status = StatusEnum._200_OK.MESSAGE;
                 } else {
                     this.status = StatusEnum._404_NOT_FOUND.MESSAGE;
@@ -261,9 +358,7 @@ public class HttpHandler implements Handler {
         boolean statusReturned = false;
 
         // Host is a must for HTTP/1.1 servers
-        if (!req.headers.containsKey(
-                Utility.removeLastChars(HeaderEnum.HOST.NAME.trim().toLowerCase(), 1))
-        ) {
+        if (!req.headers.contains(HeaderEnum.HOST)) {
             this.status    = StatusEnum._400_BAD_REQUEST.MESSAGE;
             stream         = ClassLoader.getSystemClassLoader().getResourceAsStream(BAD_REQ);
             Utility.debug(this.debugMode,"Input stream (nullality): " + ((stream == null) ? "null" : "nonnull"), logger);
@@ -279,20 +374,7 @@ public class HttpHandler implements Handler {
                 statusReturned = true;
             }
 
-            else if (req.getPath().equals("/")) {
-                Pair<File, InputStream> pair = prepareOutputWithMethod(req);
-
-                Utility.debug(this.debugMode,"Prepare output with method . getfirst -> " + pair.getFirst(), logger);
-                Utility.debug(this.debugMode,"Prepare output with method . getsecond -> " + pair.getSecond(), logger);
-                if (pair.getSecond() != null) {
-                    stream     = pair.getSecond();
-                } else {
-                    outputFile = pair.getFirst();
-                }
-                Utility.debug(this.debugMode,"Outputfile set: " + outputFile, logger);
-                Utility.debug(this.debugMode,"Stream set: " + stream, logger);
-            }
-            else if (Utility.isDirectory(req.getPath())) {
+            else if (!req.getPath().equals("/") && Utility.isDirectory(req.getPath())) {
                 this.status = StatusEnum._400_BAD_REQUEST.MESSAGE;
                 stream      = ClassLoader.getSystemClassLoader().getResourceAsStream(BAD_REQ);
 
@@ -300,6 +382,15 @@ public class HttpHandler implements Handler {
                 statusReturned = true;
             }
             else {
+                // the archive holds the whole web root, the file system is only looked at on a miss
+                WebrootArchive archive = this.archive;
+                if (archive != null) {
+                    WebrootArchive.Entry entry = findInArchive(archive, req.getPath());
+                    if (entry != null) {
+                        return archiveResponse(req, res, entry);
+                    }
+                }
+
                 Pair<File, InputStream> pair = prepareOutputWithMethod(req);
                 Utility.debug(this.debugMode,"Prepare output with method . getfirst -> " + pair.getFirst(), logger);
                 Utility.debug(this.debugMode,"Prepare output with method . getsecond -> " + pair.getSecond(), logger);
@@ -313,7 +404,10 @@ public class HttpHandler implements Handler {
             }
         }
 
-        byte[] bodyByte = null;
+        byte[] bodyByte       = null;
+        ByteBuffer bodyBuffer = null;
+        Runnable release      = null;
+        ResourceMetadata meta = (outputFile != null) ? metadataOf(outputFile) : null;
 
         Utility.debug(this.debugMode,"Stream: " + stream, logger);
         Utility.debug(this.debugMode,"Output file: " + outputFile, logger);
@@ -323,49 +417,25 @@ public class HttpHandler implements Handler {
             Utility.debug(this.debugMode,"Body byte is this null? " + ((bodyByte == null) ? "null" : "nonnull"), logger);
             Utility.debug(this.debugMode,"Body byte: " + new String(bodyByte), logger);
         } else if (outputFile != null) {
-            // handle_GET, handle_POST functions
-            switch (FASTEST_IO) {
-                case "readFile_IO":
-                    try {
-                        Utility.debug(this.debugMode,"Reading outpoutfile to memory...", logger);
-                        bodyByte = Utility.readFile_IO(outputFile);
-                        Utility.debug(this.debugMode,"Body byte now: " + new String(bodyByte), logger);
-                    } catch (IOException  | FileSizeOverflowException e) {
-                        this.logger.error("File size is too large");
-                        e.printStackTrace();
-                    }
-                    break;
-                case "readFile_NIO":
-                    try {
-                        bodyByte = Utility.readFile_NIO(outputFile);
-                    } catch (IOException e) {
-                        this.logger.error("Could not read the file");
-                        e.printStackTrace();
-                    }
-                    break;
-                case "readFile_NIO_DIRECT":
-                    try {
-                        bodyByte = Utility.readFile_NIO_DIRECT(outputFile);
-                    } catch (IOException e) {
-                        this.logger.error("Could not read the file");
-                        e.printStackTrace();
-                    }
-                    break;
-                default:
-                    MappedByteBuffer _mappedBuffer = null;
-                    try {
-                        _mappedBuffer = Utility.read_NIO_MAP(outputFile);
-                    } catch (IOException e) {
-                        this.logger.error("Could not read the file");
-                        e.printStackTrace();
-                    }
-                    if (_mappedBuffer != null) {
-                        bodyByte = new byte[_mappedBuffer.remaining()];
-                        _mappedBuffer.get(bodyByte);
-                    } else {
-                        this.logger.error("Cannot read file and store in memory");
+            String key = outputFile.getAbsolutePath();
+            CachedContent cached = (this.cache == null) ? null : this.cache.acquire(key);
+            if (cached != null) {
+                Utility.debug(this.debugMode,"Serving " + key + " from cache", logger);
+                bodyBuffer = cached.buffer();
+                release    = cached::release;
+            } else {
+                FileReadStrategy reader = this.readers.select(meta.getLength());
+                // taken before the read, a change seen by the watcher meanwhile keeps the file out of the cache
+                long stamp = (this.cache == null) ? 0 : this.cache.generation();
+                try {
+                    Utility.debug(this.debugMode,"Reading outputfile to memory with " + reader.getName() + " strategy", logger);
+                    bodyBuffer = reader.read(outputFile);
+                    if (this.cache != null && this.cache.accepts(bodyBuffer.remaining())) {
+                        this.cache.put(key, bodyBuffer, true, stamp);
                     }
-                    break;
+                } catch (IOException e) {
+                    this.logger.error("Could not read the file " + outputFile + ": " + e.getMessage());
+                }
             }
         }
 
@@ -375,19 +445,14 @@ public class HttpHandler implements Handler {
                 ZoneId.of("GMT")
                 )
         );
-        String contentLang = "en_US", mimeType = null;
-        try {
-            mimeType = (outputFile != null) ? Files.probeContentType(outputFile.toPath())  : "text/html";
-            Utility.debug(this.debugMode,"Mimetype: " + mimeType, logger);
-        } catch (IOException e) {
-            this.logger.error("Cannot determine the MIME type of file");
-            e.printStackTrace();
-        }
+        String contentLang = "en_US";
+        String mimeType    = (meta != null) ? meta.getMimeType() : "text/html";
+        Utility.debug(this.debugMode,"Mimetype: " + mimeType, logger);
 
         String nameHeader = (this.configuration == null) ? this.name : this.configuration.getProperty(NAME_PROP);
 
         if (!statusReturned) {
-            if (bodyByte == null) {
+            if (bodyByte == null && bodyBuffer == null) {
                 this.logger.error("Could not read file contents in memory");
                 this.status    = StatusEnum._500_INTERNAL_ERROR.MESSAGE;
                 statusReturned = true;
@@ -402,16 +467,77 @@ public class HttpHandler implements Handler {
                 .code(StatusEnum.valueOf(Utility.enumStatusToString(status)).STATUS_CODE)
                 .message(StatusEnum.valueOf(Utility.enumStatusToString(status)).MESSAGE)
                 .body(bodyByte)
-                .setStream(new PrintWriter(res.getStream(), false))
+                .body(bodyBuffer)
+                .setOutput(res.getOutput())
+                .afterSend(release)
+                .setStream(res.getStream())
                 .setHeader(HeaderEnum.DATE.NAME, dateHeader)
                 .setHeader(HeaderEnum.SERVER.NAME, nameHeader)
                 .setHeader(HeaderEnum.CONTENT_LANGUAGE.NAME, contentLang)
-                .setHeader(HeaderEnum.CONTENT_LENGTH.NAME, ""+(bodyByte.length))
+                .setHeader(HeaderEnum.CONTENT_LENGTH.NAME, ""+((bodyBuffer != null) ? bodyBuffer.remaining() : bodyByte.length))
                 .setHeader(HeaderEnum.CONTENT_TYPE.NAME, mimeType)
                 .build();
         return response;
     }
 
+    /**
+     * Looks up a request path in the web root archive, falling back to the
+     * index file of a directory
+     * @param archive       - archive
+     * @param path          - request path
+     * @return              - archive entry or null
+     */
+    private WebrootArchive.Entry findInArchive(WebrootArchive archive, String path) {
+        if (path.endsWith("/")) {
+            return archive.find(path + INDEX);
+        }
+        WebrootArchive.Entry entry = archive.find(path);
+        return (entry != null) ? entry : archive.find(path + "/" + INDEX);
+    }
+
+    /**
+     * Builds the response for a file of the web root archive. The body is a
+     * slice of the archive mapping, the gzip variant is sent when the client accepts it
+     * @param req           - {@link HttpRequest} request
+     * @param res           - pending response
+     * @param entry         - archive entry
+     * @return              - {@link HttpResponse} response
+     */
+    private HttpResponse archiveResponse(HttpRequest req, HttpResponse res, WebrootArchive.Entry entry) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(
+                "EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH).withZone(ZoneId.of("GMT"));
+        String nameHeader = (this.configuration == null) ? this.name : this.configuration.getProperty(NAME_PROP);
+        ByteBuffer gzip = entry.getGzipContent();
+        String acceptEncoding = req.headers.get(HeaderEnum.ACCEPT_ENCODING);
+        boolean sendGzip = gzip != null &&
+                "gzip".equals(ContentNegotiator.getDefault().negotiateEncoding(acceptEncoding, "gzip", "identity"));
+        ByteBuffer body = sendGzip ? gzip : entry.getContent();
+        Utility.debug(this.debugMode,"Serving " + entry.getPath() + " from web root archive" + (sendGzip ? " (gzip)" : ""), logger);
+
+        this.status = StatusEnum._200_OK.MESSAGE;
+        HttpResponseBuilder builder = new HttpResponseBuilder()
+                .scheme("HTTP/1.1")
+                .code(StatusEnum._200_OK.STATUS_CODE)
+                .message(StatusEnum._200_OK.MESSAGE)
+                .body(body)
+                .setStream(res.getStream())
+                .setOutput(res.getOutput())
+                .setHeader(HeaderEnum.DATE.NAME, ZonedDateTime.now().format(formatter))
+                .setHeader(HeaderEnum.SERVER.NAME, nameHeader)
+                .setHeader(HeaderEnum.CONTENT_LANGUAGE.NAME, "en_US")
+                .setHeader(HeaderEnum.CONTENT_LENGTH.NAME, ""+body.remaining())
+                .setHeader(HeaderEnum.CONTENT_TYPE.NAME, entry.getMimeType())
+                .setHeader(HeaderEnum.ETAG.NAME, entry.getETag())
+                .setHeader(HeaderEnum.LAST_MODIFIED.NAME, formatter.format(Instant.ofEpochMilli(entry.getLastModified())));
+        if (gzip != null) {
+            builder.setHeader(HeaderEnum.VARY.NAME, "Accept-Encoding");
+        }
+        if (sendGzip) {
+            builder.setHeader(HeaderEnum.CONTENT_ENCODING.NAME, "gzip");
+        }
+        return builder.build();
+    }
+
     /**
      * Handle post
      * @param req incoming request
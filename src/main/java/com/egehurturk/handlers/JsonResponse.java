@@ -3,13 +3,18 @@ package com.egehurturk.handlers;
 import com.egehurturk.httpd.HttpRequest;
 import com.egehurturk.httpd.HttpResponse;
 import com.egehurturk.httpd.HttpResponseBuilder;
-import com.egehurturk.util.Json;
-import com.egehurturk.util.Pair;
+import com.egehurturk.httpd.StreamingBody;
+import com.egehurturk.resolvers.ContentNegotiator;
+import com.egehurturk.util.HeaderEnum;
+import com.egehurturk.util.JsonWriter;
 import com.egehurturk.util.StatusEnum;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -18,17 +23,44 @@ import java.util.Locale;
 
 /**
  * Encapsulates everything concerning JSON response
+ *
+ * <p>The body is one of
+ * <ul>
+ *     <li>a prebuilt string ({@link #setBody(String)}), encoded once</li>
+ *     <li>a {@link JsonWriter} that already holds the document
+ *     ({@link #setBody(JsonWriter)}), sent from its buffer without a copy</li>
+ *     <li>any object ({@link #setValue(Object)}), written by its
+ *     {@link com.egehurturk.util.JsonCodec}</li>
+ *     <li>a {@link StreamingBody} that writes the document while the response
+ *     is sent ({@link #setBody(StreamingBody)}), e.g. with a {@link JsonWriter}
+ *     over the body sink. Sent chunked</li>
+ * </ul>
  */
 public class JsonResponse implements ResponseType {
     protected Logger logger = LogManager.getLogger(FileResponse.class);
 
+    /**
+     * Sent when no body is set
+     */
+    private static final byte[] NULL_BODY = new JsonWriter(true)
+            .beginObject()
+                .name("Server Response").beginObject()
+                    .name("title").value("Null Body")
+                    .name("body").value("Body of JSON request is not set (This message is autogenerated by Banzai. Check logs from console)")
+                .endObject()
+            .endObject()
+            .toByteArray();
+
     /**
      * {@link PrintWriter} necessary for {@link #toHttpResponse()}
      * method
      */
     private final PrintWriter writer;
     private String body;
+    private JsonWriter json;
+    private StreamingBody streamingBody;
     private Boolean valid;
+    private StatusEnum status = StatusEnum._200_OK;
 
     /**
      * Constructor that verifies path
@@ -50,15 +82,14 @@ public class JsonResponse implements ResponseType {
     }
 
 
+    /**
+     * Checks that the client accepts JSON, honouring q-values: {@code application/json;q=0}
+     * refuses JSON even next to <code>*&#47;*</code>. A request without
+     * {@code Accept} accepts anything
+     * @param req                   - request
+     */
     public void validate(HttpRequest req) {
-        // * Note for future documentation: request headers are stored in lowercase and trimmed
-        Pair<Boolean, String> pair = req.getHeader("Accept".toLowerCase());
-        String accept              = pair.getSecond();
-        if (!pair.getFirst()) {
-            this.valid = false;
-            return;
-        }
-        this.valid = accept.contains("application/json") || accept.contains("*/*");
+        this.valid = ContentNegotiator.getDefault().accepts(req.header(HeaderEnum.ACCEPT), "application/json");
     }
 
 
@@ -67,7 +98,59 @@ public class JsonResponse implements ResponseType {
     }
 
     public void setBody(String body) {
-        this.body = body;
+        this.body          = body;
+        this.json          = null;
+        this.streamingBody = null;
+    }
+
+    /**
+     * Sends the document held by {@code json}. The writer's buffer is sent as
+     * it is, so the writer must not be reset or written to until the response is sent
+     * @param json                  - writer without a sink holding a complete document
+     */
+    public void setBody(JsonWriter json) {
+        this.json          = json;
+        this.body          = null;
+        this.streamingBody = null;
+    }
+
+    /**
+     * Sends {@code value} as a compact document. Objects of classes without a
+     * built-in conversion are written field by field with the codec of their
+     * class, see {@link JsonWriter#value(Object)}
+     * @param value                 - POJO, map, collection, array or simple value
+     */
+    public void setValue(Object value) {
+        setValue(value, false);
+    }
+
+    /**
+     * @param value                 - POJO, map, collection, array or simple value
+     * @param pretty                - indent the document
+     */
+    public void setValue(Object value, boolean pretty) {
+        setBody(new JsonWriter(pretty).value(value));
+    }
+
+    /**
+     * Writes the document while the response is sent:
+     * <code>
+     *     json.setBody(out -> new JsonWriter(out, false).value(rows).flush());
+     * </code>
+     * @param body                  - producer of the document
+     */
+    public void setBody(StreamingBody body) {
+        this.streamingBody = body;
+        this.body          = null;
+        this.json          = null;
+    }
+
+    /**
+     * @param status                - status of the response when the client accepts JSON, e.g. 400 for
+     *                                an error document. 200 by default
+     */
+    public void setStatus(StatusEnum status) {
+        this.status = status;
     }
 
     public boolean isValid() {
@@ -110,21 +193,47 @@ public class JsonResponse implements ResponseType {
         );
         String contentLang = "en_US";
         String mimeType    = "application/json";
-        StatusEnum status  = StatusEnum._200_OK;
+        StatusEnum status  = this.status;
 
         if (!this.valid) {
             status = StatusEnum._406_NOT_ACCEPTABLE;
             FileResponse file = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("406.html"), this.writer);
             return file.toHttpResponse(status, this.writer);
         }
-        if (this.body == null) {
-            logger.error("Body of JSON request is empty. Server automatically created JSON body.");
-            this.body = Json.prettyPrintJSON("{\"Server Response\": {\"title\": \"Null Body\", \"body\": \"Body of JSON request is not set (This message is autogenerated by Banzai. Check logs from console)\"}}");
+        HttpResponseBuilder builder = new HttpResponseBuilder()
+                .scheme("HTTP/1.1")
+                .code(status.STATUS_CODE)
+                .message(status.MESSAGE)
+                .setStream(this.writer)
+                .setHeader(HeaderEnum.CONTENT_TYPE.NAME, mimeType)
+                .setHeader(HeaderEnum.DATE.NAME, dateHeader)
+                .setHeader(HeaderEnum.SERVER.NAME, "Banzai")
+                .setHeader(HeaderEnum.CONTENT_LANGUAGE.NAME, contentLang);
+
+        if (this.streamingBody != null) {
+            final StreamingBody producer = this.streamingBody;
+            return builder.body(out -> {
+                try {
+                    producer.writeTo(out);
+                } catch (UncheckedIOException e) {
+                    // a JsonWriter over the sink reports failed writes unchecked
+                    throw e.getCause();
+                }
+            }).build();
         }
 
-        return new HttpResponseBuilder().factory("HTTP/1.1", status.STATUS_CODE, status.MESSAGE, this.getBody().getBytes(), this.writer,
-                                                    mimeType, dateHeader, "Banzai", contentLang, this.getBody().getBytes().length
-                                                );
+        ByteBuffer encoded;
+        if (this.json != null) {
+            encoded = this.json.toByteBuffer();
+        } else if (this.body != null) {
+            encoded = ByteBuffer.wrap(this.body.getBytes(StandardCharsets.UTF_8));
+        } else {
+            logger.error("Body of JSON request is empty. Server automatically created JSON body.");
+            encoded = ByteBuffer.wrap(NULL_BODY);
+        }
+        return builder.body(encoded)
+                .setHeader(HeaderEnum.CONTENT_LENGTH.NAME, "" + encoded.remaining())
+                .build();
     }
 
 
@@ -0,0 +1,179 @@
+package com.egehurturk.handlers;
+
+import com.egehurturk.httpd.HttpRequest;
+import com.egehurturk.httpd.HttpResponse;
+import com.egehurturk.httpd.HttpResponseBuilder;
+import com.egehurturk.resolvers.ContentNegotiator;
+import com.egehurturk.util.HeaderEnum;
+import com.egehurturk.util.JsonWriter;
+import com.egehurturk.util.StatusEnum;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Newline-delimited JSON response ({@code application/x-ndjson}): one compact
+ * JSON document per line, one line per record.
+ *
+ * <p>Records are pulled from an {@link Iterator} or a {@link Stream} while the
+ * response is sent, encoded by one {@link JsonWriter} straight into the chunked
+ * body (a plain body ended by closing the connection for HTTP/1.0 clients) and flushed to the client in batches of {@link #setBatchSize(int)}
+ * records. The first record is flushed on its own so the client sees data
+ * right away. Only one record and the writer's buffer are held in memory, no
+ * matter how many records there are, so a handler can return a whole table:
+ *
+ * <code>
+ *     NdjsonResponse rows = new NdjsonResponse(response.getStream(), request);
+ *     rows.setRecords(repository.streamAll());
+ *     return rows.toHttpResponse();
+ * </code>
+ *
+ * <p>Records are written like {@link JsonWriter#value(Object)} writes them, so
+ * POJOs go through their {@link com.egehurturk.util.JsonCodec}. A {@link Stream}
+ * (and an {@link Iterator} that is {@link AutoCloseable}) is closed when the
+ * last record is sent or the client goes away.
+ */
+public class NdjsonResponse implements ResponseType {
+    protected Logger logger = LogManager.getLogger(NdjsonResponse.class);
+
+    public static final String MIME_TYPE = "application/x-ndjson";
+
+    /**
+     * Records flushed to the client at once, by default
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final PrintWriter writer;
+    private Iterator<?> records;
+    private AutoCloseable onClose;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private Boolean valid;
+    private String requestScheme;
+
+    /**
+     * @param writer                - response writer
+     * @param request               - request, to check that the client accepts NDJSON
+     */
+    public NdjsonResponse(PrintWriter writer, HttpRequest request) {
+        this.writer = writer;
+        validate(request);
+    }
+
+    /**
+     * Checks that the client accepts NDJSON, or JSON in general
+     * @param req                   - request
+     */
+    public void validate(HttpRequest req) {
+        this.requestScheme = req.getScheme();
+        this.valid = ContentNegotiator.getDefault().negotiateMediaType(
+                req.header(HeaderEnum.ACCEPT), MIME_TYPE, "application/json") != null;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @param records               - records, read once while the response is sent
+     */
+    public void setRecords(Iterator<?> records) {
+        this.records = records;
+        this.onClose = (records instanceof AutoCloseable) ? (AutoCloseable) records : null;
+    }
+
+    /**
+     * @param records               - records, closed after the response is sent
+     */
+    public void setRecords(Stream<?> records) {
+        this.records = records.iterator();
+        this.onClose = records;
+    }
+
+    /**
+     * @param batchSize             - records encoded between two flushes to the client. Larger
+     *                                batches mean fewer, larger chunks
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return                      - response with a body that is written while it is sent, chunked
+     *                                unless the request is HTTP/1.0, or 406 if the client does not accept NDJSON
+     */
+    @Override
+    public HttpResponse toHttpResponse() {
+        if (this.valid == null) {
+            throw new IllegalStateException("HTTP Request is required to check if the client accepts NDJSON");
+        }
+        if (this.records == null) {
+            throw new IllegalStateException("Records are not set");
+        }
+        if (!this.valid) {
+            close();
+            FileResponse file = new FileResponse(ClassLoader.getSystemClassLoader().getResourceAsStream("406.html"), this.writer);
+            return file.toHttpResponse(StatusEnum._406_NOT_ACCEPTABLE, this.writer);
+        }
+
+        String dateHeader = ZonedDateTime.now().format(DateTimeFormatter.ofPattern(
+                "EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH).withZone(ZoneId.of("GMT"))
+        );
+        return new HttpResponseBuilder()
+                .scheme("HTTP/1.1")
+                .code(StatusEnum._200_OK.STATUS_CODE)
+                .message(StatusEnum._200_OK.MESSAGE)
+                .setStream(this.writer)
+                .requestScheme(this.requestScheme)
+                .setHeader(HeaderEnum.CONTENT_TYPE.NAME, MIME_TYPE)
+                .setHeader(HeaderEnum.DATE.NAME, dateHeader)
+                .setHeader(HeaderEnum.SERVER.NAME, "Banzai")
+                .body(this::writeRecords)
+                .build();
+    }
+
+    private void writeRecords(OutputStream out) throws IOException {
+        JsonWriter json = new JsonWriter(out, false);
+        long written = 0;
+        try {
+            while (records.hasNext()) {
+                json.value(records.next()).endRecord();
+                written++;
+                if (written == 1 || written % batchSize == 0) {
+                    json.flush();
+                    out.flush();
+                }
+            }
+            json.flush();
+        } catch (UncheckedIOException e) {
+            logger.info("Client went away after " + written + " NDJSON records");
+            throw e.getCause();
+        } finally {
+            close();
+        }
+    }
+
+    private void close() {
+        if (onClose == null) {
+            return;
+        }
+        try {
+            onClose.close();
+        } catch (Exception e) {
+            logger.error("Cannot close the NDJSON records: " + e.getMessage());
+        }
+        onClose = null;
+    }
+}
@@ -0,0 +1,140 @@
+package com.egehurturk.handlers;
+
+import com.egehurturk.exceptions.HttpRequestException;
+import com.egehurturk.httpd.HttpRequest;
+import com.egehurturk.httpd.HttpResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Runs handlers whose output does not depend on the request (pages rendered
+ * only from configuration) once, and writes their bodies into the web root.
+ * The default {@link HttpHandler} then serves them like any other file, with
+ * the static content cache, the archive and the watcher.
+ *
+ * <p>A path with an extension in its last segment is written as that file
+ * ({@code /feed.xml -> <root>/feed.xml}); any other path is written as the
+ * index of a directory ({@code /about -> <root>/about/index.html}), which is
+ * where {@link HttpHandler} looks for it.
+ *
+ * <p>Handlers are called with a synthetic {@code GET} request without query
+ * parameters and a response without a socket, so the body is produced into
+ * memory. Only responses with status {@code 200} are written. Files are
+ * written to a temporary file first and moved into place, so a watcher or a
+ * concurrent request never sees half a page.
+ */
+public class Prerenderer {
+
+    private final File root;
+    private final String host;
+
+    protected static Logger logger = LogManager.getLogger(Prerenderer.class);
+
+    /**
+     * @param root                  - web root to write into
+     * @param host                  - value of the {@code Host} header of the synthetic requests
+     */
+    public Prerenderer(File root, String host) {
+        this.root = root;
+        this.host = host;
+    }
+
+    /**
+     * Renders one path
+     * @param path                  - URL path the handler is mapped to, e.g. {@code /about}
+     * @param handler               - render-only handler
+     * @return                      - written file, or {@code null} if the handler did not answer 200
+     * @throws IOException          - if the handler cannot be run or the file cannot be written
+     */
+    public File render(String path, Handler handler) throws IOException {
+        HttpRequest request;
+        try {
+            request = new HttpRequest(new BufferedReader(new StringReader(
+                    "GET " + path + " HTTP/1.1\r\nHost: " + host + "\r\n\r\n")));
+        } catch (HttpRequestException e) {
+            throw new IOException("Cannot build a request for " + path + ": " + e.getMessage(), e);
+        }
+
+        // no output stream: the response body is kept in memory instead of being sent
+        HttpResponse response = handler.handle(request, new HttpResponse(new PrintWriter(new NullWriter())));
+        if (response == null || response.getCode() != 200) {
+            logger.error("Cannot pre-render " + path + ": handler answered " +
+                    ((response == null) ? "nothing" : response.getCode() + " " + response.getMessage()));
+            return null;
+        }
+
+        File target = targetOf(root, path);
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File temporary = File.createTempFile(".prerender", ".tmp", parent);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temporary))) {
+                writeBody(response, out);
+            }
+            Files.move(temporary.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+        logger.info("Pre-rendered " + path + " to " + target + " (" + target.length() + " bytes)");
+        return target;
+    }
+
+    /**
+     * @param root                  - web root
+     * @param path                  - URL path
+     * @return                      - file a pre-rendered path is written to
+     */
+    public static File targetOf(File root, String path) {
+        String relative = path;
+        while (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+        if (relative.contains("..")) {
+            throw new IllegalArgumentException("Path escapes the web root: " + path);
+        }
+        String last = relative.substring(relative.lastIndexOf('/') + 1);
+        if (last.isEmpty() || last.indexOf('.') == -1) {
+            return new File(new File(root, relative), "index.html");
+        }
+        return new File(root, relative);
+    }
+
+    private static void writeBody(HttpResponse response, OutputStream out) throws IOException {
+        if (response.getStreamingBody() != null) {
+            // produced directly into the file, errors are not swallowed as in HttpResponse#getBody()
+            response.getStreamingBody().writeTo(out);
+        } else if (response.getBodyBuffer() != null) {
+            ByteBuffer buffer = response.getBodyBuffer().duplicate();
+            WritableByteChannel channel = Channels.newChannel(out);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } else if (response.getBody() != null) {
+            out.write(response.getBody());
+        }
+    }
+
+    /**
+     * Discards what handlers print to the response stream
+     */
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int off, int len) {}
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
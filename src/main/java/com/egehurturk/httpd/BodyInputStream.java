@@ -0,0 +1,169 @@
+package com.egehurturk.httpd;
+
+import com.egehurturk.exceptions.RequestTooLargeException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request body on the socket input. Reads at most {@code length} bytes (the
+ * Content-Length of the request), or until the end of the stream when the
+ * length is unknown, so a handler can never read past its own request.
+ * A body of unknown length fails to read once it grows past its limit, see
+ * {@link RequestLimits#getBodySize()}; the failure is kept as a
+ * {@link RequestTooLargeException} so the controller can answer with 413
+ * whatever the handler made of the {@link IOException}.
+ *
+ * <p>For a client that waits for {@code 100 Continue} before it sends the
+ * body, the interim response is written by the first read that needs the
+ * body, see {@link #continueOnRead(OutputStream)}.
+ *
+ * <p>{@link #close()} does not close the underlying stream, which belongs to
+ * the socket.
+ */
+public class BodyInputStream extends FilterInputStream {
+
+    /**
+     * Length of a body that ends with the stream
+     */
+    public static final long UNKNOWN_LENGTH = -1;
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private long remaining;
+    private boolean closed;
+
+    /**
+     * Socket output to send {@link #CONTINUE} on before the first read, null once sent
+     */
+    private OutputStream continueOutput;
+
+    /**
+     * Largest body of unknown length, -1 when the length is known
+     */
+    private final long limit;
+
+    /**
+     * Set once a body of unknown length went past {@link #limit}
+     */
+    private RequestTooLargeException overflow;
+
+    /**
+     * @param in                    - socket input, positioned after the request head
+     * @param length                - Content-Length, or {@link #UNKNOWN_LENGTH}
+     */
+    public BodyInputStream(InputStream in, long length) {
+        this(in, length, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param in                    - socket input, positioned after the request head
+     * @param length                - Content-Length, or {@link #UNKNOWN_LENGTH}
+     * @param limit                 - largest body of unknown length
+     */
+    public BodyInputStream(InputStream in, long length, long limit) {
+        super(in);
+        this.remaining = (length < 0) ? limit : length;
+        this.limit     = (length < 0) ? limit : -1;
+    }
+
+    /**
+     * Sends {@code 100 Continue} on {@code output} right before the body is first
+     * read, so a client that sent {@code Expect: 100-continue} uploads only a body
+     * that a handler reads. A body that is never read is never asked for
+     * @param output                - socket output
+     */
+    public void continueOnRead(OutputStream output) {
+        this.continueOutput = output;
+    }
+
+    private void sendContinue() throws IOException {
+        if (continueOutput != null) {
+            OutputStream output = continueOutput;
+            continueOutput = null;
+            output.write(CONTINUE);
+            output.flush();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (closed || remaining == 0 && atEnd()) {
+            return -1;
+        }
+        sendContinue();
+        int b = in.read();
+        if (b != -1) {
+            remaining--;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed || remaining == 0 && atEnd()) {
+            return -1;
+        }
+        sendContinue();
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n > 0) {
+            remaining -= n;
+        }
+        return n;
+    }
+
+    /**
+     * Called when {@link #remaining} is used up
+     * @return                      - true, unless a body of unknown length goes on past its limit
+     */
+    private boolean atEnd() throws IOException {
+        if (limit < 0 || limit == Long.MAX_VALUE) {
+            return true;
+        }
+        sendContinue();
+        if (in.read() != -1) {
+            overflow = new RequestTooLargeException("Request body is larger than " + limit + " bytes",
+                    413, "Payload Too Large");
+        }
+        if (overflow != null) {
+            throw new IOException(overflow.getMessage(), overflow);
+        }
+        return true;
+    }
+
+    /**
+     * @return                      - the 413 of a body of unknown length that went past its limit, or null
+     */
+    public RequestTooLargeException getOverflow() {
+        return overflow;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (closed || remaining == 0) {
+            return 0;
+        }
+        sendContinue();
+        long skipped = in.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return closed ? 0 : (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,116 @@
+package com.egehurturk.httpd;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes bytes with the HTTP/1.1 chunked transfer coding. Small writes are
+ * collected into a buffer and sent as one chunk when it is full, so a template
+ * rendered piece by piece does not produce a chunk per piece.
+ *
+ * <p>{@link #finish()} writes the last chunk; {@link #close()} finishes but
+ * does not close the underlying stream, which belongs to the socket.
+ */
+public class ChunkedOutputStream extends FilterOutputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private static final byte[] CRLF       = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] buffer;
+    private int count;
+    private boolean finished;
+
+    public ChunkedOutputStream(OutputStream out) {
+        this(out, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param out                   - socket output
+     * @param chunkSize             - bytes collected before a chunk is written
+     */
+    public ChunkedOutputStream(OutputStream out, int chunkSize) {
+        super(out);
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            writeChunk(buffer, 0, count);
+            count = 0;
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return;
+        }
+        if (count + len <= buffer.length) {
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+            return;
+        }
+        flushBuffer();
+        if (len >= buffer.length) {
+            writeChunk(b, off, len);
+        } else {
+            System.arraycopy(b, off, buffer, 0, len);
+            count = len;
+        }
+    }
+
+    /**
+     * Sends the collected bytes as a chunk and flushes the socket
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Sends the collected bytes and the last (empty) chunk. Further writes are an error
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        flushBuffer();
+        out.write(LAST_CHUNK);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Chunked stream is finished");
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            writeChunk(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(b, off, len);
+        out.write(CRLF);
+    }
+}
@@ -0,0 +1,61 @@
+package com.egehurturk.httpd;
+
+/**
+ * How long a connection may wait on its client, in milliseconds. 0 disables a
+ * timeout. Enforced by {@link com.egehurturk.handlers.HttpController} with a
+ * {@link com.egehurturk.core.HashedTimingWheel}:
+ *
+ * <ul>
+ *     <li>idle: from accept until the first byte of the request</li>
+ *     <li>header: from the first byte until the end of the request head, however
+ *         steadily it trickles in. Answered with 408 Request Timeout</li>
+ *     <li>body: longest single read of the body that a handler waits for. Answered
+ *         with 408 unless the response has started</li>
+ *     <li>write: longest single write of the response that the client does not
+ *         read, the connection is closed</li>
+ * </ul>
+ */
+public class ConnectionTimeouts {
+
+    public static final long DEFAULT_IDLE   = 10000;
+    public static final long DEFAULT_HEADER = 20000;
+    public static final long DEFAULT_BODY   = 30000;
+    public static final long DEFAULT_WRITE  = 30000;
+
+    private final long idle;
+    private final long header;
+    private final long body;
+    private final long write;
+
+    /**
+     * @param idle                  - wait for the first byte
+     * @param header                - wait for the whole request head
+     * @param body                  - wait for one read of the body
+     * @param write                 - wait for one write of the response
+     */
+    public ConnectionTimeouts(long idle, long header, long body, long write) {
+        if (idle < 0 || header < 0 || body < 0 || write < 0) {
+            throw new IllegalArgumentException("Timeouts must not be negative");
+        }
+        this.idle   = idle;
+        this.header = header;
+        this.body   = body;
+        this.write  = write;
+    }
+
+    public long getIdle() {
+        return idle;
+    }
+
+    public long getHeader() {
+        return header;
+    }
+
+    public long getBody() {
+        return body;
+    }
+
+    public long getWrite() {
+        return write;
+    }
+}
@@ -4,14 +4,24 @@ package com.egehurturk.httpd;
 import com.egehurturk.handlers.FileResponse;
 import com.egehurturk.handlers.Handler;
 import com.egehurturk.handlers.JsonResponse;
+import com.egehurturk.handlers.NdjsonResponse;
 import com.egehurturk.renderers.HTMLRenderer;
+import com.egehurturk.renderers.HtmlEscaper;
 import com.egehurturk.util.ArgumentParser;
 import com.egehurturk.util.HeaderEnum;
+import com.egehurturk.util.JsonReader;
+import com.egehurturk.util.JsonWriter;
+import com.egehurturk.util.StatusEnum;
 import com.egehurturk.util.MethodEnum;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
 
 
@@ -34,9 +44,16 @@ public class EntryPoint {
         httpServer.addHandler(MethodEnum.GET , "/filehandling"    , new MyFileHandler());
         httpServer.addHandler(MethodEnum.GET , "/jsontest"        , new Json());
         httpServer.addHandler(MethodEnum.GET , "/paramtest"       , new Parameterized());
-        httpServer.addHandler(MethodEnum.GET , "/template"        , new TemplateTest());
+        httpServer.addPrerenderedHandler(      "/template"        , new TemplateTest());
         httpServer.addHandler(MethodEnum.GET , "/soph"            , new Sophisticated());
+        httpServer.addHandler(MethodEnum.POST, "/jsonecho"        , new JsonEcho());
+        httpServer.addHandler(MethodEnum.POST, "/upload"          , new Upload());
+        httpServer.addHandler(MethodEnum.GET , "/profile"         , new ProfileJson());
+        httpServer.addHandler(MethodEnum.GET , "/records"         , new Records());
 
+        if (parser.isPrerender()) {
+            System.exit(httpServer.prerender().isEmpty() ? 0 : 1);
+        }
         httpServer.start();
     }
 
@@ -73,8 +90,10 @@ public class EntryPoint {
         @Override
         public HttpResponse handle(HttpRequest request, HttpResponse response) {
             String body;
-            if (request.getQueryParam("name").getFirst()) {
-                body = request.getQueryParam("name").getSecond();
+            String name = request.queryParam("name");
+            if (name != null) {
+                // decoded, so it has to be escaped before it goes into the page
+                body = HtmlEscaper.TEXT.escape(name);
             } else {
                 body = "<h3><i>Check logs (console)</i></h3>";
             }
@@ -100,10 +119,12 @@ public class EntryPoint {
             contentRenderer.setVar("name", "Monkey man");
             contentRenderer.setVar("age", "23");
             contentRenderer.setVar("location", "Turkey");
+            // the variables never change, render the profile once a minute
+            contentRenderer.cache("template:profile", 60000);
 
             HTMLRenderer userRenderer = new HTMLRenderer("www/user.html", response.getStream());
             userRenderer.setVar("title", "User Profile");
-            userRenderer.setVar("content", contentRenderer.render());
+            userRenderer.setVar("content", contentRenderer);
             return userRenderer.toHttpResponse();
         }
     }
@@ -112,10 +133,11 @@ public class EntryPoint {
         @Override
         public HttpResponse handle(HttpRequest request, HttpResponse response) {
             HTMLRenderer contentRenderer = new HTMLRenderer("www/dist.html", response.getStream());
-            String username = request.getQueryParam("username").getFirst() ? request.getQueryParam("username").getSecond() : "null";
-            String name = request.getQueryParam("name").getFirst() ? request.getQueryParam("name").getSecond() : "null";
-            String age = request.getQueryParam("age").getFirst() ? request.getQueryParam("age").getSecond() : "null";
-            String location = request.getQueryParam("location").getFirst() ? request.getQueryParam("location").getSecond() : "null";
+            QueryParameters query = request.getQueryParameters();
+            String username = query.contains("username") ? query.get("username") : "null";
+            String name     = query.contains("name")     ? query.get("name")     : "null";
+            String age      = query.contains("age")      ? query.get("age")      : "null";
+            String location = query.contains("location") ? query.get("location") : "null";
 
             contentRenderer.setVar("username", username);
             contentRenderer.setVar("name", name);
@@ -124,7 +146,7 @@ public class EntryPoint {
 
             HTMLRenderer userRenderer = new HTMLRenderer("www/user.html", response.getStream());
             userRenderer.setVar("title", "User Profile");
-            userRenderer.setVar("content", contentRenderer.render());
+            userRenderer.setVar("content", contentRenderer);
             return userRenderer.toHttpResponse();
         }
     }
@@ -151,33 +173,124 @@ public class EntryPoint {
             HttpResponse res = null;
             JsonResponse json = new JsonResponse(response.getStream(), request);
             json.validate(request);
-            json.setBody("{\n" +
-                    "    \"glossary\": {\n" +
-                    "        \"title\": \"example glossary\",\n" +
-                    "\t\t\"GlossDiv\": {\n" +
-                    "            \"title\": \"S\",\n" +
-                    "\t\t\t\"GlossList\": {\n" +
-                    "                \"GlossEntry\": {\n" +
-                    "                    \"ID\": \"SGML\",\n" +
-                    "\t\t\t\t\t\"SortAs\": \"SGML\",\n" +
-                    "\t\t\t\t\t\"GlossTerm\": \"Standard Generalized Markup Language\",\n" +
-                    "\t\t\t\t\t\"Acronym\": \"SGML\",\n" +
-                    "\t\t\t\t\t\"Abbrev\": \"ISO 8879:1986\",\n" +
-                    "\t\t\t\t\t\"GlossDef\": {\n" +
-                    "                        \"para\": \"A meta-markup language, used to create markup languages such as DocBook.\",\n" +
-                    "\t\t\t\t\t\t\"GlossSeeAlso\": [\"GML\", \"XML\"]\n" +
-                    "                    },\n" +
-                    "\t\t\t\t\t\"GlossSee\": \"markup\"\n" +
-                    "                }\n" +
-                    "            }\n" +
-                    "        }\n" +
-                    "    }\n" +
-                    "}\n");
+            JsonWriter body = new JsonWriter(true);
+            body.beginObject()
+                .name("glossary").beginObject()
+                    .name("title").value("example glossary")
+                    .name("GlossDiv").beginObject()
+                        .name("title").value("S")
+                        .name("GlossList").beginObject()
+                            .name("GlossEntry").beginObject()
+                                .name("ID").value("SGML")
+                                .name("SortAs").value("SGML")
+                                .name("GlossTerm").value("Standard Generalized Markup Language")
+                                .name("Acronym").value("SGML")
+                                .name("Abbrev").value("ISO 8879:1986")
+                                .name("GlossDef").beginObject()
+                                    .name("para").value("A meta-markup language, used to create markup languages such as DocBook.")
+                                    .name("GlossSeeAlso").beginArray().value("GML").value("XML").endArray()
+                                .endObject()
+                                .name("GlossSee").value("markup")
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+            .endObject();
+            json.setBody(body);
             res = json.toHttpResponse();
             return res;
         }
     }
 
+    static class JsonEcho implements com.egehurturk.handlers.Handler {
+        @Override
+        public HttpResponse handle(HttpRequest request, HttpResponse response) {
+            JsonResponse json = new JsonResponse(response.getStream(), request);
+            JsonWriter body = new JsonWriter(false);
+            try {
+                JsonReader reader = new JsonReader(request.getBodyStream());
+                Object received = reader.readTree();
+                reader.endDocument();
+                body.beginObject().name("received").value(received).endObject();
+            } catch (IOException e) {
+                json.setStatus(StatusEnum._400_BAD_REQUEST);
+                body.beginObject().name("error").value(e.getMessage()).endObject();
+            }
+            json.setBody(body);
+            return json.toHttpResponse();
+        }
+    }
+
+    static class Upload implements com.egehurturk.handlers.Handler {
+        @Override
+        public HttpResponse handle(HttpRequest request, HttpResponse response) {
+            JsonResponse json = new JsonResponse(response.getStream(), request);
+            JsonWriter body = new JsonWriter(false);
+            // every part is streamed through a checksum, nothing is stored
+            try (MultipartParser form = MultipartParser.of(request)) {
+                body.beginArray();
+                byte[] chunk = new byte[8192];
+                Part part;
+                while ((part = form.next()) != null) {
+                    CRC32 crc = new CRC32();
+                    long size = 0;
+                    InputStream in = part.getInputStream();
+                    int n;
+                    while ((n = in.read(chunk)) != -1) {
+                        crc.update(chunk, 0, n);
+                        size += n;
+                    }
+                    body.beginObject()
+                            .name("name").value(part.getName())
+                            .name("filename").value(part.getFilename())
+                            .name("contentType").value(part.getContentType())
+                            .name("size").value(size)
+                            .name("crc32").value(Long.toHexString(crc.getValue()))
+                        .endObject();
+                }
+                body.endArray();
+            } catch (IOException e) {
+                json.setStatus(StatusEnum._400_BAD_REQUEST);
+                body.reset();
+                body.beginObject().name("error").value(e.getMessage()).endObject();
+            }
+            json.setBody(body);
+            return json.toHttpResponse();
+        }
+    }
+
+    static class Profile {
+        String username = "monkey";
+        String name     = "Monkey man";
+        int age         = 23;
+        String location = "Turkey";
+        List<String> languages = Arrays.asList("Java", "Python");
+    }
+
+    static class ProfileJson implements com.egehurturk.handlers.Handler {
+        @Override
+        public HttpResponse handle(HttpRequest request, HttpResponse response) {
+            JsonResponse json = new JsonResponse(response.getStream(), request);
+            json.setValue(new Profile());
+            return json.toHttpResponse();
+        }
+    }
+
+    static class Records implements com.egehurturk.handlers.Handler {
+        @Override
+        public HttpResponse handle(HttpRequest request, HttpResponse response) {
+            NdjsonResponse records = new NdjsonResponse(response.getStream(), request);
+            // generated while they are sent, never held as a list
+            records.setRecords(IntStream.range(0, 50000).mapToObj(i -> {
+                Profile profile = new Profile();
+                profile.username = "monkey" + i;
+                profile.age      = i % 100;
+                return profile;
+            }));
+            return records.toHttpResponse();
+        }
+    }
+
 }
 
 
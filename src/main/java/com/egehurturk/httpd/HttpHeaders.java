@@ -0,0 +1,177 @@
+package com.egehurturk.httpd;
+
+import com.egehurturk.util.HeaderEnum;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Headers of a request. Names are compared case-insensitively (ASCII only,
+ * as header names are tokens), values are kept as they were sent, without
+ * the surrounding whitespace.
+ *
+ * <p>Headers of {@link HeaderEnum} live in a fixed slot indexed by the ordinal
+ * of their constant, so {@link #get(HeaderEnum)} is an array read. Every other
+ * header is appended to a small flat array of names and values, with the case
+ * of its name preserved, and found by a linear scan; requests rarely carry more
+ * than a dozen of them. No lookup allocates.
+ *
+ * <p>A header sent more than once is kept as one value, the values joined
+ * with {@code ", "} in the order they were sent (RFC 7230, 3.2.2).
+ */
+public class HttpHeaders {
+
+    private static final HeaderEnum[] KNOWN = HeaderEnum.values();
+
+    /**
+     * Names of {@link #KNOWN}, i.e. {@link HeaderEnum#NAME} without the trailing ": "
+     */
+    private static final String[] KNOWN_NAMES = new String[KNOWN.length];
+
+    static {
+        for (HeaderEnum header : KNOWN) {
+            KNOWN_NAMES[header.ordinal()] = header.NAME.substring(0, header.NAME.length() - 2);
+        }
+    }
+
+    private final String[] known = new String[KNOWN.length];
+    private int knownCount;
+
+    private String[] names  = new String[8];
+    private String[] values = new String[8];
+    private int size;
+
+    /**
+     * Adds a header, joining it to an earlier header of the same name
+     * @param name                  - name, as sent
+     * @param value                 - value, as sent. Leading and trailing whitespace is removed
+     */
+    public void add(String name, String value) {
+        value = value.trim();
+        int slot = knownSlot(name);
+        if (slot >= 0) {
+            if (known[slot] == null) {
+                known[slot] = value;
+                knownCount++;
+            } else {
+                known[slot] = known[slot] + ", " + value;
+            }
+            return;
+        }
+        int i = indexOf(name);
+        if (i >= 0) {
+            values[i] = values[i] + ", " + value;
+            return;
+        }
+        if (size == names.length) {
+            names  = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size]  = name;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * @param header                - well-known header
+     * @return                      - value, null if the header was not sent
+     */
+    public String get(HeaderEnum header) {
+        return known[header.ordinal()];
+    }
+
+    /**
+     * @param name                  - name in any case, e.g. "content-type" or "X-Request-Id"
+     * @return                      - value, null if the header was not sent
+     */
+    public String get(String name) {
+        int slot = knownSlot(name);
+        if (slot >= 0) {
+            return known[slot];
+        }
+        int i = indexOf(name);
+        return (i >= 0) ? values[i] : null;
+    }
+
+    public boolean contains(HeaderEnum header) {
+        return known[header.ordinal()] != null;
+    }
+
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * @return                      - number of distinct headers
+     */
+    public int size() {
+        return knownCount + size;
+    }
+
+    /**
+     * Passes every header to {@code action}: the well-known ones first, by their
+     * canonical name (e.g. "Content-Type"), then the others by their name as sent
+     * @param action                - consumer of names and values
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < known.length; i++) {
+            if (known[i] != null) {
+                action.accept(KNOWN_NAMES[i], known[i]);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            action.accept(names[i], values[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        forEach((name, value) -> text.append(name).append(": ").append(value).append("\r\n"));
+        return text.toString();
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (equalsIgnoreCase(names[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int knownSlot(String name) {
+        for (int i = 0; i < KNOWN_NAMES.length; i++) {
+            if (equalsIgnoreCase(KNOWN_NAMES[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares ASCII letters without case, every other character exactly
+     */
+    static boolean equalsIgnoreCase(String a, String b) {
+        int length = a.length();
+        if (length != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                if (x >= 'A' && x <= 'Z') {
+                    x += 'a' - 'A';
+                }
+                if (y >= 'A' && y <= 'Z') {
+                    y += 'a' - 'A';
+                }
+                if (x != y) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
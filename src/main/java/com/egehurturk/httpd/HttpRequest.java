@@ -3,12 +3,14 @@ package com.egehurturk.httpd;
 import com.egehurturk.core.BaseServer;
 import com.egehurturk.exceptions.BadRequest400Exception;
 import com.egehurturk.exceptions.HttpRequestException;
+import com.egehurturk.exceptions.RequestTooLargeException;
+import com.egehurturk.util.HeaderEnum;
+import com.egehurturk.util.JsonReader;
 import com.egehurturk.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import java.io.*;
 import java.util.HashMap;
 
 // http://web-sniffer.net/rfc/rfc2616.html#section-14.1
@@ -58,6 +60,17 @@ public class HttpRequest {
      */
     private byte[] body;
 
+    /**
+     * Unread body when the request is parsed from an {@link InputStream}.
+     * {@link #getBody()} reads it into {@link #body} on first use
+     */
+    private InputStream bodyStream;
+
+    /**
+     * Body as it arrives on the socket, before a content coding is removed
+     */
+    private BodyInputStream rawBodyStream;
+
     /**
      * A string representing the full path to the requested page,
      * not including the scheme or domain.
@@ -93,7 +106,15 @@ public class HttpRequest {
      */
     private String method;
 
-    private HashMap<String, String> queryParams = new HashMap<String, String>();
+    /**
+     * Query string as sent, without the leading "?". Null if the URL has none
+     */
+    private String rawQuery;
+
+    /**
+     * Decoded {@link #rawQuery}, parsed on first use
+     */
+    private QueryParameters queryParams;
 
     // logger instance
     private static Logger logger = LogManager.getLogger(HttpRequest.class);
@@ -106,21 +127,156 @@ public class HttpRequest {
 
     /**
      * Other headers that are not specified as a field
-     * in this object.
+     * in this object. Names are case-insensitive, see {@link HttpHeaders}
+     */
+    public final HttpHeaders headers = new HttpHeaders();
+
+    /**
+     * Source of the lines of the request head, without line terminators
      */
-    public HashMap<String, String> headers = new HashMap<>();
+    private interface LineSource {
+        /**
+         * @param max               - longest line the caller accepts. A source may stop reading a longer
+         *                            line early and return what it has read, the line is rejected anyway
+         */
+        String readLine(int max) throws IOException;
+    }
 
+    /**
+     * Parses the request and, for POST requests, reads the body until the end
+     * of the stream
+     * @param data                  - request
+     */
     public HttpRequest(BufferedReader data) throws HttpRequestException, IOException {
-        parse(data);
+        parse(data == null ? null : max -> data.readLine(), RequestLimits.getDefault());
+        // in POST requests
+        if (method.equals("POST")) {
+            String bodyMsg;
+            StringBuilder _bodyTemplate = new StringBuilder();
+            while ( (bodyMsg = data.readLine()) != null ) {
+                _bodyTemplate.append(bodyMsg).append("\r\n"); // append carriage return
+            }
+            this.body = _bodyTemplate.toString().getBytes();
+        }
+    }
+
+    /**
+     * Parses the request head and leaves the body unread on the stream, so it
+     * can be consumed with {@link #getBodyStream()} (e.g. by a {@link JsonReader})
+     * without being copied into memory. The body is bounded by Content-Length;
+     * without one, a POST body ends with the stream and other requests have none.
+     * A body sent with {@code Content-Encoding: gzip} or {@code deflate} is
+     * inflated while it is read (see {@link InflatingInputStream}), Content-Length
+     * and Content-Encoding still describe it as it was sent.
+     * The request is checked against {@link RequestLimits#getDefault()}
+     * @param data                  - request, preferably buffered
+     * @return                      - parsed request
+     */
+    public static HttpRequest fromStream(InputStream data) throws HttpRequestException, IOException {
+        return fromStream(data, RequestLimits.getDefault());
+    }
+
+    /**
+     * See {@link #fromStream(InputStream)}
+     * @param data                  - request, preferably buffered
+     * @param limits                - largest request accepted
+     * @return                      - parsed request
+     * @throws RequestTooLargeException - as soon as a limit is exceeded, before the rest is read
+     * @throws BadRequest400Exception   - with status 415 if the body has a content coding that cannot be removed
+     */
+    public static HttpRequest fromStream(InputStream data, RequestLimits limits) throws HttpRequestException, IOException {
+        HttpRequest request = new HttpRequest();
+        request.parse(data == null ? null : max -> readLine(data, max), limits);
+        String length = request.headers.get(HeaderEnum.CONTENT_LENGTH);
+        if (length != null) {
+            long contentLength;
+            try {
+                contentLength = Long.parseLong(length);
+                if (contentLength < 0) {
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                throw new BadRequest400Exception("Invalid Content-Length: " + length, 400, "Bad Request");
+            }
+            if (contentLength > limits.getBodySize()) {
+                throw new RequestTooLargeException("Content-Length " + contentLength + " is larger than "
+                        + limits.getBodySize() + " bytes", 413, "Payload Too Large");
+            }
+            request.rawBodyStream = new BodyInputStream(data, contentLength);
+        } else if (request.method.equals("POST")) {
+            request.rawBodyStream = new BodyInputStream(data, BodyInputStream.UNKNOWN_LENGTH, limits.getBodySize());
+        }
+        request.bodyStream = request.rawBodyStream;
+        String encoding = request.headers.get(HeaderEnum.CONTENT_ENCODING);
+        if (encoding != null && request.bodyStream != null) {
+            request.bodyStream = decode(request.bodyStream, encoding, limits.getInflatedBodySize());
+        }
+        return request;
     }
 
-    private void parse(BufferedReader in) throws IOException, BadRequest400Exception {
+    /**
+     * Removes the content codings of a body, the last one applied first
+     * @param body                  - body as sent
+     * @param encoding              - Content-Encoding, e.g. "gzip" or "deflate, gzip"
+     * @param limit                 - most bytes inflated by each coding
+     * @return                      - decoded body, read lazily
+     */
+    private static InputStream decode(InputStream body, String encoding, long limit) throws BadRequest400Exception {
+        String[] codings = encoding.split(",");
+        for (int i = codings.length - 1; i >= 0; i--) {
+            String coding = codings[i].trim();
+            if (coding.isEmpty() || coding.equalsIgnoreCase("identity")) {
+                continue;
+            }
+            if (!InflatingInputStream.supports(coding)) {
+                throw new BadRequest400Exception("Unsupported Content-Encoding: " + encoding, 415, "Unsupported Media Type");
+            }
+            body = new InflatingInputStream(body, coding, limit);
+        }
+        return body;
+    }
+
+    private HttpRequest() {}
+
+    /**
+     * Reads a line terminated by LF or CRLF as ISO-8859-1. Stops after
+     * {@code max + 2} characters, longer than {@code max} even without a
+     * trailing CR, so a line that never ends is not read further than needed
+     * to reject it
+     * @return                      - line, or null at the end of the stream
+     */
+    private static String readLine(InputStream in, int max) throws IOException {
+        StringBuilder line = new StringBuilder(Math.min(64, max + 1));
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.append((char) b);
+            if (line.length() > max + 1) {
+                return line.toString();
+            }
+        }
+        if (b == -1 && line.length() == 0) {
+            return null;
+        }
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\r') {
+            line.setLength(end - 1);
+        }
+        return line.toString();
+    }
+
+    private void parse(LineSource in, RequestLimits limits) throws IOException, BadRequest400Exception,
+            RequestTooLargeException {
         if (in == null) {
             logger.error("Input stream of client is null, or empty, Check for client connection");
             throw new com.egehurturk.exceptions.BadRequest400Exception("Input stream is null or empty. Check for client" +
                     "connection that sends the request", 400, "Bad Request");
         }
-        String requestLine = in.readLine();
+        String requestLine = in.readLine(limits.getRequestLineLength());
+        if (requestLine != null && requestLine.length() > limits.getRequestLineLength()) {
+            logger.error("Request line is longer than " + limits.getRequestLineLength() + " bytes");
+            throw new RequestTooLargeException("Request line is longer than " + limits.getRequestLineLength()
+                    + " bytes", 414, "URI Too Long");
+        }
         if (requestLine == null || requestLine.isEmpty()) {
             logger.error("Input stream of client is null, or empty, Check for client connection");
             throw new com.egehurturk.exceptions.BadRequest400Exception("Input stream is null or empty. Check for client" +
@@ -148,42 +304,35 @@ public class HttpRequest {
         if (!requestLineArray[1].contains("?")) {
             this.path = requestLineArray[1].toLowerCase(); // ensure it is all lower, i.e ("/index.html")
         } else {
-            this.path = requestLineArray[1].substring(0, requestLineArray[1].indexOf("?")); // /index.html?a=3&b=4 -> /index.html
-            parseQueryParams(requestLineArray[1].substring(                                 // a=3&b=4
-                    requestLineArray[1].indexOf("?") + 1));
+            this.path     = requestLineArray[1].substring(0, requestLineArray[1].indexOf("?")); // /index.html?a=3&b=4 -> /index.html
+            this.rawQuery = requestLineArray[1].substring(                                      // a=3&b=4, parsed when first read
+                    requestLineArray[1].indexOf("?") + 1);
         }
         this.scheme   = requestLineArray[2]; // by default it is all upper. Case here does not matter
 
-        // read headers line by line
-        String  headerLine = in.readLine().toLowerCase().trim();
-        while ( !headerLine.isEmpty() && headerLine != null) { // check if lines are not empty
-            // <key> : <value>
-            // trim: <key>:<value>
-            // connection:keep-alive, accept:text/html
-            int idx = headerLine.indexOf(":"); // get the index of ":"
-            if (idx == -1) {
+        // read headers line by line, until the empty line (or the end of the stream)
+        int headerBytes = limits.getHeaderBytes();
+        int headerCount = 0;
+        String headerLine = in.readLine(headerBytes);
+        while (headerLine != null && !headerLine.trim().isEmpty()) {
+            // every line spends its length and CRLF from the budget of the header section
+            headerBytes -= headerLine.length() + 2;
+            if (headerBytes < 0 || ++headerCount > limits.getHeaderCount()) {
+                logger.error("Request headers are larger than " + limits.getHeaderBytes() + " bytes or "
+                        + limits.getHeaderCount() + " lines");
+                throw new RequestTooLargeException("Request headers are larger than " + limits.getHeaderBytes()
+                        + " bytes or " + limits.getHeaderCount() + " lines", 431, "Request Header Fields Too Large");
+            }
+            // <key>: <value>, e.g. Connection: keep-alive
+            // names are matched without case later on, values keep their case (cookies, tokens)
+            int idx = headerLine.indexOf(':'); // get the index of ":"
+            if (idx <= 0) {
                 throw new com.egehurturk.exceptions.BadRequest400Exception("Invalid header paramter: " + headerLine,
                         400, "Bad Request");
             }
-            else {
-                // put the header inside the headers map as
-                // content-type: text/html
-                this.headers.put(headerLine.substring(0, idx), headerLine.substring(idx+1));
-            }
-            headerLine = in.readLine().toLowerCase().trim();
-
+            this.headers.add(headerLine.substring(0, idx).trim(), headerLine.substring(idx + 1));
+            headerLine = in.readLine(Math.max(headerBytes, 0));
         }
-        // in POST requests
-
-        if (method.equals("POST")) {
-            String bodyMsg;
-            StringBuilder _bodyTemplate = new StringBuilder();
-            while ( (bodyMsg = in.readLine()) != null ) {
-                _bodyTemplate.append(bodyMsg).append("\r\n"); // append carriage return
-            }
-            this.body = _bodyTemplate.toString().getBytes();
-        }
-
     }
 
     public HashMap<String, String> toMap() {
@@ -194,9 +343,7 @@ public class HttpRequest {
         map.put(URL_RESOURCE, this.path);
         map.put(PROTOCOL, this.scheme);
 
-        for (String key : this.headers.keySet()) {
-            map.put(key, this.headers.getOrDefault(key, ""));
-        }
+        this.headers.forEach(map::put);
         return map;
     }
 
@@ -222,25 +369,94 @@ public class HttpRequest {
         return true;
     }
 
-    private void parseQueryParams(String queryStr) {
-        for (String param: queryStr.split("&")) {   // ["a=3"], ["b=4"], ["c=5"]
-            int separator = param.indexOf('='); // index of "="
-            if (separator > -1)  {              // if there is "="
-                queryParams.put(param.substring(0, separator),  // put {"a", "3"} in query parameters
-                        param.substring(separator + 1));
-            } else  {
-                queryParams.put(param, null);       // put {"d-43", null}
+    public String getScheme() {
+        return scheme;
+    }
+
+    /**
+     * @return body bytes, read from the stream on first call. Null if the body cannot be read
+     */
+    public byte[] getBody() {
+        if (body == null && bodyStream != null) {
+            try {
+                ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                int n;
+                while ((n = bodyStream.read(chunk)) != -1) {
+                    buffered.write(chunk, 0, n);
+                }
+                body       = buffered.toByteArray();
+                bodyStream = null;
+            } catch (IOException e) {
+                logger.error("Cannot read the request body: " + e.getMessage());
             }
         }
+        return body;
     }
 
+    /**
+     * @return body as a stream, without reading it into memory. Can be consumed once
+     */
+    public InputStream getBodyStream() {
+        if (bodyStream != null) {
+            return bodyStream;
+        }
+        return new ByteArrayInputStream(body == null ? new byte[0] : body);
+    }
 
-    public String getScheme() {
-        return scheme;
+    /**
+     * Fails if the body turned out to be larger than the limit while it was read.
+     * A body without a Content-Length can only be checked once it is read
+     * @throws RequestTooLargeException - with 413, if the body went past {@link RequestLimits#getBodySize()}
+     */
+    public void checkBodySize() throws RequestTooLargeException {
+        if (rawBodyStream != null && rawBodyStream.getOverflow() != null) {
+            throw rawBodyStream.getOverflow();
+        }
     }
 
-    public byte[] getBody() {
-        return body;
+    /**
+     * @return                      - whether a body follows the head on the connection
+     */
+    public boolean hasBody() {
+        return rawBodyStream != null;
+    }
+
+    /**
+     * @return                      - whether the client waits for {@code 100 Continue} before it sends
+     *                                the body. Ignored in HTTP/1.0 requests (RFC 7231, 5.1.1)
+     */
+    public boolean expectsContinue() {
+        String expect = this.headers.get(HeaderEnum.EXPECT);
+        return expect != null && expect.equalsIgnoreCase("100-continue") && HTTP_V_1_1.equals(scheme)
+                && rawBodyStream != null;
+    }
+
+    /**
+     * Sends {@code 100 Continue} on {@code output} when the body is first read,
+     * see {@link BodyInputStream#continueOnRead(OutputStream)}. Does nothing
+     * unless {@link #expectsContinue()}
+     * @param output                - socket output
+     */
+    public void continueOnRead(OutputStream output) {
+        if (expectsContinue()) {
+            rawBodyStream.continueOnRead(output);
+        }
+    }
+
+    /**
+     * Binds a JSON body to {@code type} while it is read from the stream (see
+     * {@link JsonReader#read(Class)})
+     * @param type                  - class with a no-argument constructor, or a simple type
+     * @param <T>                   - type
+     * @return                      - bound value
+     * @throws IOException          - if the body is not a single JSON value of that shape, or cannot be read
+     */
+    public <T> T readJson(Class<T> type) throws IOException {
+        JsonReader json = new JsonReader(getBodyStream());
+        T value = json.read(type);
+        json.endDocument();
+        return value;
     }
 
     public String getPath() {
@@ -251,6 +467,27 @@ public class HttpRequest {
         return method;
     }
 
+    /**
+     * @param name                  - header name in any case
+     * @return                      - value without surrounding whitespace, null if the header was not sent
+     */
+    public String header(String name) {
+        return this.headers.get(name);
+    }
+
+    /**
+     * @param header                - well-known header
+     * @return                      - value without surrounding whitespace, null if the header was not sent
+     */
+    public String header(HeaderEnum header) {
+        return this.headers.get(header);
+    }
+
+    /**
+     * Prefer {@link #header(String)}, which does not allocate a pair per lookup
+     * @param name                  - header name in any case
+     * @return                      - whether the header was sent, and its value
+     */
     public Pair<Boolean, String> getHeader(String name) {
         String ret = this.headers.get(name);
         Pair<Boolean, String> pair;
@@ -264,15 +501,44 @@ public class HttpRequest {
     }
 
 
+    /**
+     * @return                      - query string as sent, without the leading "?". Null if the URL has none
+     */
+    public String getRawQuery() {
+        return rawQuery;
+    }
+
+    /**
+     * Parses and decodes the query string on first call
+     * @return                      - decoded query parameters, empty if the URL has no query string
+     */
+    public QueryParameters getQueryParameters() {
+        if (queryParams == null) {
+            queryParams = new QueryParameters(rawQuery);
+        }
+        return queryParams;
+    }
+
+    /**
+     * @param param                 - decoded name
+     * @return                      - first decoded value, null if the parameter was not sent
+     */
+    public String queryParam(String param) {
+        return getQueryParameters().get(param);
+    }
+
+    /**
+     * Prefer {@link #queryParam(String)}, which does not allocate a pair per lookup
+     * @param param                 - decoded name
+     * @return                      - whether the parameter was sent, and its first decoded value
+     */
     public Pair<Boolean, String> getQueryParam(String param) {
-        Pair<Boolean, String> pair = null;
-        if (queryParams.get(param) == null) {
+        String value = queryParam(param);
+        if (value == null) {
             logger.warn("Query parameter is null for " + param + " parameter");
-            pair = Pair.makePair(false, null);
-        } else {
-            pair =  Pair.makePair(true, queryParams.get(param));
+            return Pair.makePair(false, null);
         }
-        return pair;
+        return Pair.makePair(true, value);
     }
 }
 
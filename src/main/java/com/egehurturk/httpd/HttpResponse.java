@@ -5,13 +5,22 @@ import com.egehurturk.exceptions.HttpResponseException;
 import com.egehurturk.exceptions.NotImplemented501Exception;
 import com.egehurturk.util.HeaderEnum;
 import com.egehurturk.util.StatusEnum;
+import com.egehurturk.util.Utility;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -74,6 +83,39 @@ public class HttpResponse {
 
     private PrintWriter stream;
 
+    /**
+     * Body as a {@link ByteBuffer}, used instead of {@link #body} when the
+     * content already lives in a buffer (e.g. a cached or memory-mapped file).
+     * It is written to {@link #output} as raw bytes without copying it into
+     * a {@code String}
+     */
+    private ByteBuffer bodyBuffer;
+
+    /**
+     * Raw output stream of the client socket. {@link #stream} wraps it for
+     * the status line and headers, buffer bodies are written here directly
+     */
+    private OutputStream output;
+
+    /**
+     * Body produced while sending, e.g. a rendered template. Sent with the
+     * chunked transfer coding over {@link #output}, or buffered when there is no raw output
+     */
+    private StreamingBody streamingBody;
+
+    /**
+     * Scheme of the request being answered. HTTP/1.0 clients do not know the
+     * chunked transfer coding (RFC 7230, 3.3.1), a {@link #streamingBody} is
+     * sent to them as it is and ends when the connection is closed
+     */
+    private String requestScheme;
+
+    /**
+     * Called once after {@link #send()} finished or failed. Used to give
+     * borrowed buffers back to their owner
+     */
+    private Runnable afterSend;
+
     /**
      * Other headers that are not specified as a field
      * in this object.
@@ -82,10 +124,19 @@ public class HttpResponse {
 
     protected static Logger logger = LogManager.getLogger(HttpResponse.class);
 
+    /**
+     * Headers that {@link #send()} always prints in a fixed order
+     */
+    private static final Set<String> FIXED_HEADERS = new HashSet<>(Arrays.asList(
+            HeaderEnum.SERVER.NAME, HeaderEnum.DATE.NAME, HeaderEnum.CONTENT_TYPE.NAME,
+            HeaderEnum.CONTENT_LENGTH.NAME, HeaderEnum.CONNECTION.NAME
+    ));
+
     // empty constructors
     public HttpResponse(HashMap<String, String> map, String scheme, int code,
                         String message, byte[] body, PrintWriter stream) {}
     public HttpResponse(PrintWriter out) {this.stream = out;}
+    public HttpResponse(PrintWriter out, OutputStream output) {this.stream = out; this.output = output;}
     public HttpResponse(){}
 
 
@@ -128,14 +179,129 @@ public class HttpResponse {
     }
 
     public void send() throws IOException {
-        String body = new String(this.body);
+        try {
+            if (this.streamingBody != null) {
+                if (this.output != null && "HTTP/1.0".equals(this.requestScheme)) {
+                    sendUntilClose();
+                    return;
+                }
+                if (this.output != null) {
+                    sendChunked();
+                    return;
+                }
+                this.body = getBody();
+                this.headers.put(HeaderEnum.CONTENT_LENGTH.NAME, "" + this.body.length);
+            }
+            if (this.bodyBuffer != null && this.output != null) {
+                sendHead();
+                writeBuffer(this.bodyBuffer.duplicate());
+                return;
+            }
+            if (this.body == null && this.bodyBuffer != null) {
+                this.body = Utility.toByteArray(this.bodyBuffer);
+            }
+            sendLegacy();
+        } finally {
+            if (this.afterSend != null) {
+                Runnable callback = this.afterSend;
+                this.afterSend = null;
+                callback.run();
+            }
+        }
+    }
+
+    /**
+     * Sends {@link #streamingBody} as chunks, without a Content-Length. If the
+     * body fails after the head is sent the last chunk is missing, so the client
+     * can tell that the response is incomplete
+     */
+    private void sendChunked() throws IOException {
+        this.headers.remove(HeaderEnum.CONTENT_LENGTH.NAME);
+        this.headers.put(HeaderEnum.TRANSFER_ENCODING.NAME, "chunked");
+        sendHead();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(this.output);
+        this.streamingBody.writeTo(chunked);
+        chunked.finish();
+    }
+
+    /**
+     * Sends {@link #streamingBody} as it is, without a Content-Length or a
+     * transfer coding. The body ends when the connection is closed, which
+     * {@code Connection: close} announces
+     */
+    private void sendUntilClose() throws IOException {
+        this.headers.remove(HeaderEnum.CONTENT_LENGTH.NAME);
+        this.headers.remove(HeaderEnum.TRANSFER_ENCODING.NAME);
+        sendHead();
+        this.streamingBody.writeTo(new FilterOutputStream(this.output) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush(); // the socket is closed by its owner
+            }
+        });
+        this.output.flush();
+    }
+
+    /**
+     * Writes the status line and headers, and flushes them so that raw bytes
+     * can follow on {@link #output}
+     */
+    private void sendHead() {
+        printHead();
+        this.stream.flush();
+    }
+
+    /**
+     * Prints the status line, the standard headers in a fixed order, every
+     * other header that was set (e.g. ETag, Content-Encoding) and the empty
+     * line that ends the head
+     */
+    private void printHead() {
         this.stream.println(this.scheme + " " + this.code + " " + this.message);
         this.stream.println(HeaderEnum.SERVER.NAME + this.headers.get(HeaderEnum.SERVER.NAME));
         this.stream.println(HeaderEnum.DATE.NAME + this.headers.get(HeaderEnum.DATE.NAME));
         this.stream.println(HeaderEnum.CONTENT_TYPE.NAME + this.headers.get(HeaderEnum.CONTENT_TYPE.NAME) + ";charset=\"utf-8\"");
-        this.stream.println(HeaderEnum.CONTENT_LENGTH.NAME + this.headers.get(HeaderEnum.CONTENT_LENGTH.NAME));
+        if (this.headers.get(HeaderEnum.CONTENT_LENGTH.NAME) != null) {
+            this.stream.println(HeaderEnum.CONTENT_LENGTH.NAME + this.headers.get(HeaderEnum.CONTENT_LENGTH.NAME));
+        }
         this.stream.println(HeaderEnum.CONNECTION.NAME + "close");
+        for (Map.Entry<String, String> header : this.headers.entrySet()) {
+            if (!FIXED_HEADERS.contains(header.getKey()) && header.getValue() != null) {
+                this.stream.println(header.getKey() + header.getValue());
+            }
+        }
         this.stream.println();
+    }
+
+    /**
+     * Writes a body buffer. A socket output that takes buffers gets it as it is,
+     * so direct and read-only buffers are not copied through an array first
+     */
+    private void writeBuffer(ByteBuffer buffer) throws IOException {
+        if (this.output instanceof WritableByteChannel) {
+            WritableByteChannel channel = (WritableByteChannel) this.output;
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } else if (buffer.hasArray()) {
+            this.output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            WritableByteChannel channel = Channels.newChannel(this.output);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        this.output.flush();
+    }
+
+    private void sendLegacy() {
+        String body = new String(this.body);
+        printHead();
         this.stream.println(body);
         this.stream.println();
         this.stream.flush();
@@ -154,6 +320,11 @@ public class HttpResponse {
         code.add(StatusEnum._501_NOT_IMPLEMENTED.STATUS_CODE);
         code.add(StatusEnum._200_OK.STATUS_CODE);
         code.add(StatusEnum._406_NOT_ACCEPTABLE.STATUS_CODE);
+        code.add(StatusEnum._408_REQUEST_TIMEOUT.STATUS_CODE);
+        code.add(StatusEnum._413_PAYLOAD_TOO_LARGE.STATUS_CODE);
+        code.add(StatusEnum._414_URI_TOO_LONG.STATUS_CODE);
+        code.add(StatusEnum._415_UNSUPPORTED_MEDIA_TYPE.STATUS_CODE);
+        code.add(StatusEnum._431_REQUEST_HEADER_FIELDS_TOO_LARGE.STATUS_CODE);
 
         return code;
     }
@@ -167,6 +338,11 @@ public class HttpResponse {
         msg.add(StatusEnum._501_NOT_IMPLEMENTED.MESSAGE);
         msg.add(StatusEnum._200_OK.MESSAGE);
         msg.add(StatusEnum._406_NOT_ACCEPTABLE.MESSAGE);
+        msg.add(StatusEnum._408_REQUEST_TIMEOUT.MESSAGE);
+        msg.add(StatusEnum._413_PAYLOAD_TOO_LARGE.MESSAGE);
+        msg.add(StatusEnum._414_URI_TOO_LONG.MESSAGE);
+        msg.add(StatusEnum._415_UNSUPPORTED_MEDIA_TYPE.MESSAGE);
+        msg.add(StatusEnum._431_REQUEST_HEADER_FIELDS_TOO_LARGE.MESSAGE);
 
         return msg;
     }
@@ -175,10 +351,64 @@ public class HttpResponse {
         return scheme;
     }
 
+    /**
+     * @return body bytes. A streaming body is produced into memory for this
+     */
     public byte[] getBody() {
+        if (body == null && bodyBuffer != null) {
+            return Utility.toByteArray(bodyBuffer);
+        }
+        if (body == null && streamingBody != null) {
+            ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+            try {
+                streamingBody.writeTo(buffered);
+            } catch (IOException e) {
+                logger.error("Cannot produce the response body: " + e.getMessage());
+            }
+            return buffered.toByteArray();
+        }
         return body;
     }
 
+    public StreamingBody getStreamingBody() {
+        return streamingBody;
+    }
+
+    public void setStreamingBody(StreamingBody streamingBody) {
+        this.streamingBody = streamingBody;
+    }
+
+    public ByteBuffer getBodyBuffer() {
+        return bodyBuffer;
+    }
+
+    public void setBodyBuffer(ByteBuffer bodyBuffer) {
+        this.bodyBuffer = bodyBuffer;
+    }
+
+    public OutputStream getOutput() {
+        return output;
+    }
+
+    public void setOutput(OutputStream output) {
+        this.output = output;
+    }
+
+    public String getRequestScheme() {
+        return requestScheme;
+    }
+
+    /**
+     * @param requestScheme         - scheme of the request, e.g. HTTP/1.0
+     */
+    public void setRequestScheme(String requestScheme) {
+        this.requestScheme = requestScheme;
+    }
+
+    public void setAfterSend(Runnable afterSend) {
+        this.afterSend = afterSend;
+    }
+
     public int getCode() {
         return code;
     }
@@ -6,7 +6,9 @@ import com.egehurturk.util.HeaderEnum;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
 public class HttpResponseBuilder {
@@ -15,6 +17,11 @@ public class HttpResponseBuilder {
     private int code;
     private String message;
     private PrintWriter stream;
+    private ByteBuffer bodyBuffer;
+    private StreamingBody streamingBody;
+    private String requestScheme;
+    private OutputStream output;
+    private Runnable afterSend;
     private HashMap<String, String> headers = new HashMap<String, String>();
     protected static Logger logger = LogManager.getLogger(HttpResponseBuilder.class);
 
@@ -30,6 +37,33 @@ public class HttpResponseBuilder {
         return this;
     }
 
+    /**
+     * Body that is written to the raw socket output without being copied.
+     * Requires {@link #setOutput(OutputStream)}
+     */
+    public HttpResponseBuilder body(ByteBuffer body) {
+        this.bodyBuffer = body;
+        return this;
+    }
+
+    /**
+     * Body produced while the response is sent, with the chunked transfer coding
+     * when {@link #setOutput(OutputStream)} is set. No Content-Length header is needed
+     */
+    public HttpResponseBuilder body(StreamingBody body) {
+        this.streamingBody = body;
+        return this;
+    }
+
+    /**
+     * Scheme of the request being answered. A streaming body is not chunked
+     * for an HTTP/1.0 request, it ends when the connection is closed
+     */
+    public HttpResponseBuilder requestScheme(String requestScheme) {
+        this.requestScheme = requestScheme;
+        return this;
+    }
+
     public HttpResponseBuilder code(int code) {
         this.code = code;
         return this;
@@ -51,13 +85,34 @@ public class HttpResponseBuilder {
     }
 
 
+    public HttpResponseBuilder setOutput(OutputStream output) {
+        this.output = output;
+        return this;
+    }
+
+    /**
+     * @param afterSend             - called once the response is sent, e.g. to release a cached buffer
+     */
+    public HttpResponseBuilder afterSend(Runnable afterSend) {
+        this.afterSend = afterSend;
+        return this;
+    }
+
     public HttpResponse build() {
         HttpResponse res = null;
         try {
             res = HttpResponse.create(this.headers, scheme, code, message, body, stream);
+            res.setBodyBuffer(bodyBuffer);
+            res.setStreamingBody(streamingBody);
+            res.setRequestScheme(requestScheme);
+            res.setOutput(output);
+            res.setAfterSend(afterSend);
         } catch (HttpResponseException e) {
             logger.error("Error building Http Response");
             e.printStackTrace();
+            if (afterSend != null) {
+                afterSend.run(); // response will never be sent
+            }
         }
         return res;
     }
@@ -1,25 +1,45 @@
 package com.egehurturk.httpd;
 
+import com.egehurturk.archives.WebrootArchive;
+import com.egehurturk.archives.WebrootPacker;
+import com.egehurturk.caches.CacheWarmer;
+import com.egehurturk.caches.ResourceMetadataCache;
+import com.egehurturk.caches.StaticContentCache;
+import com.egehurturk.caches.WebrootWatcher;
 import com.egehurturk.core.BaseServer;
+import com.egehurturk.core.BufferPool;
+import com.egehurturk.core.HashedTimingWheel;
+import com.egehurturk.core.WriteLoop;
 import com.egehurturk.exceptions.ConfigurationException;
 import com.egehurturk.handlers.Handler;
 import com.egehurturk.handlers.HandlerTemplate;
 import com.egehurturk.handlers.HttpController;
 import com.egehurturk.handlers.HttpHandler;
+import com.egehurturk.handlers.Prerenderer;
+import com.egehurturk.readers.FileReadStrategy;
+import com.egehurturk.readers.HeapReadStrategy;
+import com.egehurturk.readers.ReadStrategyCalibrator;
+import com.egehurturk.readers.ReadStrategySelector;
 import com.egehurturk.util.MethodEnum;
+import com.egehurturk.util.Utility;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HTTP Server for providing HTTP connection. Uses TCP as
@@ -67,6 +87,35 @@ public class HttpServer extends BaseServer implements Closeable {
     protected static String HOST_PROP    = "server.host";
     protected static String NAME_PROP    = "server.name";
     protected static String WEBROOT_PROP = "server.webroot";
+    protected static String IO_STRATEGY_PROP = "server.io.strategy";
+    protected static String CACHE_PROP                   = "server.cache";
+    protected static String CACHE_HEAP_BYTES_PROP        = "server.cache.heap.bytes";
+    protected static String CACHE_OFFHEAP_BYTES_PROP     = "server.cache.offheap.bytes";
+    protected static String CACHE_OFFHEAP_MIN_FILE_PROP  = "server.cache.offheap.minFileSize";
+    protected static String CACHE_MAX_FILE_PROP          = "server.cache.maxFileSize";
+    protected static String CACHE_WARM_PROP              = "server.cache.warm";
+    protected static String CACHE_WARM_MAX_FILE_PROP     = "server.cache.warm.maxFileSize";
+    protected static String CACHE_WARM_THREADS_PROP      = "server.cache.warm.threads";
+    protected static String ARCHIVE_PROP                 = "server.archive";
+    protected static String ARCHIVE_BUILD_PROP           = "server.archive.build";
+    protected static String ARCHIVE_GZIP_PROP            = "server.archive.gzip";
+    protected static String WATCH_PROP                   = "server.watch";
+    protected static String WATCH_DEBOUNCE_PROP          = "server.watch.debounce";
+    protected static String WATCH_MAX_MISSING_PROP       = "server.watch.maxMissing";
+    protected static String PRERENDER_PROP               = "server.prerender";
+    protected static String UPLOAD_MEMORY_THRESHOLD_PROP = "server.upload.memoryThreshold";
+    protected static String UPLOAD_TEMP_DIR_PROP         = "server.upload.tempDir";
+    protected static String LIMIT_REQUEST_LINE_PROP      = "server.limits.requestLine";
+    protected static String LIMIT_HEADER_BYTES_PROP      = "server.limits.headerBytes";
+    protected static String LIMIT_HEADER_COUNT_PROP      = "server.limits.headerCount";
+    protected static String LIMIT_BODY_PROP              = "server.limits.body";
+    protected static String LIMIT_INFLATED_BODY_PROP     = "server.limits.inflatedBody";
+    protected static String TIMEOUT_IDLE_PROP            = "server.timeout.idle";
+    protected static String TIMEOUT_HEADER_PROP          = "server.timeout.header";
+    protected static String TIMEOUT_BODY_PROP            = "server.timeout.body";
+    protected static String TIMEOUT_WRITE_PROP           = "server.timeout.write";
+    protected static String WRITE_BUFFER_PROP            = "server.write.buffer";
+    protected static String BUFFERS_RETAINED_PROP        = "server.buffers.retainedPerClass";
     public boolean allowCustomUrlMapping = false;
 
 
@@ -89,6 +138,39 @@ public class HttpServer extends BaseServer implements Closeable {
      */
     private List<HandlerTemplate> handlers = new ArrayList<>();
 
+    /**
+     * Render-only handlers added with {@link #addPrerenderedHandler(String, Handler)}.
+     * Pre-rendered into the web root on startup when <i>server.prerender</i>
+     * is enabled, otherwise (or when rendering fails) served like any other handler
+     */
+    private List<HandlerTemplate> prerendered = new ArrayList<>();
+
+    /**
+     * Cache of web root files shared by the default {@link HttpHandler}.
+     * Null when <i>server.cache</i> is not enabled
+     */
+    private StaticContentCache cache;
+
+    /**
+     * Watches the web root for changes. Null when <i>server.watch</i> is not enabled
+     */
+    private WebrootWatcher watcher;
+
+    /**
+     * Timer of the connection timeouts, one tick every 100 milliseconds
+     */
+    private HashedTimingWheel timingWheel;
+
+    private ConnectionTimeouts timeouts;
+
+    /**
+     * Sends the queued responses of the connections. Null when <i>server.write.buffer</i>
+     * is 0 and workers write their responses themselves
+     */
+    private WriteLoop writeLoop;
+
+    private int writeBufferSize;
+
 
     /**
      * Chained constructor for initializing with only port.
@@ -261,22 +343,56 @@ public class HttpServer extends BaseServer implements Closeable {
      */
     @Override
     public void start() {
+        CacheWarmer warmer = null;
+        String warmMode    = "off";
+        // before the web root is cached, packed or watched, so the pages are served like any other file
+        if (this.config != null && Boolean.parseBoolean(this.config.getProperty(PRERENDER_PROP, "false").trim())) {
+            this.handlers.addAll(prerender());
+        } else {
+            this.handlers.addAll(this.prerendered);
+        }
+        configureUploads();
+        configureLimits();
+        configureTimeouts();
+        configureWriteLoop();
+        configureBufferPool();
         try {
             HttpHandler handler = new HttpHandler(this.getConfig());
             handler.setDebugMode(this.debugMode);
+            handler.setReadStrategySelector(configureReadStrategies());
+            this.cache = configureCache();
+            handler.setCache(this.cache);
+            handler.setArchive(configureArchive());
+            this.watcher = configureWatcher(handler);
+            warmer = configureWarmer(handler);
+            if (warmer != null) {
+                warmMode = this.config.getProperty(CACHE_WARM_PROP).trim().toLowerCase();
+            }
+            if (warmMode.equals("startup")) {
+                warmer.warm(new File(this.webRoot));
+            }
             addHandler(MethodEnum.GET, "/*", handler);
         } catch (FileNotFoundException er) {
             logger.error(er.getMessage());
         }
         ExecutorService pool = Executors.newFixedThreadPool(500);
         try {
-            this.server = new ServerSocket(this.serverPort, this.backlog, this.serverHost);
+            // accepted sockets have a channel, their responses can be sent by the write loop
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            this.server = channel.socket();
+            this.server.bind(new InetSocketAddress(this.serverHost, this.serverPort), this.backlog);
             logger.info("Server started on port " + this.serverPort);
         } catch (IOException e) {
             logger.error("Server could not be instantiated (probably due to port conflict) \n\n" +  e.getClass().getCanonicalName() );
             close();
             return;
         }
+        if (warmMode.equals("background")) {
+            final CacheWarmer backgroundWarmer = warmer;
+            Thread warmup = new Thread(() -> backgroundWarmer.warm(new File(this.webRoot)), "cache-warmer");
+            warmup.setDaemon(true);
+            warmup.start();
+        }
         while (this.server.isBound() && !this.server.isClosed()) {
             Socket cli = null;
             try {
@@ -287,11 +403,355 @@ public class HttpServer extends BaseServer implements Closeable {
             }
             HttpController controller = new HttpController(cli, handlers);
             controller.setAllowForCustomMapping(this.allowCustomUrlMapping);
+            controller.setTimeouts(this.timingWheel, this.timeouts);
+            controller.setWriteLoop(this.writeLoop, this.writeBufferSize);
             pool.execute(controller);
         }
     }
 
 
+    /**
+     * Builds the {@link ReadStrategySelector} of the default handler from the
+     * <i>server.io.strategy</i> property. The value is either the name of a
+     * {@link FileReadStrategy} ("heap" by default, "direct", "mmap", "transfer")
+     * which is used for every file size, or "auto" which runs the
+     * {@link ReadStrategyCalibrator} next to the web root at startup. Calibration
+     * writes about 41 MB of samples and times page cache reads, so it is opt-in.
+     *
+     * @return selector for the default handler
+     */
+    private ReadStrategySelector configureReadStrategies() {
+        String name = (this.config == null) ? "heap" : this.config.getProperty(IO_STRATEGY_PROP, "heap");
+        if (!name.trim().equalsIgnoreCase("auto")) {
+            FileReadStrategy strategy = ReadStrategySelector.byName(name);
+            if (strategy != null) {
+                logger.info("Using " + strategy.getName() + " file read strategy");
+                return ReadStrategySelector.fixed(strategy);
+            }
+            logger.warn("Unknown file read strategy " + name + ", using heap strategy");
+            return ReadStrategySelector.fixed(new HeapReadStrategy());
+        }
+        try {
+            long start = System.nanoTime();
+            ReadStrategySelector selector = new ReadStrategyCalibrator().calibrate(new File(this.webRoot));
+            logger.info("Calibrated file read strategies in " + (System.nanoTime() - start) / 1000000 + " ms: " + selector);
+            return selector;
+        } catch (IOException e) {
+            logger.error("File read strategy calibration failed, using heap strategy: " + e.getMessage());
+            return ReadStrategySelector.fixed(new HeapReadStrategy());
+        }
+    }
+
+    /**
+     * Builds the static content cache from the <i>server.cache.*</i> properties.
+     * Files smaller than <i>server.cache.offheap.minFileSize</i> are kept on the heap,
+     * larger ones in direct buffers outside of the heap, so a small heap can serve
+     * a large web root.
+     *
+     * @return cache, or null if <i>server.cache</i> is not true
+     */
+    private StaticContentCache configureCache() {
+        if (this.config == null || !Boolean.parseBoolean(this.config.getProperty(CACHE_PROP, "false").trim())) {
+            return null;
+        }
+        try {
+            StaticContentCache cache = new StaticContentCache(
+                    Long.parseLong(this.config.getProperty(CACHE_HEAP_BYTES_PROP, "16777216").trim()),
+                    Long.parseLong(this.config.getProperty(CACHE_OFFHEAP_BYTES_PROP, "67108864").trim()),
+                    Integer.parseInt(this.config.getProperty(CACHE_OFFHEAP_MIN_FILE_PROP, "16384").trim()),
+                    Integer.parseInt(this.config.getProperty(CACHE_MAX_FILE_PROP, "4194304").trim())
+            );
+            logger.info("Static content cache enabled: " + cache);
+            return cache;
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid static content cache configuration, caching is disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Builds the {@link CacheWarmer} selected by <i>server.cache.warm</i>:
+     * <ul>
+     *     <li>startup: the web root is loaded before the server socket is opened</li>
+     *     <li>background: the web root is loaded after the socket is opened, while requests are served</li>
+     *     <li>off (default): no warm-up</li>
+     * </ul>
+     * Files larger than <i>server.cache.warm.maxFileSize</i> (default: the cache's
+     * maximum file size) are not loaded. <i>server.cache.warm.threads</i> defaults to the number of processors.
+     * Files served from a web root archive are not cached, so there is no warm-up with an archive.
+     *
+     * @param handler               - default handler, configured with cache and read strategies
+     * @return warmer, or null when warm-up is off or there is nothing to warm
+     */
+    private CacheWarmer configureWarmer(HttpHandler handler) {
+        String mode = (this.config == null) ? "off" : this.config.getProperty(CACHE_WARM_PROP, "off").trim().toLowerCase();
+        if (mode.equals("off") || this.cache == null) {
+            return null;
+        }
+        if (!mode.equals("startup") && !mode.equals("background")) {
+            logger.error("Unknown " + CACHE_WARM_PROP + " \"" + mode + "\", expected startup, background or off. Cache is not warmed");
+            return null;
+        }
+        if (handler.getArchive() != null) {
+            logger.info("Web root archive is mapped, cache warm-up skipped");
+            return null;
+        }
+        try {
+            long maxFileSize = Long.parseLong(this.config.getProperty(CACHE_WARM_MAX_FILE_PROP, "" + this.cache.getMaxFileSize()).trim());
+            int threads      = Integer.parseInt(this.config.getProperty(CACHE_WARM_THREADS_PROP,
+                    "" + Runtime.getRuntime().availableProcessors()).trim());
+            return new CacheWarmer(this.cache, handler.getReadStrategySelector(), maxFileSize, threads);
+        } catch (NumberFormatException e) {
+            logger.error("Invalid cache warm-up configuration, cache is not warmed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the web root archive named by <i>server.archive</i>. When
+     * <i>server.archive.build</i> is true the web root is packed into it first
+     * (with gzip variants if <i>server.archive.gzip</i> is true).
+     *
+     * @return mapped archive, or null when not configured or it cannot be opened
+     */
+    private WebrootArchive configureArchive() {
+        String path = (this.config == null) ? null : this.config.getProperty(ARCHIVE_PROP);
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+        File archiveFile = new File(path.trim());
+        try {
+            if (isArchiveBuilt()) {
+                packArchive(archiveFile);
+            }
+            WebrootArchive archive = WebrootArchive.open(archiveFile);
+            logger.info("Serving " + archive.size() + " files from web root archive " + archiveFile);
+            return archive;
+        } catch (IOException e) {
+            logger.error("Web root archive " + archiveFile + " cannot be used, serving from file system: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the server packs the web root archive itself (<i>server.archive.build</i>)
+     */
+    private boolean isArchiveBuilt() {
+        return Boolean.parseBoolean(this.config.getProperty(ARCHIVE_BUILD_PROP, "false").trim());
+    }
+
+    private void packArchive(File archiveFile) throws IOException {
+        long start = System.nanoTime();
+        int files = new WebrootPacker(Boolean.parseBoolean(this.config.getProperty(ARCHIVE_GZIP_PROP, "true").trim()))
+                .pack(new File(this.webRoot), archiveFile);
+        logger.info("Packed " + files + " files of " + this.webRoot + " into " + archiveFile + " in " +
+                (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Sets the defaults of {@link MultipartParser}: parts up to
+     * <i>server.upload.memoryThreshold</i> bytes are kept in memory, larger ones
+     * in files under <i>server.upload.tempDir</i> (the system temporary
+     * directory when empty)
+     */
+    private void configureUploads() {
+        if (this.config == null) {
+            return;
+        }
+        try {
+            int threshold = Integer.parseInt(this.config.getProperty(UPLOAD_MEMORY_THRESHOLD_PROP,
+                    "" + MultipartParser.DEFAULT_MEMORY_THRESHOLD).trim());
+            String dir    = this.config.getProperty(UPLOAD_TEMP_DIR_PROP, "").trim();
+            File tempDir  = dir.isEmpty() ? null : new File(dir);
+            if (tempDir != null && !tempDir.isDirectory() && !tempDir.mkdirs()) {
+                logger.error("Upload directory " + tempDir + " cannot be created, using the system temporary directory");
+                tempDir = null;
+            }
+            MultipartParser.setDefaults(threshold, tempDir);
+        } catch (NumberFormatException e) {
+            logger.error("Invalid " + UPLOAD_MEMORY_THRESHOLD_PROP + ", keeping " + MultipartParser.DEFAULT_MEMORY_THRESHOLD + " bytes");
+        }
+    }
+
+    /**
+     * Sets the {@link RequestLimits} of requests read from sockets from the
+     * <i>server.limits.*</i> properties. Invalid values keep the defaults
+     */
+    private void configureLimits() {
+        if (this.config == null) {
+            return;
+        }
+        try {
+            RequestLimits.setDefault(new RequestLimits(
+                    Integer.parseInt(this.config.getProperty(LIMIT_REQUEST_LINE_PROP,
+                            "" + RequestLimits.DEFAULT_REQUEST_LINE_LENGTH).trim()),
+                    Integer.parseInt(this.config.getProperty(LIMIT_HEADER_BYTES_PROP,
+                            "" + RequestLimits.DEFAULT_HEADER_BYTES).trim()),
+                    Integer.parseInt(this.config.getProperty(LIMIT_HEADER_COUNT_PROP,
+                            "" + RequestLimits.DEFAULT_HEADER_COUNT).trim()),
+                    Long.parseLong(this.config.getProperty(LIMIT_BODY_PROP,
+                            "" + RequestLimits.DEFAULT_BODY_SIZE).trim()),
+                    Long.parseLong(this.config.getProperty(LIMIT_INFLATED_BODY_PROP,
+                            "" + RequestLimits.DEFAULT_INFLATED_BODY_SIZE).trim())
+            ));
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid server.limits properties, keeping the default request limits: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the {@link ConnectionTimeouts} from the <i>server.timeout.*</i>
+     * properties (milliseconds, 0 disables) and starts the timing wheel that
+     * enforces them for every connection. Invalid values keep the defaults
+     */
+    private void configureTimeouts() {
+        this.timeouts = new ConnectionTimeouts(ConnectionTimeouts.DEFAULT_IDLE, ConnectionTimeouts.DEFAULT_HEADER,
+                ConnectionTimeouts.DEFAULT_BODY, ConnectionTimeouts.DEFAULT_WRITE);
+        if (this.config != null) {
+            try {
+                this.timeouts = new ConnectionTimeouts(
+                        Long.parseLong(this.config.getProperty(TIMEOUT_IDLE_PROP, "" + ConnectionTimeouts.DEFAULT_IDLE).trim()),
+                        Long.parseLong(this.config.getProperty(TIMEOUT_HEADER_PROP, "" + ConnectionTimeouts.DEFAULT_HEADER).trim()),
+                        Long.parseLong(this.config.getProperty(TIMEOUT_BODY_PROP, "" + ConnectionTimeouts.DEFAULT_BODY).trim()),
+                        Long.parseLong(this.config.getProperty(TIMEOUT_WRITE_PROP, "" + ConnectionTimeouts.DEFAULT_WRITE).trim())
+                );
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid server.timeout properties, keeping the default timeouts: " + e.getMessage());
+            }
+        }
+        // 512 ticks of 100 ms, a turn of the wheel every 51.2 seconds
+        this.timingWheel = new HashedTimingWheel(100, TimeUnit.MILLISECONDS, 512, "connection-timeouts");
+    }
+
+    /**
+     * Starts the {@link WriteLoop} that sends responses while the workers take the
+     * next requests. <i>server.write.buffer</i> is the most bytes of a response
+     * queued before its handler waits for the client; 0 keeps the worker writing
+     * to the socket itself
+     */
+    private void configureWriteLoop() {
+        this.writeBufferSize = 262144;
+        if (this.config != null) {
+            try {
+                this.writeBufferSize = Integer.parseInt(this.config.getProperty(WRITE_BUFFER_PROP, "262144").trim());
+            } catch (NumberFormatException e) {
+                logger.error("Invalid " + WRITE_BUFFER_PROP + ", keeping " + this.writeBufferSize + " bytes");
+            }
+        }
+        if (this.writeBufferSize <= 0) {
+            return;
+        }
+        try {
+            this.writeLoop = new WriteLoop("write-loop");
+        } catch (IOException e) {
+            logger.error("Could not start the write loop, responses are written by the workers: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets the {@link BufferPool} of the socket buffers. <i>server.buffers.retainedPerClass</i>
+     * is the most released buffers kept for reuse in each size class. In debug
+     * mode the pool records where buffers are acquired, leaks are logged when
+     * the server is closed
+     */
+    private void configureBufferPool() {
+        int retained = BufferPool.DEFAULT_RETAINED_PER_CLASS;
+        if (this.config != null) {
+            try {
+                retained = Integer.parseInt(this.config.getProperty(BUFFERS_RETAINED_PROP, "" + retained).trim());
+            } catch (NumberFormatException e) {
+                logger.error("Invalid " + BUFFERS_RETAINED_PROP + ", keeping " + retained + " buffers");
+            }
+        }
+        try {
+            BufferPool.setDefault(new BufferPool(retained, this.debugMode));
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid " + BUFFERS_RETAINED_PROP + ", keeping the default buffer pool: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a {@link WebrootWatcher} when <i>server.watch</i> is true. Changed
+     * paths are dropped from the static content cache and from a
+     * {@link ResourceMetadataCache} that the handler uses instead of reading file
+     * metadata on every request. An archive built by the server is packed again
+     * and swapped in; a prebuilt archive keeps serving its snapshot.
+     *
+     * <p>Changes are delivered after <i>server.watch.debounce</i> milliseconds without
+     * further events, so a deploy that touches many files repacks once.
+     *
+     * @param handler               - default handler
+     * @return running watcher, or null when not enabled or the web root cannot be watched
+     */
+    private WebrootWatcher configureWatcher(HttpHandler handler) {
+        if (this.config == null || !Boolean.parseBoolean(this.config.getProperty(WATCH_PROP, "false").trim())) {
+            if (this.cache != null || handler.getArchive() != null) {
+                logger.warn("Web root is not watched, changed files are not served until restart");
+            }
+            return null;
+        }
+        try {
+            final ResourceMetadataCache metadata = new ResourceMetadataCache(
+                    Integer.parseInt(this.config.getProperty(WATCH_MAX_MISSING_PROP, "10000").trim()));
+            final StaticContentCache cache = this.cache;
+            final WebrootArchive archive   = handler.getArchive();
+            final boolean repack           = archive != null && isArchiveBuilt();
+            WebrootWatcher watcher = new WebrootWatcher(new File(this.webRoot).toPath(),
+                    Long.parseLong(this.config.getProperty(WATCH_DEBOUNCE_PROP, "200").trim()),
+                    paths -> onWebrootChanged(paths, handler, metadata, cache, repack));
+            handler.setMetadataCache(metadata);
+            watcher.start();
+            logger.info("Watching " + watcher.getDirectoryCount() + " directories of " + watcher.getRoot() + " for changes");
+            if (archive != null && !repack) {
+                logger.warn("Web root archive " + archive.getFile() + " is prebuilt, changes to its files are not served until it is repacked");
+            }
+            return watcher;
+        } catch (IOException | NumberFormatException e) {
+            logger.error("Web root cannot be watched, changed files are not served until restart: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void onWebrootChanged(Set<Path> paths, HttpHandler handler, ResourceMetadataCache metadata,
+                                  StaticContentCache cache, boolean repack) {
+        WebrootArchive archive = handler.getArchive();
+        boolean archiveChanged = false;
+        for (Path path : paths) {
+            if (archive != null && isArchiveFile(path, archive.getFile())) {
+                continue; // the archive (or its temporary file) lives in the web root
+            }
+            String key = path.toString();
+            metadata.invalidate(key);
+            if (cache != null) {
+                cache.invalidateTree(key);
+            }
+            archiveChanged = true;
+            Utility.debug(this.debugMode, "Web root changed: " + key, logger);
+        }
+        if (repack && archiveChanged && archive != null) {
+            try {
+                packArchive(archive.getFile());
+                handler.setArchive(WebrootArchive.open(archive.getFile()));
+            } catch (IOException e) {
+                logger.error("Web root archive cannot be repacked, serving the previous one: " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isArchiveFile(Path path, File archiveFile) {
+        Path archivePath = archiveFile.toPath().toAbsolutePath().normalize();
+        path = path.normalize();
+        return path.getParent() != null && path.getParent().equals(archivePath.getParent())
+                && path.getFileName().toString().startsWith(archivePath.getFileName().toString());
+    }
+
+    /**
+     * @return static content cache, or null when caching is disabled or the server is not started
+     */
+    public StaticContentCache getCache() {
+        return cache;
+    }
+
     /**
      * Stops the server
      */
@@ -306,6 +766,19 @@ public class HttpServer extends BaseServer implements Closeable {
      */
     @Override
     public void close() {
+        if (this.watcher != null) {
+            this.watcher.close();
+        }
+        if (this.timingWheel != null) {
+            this.timingWheel.close();
+        }
+        if (this.writeLoop != null) {
+            this.writeLoop.close();
+        }
+        if (BufferPool.getDefault().isDebugMode()) {
+            int leaks = BufferPool.getDefault().reportLeaks();
+            Utility.debug(true, leaks + " socket buffers were not released", logger);
+        }
         try {
             this.server.close();
             this.propertiesStream.close();
@@ -330,6 +803,42 @@ public class HttpServer extends BaseServer implements Closeable {
         handlers.add(template);
     }
 
+    /**
+     * Adds a handler whose response does not depend on the request, e.g. an
+     * {@link com.egehurturk.renderers.HTMLRenderer} page that only uses
+     * configuration. Such handlers can be rendered into the web root once
+     * (see {@link #prerender()}) instead of on every request
+     * @param path    URL Path    (e.g. "/about")
+     * @param handler Handler     (any class that implements {@link Handler}
+     */
+    public void addPrerenderedHandler(String path, Handler handler) {
+        prerendered.add(new HandlerTemplate(MethodEnum.GET, path, handler));
+    }
+
+    /**
+     * Runs every handler added with {@link #addPrerenderedHandler(String, Handler)}
+     * once and writes its body into the web root (see {@link Prerenderer})
+     * @return handlers that could not be pre-rendered
+     */
+    public List<HandlerTemplate> prerender() {
+        String host = (this.serverHost == null) ? "localhost" : this.serverHost.getHostAddress();
+        Prerenderer prerenderer = new Prerenderer(new File(this.webRoot), host + ":" + this.serverPort);
+        List<HandlerTemplate> failed = new ArrayList<>();
+        for (HandlerTemplate template : this.prerendered) {
+            try {
+                if (prerenderer.render(template.path, template.handler) == null) {
+                    failed.add(template);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Cannot pre-render " + template.path + ": " + e.getMessage());
+                failed.add(template);
+            }
+        }
+        logger.info("Pre-rendered " + (this.prerendered.size() - failed.size()) + " of " + this.prerendered.size() +
+                " pages into " + this.webRoot);
+        return failed;
+    }
+
     // <<<<<<<<<<<<< CORE <<<<<<<<<<<<<<
 
 
@@ -0,0 +1,340 @@
+package com.egehurturk.httpd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Request body sent with {@code Content-Encoding: gzip} or {@code deflate},
+ * inflated while it is read, so a handler reads plain bytes and nothing is
+ * buffered beyond one chunk of compressed input.
+ *
+ * <ul>
+ *     <li>gzip (RFC 1952): one or more members, the CRC-32 and size of each checked</li>
+ *     <li>deflate: a zlib stream (RFC 1950) with its Adler-32 checked, or a raw
+ *         deflate stream (RFC 1951), which some clients send instead</li>
+ * </ul>
+ *
+ * <p>Inflating fails with an {@link IOException} once more than {@code limit}
+ * bytes come out, so a small body cannot expand into gigabytes (see
+ * {@link RequestLimits#getInflatedBodySize()}).
+ *
+ * <p>{@link Inflater}s hold native memory and are expensive to create, so they
+ * are taken from a pool of at most {@link #POOL_SIZE} and returned at the end
+ * of the body, when reading fails or on {@link #close()}. Nothing is read from
+ * the underlying stream before the first read.
+ */
+public class InflatingInputStream extends InputStream {
+
+    /**
+     * Most idle inflaters kept
+     */
+    public static final int POOL_SIZE = 64;
+
+    private static final ConcurrentLinkedQueue<Inflater> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC      = 2;
+    private static final int FEXTRA     = 4;
+    private static final int FNAME      = 8;
+    private static final int FCOMMENT   = 16;
+
+    private final InputStream in;
+    private final boolean gzip;
+    private final long limit;
+
+    private final byte[] buffer = new byte[8192];
+    private int pos;
+    private int lim;
+
+    private Inflater inflater;
+    private Checksum checksum;
+    private long memberSize;
+    private long inflated;
+    private boolean started;
+    private boolean eof;
+    private IOException failure;
+
+    private final byte[] single = new byte[1];
+
+    /**
+     * @param in                    - encoded body
+     * @param coding                - "gzip", "x-gzip" or "deflate", see {@link #supports(String)}
+     * @param limit                 - most bytes inflated
+     */
+    public InflatingInputStream(InputStream in, String coding, long limit) {
+        if (!supports(coding)) {
+            throw new IllegalArgumentException("Unsupported content coding " + coding);
+        }
+        this.in    = in;
+        this.gzip  = !coding.trim().equalsIgnoreCase("deflate");
+        this.limit = limit;
+    }
+
+    /**
+     * @param coding                - content coding, as in Content-Encoding
+     * @return                      - whether it can be inflated by this stream
+     */
+    public static boolean supports(String coding) {
+        String c = coding.trim();
+        return c.equalsIgnoreCase("gzip") || c.equalsIgnoreCase("x-gzip") || c.equalsIgnoreCase("deflate");
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(single, 0, 1) == -1) ? -1 : (single[0] & 0xff);
+    }
+
+    /**
+     * Inflates into {@code b}. A failure gives the inflater back to the pool
+     * and is thrown again by every later read
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (eof) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        try {
+            return inflate(b, off, len);
+        } catch (IOException e) {
+            failure = e;
+            release();
+            throw e;
+        }
+    }
+
+    private int inflate(byte[] b, int off, int len) throws IOException {
+        if (!started) {
+            started = true;
+            // an empty body stays empty
+            if (!startMember()) {
+                finish();
+                return -1;
+            }
+        }
+        while (true) {
+            int n;
+            try {
+                n = inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid " + (gzip ? "gzip" : "deflate") + " request body: " + e.getMessage());
+            }
+            if (n > 0) {
+                inflated += n;
+                if (inflated > limit) {
+                    throw new IOException("Inflated request body is larger than " + limit + " bytes");
+                }
+                if (checksum != null) {
+                    checksum.update(b, off, n);
+                }
+                memberSize += n;
+                return n;
+            }
+            if (inflater.finished()) {
+                pos = lim - inflater.getRemaining();
+                endMember();
+                // gzip members may follow each other, their contents concatenated
+                if (!gzip || !startMember()) {
+                    finish();
+                    return -1;
+                }
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("Request bodies deflated with a preset dictionary are not supported");
+            } else if (inflater.needsInput()) {
+                if (pos == lim && !fill()) {
+                    throw new EOFException("Unexpected end of " + (gzip ? "gzip" : "deflate") + " request body");
+                }
+                inflater.setInput(buffer, pos, lim - pos);
+                pos = lim;
+            }
+        }
+    }
+
+    /**
+     * Reads the header of the next gzip member, or the zlib header
+     * @return                      - false if the body ends instead
+     */
+    private boolean startMember() throws IOException {
+        if (pos == lim && !fill()) {
+            return false;
+        }
+        if (inflater == null) {
+            inflater = acquire();
+        } else {
+            inflater.reset();
+        }
+        memberSize = 0;
+        if (gzip) {
+            readGzipHeader();
+            checksum = new CRC32();
+        } else if (require(2) && isZlibHeader(buffer[pos] & 0xff, buffer[pos + 1] & 0xff)) {
+            if ((buffer[pos + 1] & 0x20) != 0) {
+                throw new ZipException("Request bodies deflated with a preset dictionary are not supported");
+            }
+            pos += 2;
+            checksum = new Adler32();
+        } else {
+            // raw deflate, without a header or checksum
+            checksum = null;
+        }
+        return true;
+    }
+
+    private void readGzipHeader() throws IOException {
+        if ((readByte() | (readByte() << 8)) != GZIP_MAGIC) {
+            throw new ZipException("Request body is not in gzip format");
+        }
+        if (readByte() != 8) {
+            throw new ZipException("Unsupported compression method in gzip request body");
+        }
+        int flags = readByte();
+        skipBytes(6); // modification time, extra flags, operating system
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readByte() | (readByte() << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) { }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) { }
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+    }
+
+    /**
+     * Reads and checks the trailer of the member, or of the zlib stream
+     */
+    private void endMember() throws IOException {
+        if (checksum == null) {
+            return;
+        }
+        if (gzip) {
+            long crc  = readInt(false);
+            long size = readInt(false);
+            if (crc != checksum.getValue() || size != (memberSize & 0xffffffffL)) {
+                throw new ZipException("Corrupt gzip request body, checksum or size does not match");
+            }
+        } else if (readInt(true) != checksum.getValue()) {
+            throw new ZipException("Corrupt deflate request body, checksum does not match");
+        }
+    }
+
+    private static boolean isZlibHeader(int cmf, int flg) {
+        return (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    private long readInt(boolean bigEndian) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            long b = readByte();
+            value = bigEndian ? (value << 8) | b : value | (b << (8 * i));
+        }
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        if (pos == lim && !fill()) {
+            throw new EOFException("Unexpected end of " + (gzip ? "gzip" : "deflate") + " request body");
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    private void skipBytes(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readByte();
+        }
+    }
+
+    /**
+     * Refills the buffer once it is used up
+     * @return                      - false at the end of the body
+     */
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n == -1) {
+            return false;
+        }
+        pos = 0;
+        lim = n;
+        return true;
+    }
+
+    /**
+     * Makes sure {@code n} bytes are buffered, moving the rest to the front if needed
+     * @return                      - false if the body ends before
+     */
+    private boolean require(int n) throws IOException {
+        if (lim - pos >= n) {
+            return true;
+        }
+        System.arraycopy(buffer, pos, buffer, 0, lim - pos);
+        lim -= pos;
+        pos = 0;
+        while (lim < n) {
+            int read = in.read(buffer, lim, buffer.length - lim);
+            if (read == -1) {
+                return false;
+            }
+            lim += read;
+        }
+        return true;
+    }
+
+    private void finish() {
+        eof = true;
+        release();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        in.close();
+    }
+
+    /**
+     * @return                      - idle inflaters in the pool
+     */
+    public static int idle() {
+        return pooled.get();
+    }
+
+    private static Inflater acquire() {
+        Inflater inflater = POOL.poll();
+        if (inflater == null) {
+            return new Inflater(true);
+        }
+        pooled.decrementAndGet();
+        return inflater;
+    }
+
+    private void release() {
+        if (inflater == null) {
+            return;
+        }
+        inflater.reset();
+        if (pooled.incrementAndGet() <= POOL_SIZE) {
+            POOL.offer(inflater);
+        } else {
+            pooled.decrementAndGet();
+            inflater.end();
+        }
+        inflater = null;
+    }
+}
@@ -0,0 +1,480 @@
+package com.egehurturk.httpd;
+
+import com.egehurturk.exceptions.MalformedMultipartException;
+import com.egehurturk.util.HeaderEnum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses a {@code multipart/form-data} body (RFC 7578) while it is read from
+ * the request, e.g. file uploads.
+ *
+ * <p>The body is read through one fixed buffer. Boundaries are found with a
+ * Boyer-Moore-Horspool search for {@code CRLF--boundary}, which skips up to
+ * the length of the delimiter per comparison; bytes that cannot be the start
+ * of a delimiter are handed to the part stream right away, so a part of any
+ * size passes through the same buffer. Two ways to read the parts:
+ * <ul>
+ *     <li>{@link #next()} returns the parts one by one as streams over the
+ *     body. Nothing is stored, heap use is constant whatever the size of the
+ *     upload. A part that is not read is skipped by the following {@code next()}</li>
+ *     <li>{@link #readAll()} stores every part: up to the memory threshold in
+ *     memory, larger parts in temporary files. The files are deleted by {@link #close()}</li>
+ * </ul>
+ *
+ * <code>
+ *     try (MultipartParser form = MultipartParser.of(request)) {
+ *         Part part;
+ *         while ((part = form.next()) != null) {
+ *             if (part.getFilename() != null) {
+ *                 Files.copy(part.getInputStream(), target);
+ *             }
+ *         }
+ *     }
+ * </code>
+ */
+public class MultipartParser implements Closeable {
+
+    /**
+     * Parts up to this many bytes are kept in memory by {@link #readAll()}, by default
+     */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+
+    /**
+     * Longest header section of a part
+     */
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int BUFFER_SIZE      = 16 * 1024;
+    private static final int MAX_BOUNDARY     = 70;
+
+    /** Delimiter position is not known for the buffered bytes */
+    private static final int UNKNOWN   = -2;
+    /** The buffered bytes do not contain the delimiter */
+    private static final int NOT_FOUND = -1;
+
+    private static volatile int defaultMemoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+    private static volatile File defaultTempDirectory;
+
+    private final InputStream in;
+    /** CRLF "--" boundary */
+    private final byte[] delimiter;
+    /** Horspool shift per byte value */
+    private final int[] shift = new int[256];
+    private final byte[] buffer;
+    private int head;
+    private int tail;
+    private int match = UNKNOWN;
+    private boolean eof;
+    private boolean finished;
+    /** Part being read, initially the preamble before the first boundary */
+    private PartInputStream current;
+
+    private int memoryThreshold = defaultMemoryThreshold;
+    private File tempDirectory  = defaultTempDirectory;
+    private final List<Part> spilled = new ArrayList<>();
+
+    /**
+     * @param request               - request with a {@code multipart/form-data} body
+     * @return                      - parser over the body stream of the request
+     * @throws MalformedMultipartException - if the request is not multipart or has no valid boundary
+     */
+    public static MultipartParser of(HttpRequest request) throws MalformedMultipartException {
+        return new MultipartParser(request.getBodyStream(), boundaryOf(request.header(HeaderEnum.CONTENT_TYPE)));
+    }
+
+    /**
+     * @param in                    - body
+     * @param boundary              - boundary, from the Content-Type of the body
+     */
+    public MultipartParser(InputStream in, String boundary) {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > MAX_BOUNDARY) {
+            throw new IllegalArgumentException("Boundary must be 1 to " + MAX_BOUNDARY + " characters");
+        }
+        this.in        = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer    = new byte[Math.max(BUFFER_SIZE, delimiter.length * 4)];
+        int m = delimiter.length;
+        for (int i = 0; i < shift.length; i++) {
+            shift[i] = m;
+        }
+        for (int i = 0; i < m - 1; i++) {
+            shift[delimiter[i] & 0xff] = m - 1 - i;
+        }
+        // the first boundary may start the body, without a CRLF before it
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        tail      = 2;
+        current   = new PartInputStream();
+    }
+
+    /**
+     * Defaults for new parsers, set from the server configuration
+     * @param memoryThreshold       - largest part kept in memory by {@link #readAll()}
+     * @param tempDirectory         - directory of the temporary files, null for the system default
+     */
+    public static void setDefaults(int memoryThreshold, File tempDirectory) {
+        defaultMemoryThreshold = memoryThreshold;
+        defaultTempDirectory   = tempDirectory;
+    }
+
+    public void setMemoryThreshold(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    public void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Skips what is left of the current part and reads the headers of the next one
+     * @return                      - next part, streamed from the body, or null after the last one
+     * @throws MalformedMultipartException - if the body breaks the multipart framing
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        current.drain();
+        int a = readByte();
+        int b = readByte();
+        if (a == '-' && b == '-') {
+            // closing boundary, the epilogue is ignored
+            finished = true;
+            return null;
+        }
+        while (a == ' ' || a == '\t') {
+            a = b;
+            b = readByte();
+        }
+        if (a != '\r' || b != '\n') {
+            throw new MalformedMultipartException("Expected a line break after the boundary");
+        }
+        HttpHeaders headers = readHeaders();
+        String disposition  = headers.get("Content-Disposition");
+        current = new PartInputStream();
+        return new Part(headers, parameter(disposition, "name"), parameter(disposition, "filename"), current);
+    }
+
+    /**
+     * Reads every part, keeping parts up to the memory threshold in memory and
+     * the others in temporary files
+     * @return                      - parts in the order they were sent
+     */
+    public List<Part> readAll() throws IOException {
+        List<Part> parts = new ArrayList<>();
+        Part part;
+        while ((part = next()) != null) {
+            store(part);
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /**
+     * Deletes the temporary files of the parts stored by {@link #readAll()}. The
+     * request body is not closed
+     */
+    @Override
+    public void close() {
+        for (Part part : spilled) {
+            part.delete();
+        }
+        spilled.clear();
+    }
+
+    private void store(Part part) throws IOException {
+        InputStream content = part.getInputStream();
+        ByteArrayOutputStream memory = new ByteArrayOutputStream(Math.min(memoryThreshold, 8192));
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = content.read(chunk)) != -1) {
+            if (memory.size() + n > memoryThreshold) {
+                spill(part, content, memory, chunk, n);
+                return;
+            }
+            memory.write(chunk, 0, n);
+        }
+        part.store(memory.toByteArray());
+    }
+
+    private void spill(Part part, InputStream content, ByteArrayOutputStream memory, byte[] chunk, int n) throws IOException {
+        File file = (tempDirectory == null)
+                ? Files.createTempFile("upload-", ".part").toFile()
+                : Files.createTempFile(tempDirectory.toPath(), "upload-", ".part").toFile();
+        part.store(file, 0);
+        spilled.add(part);
+        long size = memory.size();
+        try (OutputStream out = new FileOutputStream(file)) {
+            memory.writeTo(out);
+            do {
+                out.write(chunk, 0, n);
+                size += n;
+            } while ((n = content.read(chunk)) != -1);
+        }
+        part.store(file, size);
+    }
+
+    /**
+     * Reads part data up to the next delimiter, or skips it if {@code b} is null
+     * @return                      - bytes read, -1 once the delimiter is reached (it is consumed)
+     */
+    private int readPart(byte[] b, int off, int len) throws IOException {
+        while (true) {
+            if (match == UNKNOWN) {
+                match = search();
+            }
+            int available;
+            if (match >= 0) {
+                available = match - head;
+                if (available == 0) {
+                    head += delimiter.length;
+                    match = UNKNOWN;
+                    return -1;
+                }
+            } else {
+                // the last bytes may be the start of a delimiter that is not buffered yet
+                available = tail - head - (delimiter.length - 1);
+                if (available <= 0) {
+                    if (!fill()) {
+                        throw new MalformedMultipartException("Body ends before the closing boundary");
+                    }
+                    continue;
+                }
+            }
+            int n = Math.min(len, available);
+            if (b != null) {
+                System.arraycopy(buffer, head, b, off, n);
+            }
+            head += n;
+            return n;
+        }
+    }
+
+    /**
+     * Boyer-Moore-Horspool search for the delimiter in the buffered bytes
+     * @return                      - index of the delimiter, or {@link #NOT_FOUND}
+     */
+    private int search() {
+        int m    = delimiter.length;
+        int last = m - 1;
+        int i    = head;
+        while (i <= tail - m) {
+            int j = last;
+            while (buffer[i + j] == delimiter[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += shift[buffer[i + last] & 0xff];
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads more
+     * @return                      - false at the end of the body
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            if (match >= 0) {
+                match -= head;
+            }
+            tail -= head;
+            head  = 0;
+        }
+        int n = in.read(buffer, tail, buffer.length - tail);
+        if (n == -1) {
+            eof = true;
+            return false;
+        }
+        tail += n;
+        if (match == NOT_FOUND) {
+            match = UNKNOWN;
+        }
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        if (head == tail && !fill()) {
+            return -1;
+        }
+        return buffer[head++] & 0xff;
+    }
+
+    /**
+     * Reads header lines up to the empty line that ends them, as UTF-8
+     */
+    private HttpHeaders readHeaders() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int total = 0;
+        while (true) {
+            line.reset();
+            int c;
+            while ((c = readByte()) != '\n') {
+                if (c == -1) {
+                    throw new MalformedMultipartException("Body ends in the headers of a part");
+                }
+                if (++total > MAX_HEADER_BYTES) {
+                    throw new MalformedMultipartException("Headers of a part are longer than " + MAX_HEADER_BYTES + " bytes");
+                }
+                line.write(c);
+            }
+            String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            if (text.isEmpty()) {
+                return headers;
+            }
+            int colon = text.indexOf(':');
+            if (colon <= 0) {
+                throw new MalformedMultipartException("Invalid part header: " + text);
+            }
+            headers.add(text.substring(0, colon).trim(), text.substring(colon + 1));
+        }
+    }
+
+    /**
+     * @param contentType           - Content-Type of the request
+     * @return                      - boundary parameter of a multipart type
+     */
+    static String boundaryOf(String contentType) throws MalformedMultipartException {
+        if (contentType == null || !contentType.regionMatches(true, 0, "multipart/", 0, "multipart/".length())) {
+            throw new MalformedMultipartException("Request body is not multipart: " + contentType);
+        }
+        String boundary = parameter(contentType, "boundary");
+        if (boundary == null || boundary.isEmpty() || boundary.length() > MAX_BOUNDARY) {
+            throw new MalformedMultipartException("Multipart request without a valid boundary: " + contentType);
+        }
+        return boundary;
+    }
+
+    /**
+     * Finds a parameter of a header value like
+     * {@code form-data; name="file"; filename="a \"b\".txt"}. Quoted values may
+     * escape a quote with a backslash, other backslashes are kept (browsers send
+     * Windows paths unescaped)
+     * @return                      - value, null if the parameter is missing
+     */
+    static String parameter(String header, String wanted) {
+        if (header == null) {
+            return null;
+        }
+        int length = header.length();
+        int i = header.indexOf(';');
+        while (i != -1 && i < length) {
+            i++;
+            int equals = header.indexOf('=', i);
+            int semicolon = header.indexOf(';', i);
+            if (equals == -1 || (semicolon != -1 && semicolon < equals)) {
+                i = semicolon;
+                continue;
+            }
+            String name = header.substring(i, equals).trim();
+            i = equals + 1;
+            while (i < length && (header.charAt(i) == ' ' || header.charAt(i) == '\t')) {
+                i++;
+            }
+            String value;
+            if (i < length && header.charAt(i) == '"') {
+                StringBuilder quoted = new StringBuilder();
+                i++;
+                while (i < length && header.charAt(i) != '"') {
+                    char c = header.charAt(i);
+                    if (c == '\\' && i + 1 < length && header.charAt(i + 1) == '"') {
+                        c = '"';
+                        i++;
+                    }
+                    quoted.append(c);
+                    i++;
+                }
+                value = quoted.toString();
+                i = header.indexOf(';', i);
+            } else {
+                int end = header.indexOf(';', i);
+                value = header.substring(i, end == -1 ? length : end).trim();
+                i = end;
+            }
+            if (name.equalsIgnoreCase(wanted)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Content of the current part, up to the next delimiter. {@link #close()}
+     * does nothing, the rest of the part is skipped by {@link #next()}
+     */
+    private class PartInputStream extends InputStream {
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return (n == -1) ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done || current != this) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int n = readPart(b, off, len);
+            if (n == -1) {
+                done = true;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (done || current != this || n <= 0) {
+                return 0;
+            }
+            int skipped = readPart(null, 0, (int) Math.min(n, Integer.MAX_VALUE));
+            if (skipped == -1) {
+                done = true;
+                return 0;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            if (done || current != this) {
+                return 0;
+            }
+            int available = (match >= 0) ? match - head : tail - head - (delimiter.length - 1);
+            return Math.max(0, available);
+        }
+
+        void drain() throws IOException {
+            while (!done) {
+                if (readPart(null, 0, Integer.MAX_VALUE) == -1) {
+                    done = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.egehurturk.httpd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * One part of a {@code multipart/form-data} body, see {@link MultipartParser}.
+ *
+ * <p>A part returned by {@link MultipartParser#next()} is streamed: its
+ * content is read straight from the request body by {@link #getInputStream()},
+ * once, before the next part is requested. A part returned by
+ * {@link MultipartParser#readAll()} is stored: in memory if it is small,
+ * otherwise in a temporary file ({@link #isInMemory()}, {@link #getFile()}),
+ * and can be read any number of times until the parser is closed.
+ */
+public class Part {
+
+    private final HttpHeaders headers;
+    private final String name;
+    private final String filename;
+
+    private InputStream stream;
+    private byte[] content;
+    private File file;
+    private long size = -1;
+
+    Part(HttpHeaders headers, String name, String filename, InputStream stream) {
+        this.headers  = headers;
+        this.name     = name;
+        this.filename = filename;
+        this.stream   = stream;
+    }
+
+    /**
+     * Keeps the content in memory
+     */
+    void store(byte[] content) {
+        this.content = content;
+        this.size    = content.length;
+        this.stream  = null;
+    }
+
+    /**
+     * Keeps the content in a temporary file
+     */
+    void store(File file, long size) {
+        this.file   = file;
+        this.size   = size;
+        this.stream = null;
+    }
+
+    /**
+     * @return                      - headers of the part, e.g. Content-Disposition and Content-Type
+     */
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return                      - form field name, from Content-Disposition. Null if there is none
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return                      - file name sent by the client, null for fields that are not files.
+     *                                Never use it as a path as it is
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return                      - Content-Type of the part, {@code text/plain} if it has none (RFC 7578)
+     */
+    public String getContentType() {
+        String type = headers.get("Content-Type");
+        return (type == null) ? "text/plain" : type;
+    }
+
+    /**
+     * @return                      - content. For a streamed part the stream ends at the next boundary
+     *                                and is valid until the next part is requested
+     */
+    public InputStream getInputStream() throws IOException {
+        if (stream != null) {
+            return stream;
+        }
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    /**
+     * @return                      - content decoded as UTF-8. Reads a streamed part to its end
+     */
+    public String getString() throws IOException {
+        if (content != null) {
+            return new String(content, StandardCharsets.UTF_8);
+        }
+        try (InputStream in = getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                out.write(chunk, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return                      - size in bytes of a stored part, -1 for a streamed part
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isInMemory() {
+        return content != null;
+    }
+
+    /**
+     * @return                      - temporary file of a stored part that was too large for memory, else null.
+     *                                Deleted when the parser is closed; move it to keep it
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Deletes the temporary file, if there is one
+     */
+    public void delete() {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException ignored) {
+                // the temporary directory is cleaned eventually
+            }
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.egehurturk.httpd;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Decoded parameters of a query string ({@code application/x-www-form-urlencoded}).
+ *
+ * <p>Names and values are percent-decoded as UTF-8 and {@code +} stands for a
+ * space. Malformed escapes (e.g. {@code %zz} or a cut off {@code %4}) are kept
+ * as they were sent. A key may appear more than once ({@code ?tag=a&tag=b}),
+ * {@link #get(String)} returns the first value and {@link #getAll(String)}
+ * every value in order. A key without {@code =} has the empty value.
+ *
+ * <p>Parameters are kept in two flat arrays in the order they were sent and
+ * found by a linear scan, which beats hashing for the few parameters a URL has.
+ */
+public class QueryParameters {
+
+    private static final String[] NONE = new String[0];
+
+    private final String[] names;
+    private final String[] values;
+    private final int size;
+
+    /**
+     * @param query                 - raw query string, without the leading {@code ?}. May be null
+     */
+    public QueryParameters(String query) {
+        if (query == null || query.isEmpty()) {
+            this.names  = NONE;
+            this.values = NONE;
+            this.size   = 0;
+            return;
+        }
+        int count = 1;
+        for (int i = 0; i < query.length(); i++) {
+            if (query.charAt(i) == '&') {
+                count++;
+            }
+        }
+        String[] names  = new String[count];
+        String[] values = new String[count];
+        int size  = 0;
+        int start = 0;
+        while (start <= query.length()) {
+            int end = query.indexOf('&', start);
+            if (end == -1) {
+                end = query.length();
+            }
+            if (end > start) {
+                int separator = query.indexOf('=', start);
+                if (separator == -1 || separator > end) {
+                    names[size]  = decode(query, start, end);
+                    values[size] = "";
+                } else {
+                    names[size]  = decode(query, start, separator);
+                    values[size] = decode(query, separator + 1, end);
+                }
+                size++;
+            }
+            start = end + 1;
+        }
+        this.names  = names;
+        this.values = values;
+        this.size   = size;
+    }
+
+    /**
+     * @param name                  - decoded name
+     * @return                      - first value, null if the parameter was not sent
+     */
+    public String get(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name                  - decoded name
+     * @return                      - every value in order, empty if the parameter was not sent
+     */
+    public List<String> getAll(String name) {
+        List<String> all = null;
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                if (all == null) {
+                    all = new ArrayList<>(2);
+                }
+                all.add(values[i]);
+            }
+        }
+        return (all == null) ? Collections.<String>emptyList() : all;
+    }
+
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * @return                      - number of parameters, a repeated key counted every time
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param action                - consumer of every name and value, in order
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(names[i], values[i]);
+        }
+    }
+
+    /**
+     * Decodes {@code s[start, end)}. Substrings without {@code %} and {@code +}
+     * are returned as they are
+     */
+    static String decode(String s, int start, int end) {
+        int i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+') {
+                break;
+            }
+            i++;
+        }
+        if (i == end) {
+            return s.substring(start, end);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(end - start);
+        appendUtf8(bytes, s, start, i);
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '+') {
+                bytes.write(' ');
+                i++;
+            } else if (c == '%' && hex(s, i + 1, end) >= 0 && hex(s, i + 2, end) >= 0) {
+                bytes.write((hex(s, i + 1, end) << 4) | hex(s, i + 2, end));
+                i += 3;
+            } else {
+                int next = i + 1;
+                while (next < end && s.charAt(next) != '%' && s.charAt(next) != '+') {
+                    next++;
+                }
+                appendUtf8(bytes, s, i, next);
+                i = next;
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return value of the hex digit at {@code index}, -1 if it is not one or is past {@code end}
+     */
+    private static int hex(String s, int index, int end) {
+        if (index >= end) {
+            return -1;
+        }
+        char c = s.charAt(index);
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static void appendUtf8(ByteArrayOutputStream bytes, String s, int start, int end) {
+        if (start < end) {
+            byte[] encoded = s.substring(start, end).getBytes(StandardCharsets.UTF_8);
+            bytes.write(encoded, 0, encoded.length);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.egehurturk.httpd;
+
+/**
+ * Largest request {@link HttpRequest#fromStream(java.io.InputStream)} accepts. Limits
+ * are checked while the bytes arrive, so a client cannot make the parser hold
+ * more than a limit's worth of a line in memory or keep reading a line that
+ * never ends:
+ *
+ * <ul>
+ *     <li>request line longer than {@link #getRequestLineLength()} bytes: 414 URI Too Long</li>
+ *     <li>header section longer than {@link #getHeaderBytes()} bytes, or more than
+ *         {@link #getHeaderCount()} header lines: 431 Request Header Fields Too Large</li>
+ *     <li>body longer than {@link #getBodySize()} bytes: 413 Payload Too Large. A larger
+ *         Content-Length is rejected before the body is read; a body without one
+ *         fails to read once it passes the limit</li>
+ *     <li>body inflated from gzip or deflate to more than {@link #getInflatedBodySize()}
+ *         bytes: fails to read once it passes the limit, see {@link InflatingInputStream}</li>
+ * </ul>
+ *
+ * Lengths exclude line terminators of the request line and include the CRLF of
+ * every header line.
+ */
+public class RequestLimits {
+
+    public static final int DEFAULT_REQUEST_LINE_LENGTH = 8192;
+    public static final int DEFAULT_HEADER_BYTES        = 32768;
+    public static final int DEFAULT_HEADER_COUNT        = 100;
+    public static final long DEFAULT_BODY_SIZE          = 1L << 30;
+    public static final long DEFAULT_INFLATED_BODY_SIZE = 64L << 20;
+
+    private static volatile RequestLimits defaults = new RequestLimits(DEFAULT_REQUEST_LINE_LENGTH,
+            DEFAULT_HEADER_BYTES, DEFAULT_HEADER_COUNT, DEFAULT_BODY_SIZE, DEFAULT_INFLATED_BODY_SIZE);
+
+    private final int requestLineLength;
+    private final int headerBytes;
+    private final int headerCount;
+    private final long bodySize;
+    private final long inflatedBodySize;
+
+    /**
+     * Limits with the default {@link #getInflatedBodySize()}
+     * @param requestLineLength     - longest request line, in bytes
+     * @param headerBytes           - longest header section, in bytes
+     * @param headerCount           - most header lines
+     * @param bodySize              - longest body, in bytes
+     */
+    public RequestLimits(int requestLineLength, int headerBytes, int headerCount, long bodySize) {
+        this(requestLineLength, headerBytes, headerCount, bodySize, DEFAULT_INFLATED_BODY_SIZE);
+    }
+
+    /**
+     * @param requestLineLength     - longest request line, in bytes
+     * @param headerBytes           - longest header section, in bytes
+     * @param headerCount           - most header lines
+     * @param bodySize              - longest body, in bytes
+     * @param inflatedBodySize      - longest body after a gzip or deflate content coding is removed, in bytes
+     */
+    public RequestLimits(int requestLineLength, int headerBytes, int headerCount, long bodySize, long inflatedBodySize) {
+        if (requestLineLength <= 0 || headerBytes <= 0 || headerCount <= 0 || bodySize < 0 || inflatedBodySize < 0) {
+            throw new IllegalArgumentException("Request limits must be positive");
+        }
+        this.requestLineLength = requestLineLength;
+        this.headerBytes       = headerBytes;
+        this.headerCount       = headerCount;
+        this.bodySize          = bodySize;
+        this.inflatedBodySize  = inflatedBodySize;
+    }
+
+    /**
+     * @return                      - limits of requests read from sockets, set from the server configuration
+     */
+    public static RequestLimits getDefault() {
+        return defaults;
+    }
+
+    public static void setDefault(RequestLimits limits) {
+        defaults = limits;
+    }
+
+    public int getRequestLineLength() {
+        return requestLineLength;
+    }
+
+    public int getHeaderBytes() {
+        return headerBytes;
+    }
+
+    public int getHeaderCount() {
+        return headerCount;
+    }
+
+    public long getBodySize() {
+        return bodySize;
+    }
+
+    public long getInflatedBodySize() {
+        return inflatedBodySize;
+    }
+}
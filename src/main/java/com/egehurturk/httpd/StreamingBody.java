@@ -0,0 +1,19 @@
+package com.egehurturk.httpd;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Response body that is produced while it is sent, e.g. a rendered
+ * template. {@link HttpResponse#send()} passes a chunked stream over the client
+ * socket, so the body never has to exist as a whole in memory.
+ */
+public interface StreamingBody {
+
+    /**
+     * Writes the body. Must not close the stream
+     * @param out                   - body stream
+     * @throws IOException          - if the body cannot be produced or the client is gone
+     */
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,33 @@
+package com.egehurturk.readers;
+
+import com.egehurturk.util.Utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the file through a {@link FileChannel} into a direct {@link ByteBuffer}.
+ * The kernel copies straight into native memory, which skips the
+ * temporary direct buffer the JDK uses internally for heap reads.
+ */
+public class DirectReadStrategy implements FileReadStrategy {
+
+    @Override
+    public String getName() {
+        return "direct";
+    }
+
+    @Override
+    public ByteBuffer read(File file) throws IOException {
+        try (RandomAccessFile rFile = new RandomAccessFile(file, "r");
+             FileChannel channel = rFile.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Utility.checkedLength(file, channel.size()));
+            Utility.readFully(channel, buffer);
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.egehurturk.readers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Strategy for loading the contents of a file served from the web root.
+ * {@link com.egehurturk.handlers.HttpHandler} does not care whether the
+ * bytes come from a heap array, a direct buffer or a memory mapping, it
+ * only needs a {@link ByteBuffer} that holds the whole file.
+ *
+ * <p>Which implementation is the fastest depends on the disk, the
+ * operating system page cache and the file size, so the server does not
+ * hard-code one. {@link ReadStrategyCalibrator} measures every strategy
+ * at startup and stores the winner for each file size bucket in a
+ * {@link ReadStrategySelector}.
+ *
+ * <p>Implementations must be thread safe, one instance is shared by all
+ * connection threads.
+ */
+public interface FileReadStrategy {
+
+    /**
+     * @return short name of the strategy used in logs and configuration (e.g. "heap")
+     */
+    String getName();
+
+    /**
+     * Reads the whole file.
+     *
+     * @param file              - file to be read
+     * @return                  - buffer positioned at 0 whose limit is the file length
+     * @throws IOException      - IO operation error
+     */
+    ByteBuffer read(File file) throws IOException;
+
+    /**
+     * Writes the whole file to {@code target}. The default implementation
+     * reads the file with {@link #read(File)} and drains the buffer, strategies
+     * that can move bytes without going through a buffer override this.
+     *
+     * @param file              - file to be written
+     * @param target            - destination channel
+     * @return                  - number of bytes written
+     * @throws IOException      - IO operation error
+     */
+    default long transferTo(File file, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = read(file);
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += target.write(buffer);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,33 @@
+package com.egehurturk.readers;
+
+import com.egehurturk.util.Utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the file through a {@link FileChannel} into a heap {@link ByteBuffer}
+ * that is exactly as large as the file. The backing array can be handed to
+ * {@link com.egehurturk.httpd.HttpResponse} without another copy.
+ */
+public class HeapReadStrategy implements FileReadStrategy {
+
+    @Override
+    public String getName() {
+        return "heap";
+    }
+
+    @Override
+    public ByteBuffer read(File file) throws IOException {
+        try (RandomAccessFile rFile = new RandomAccessFile(file, "r");
+             FileChannel channel = rFile.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(Utility.checkedLength(file, channel.size()));
+            Utility.readFully(channel, buffer);
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.egehurturk.readers;
+
+import com.egehurturk.util.Utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps the file read-only into memory. The mapping stays valid after the
+ * channel is closed and pages are loaded lazily by the operating system,
+ * so this usually pays off only for large files.
+ */
+public class MappedReadStrategy implements FileReadStrategy {
+
+    @Override
+    public String getName() {
+        return "mmap";
+    }
+
+    @Override
+    public ByteBuffer read(File file) throws IOException {
+        try (RandomAccessFile rFile = new RandomAccessFile(file, "r");
+             FileChannel channel = rFile.getChannel()) {
+            long size = Utility.checkedLength(file, channel.size());
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+}
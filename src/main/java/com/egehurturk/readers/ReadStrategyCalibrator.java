@@ -0,0 +1,176 @@
+package com.egehurturk.readers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures every {@link FileReadStrategy} on the disk the server actually
+ * runs on and builds a {@link ReadStrategySelector} out of the fastest
+ * strategy of each size bucket.
+ *
+ * <p>For each bucket one sample file is written into a temporary directory
+ * (next to the web root when possible, so that it lives on the same disk).
+ * Every strategy then reads the sample several times with
+ * {@link FileReadStrategy#read(File)}, the call that serves requests, and
+ * drains the buffer into a sink that touches the bytes; the median time wins.
+ * Samples are deleted when calibration ends.
+ *
+ * <p>The samples were just written, so the reads are served by the page cache
+ * and calibration measures the warm path of a file that is requested often,
+ * not the disk. Calibration is started by
+ * {@link com.egehurturk.httpd.HttpServer#start()} only when
+ * {@code server.io.strategy} is {@code auto}.
+ */
+public class ReadStrategyCalibrator {
+
+    protected static Logger logger = LogManager.getLogger(ReadStrategyCalibrator.class);
+
+    /**
+     * Sample file size for every bucket in {@link ReadStrategySelector#BUCKET_LIMITS}
+     * and the unbounded bucket
+     */
+    private static final long[] SAMPLE_SIZES = {
+            2L * 1024,
+            32L * 1024,
+            512L * 1024,
+            8L * 1024 * 1024,
+            32L * 1024 * 1024
+    };
+
+    /**
+     * Upper bound of bytes read by a single strategy for a single bucket.
+     * Keeps calibration of the large buckets short.
+     */
+    private static final long BYTES_PER_MEASUREMENT = 64L * 1024 * 1024;
+    private static final int MIN_ITERATIONS = 5;
+    private static final int MAX_ITERATIONS = 2000;
+
+    private final FileReadStrategy[] candidates;
+
+    public ReadStrategyCalibrator() {
+        this(ReadStrategySelector.all());
+    }
+
+    /**
+     * @param candidates            - strategies to measure
+     */
+    public ReadStrategyCalibrator(FileReadStrategy[] candidates) {
+        this.candidates = candidates;
+    }
+
+    /**
+     * Runs the calibration
+     * @param nearDirectory         - directory whose disk should be measured, usually the web root.
+     *                                The samples are placed in its parent directory, or in the system
+     *                                temporary directory when the parent is not writable
+     * @return                      - selector with the fastest strategy per bucket
+     * @throws IOException          - sample files could not be created
+     */
+    public ReadStrategySelector calibrate(File nearDirectory) throws IOException {
+        Path workDir = createWorkDirectory(nearDirectory);
+        FileReadStrategy[] winners = new FileReadStrategy[ReadStrategySelector.BUCKETS];
+        try {
+            for (int bucket = 0; bucket < ReadStrategySelector.BUCKETS; bucket++) {
+                File sample = writeSample(workDir, SAMPLE_SIZES[bucket]);
+                try {
+                    winners[bucket] = fastest(sample);
+                } finally {
+                    Files.deleteIfExists(sample.toPath());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(workDir);
+        }
+        return new ReadStrategySelector(winners);
+    }
+
+    private FileReadStrategy fastest(File sample) throws IOException {
+        int iterations = (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, BYTES_PER_MEASUREMENT / sample.length()));
+        DrainChannel sink = new DrainChannel();
+        FileReadStrategy best = candidates[0];
+        long bestNanos = Long.MAX_VALUE;
+
+        for (FileReadStrategy strategy : candidates) {
+            // warm up page cache and JIT
+            for (int i = 0; i < MIN_ITERATIONS; i++) {
+                sink.write(strategy.read(sample));
+            }
+            long[] timings = new long[iterations];
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                sink.write(strategy.read(sample));
+                timings[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(timings);
+            long median = timings[iterations / 2];
+            logger.debug("Read strategy " + strategy.getName() + " took " + median + " ns for " + sample.length() + " bytes");
+            if (median < bestNanos) {
+                bestNanos = median;
+                best = strategy;
+            }
+        }
+        return best;
+    }
+
+    private Path createWorkDirectory(File nearDirectory) throws IOException {
+        File parent = nearDirectory.getAbsoluteFile().getParentFile();
+        if (parent != null && parent.canWrite()) {
+            try {
+                return Files.createTempDirectory(parent.toPath(), ".banzai-calibration");
+            } catch (IOException e) {
+                logger.warn("Cannot create calibration directory next to " + nearDirectory + ", using temporary directory");
+            }
+        }
+        return Files.createTempDirectory("banzai-calibration");
+    }
+
+    private File writeSample(Path workDir, long size) throws IOException {
+        File sample = Files.createTempFile(workDir, "sample", ".bin").toFile();
+        byte[] chunk = new byte[64 * 1024];
+        new Random(size).nextBytes(chunk);
+        try (RandomAccessFile rFile = new RandomAccessFile(sample, "rw")) {
+            for (long written = 0; written < size; written += chunk.length) {
+                rFile.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+            rFile.getFD().sync();
+        }
+        return sample;
+    }
+
+    /**
+     * Copies everything it receives into a scratch array, so lazily loaded
+     * buffers (memory mappings) are really read.
+     */
+    private static class DrainChannel implements WritableByteChannel {
+        private final byte[] scratch = new byte[64 * 1024];
+
+        @Override
+        public int write(ByteBuffer src) {
+            int total = 0;
+            while (src.hasRemaining()) {
+                int n = Math.min(scratch.length, src.remaining());
+                src.get(scratch, 0, n);
+                total += n;
+            }
+            return total;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
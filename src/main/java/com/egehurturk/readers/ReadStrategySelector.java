@@ -0,0 +1,115 @@
+package com.egehurturk.readers;
+
+import java.util.Arrays;
+
+/**
+ * Maps file sizes to the {@link FileReadStrategy} that should be used to read them.
+ * File sizes are grouped in buckets, bucket {@code i} holds files whose length is
+ * less than or equal to {@code BUCKET_LIMITS[i]}, the last bucket holds everything else.
+ *
+ * <p>Instances are immutable and safe to share between connection threads.
+ */
+public class ReadStrategySelector {
+
+    /**
+     * Inclusive upper bounds (in bytes) of the size buckets. The last bucket
+     * has no bound.
+     */
+    public static final long[] BUCKET_LIMITS = {
+            4L * 1024,              // <= 4 KB
+            64L * 1024,             // <= 64 KB
+            1024L * 1024,           // <= 1 MB
+            16L * 1024 * 1024       // <= 16 MB
+    };
+
+    /**
+     * Number of buckets, {@link #BUCKET_LIMITS} plus the unbounded bucket
+     */
+    public static final int BUCKETS = BUCKET_LIMITS.length + 1;
+
+    /**
+     * Chosen strategy, indexed by bucket
+     */
+    private final FileReadStrategy[] strategies;
+
+    /**
+     * @param strategies            - one strategy per bucket, length must be {@link #BUCKETS}
+     */
+    public ReadStrategySelector(FileReadStrategy[] strategies) {
+        if (strategies.length != BUCKETS) {
+            throw new IllegalArgumentException("Expected " + BUCKETS + " strategies, one for each size bucket, got " + strategies.length);
+        }
+        this.strategies = Arrays.copyOf(strategies, BUCKETS);
+    }
+
+    /**
+     * Selector that uses the same strategy for every file size
+     * @param strategy              - strategy for all buckets
+     * @return                      - new selector
+     */
+    public static ReadStrategySelector fixed(FileReadStrategy strategy) {
+        FileReadStrategy[] all = new FileReadStrategy[BUCKETS];
+        Arrays.fill(all, strategy);
+        return new ReadStrategySelector(all);
+    }
+
+    /**
+     * Finds the strategy by its name ("heap", "direct", "mmap", "transfer")
+     * @param name                  - strategy name
+     * @return                      - strategy or null if there is no strategy with that name
+     */
+    public static FileReadStrategy byName(String name) {
+        for (FileReadStrategy strategy : all()) {
+            if (strategy.getName().equalsIgnoreCase(name.trim())) {
+                return strategy;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return every available strategy
+     */
+    public static FileReadStrategy[] all() {
+        return new FileReadStrategy[] {
+                new HeapReadStrategy(),
+                new DirectReadStrategy(),
+                new MappedReadStrategy(),
+                new TransferReadStrategy()
+        };
+    }
+
+    /**
+     * @param size                  - file length in bytes
+     * @return                      - bucket index of the size
+     */
+    public static int bucketOf(long size) {
+        for (int i = 0; i < BUCKET_LIMITS.length; i++) {
+            if (size <= BUCKET_LIMITS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_LIMITS.length;
+    }
+
+    /**
+     * @param size                  - file length in bytes
+     * @return                      - strategy to read a file of that length
+     */
+    public FileReadStrategy select(long size) {
+        return strategies[bucketOf(size)];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ReadStrategySelector{");
+        for (int i = 0; i < BUCKETS; i++) {
+            builder.append(i < BUCKET_LIMITS.length ? "<=" + BUCKET_LIMITS[i] : ">" + BUCKET_LIMITS[BUCKET_LIMITS.length - 1])
+                    .append('=').append(strategies[i].getName());
+            if (i < BUCKETS - 1) {
+                builder.append(", ");
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,80 @@
+package com.egehurturk.readers;
+
+import com.egehurturk.util.Utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Uses {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets
+ * the operating system move the bytes (e.g. {@code sendfile} on Linux) when the
+ * target is a socket or file channel.
+ *
+ * <p>{@link #read(File)} is only provided to satisfy the interface: it transfers
+ * into a buffer as large as the file, one copy like {@link HeapReadStrategy}. The
+ * handler serves files from such buffers, so this strategy saves no copies there.
+ */
+public class TransferReadStrategy implements FileReadStrategy {
+
+    @Override
+    public String getName() {
+        return "transfer";
+    }
+
+    @Override
+    public ByteBuffer read(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Utility.checkedLength(file, file.length()));
+        transferTo(file, new BufferChannel(buffer));
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public long transferTo(File file, WritableByteChannel target) throws IOException {
+        try (RandomAccessFile rFile = new RandomAccessFile(file, "r");
+             FileChannel channel = rFile.getChannel()) {
+            long size = channel.size(), position = 0;
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Channel that fills a buffer, the file must not grow while it is transferred
+     */
+    private static class BufferChannel implements WritableByteChannel {
+        private final ByteBuffer buffer;
+
+        BufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (src.remaining() > buffer.remaining()) {
+                throw new IOException("File grew while it was read");
+            }
+            int n = src.remaining();
+            buffer.put(src);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
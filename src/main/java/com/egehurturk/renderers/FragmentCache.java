@@ -0,0 +1,126 @@
+package com.egehurturk.renderers;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendered output of templates, stored under a key chosen by the caller
+ * for a limited time. A key should contain every input of the fragment, e.g.
+ * <code>"profile:" + username</code>, so a hit is always the right output.
+ *
+ * <p>The cache holds at most {@link #maxBytes} bytes. When a fragment does
+ * not fit, expired fragments are dropped first; if it still does not fit it
+ * is not cached.
+ */
+public class FragmentCache {
+
+    private static final FragmentCache DEFAULT = new FragmentCache(8 * 1024 * 1024);
+
+    private final long maxBytes;
+    private final ConcurrentHashMap<String, Entry> fragments = new ConcurrentHashMap<>();
+    private long storedBytes;
+
+    /**
+     * @param maxBytes              - maximum bytes of all fragments
+     */
+    public FragmentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return cache shared by every {@link HTMLRenderer}
+     */
+    public static FragmentCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param key                   - fragment key
+     * @return                      - rendered bytes, or null if not cached or expired. Must not be modified
+     */
+    public byte[] get(String key) {
+        Entry entry = fragments.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            remove(key, entry);
+            return null;
+        }
+        return entry.bytes;
+    }
+
+    /**
+     * @param key                   - fragment key
+     * @param bytes                 - rendered bytes, not copied
+     * @param ttl                   - time to live
+     * @param unit                  - unit of ttl
+     * @return                      - true if cached
+     */
+    public boolean put(String key, byte[] bytes, long ttl, TimeUnit unit) {
+        long now = System.nanoTime();
+        Entry entry = new Entry(bytes, now + unit.toNanos(ttl));
+        synchronized (this) {
+            if (storedBytes + bytes.length > maxBytes) {
+                purgeExpired(now);
+            }
+            Entry previous = fragments.get(key);
+            long freed = (previous == null) ? 0 : previous.bytes.length;
+            if (storedBytes - freed + bytes.length > maxBytes) {
+                return false;
+            }
+            fragments.put(key, entry);
+            storedBytes += bytes.length - freed;
+        }
+        return true;
+    }
+
+    public synchronized void invalidate(String key) {
+        Entry removed = fragments.remove(key);
+        if (removed != null) {
+            storedBytes -= removed.bytes.length;
+        }
+    }
+
+    public synchronized void clear() {
+        fragments.clear();
+        storedBytes = 0;
+    }
+
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+        if (fragments.remove(key, entry)) {
+            storedBytes -= entry.bytes.length;
+        }
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Map.Entry<String, Entry>> it = fragments.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.isExpired(now)) {
+                it.remove();
+                storedBytes -= entry.bytes.length;
+            }
+        }
+    }
+
+    private static class Entry {
+        final byte[] bytes;
+        final long expiresAt;
+
+        Entry(byte[] bytes, long expiresAt) {
+            this.bytes     = bytes;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
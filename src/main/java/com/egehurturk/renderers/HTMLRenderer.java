@@ -1,22 +1,24 @@
 package com.egehurturk.renderers;
 
 import com.egehurturk.handlers.ResponseType;
+import com.egehurturk.httpd.HttpRequest;
 import com.egehurturk.httpd.HttpResponse;
 import com.egehurturk.httpd.HttpResponseBuilder;
+import com.egehurturk.resolvers.ContentNegotiator;
+import com.egehurturk.util.HeaderEnum;
 import com.egehurturk.util.Pair;
 import com.egehurturk.util.StatusEnum;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
 
 /**
  * E.g.
@@ -27,8 +29,10 @@ import java.util.stream.Stream;
  *      <b>Age:</b> [@age]<br />
  *      <b>Location:</b> [@location]<br />
  *      </code>
+ * Values are escaped automatically, see {@link Template} for the syntax.
  */
 public class HTMLRenderer implements ResponseType {
+    protected static Logger logger = LogManager.getLogger(HTMLRenderer.class);
     // HTML file
     private final String htmlPath;
     private StatusEnum status;
@@ -37,8 +41,17 @@ public class HTMLRenderer implements ResponseType {
     public final String INDEX = "index.html";
     public final String _404_NOT_FOUND = "404.html";
     public final String _NOT_IMPLEMENTED = "501.html";
-    // Variables (Flask style)
-    private HashMap<String, String> vars = new HashMap<String, String>();
+    public final String _INTERNAL_ERROR = "500.html";
+    // Compiled templates, shared by every renderer
+    private TemplateCache templates = TemplateCache.getDefault();
+    // Rendered output by cache key, see cache(String, long)
+    private FragmentCache fragments = FragmentCache.getDefault();
+    private String cacheKey;
+    private long cacheTtlMillis;
+    // Language of the template variant, null without language variants
+    private String language;
+    // Variables (Flask style): Strings, Iterables and maps for [@each], nested renderers
+    private HashMap<String, Object> vars = new HashMap<String, Object>();
 
     /**
      * Basic Constructor
@@ -49,50 +62,131 @@ public class HTMLRenderer implements ResponseType {
         this.writer = writer;
     }
 
-    private Pair<File, InputStream> prepareOutput() {
-        File outputFile = new File(this.htmlPath);
+    /**
+     * Renders the language variant of a template that the client prefers by its
+     * {@code Accept-Language} header. The variant of language {@code tr} of
+     * {@code www/index.html} is {@code www/index.tr.html}; the first language is
+     * the default and uses {@code htmlPath} itself. When the client accepts none
+     * of the languages, or the variant file does not exist, the default is rendered
+     * @param htmlPath              - html file path of the default language
+     * @param writer                - response writer
+     * @param request               - request
+     * @param languages             - languages with a variant, the default first, e.g. "en", "tr"
+     */
+    public HTMLRenderer(String htmlPath, PrintWriter writer, HttpRequest request, String... languages) {
+        if (languages.length == 0) {
+            throw new IllegalArgumentException("At least the default language is required");
+        }
+        String language = ContentNegotiator.getDefault().negotiateLanguage(
+                request.header(HeaderEnum.ACCEPT_LANGUAGE), languages);
+        String path = htmlPath;
+        if (language == null) {
+            language = languages[0];
+        } else if (!language.equals(languages[0])) {
+            String variant = variantPath(htmlPath, language);
+            if (new File(variant).isFile()) {
+                path = variant;
+            } else {
+                language = languages[0];
+            }
+        }
+        this.htmlPath = path;
+        this.writer   = writer;
+        this.language = language;
+    }
+
+    /**
+     * @return {@code dir/name.language.ext} for {@code dir/name.ext}
+     */
+    static String variantPath(String htmlPath, String language) {
+        int dot   = htmlPath.lastIndexOf('.');
+        int slash = Math.max(htmlPath.lastIndexOf('/'), htmlPath.lastIndexOf(File.separatorChar));
+        if (dot <= slash) {
+            return htmlPath + "." + language;
+        }
+        return htmlPath.substring(0, dot) + "." + language + htmlPath.substring(dot);
+    }
+
+    /**
+     * Looks up the compiled template of {@link #htmlPath} and the templates it
+     * includes, so that a broken template is answered with 500 before the status is sent
+     * @return template, or a stream of the error page with {@link #status} set accordingly
+     */
+    private Pair<Template, InputStream> prepareOutput() {
+        Template template = null;
         InputStream stream = null;
-        if (!outputFile.exists()) {
+        try {
+            template = this.templates.get(new File(this.htmlPath));
+            if (template != null) {
+                template.checkIncludes();
+            }
+        } catch (IOException e) {
+            logger.error("Cannot read template " + this.htmlPath + ": " + e.getMessage());
+            this.status = StatusEnum._500_INTERNAL_ERROR;
+            stream = ClassLoader.getSystemClassLoader().getResourceAsStream(_INTERNAL_ERROR);
+            return new Pair<>(null, stream);
+        }
+        if (template == null) {
             this.status = StatusEnum._404_NOT_FOUND;
             stream = ClassLoader.getSystemClassLoader().getResourceAsStream(_404_NOT_FOUND);
         } else {
             this.status = StatusEnum._200_OK;
         }
-        return new Pair<>(outputFile, stream);
+        return new Pair<>(template, stream);
     }
 
+    /**
+     * Renders the template with the variables set by {@link #setVar(String, String)}.
+     * The template file is parsed once and cached until it changes
+     * @return rendered HTML, or the error page if the template cannot be read
+     */
     public String render() {
-        File outputfile;
-        InputStream stream;
-        String html;
-        Pair<File, InputStream> pair = prepareOutput();
+        Pair<Template, InputStream> pair = prepareOutput();
         if (pair.getSecond() != null) {
-            stream = pair.getSecond();
-            html = new String(inputStreamToBuffer(stream));
-        } else {
-            outputfile = pair.getFirst();
-            Path outputPath = outputfile.toPath();
-            html = read(outputPath);
-
-            for (Map.Entry<String, String> entry : this.vars.entrySet()) {
-                String tagToReplace = "[@" + entry.getKey() + "]";
-                html = html.replace(tagToReplace, entry.getValue());
-            }
+            return new String(inputStreamToBuffer(pair.getSecond()), StandardCharsets.UTF_8);
+        }
+        if (this.cacheKey == null) {
+            return pair.getFirst().render(this.vars);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeTo(pair, out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot render " + this.htmlPath + ": " + e.getMessage(), e);
         }
-        return html;
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
     }
 
-    private static String read(Path path) {
-        StringBuilder contentBuilder = new StringBuilder();
+    /**
+     * Renders the template into a stream as UTF-8, without building the page
+     * in memory. Nested renderers set with {@link #setVar(String, HTMLRenderer)}
+     * are rendered in place
+     * @param out                   - output, e.g. a response body
+     * @throws IOException          - if writing fails
+     */
+    public void renderTo(OutputStream out) throws IOException {
+        writeTo(prepareOutput(), out);
+    }
 
-        try (Stream<String> stream = Files.lines( path, StandardCharsets.UTF_8)) {
-            stream.forEach(contentBuilder::append);
+    private void writeTo(Pair<Template, InputStream> pair, OutputStream out) throws IOException {
+        if (pair.getSecond() != null) {
+            out.write(inputStreamToBuffer(pair.getSecond()));
+            return;
         }
-        catch (IOException e) {
-            e.printStackTrace();
+        if (this.cacheKey == null) {
+            pair.getFirst().renderTo(out, this.vars);
+            return;
         }
-
-        return contentBuilder.toString();
+        // every language variant is cached on its own
+        String key = (this.language == null) ? this.cacheKey : this.cacheKey + "@" + this.language;
+        byte[] cached = this.fragments.get(key);
+        if (cached == null) {
+            ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+            pair.getFirst().renderTo(rendered, this.vars);
+            cached = rendered.toByteArray();
+            this.fragments.put(key, cached, this.cacheTtlMillis, TimeUnit.MILLISECONDS);
+        }
+        out.write(cached);
     }
 
 
@@ -103,22 +197,95 @@ public class HTMLRenderer implements ResponseType {
                 ZoneId.of("GMT")
                 )
         );
-        String contentLang = "en_US", mimeType = "text/html", body = this.render();
-        return new HttpResponseBuilder().factory("HTTP/1.1", this.status.STATUS_CODE, this.status.MESSAGE, body.getBytes(), this.writer,
-                mimeType, dateHeader, "Banzai", contentLang, body.getBytes().length
-        );
+        String contentLang = (this.language == null) ? "en_US" : this.language, mimeType = "text/html";
+        // the status is known once the template is looked up, the page is rendered while it is sent
+        final Pair<Template, InputStream> pair = prepareOutput();
+        HttpResponseBuilder builder = new HttpResponseBuilder();
+        if (this.language != null) {
+            builder.setHeader(HeaderEnum.VARY.NAME, "Accept-Language");
+        }
+        return builder
+                .scheme("HTTP/1.1")
+                .code(this.status.STATUS_CODE)
+                .message(this.status.MESSAGE)
+                .body(out -> writeTo(pair, out))
+                .setStream(this.writer)
+                .setHeader(HeaderEnum.CONTENT_TYPE.NAME, mimeType)
+                .setHeader(HeaderEnum.DATE.NAME, dateHeader)
+                .setHeader(HeaderEnum.SERVER.NAME, "Banzai")
+                .setHeader(HeaderEnum.CONTENT_LANGUAGE.NAME, contentLang)
+                .build();
     }
 
 
     public String getHtmlPath() {
         return htmlPath;
     }
+    /**
+     * @return language of the rendered variant, null if the renderer has no language variants
+     */
+    public String getLanguage() {
+        return language;
+    }
     public String getVar(String varArg) {
-        return vars.get(varArg);
+        Object value = vars.get(varArg);
+        return (value instanceof String) ? (String) value : null;
     }
+    /**
+     * Sets a variable. It is HTML escaped for its place in the template, use
+     * {@link #setRawVar(String, String)} or <code>[@!name]</code> for trusted markup
+     */
     public void setVar(String varArgInHtml, String varArg) {
         this.vars.put(varArgInHtml, varArg);
     }
+    /**
+     * Sets a value for <code>[@each]</code> and <code>[@if]</code> blocks, e.g. a List
+     * of Maps. See {@link Template} for the syntax
+     * @param varArgInHtml          - variable name
+     * @param value                 - value, written with toString() when used as <code>[@name]</code>
+     */
+    public void setVar(String varArgInHtml, Object value) {
+        this.vars.put(varArgInHtml, value);
+    }
+    /**
+     * Sets HTML that is written without escaping. Only for trusted markup
+     * @param varArgInHtml          - variable name
+     * @param html                  - markup
+     */
+    public void setRawVar(String varArgInHtml, String html) {
+        final byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        this.vars.put(varArgInHtml, (Template.Fragment) out -> out.write(bytes));
+    }
+    /**
+     * Renders another template in place of a variable, e.g. the content of a page layout.
+     * It is rendered straight into this renderer's output, never as a separate String
+     * @param varArgInHtml          - variable name
+     * @param renderer              - nested renderer
+     */
+    public void setVar(String varArgInHtml, HTMLRenderer renderer) {
+        this.vars.put(varArgInHtml, (Template.Fragment) renderer::renderTo);
+    }
+    public StatusEnum getStatus() {
+        return status;
+    }
+    public void setTemplateCache(TemplateCache templates) {
+        this.templates = templates;
+    }
+    public void setFragmentCache(FragmentCache fragments) {
+        this.fragments = fragments;
+    }
+    /**
+     * Serves the output of this renderer from the {@link FragmentCache} for a while
+     * instead of rendering it, also when it is nested in another renderer
+     * @param key                   - cache key, must identify every input (template and variables)
+     * @param ttlMillis             - how long the output is served from the cache
+     * @return this renderer
+     */
+    public HTMLRenderer cache(String key, long ttlMillis) {
+        this.cacheKey       = key;
+        this.cacheTtlMillis = ttlMillis;
+        return this;
+    }
 
     private byte[] inputStreamToBuffer(InputStream is) {
         ByteArrayOutputStream _buf = new ByteArrayOutputStream();
@@ -0,0 +1,112 @@
+package com.egehurturk.renderers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Escapes values for one HTML context with a lookup table indexed by byte.
+ *
+ * <p>Values are escaped after UTF-8 encoding. Every character that needs
+ * escaping is ASCII and bytes of multi-byte UTF-8 sequences are all above
+ * 0x7F, so the table never matches inside a character. Runs of safe bytes are
+ * written with one bulk write, and a value without special characters is
+ * written as it is.
+ */
+public final class HtmlEscaper {
+
+    /**
+     * Text between tags
+     */
+    public static final HtmlEscaper TEXT = new HtmlEscaper("&<>");
+    /**
+     * Attribute value in double or single quotes
+     */
+    public static final HtmlEscaper ATTRIBUTE = new HtmlEscaper("&<>\"'");
+    /**
+     * Anywhere else inside a tag, e.g. an unquoted attribute value. Also escapes
+     * everything that ends an unquoted value
+     */
+    public static final HtmlEscaper UNQUOTED_ATTRIBUTE = new HtmlEscaper("&<>\"'`= \t\n\r\f");
+
+    /**
+     * Replacement bytes by ASCII code, null for bytes that are written unchanged
+     */
+    private final byte[][] replacements = new byte[128][];
+
+    private HtmlEscaper(String special) {
+        for (int i = 0; i < special.length(); i++) {
+            char c = special.charAt(i);
+            replacements[c] = entity(c).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static String entity(char c) {
+        switch (c) {
+            case '&':  return "&amp;";
+            case '<':  return "&lt;";
+            case '>':  return "&gt;";
+            case '"':  return "&quot;";
+            default:   return "&#" + (int) c + ";";
+        }
+    }
+
+    /**
+     * Writes a value as escaped UTF-8
+     * @param value                 - value
+     * @param out                   - output
+     * @throws IOException          - if writing fails
+     */
+    public void write(String value, OutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        write(bytes, 0, bytes.length, out);
+    }
+
+    /**
+     * Writes UTF-8 bytes escaped
+     * @param bytes                 - UTF-8 encoded value
+     * @param off                   - offset
+     * @param len                   - length
+     * @param out                   - output
+     * @throws IOException          - if writing fails
+     */
+    public void write(byte[] bytes, int off, int len, OutputStream out) throws IOException {
+        int end = off + len, safe = off;
+        for (int i = off; i < end; i++) {
+            int b = bytes[i];
+            if (b >= 0 && replacements[b] != null) {
+                if (i > safe) {
+                    out.write(bytes, safe, i - safe);
+                }
+                out.write(replacements[b]);
+                safe = i + 1;
+            }
+        }
+        if (end > safe) {
+            out.write(bytes, safe, end - safe);
+        }
+    }
+
+    /**
+     * @param value                 - value
+     * @return                      - escaped value, the same instance if nothing needs escaping
+     */
+    public String escape(String value) {
+        boolean needed = false;
+        for (int i = 0; i < value.length() && !needed; i++) {
+            char c = value.charAt(i);
+            needed = c < 128 && replacements[c] != null;
+        }
+        if (!needed) {
+            return value;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length() + 16);
+        try {
+            write(value, out);
+        } catch (IOException e) {
+            // not thrown by ByteArrayOutputStream
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
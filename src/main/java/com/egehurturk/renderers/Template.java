@@ -0,0 +1,707 @@
+package com.egehurturk.renderers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTML template compiled once into an immutable render plan. A compiled
+ * template can be rendered concurrently against different models.
+ *
+ * <p>Syntax:
+ * <ul>
+ *     <li><code>[@name]</code>: value of a variable, HTML escaped. <code>[@user.name]</code> looks up
+ *     <code>name</code> in the map that <code>user</code> refers to. <code>[@!name]</code>
+ *     writes the value without escaping</li>
+ *     <li><code>[@each item in items]...[@end]</code>: renders the body for every
+ *     element of an {@link Iterable} (or array), with <code>item</code> bound to it</li>
+ *     <li><code>[@if name]...[@else]...[@end]</code>: renders the first body if the value
+ *     is truthy, otherwise the optional second body. <code>[@if !name]</code> negates</li>
+ *     <li><code>[@include header.html]</code>: renders another template (a partial) in place,
+ *     with the same variables</li>
+ *     <li><code>[@layout base.html]</code>: renders the layout instead, with the output of
+ *     this template bound to its <code>[@content]</code> variable</li>
+ * </ul>
+ * Included and layout paths are relative to the directory of the template, and
+ * loaded through the {@link TemplateCache} that compiled it, so they are
+ * compiled once and picked up again when their files change.
+ *
+ * <p>Values are escaped for the context of the placeholder: {@link HtmlEscaper#TEXT}
+ * between tags, {@link HtmlEscaper#ATTRIBUTE} in quoted attribute values and
+ * {@link HtmlEscaper#UNQUOTED_ATTRIBUTE} anywhere else inside a tag. The context is
+ * tracked over the literal text at compile time; since every table escapes
+ * <code>&amp;</code>, <code>&lt;</code> and <code>&gt;</code>, a misjudged context
+ * (e.g. a <code>&lt;</code> in text) can only escape more, never less.
+ *
+ * <p>A value is falsy when it is null, {@link Boolean#FALSE}, an empty String,
+ * Collection, Map or Iterable, or an empty array. Variables without a value are
+ * written unchanged, e.g. <code>[@missing]</code>. Values that are {@link Fragment}s
+ * write themselves unescaped (nested templates, raw HTML), everything else is
+ * written as escaped <code>toString()</code>.
+ *
+ * <p>Names are split and literals are encoded to UTF-8 at compile time, so
+ * rendering is a walk over the plan with map lookups only.
+ */
+public class Template {
+
+    public static final String OPEN  = "[@";
+    public static final String CLOSE = "]";
+
+    /**
+     * Value that writes itself into the output, e.g. a nested template
+     */
+    public interface Fragment {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Variable that a layout receives the output of the template in
+     */
+    public static final String CONTENT = "content";
+
+    private static final String[] CONTENT_PATH = {CONTENT};
+
+    /**
+     * Maximum depth of nested includes and layouts, guards against cycles
+     */
+    public static final int MAX_INCLUDE_DEPTH = 16;
+
+    private final Node[] plan;
+    private final int literalLength;
+    /**
+     * Layout of this template, null if it has none
+     */
+    private final Include layout;
+
+    private Template(Node[] plan, int literalLength, Include layout) {
+        this.plan          = plan;
+        this.literalLength = literalLength;
+        this.layout        = layout;
+    }
+
+    /**
+     * Compiles a template. Tags that are not valid variables or directives
+     * (e.g. <code>[@ x]</code>) are kept as literal text.
+     *
+     * @param source                - template source
+     * @return                      - compiled template
+     * @throws IllegalArgumentException - if blocks are not balanced or a directive is malformed
+     */
+    public static Template compile(String source) {
+        return new Compiler(source, null, TemplateCache.getDefault()).compile();
+    }
+
+    /**
+     * Compiles a template loaded from a file
+     *
+     * @param source                - template source
+     * @param directory             - directory of the template file, includes are resolved against it
+     * @param loader                - cache that includes and layouts are loaded from
+     * @return                      - compiled template
+     * @throws IllegalArgumentException - if blocks are not balanced or a directive is malformed
+     */
+    public static Template compile(String source, File directory, TemplateCache loader) {
+        return new Compiler(source, directory, loader).compile();
+    }
+
+    /**
+     * Renders the template into a String
+     * @param model                 - variable name to value
+     * @return                      - rendered text
+     */
+    public String render(Map<String, ?> model) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(literalLength + 64);
+        try {
+            renderTo(out, model);
+        } catch (IOException e) {
+            // only thrown by fragments
+            throw new IllegalStateException("Cannot render template: " + e.getMessage(), e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Renders the template into a stream as UTF-8, without building it in memory
+     *
+     * @param out                   - output, e.g. a chunked response body
+     * @param model                 - variable name to value
+     * @throws IOException          - if writing fails
+     */
+    public void renderTo(OutputStream out, Map<String, ?> model) throws IOException {
+        render(new Context(model), out);
+    }
+
+    private void render(Context context, OutputStream out) throws IOException {
+        if (layout == null) {
+            renderPlan(context, out);
+            return;
+        }
+        Template layoutTemplate = layout.load(context);
+        // the plan sees the content of an enclosing layout, not its own, or a
+        // layout that has a layout itself would render its content forever
+        Object outer = context.resolve(CONTENT_PATH);
+        context.push(CONTENT, (Fragment) sink -> {
+            context.push(CONTENT, outer);
+            try {
+                renderPlan(context, sink);
+            } finally {
+                context.pop();
+            }
+        });
+        try {
+            layoutTemplate.render(context, out);
+        } finally {
+            context.pop();
+            context.includes--;
+        }
+    }
+
+    private void renderPlan(Context context, OutputStream out) throws IOException {
+        for (Node node : plan) {
+            node.render(context, out);
+        }
+    }
+
+    /**
+     * @return true if the template renders inside a layout
+     */
+    public boolean hasLayout() {
+        return layout != null;
+    }
+
+    /**
+     * Loads every template this one includes or renders inside, and theirs, so a
+     * missing file or a cycle is found before anything is written
+     * @throws IOException          - if a template cannot be loaded, includes itself or
+     *                                templates nest deeper than {@link #MAX_INCLUDE_DEPTH}
+     */
+    public void checkIncludes() throws IOException {
+        checkIncludes(new ArrayList<File>());
+    }
+
+    private void checkIncludes(List<File> enclosing) throws IOException {
+        List<Include> includes = new ArrayList<>();
+        collectIncludes(plan, includes);
+        if (layout != null) {
+            includes.add(layout);
+        }
+        for (Include include : includes) {
+            if (enclosing.contains(include.file)) {
+                throw new IOException("Templates include each other in a cycle at " + include.file);
+            }
+            if (enclosing.size() >= MAX_INCLUDE_DEPTH) {
+                throw new IOException("Templates include each other more than " + MAX_INCLUDE_DEPTH + " levels deep at " + include.file);
+            }
+            Template template = include.loader.get(include.file);
+            if (template == null) {
+                throw new IOException("Included template " + include.file + " does not exist");
+            }
+            enclosing.add(include.file);
+            template.checkIncludes(enclosing);
+            enclosing.remove(enclosing.size() - 1);
+        }
+    }
+
+    private static void collectIncludes(Node[] nodes, List<Include> includes) {
+        for (Node node : nodes) {
+            if (node instanceof Include) {
+                includes.add((Include) node);
+            } else if (node instanceof Each) {
+                collectIncludes(((Each) node).body, includes);
+            } else if (node instanceof If) {
+                collectIncludes(((If) node).then, includes);
+                collectIncludes(((If) node).otherwise, includes);
+            }
+        }
+    }
+
+    /**
+     * @return variable names in order of appearance, with duplicates and including those in blocks
+     */
+    public String[] getNames() {
+        List<String> names = new ArrayList<>();
+        collectNames(plan, names);
+        return names.toArray(new String[0]);
+    }
+
+    private static void collectNames(Node[] nodes, List<String> names) {
+        for (Node node : nodes) {
+            if (node instanceof Variable) {
+                names.add(((Variable) node).name);
+            } else if (node instanceof Each) {
+                collectNames(((Each) node).body, names);
+            } else if (node instanceof If) {
+                collectNames(((If) node).then, names);
+                collectNames(((If) node).otherwise, names);
+            }
+        }
+    }
+
+    static boolean isTruthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() > 0;
+        }
+        if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        }
+        if (value instanceof Map) {
+            return !((Map<?, ?>) value).isEmpty();
+        }
+        if (value instanceof Iterable) {
+            return ((Iterable<?>) value).iterator().hasNext();
+        }
+        if (value instanceof Object[]) {
+            return ((Object[]) value).length > 0;
+        }
+        return true;
+    }
+
+    /**
+     * Model plus the variables bound by enclosing <code>each</code> blocks and
+     * layouts, innermost last
+     */
+    private static class Context {
+        final Map<String, ?> model;
+        String[] names  = new String[4];
+        Object[] values = new Object[4];
+        int depth;
+        int includes;
+
+        Context(Map<String, ?> model) {
+            this.model = model;
+        }
+
+        void push(String name, Object value) {
+            if (depth == names.length) {
+                names  = Arrays.copyOf(names, depth * 2);
+                values = Arrays.copyOf(values, depth * 2);
+            }
+            names[depth]  = name;
+            values[depth] = value;
+            depth++;
+        }
+
+        void pop() {
+            values[--depth] = null;
+        }
+
+        Object resolve(String[] path) {
+            Object value = null;
+            boolean bound = false;
+            for (int i = depth - 1; i >= 0; i--) {
+                if (names[i].equals(path[0])) {
+                    value = values[i];
+                    bound = true;
+                    break;
+                }
+            }
+            if (!bound) {
+                value = model.get(path[0]);
+            }
+            for (int i = 1; i < path.length && value != null; i++) {
+                value = (value instanceof Map) ? ((Map<?, ?>) value).get(path[i]) : null;
+            }
+            return value;
+        }
+    }
+
+    private interface Node {
+        void render(Context context, OutputStream out) throws IOException;
+    }
+
+    private static class Literal implements Node {
+        final byte[] bytes;
+
+        Literal(String text) {
+            this.bytes = text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void render(Context context, OutputStream out) throws IOException {
+            out.write(bytes);
+        }
+    }
+
+    private static class Variable implements Node {
+        final String name;
+        final String[] path;
+        final byte[] tag;
+        /**
+         * Null for raw variables
+         */
+        final HtmlEscaper escaper;
+
+        Variable(String name, String tag, HtmlEscaper escaper) {
+            this.name    = name;
+            this.path    = split(name);
+            this.tag     = tag.getBytes(StandardCharsets.UTF_8);
+            this.escaper = escaper;
+        }
+
+        @Override
+        public void render(Context context, OutputStream out) throws IOException {
+            Object value = context.resolve(path);
+            if (value == null) {
+                out.write(tag);
+            } else if (value instanceof Fragment) {
+                ((Fragment) value).writeTo(out);
+            } else if (escaper == null) {
+                out.write(value.toString().getBytes(StandardCharsets.UTF_8));
+            } else {
+                escaper.write(value.toString(), out);
+            }
+        }
+    }
+
+    private static class Each implements Node {
+        final String item;
+        final String[] path;
+        final Node[] body;
+
+        Each(String item, String path, Node[] body) {
+            this.item = item;
+            this.path = split(path);
+            this.body = body;
+        }
+
+        @Override
+        public void render(Context context, OutputStream out) throws IOException {
+            Object value = context.resolve(path);
+            if (value instanceof Object[]) {
+                for (Object element : (Object[]) value) {
+                    renderBody(context, element, out);
+                }
+            } else if (value instanceof Iterable) {
+                for (Object element : (Iterable<?>) value) {
+                    renderBody(context, element, out);
+                }
+            }
+        }
+
+        private void renderBody(Context context, Object element, OutputStream out) throws IOException {
+            context.push(item, element);
+            try {
+                for (Node node : body) {
+                    node.render(context, out);
+                }
+            } finally {
+                context.pop();
+            }
+        }
+    }
+
+    private static class If implements Node {
+        final String[] path;
+        final boolean negate;
+        final Node[] then;
+        final Node[] otherwise;
+
+        If(String path, boolean negate, Node[] then, Node[] otherwise) {
+            this.path      = split(path);
+            this.negate    = negate;
+            this.then      = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public void render(Context context, OutputStream out) throws IOException {
+            Node[] branch = (isTruthy(context.resolve(path)) != negate) ? then : otherwise;
+            for (Node node : branch) {
+                node.render(context, out);
+            }
+        }
+    }
+
+    private static class Include implements Node {
+        final File file;
+        final TemplateCache loader;
+
+        Include(File file, TemplateCache loader) {
+            this.file   = file;
+            this.loader = loader;
+        }
+
+        /**
+         * Loads the included template and counts the include depth, the caller decrements it
+         */
+        Template load(Context context) throws IOException {
+            if (context.includes >= MAX_INCLUDE_DEPTH) {
+                throw new IOException("Templates include each other more than " + MAX_INCLUDE_DEPTH + " levels deep at " + file);
+            }
+            Template template = loader.get(file);
+            if (template == null) {
+                throw new IOException("Included template " + file + " does not exist");
+            }
+            context.includes++;
+            return template;
+        }
+
+        @Override
+        public void render(Context context, OutputStream out) throws IOException {
+            Template template = load(context);
+            try {
+                template.render(context, out);
+            } finally {
+                context.includes--;
+            }
+        }
+    }
+
+    private static String[] split(String name) {
+        List<String> parts = new ArrayList<>();
+        int start = 0, dot;
+        while ((dot = name.indexOf('.', start)) != -1) {
+            parts.add(name.substring(start, dot));
+            start = dot + 1;
+        }
+        parts.add(name.substring(start));
+        return parts.toArray(new String[0]);
+    }
+
+    /**
+     * Builds the plan with a stack of open blocks
+     */
+    private static class Compiler {
+        private final String source;
+        private final File directory;
+        private final TemplateCache loader;
+        private final List<Block> open = new ArrayList<>();
+        private int literalLength;
+        private Include layout;
+        /**
+         * HTML context at the end of the literal text so far
+         */
+        private int state = DATA;
+
+        private static final int DATA = 0, TAG = 1, DOUBLE_QUOTED = 2, SINGLE_QUOTED = 3;
+
+        Compiler(String source, File directory, TemplateCache loader) {
+            this.source    = source;
+            this.directory = directory;
+            this.loader    = loader;
+        }
+
+        Template compile() {
+            Block root = new Block(null, null, null, false);
+            open.add(root);
+            StringBuilder literal = new StringBuilder();
+            int from = 0, tagStart;
+            while ((tagStart = source.indexOf(OPEN, from)) != -1) {
+                int contentStart = tagStart + OPEN.length();
+                int close        = source.indexOf(CLOSE, contentStart);
+                if (close == -1) {
+                    break;
+                }
+                String content = source.substring(contentStart, close);
+                literal.append(source, from, tagStart);
+                advance(from, tagStart);
+                from = close + CLOSE.length();
+                if (!directive(content, literal, tagStart)) {
+                    if (isName(content)) {
+                        flush(literal);
+                        current().nodes.add(new Variable(content, OPEN + content + CLOSE, escaper()));
+                    } else if (content.startsWith("!") && isName(content.substring(1))) {
+                        flush(literal);
+                        current().nodes.add(new Variable(content.substring(1), OPEN + content + CLOSE, null));
+                    } else {
+                        // not a tag, keep "[@" and rescan after it
+                        literal.append(OPEN);
+                        from = contentStart;
+                    }
+                }
+            }
+            literal.append(source, from, source.length());
+            flush(literal);
+            if (open.size() > 1) {
+                throw new IllegalArgumentException("Block [@" + current().kind + " " + current().path + "] is not closed with [@end]");
+            }
+            return new Template(root.nodes.toArray(new Node[0]), literalLength, layout);
+        }
+
+        /**
+         * @return true if the tag is a block directive and was handled
+         */
+        private boolean directive(String content, StringBuilder literal, int offset) {
+            String[] words = words(content);
+            if (words.length == 0) {
+                return false;
+            }
+            if (words[0].equals("each") && words.length == 4 && words[2].equals("in")
+                    && isName(words[1]) && words[1].indexOf('.') == -1 && isName(words[3])) {
+                flush(literal);
+                open.add(new Block("each", words[1], words[3], false));
+                return true;
+            }
+            if (words[0].equals("include") && words.length == 2) {
+                flush(literal);
+                current().nodes.add(new Include(new File(directory, words[1]), loader));
+                return true;
+            }
+            if (words[0].equals("layout") && words.length == 2) {
+                if (open.size() > 1 || layout != null) {
+                    throw new IllegalArgumentException("[@layout] at offset " + offset + " must appear once, outside of blocks");
+                }
+                flush(literal);
+                layout = new Include(new File(directory, words[1]), loader);
+                return true;
+            }
+            if (words[0].equals("if") && words.length == 2) {
+                boolean negate = words[1].startsWith("!");
+                String path = negate ? words[1].substring(1) : words[1];
+                if (isName(path)) {
+                    flush(literal);
+                    open.add(new Block("if", null, path, negate));
+                    return true;
+                }
+            }
+            if (content.equals("else")) {
+                Block block = current();
+                if (!"if".equals(block.kind) || block.then != null) {
+                    throw new IllegalArgumentException("[@else] at offset " + offset + " is not inside an [@if] block");
+                }
+                flush(literal);
+                block.then  = block.nodes;
+                block.nodes = new ArrayList<>();
+                return true;
+            }
+            if (content.equals("end")) {
+                if (open.size() == 1) {
+                    throw new IllegalArgumentException("[@end] at offset " + offset + " has no open block");
+                }
+                flush(literal);
+                Block block = open.remove(open.size() - 1);
+                Node[] body = block.nodes.toArray(new Node[0]);
+                if (block.kind.equals("each")) {
+                    current().nodes.add(new Each(block.item, block.path, body));
+                } else if (block.then == null) {
+                    current().nodes.add(new If(block.path, block.negate, body, new Node[0]));
+                } else {
+                    current().nodes.add(new If(block.path, block.negate, block.then.toArray(new Node[0]), body));
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Follows tags and quoted attribute values over literal source text
+         */
+        private void advance(int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = source.charAt(i);
+                switch (state) {
+                    case DATA:
+                        if (c == '<') {
+                            state = TAG;
+                        }
+                        break;
+                    case TAG:
+                        if (c == '>') {
+                            state = DATA;
+                        } else if (c == '"') {
+                            state = DOUBLE_QUOTED;
+                        } else if (c == '\'') {
+                            state = SINGLE_QUOTED;
+                        }
+                        break;
+                    case DOUBLE_QUOTED:
+                        if (c == '"') {
+                            state = TAG;
+                        }
+                        break;
+                    default:
+                        if (c == '\'') {
+                            state = TAG;
+                        }
+                }
+            }
+        }
+
+        private HtmlEscaper escaper() {
+            switch (state) {
+                case DATA:
+                    return HtmlEscaper.TEXT;
+                case TAG:
+                    return HtmlEscaper.UNQUOTED_ATTRIBUTE;
+                default:
+                    return HtmlEscaper.ATTRIBUTE;
+            }
+        }
+
+        private Block current() {
+            return open.get(open.size() - 1);
+        }
+
+        private void flush(StringBuilder literal) {
+            if (literal.length() > 0) {
+                current().nodes.add(new Literal(literal.toString()));
+                literalLength += literal.length();
+                literal.setLength(0);
+            }
+        }
+
+        private static String[] words(String content) {
+            List<String> words = new ArrayList<>();
+            int i = 0, n = content.length();
+            while (i < n) {
+                while (i < n && content.charAt(i) == ' ') {
+                    i++;
+                }
+                int start = i;
+                while (i < n && content.charAt(i) != ' ') {
+                    i++;
+                }
+                if (i > start) {
+                    words.add(content.substring(start, i));
+                }
+            }
+            return words.toArray(new String[0]);
+        }
+
+        /**
+         * A variable name is non-empty and has no whitespace, <code>[</code>, <code>!</code>,
+         * leading, trailing or double dots
+         */
+        private static boolean isName(String content) {
+            if (content.isEmpty() || content.startsWith(".") || content.endsWith(".") || content.contains("..")) {
+                return false;
+            }
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                if (Character.isWhitespace(c) || c == '[' || c == '!') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Block {
+        final String kind;
+        final String item;
+        final String path;
+        final boolean negate;
+        List<Node> nodes = new ArrayList<>();
+        List<Node> then;
+
+        Block(String kind, String item, String path, boolean negate) {
+            this.kind   = kind;
+            this.item   = item;
+            this.path   = path;
+            this.negate = negate;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.egehurturk.renderers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled {@link Template}s by file path. A template is compiled on the first
+ * request and again only when the modification time or length of its file
+ * changes, so rendering costs one <code>stat</code> instead of reading and
+ * parsing the file.
+ */
+public class TemplateCache {
+
+    private static final TemplateCache DEFAULT = new TemplateCache();
+
+    private final ConcurrentHashMap<String, Entry> templates = new ConcurrentHashMap<>();
+
+    /**
+     * @return cache shared by every {@link HTMLRenderer}
+     */
+    public static TemplateCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the compiled template of a file, compiling it if it is not
+     * cached or the file changed since
+     *
+     * @param file                  - template file, UTF-8 encoded
+     * @return                      - compiled template, or null if the file does not exist
+     * @throws IOException          - if the file cannot be read
+     */
+    public Template get(File file) throws IOException {
+        long lastModified = file.lastModified();
+        if (lastModified == 0L && !file.isFile()) {
+            return null;
+        }
+        long length = file.length();
+        String key  = file.getAbsolutePath();
+        Entry entry = templates.get(key);
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            return entry.template;
+        }
+        String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Template template;
+        try {
+            template = Template.compile(source, file.getAbsoluteFile().getParentFile(), this);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid template " + file + ": " + e.getMessage(), e);
+        }
+        templates.put(key, new Entry(template, lastModified, length));
+        return template;
+    }
+
+    /**
+     * Drops every compiled template
+     */
+    public void clear() {
+        templates.clear();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    private static class Entry {
+        final Template template;
+        final long lastModified;
+        final long length;
+
+        Entry(Template template, long lastModified, long length) {
+            this.template     = template;
+            this.lastModified = lastModified;
+            this.length       = length;
+        }
+    }
+}
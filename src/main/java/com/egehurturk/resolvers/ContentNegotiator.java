@@ -0,0 +1,295 @@
+package com.egehurturk.resolvers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Picks the variant of a response that the client prefers, from the
+ * {@code Accept}, {@code Accept-Language} and {@code Accept-Encoding} request headers.
+ *
+ * <p>A header is parsed into a list of {@link Preference}s ranked by quality
+ * ({@code q} parameter, 1 by default), then by specificity (e.g. {@code text/html}
+ * before {@code text/*} before {@code *}{@code /*}), then by their order in the header.
+ * Parsed lists are kept in a bounded least recently used map keyed by the raw
+ * header value: clients send only a handful of distinct values, so almost every
+ * request is a hit and never parses its header.
+ *
+ * <p>Each {@code negotiate} method takes the variants the server has, in the
+ * server's order of preference, and returns the one with the highest quality
+ * for the client, the first on a tie, or null if the client accepts none of them.
+ * A missing header accepts everything.
+ */
+public class ContentNegotiator {
+
+    /**
+     * Number of distinct header values the default negotiator remembers
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final ContentNegotiator DEFAULT = new ContentNegotiator(DEFAULT_CAPACITY);
+
+    private final LinkedHashMap<String, List<Preference>> parsed;
+
+    /**
+     * @param capacity              - maximum number of remembered header values
+     */
+    public ContentNegotiator(final int capacity) {
+        this.parsed = new LinkedHashMap<String, List<Preference>>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Preference>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return                      - negotiator shared by the response types of the server
+     */
+    public static ContentNegotiator getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param header                - raw header value, may be null
+     * @return                      - ranked preferences, best first. Unmodifiable, empty for a missing header
+     */
+    public List<Preference> preferences(String header) {
+        if (header == null) {
+            return Collections.emptyList();
+        }
+        List<Preference> preferences;
+        synchronized (parsed) {
+            preferences = parsed.get(header);
+        }
+        if (preferences == null) {
+            preferences = parse(header);
+            synchronized (parsed) {
+                parsed.put(header, preferences);
+            }
+        }
+        return preferences;
+    }
+
+    /**
+     * @param accept                - value of the {@code Accept} header, may be null
+     * @param mediaTypes            - media types the server can send, e.g. {@code application/json}
+     * @return                      - preferred media type, or null if none is acceptable
+     */
+    public String negotiateMediaType(String accept, String... mediaTypes) {
+        if (accept == null || accept.trim().isEmpty()) {
+            return mediaTypes.length > 0 ? mediaTypes[0] : null;
+        }
+        List<Preference> preferences = preferences(accept);
+        return best(mediaTypes, variant -> {
+            // the most specific range decides, e.g. text/html;q=0 refuses HTML despite */*
+            Preference match = null;
+            for (Preference preference : preferences) {
+                if (preference.matchesMediaType(variant) && (match == null || preference.specificity > match.specificity)) {
+                    match = preference;
+                }
+            }
+            return (match == null) ? 0 : match.quality;
+        });
+    }
+
+    /**
+     * @param accept                - value of the {@code Accept} header, may be null
+     * @param mediaType             - media type
+     * @return                      - whether the client accepts {@code mediaType}
+     */
+    public boolean accepts(String accept, String mediaType) {
+        return negotiateMediaType(accept, mediaType) != null;
+    }
+
+    /**
+     * Language ranges match a tag and every tag that starts with the range and
+     * a hyphen, so {@code en} matches {@code en-US}. A range also falls back to
+     * the tags it starts with, so {@code tr-TR} matches {@code tr}
+     * @param acceptLanguage        - value of the {@code Accept-Language} header, may be null
+     * @param languages             - language tags of the variants, e.g. {@code en}, {@code tr}
+     * @return                      - preferred language, or null if none is acceptable
+     */
+    public String negotiateLanguage(String acceptLanguage, String... languages) {
+        if (acceptLanguage == null || acceptLanguage.trim().isEmpty()) {
+            return languages.length > 0 ? languages[0] : null;
+        }
+        List<Preference> preferences = preferences(acceptLanguage);
+        return best(languages, variant -> {
+            // the longest matching range decides
+            String tag = variant.toLowerCase(Locale.ROOT);
+            Preference match = null;
+            int matched = -1;
+            for (Preference preference : preferences) {
+                String range = preference.value;
+                int length = range.equals("*") ? 0 : range.length();
+                boolean matches = length == 0 || range.equals(tag) || tag.startsWith(range + "-") || range.startsWith(tag + "-");
+                if (matches && length > matched) {
+                    match = preference;
+                    matched = length;
+                }
+            }
+            return (match == null) ? 0 : match.quality;
+        });
+    }
+
+    /**
+     * {@code identity} (no encoding) is acceptable unless the header refuses it
+     * with {@code q=0}, directly or through {@code *}
+     * @param acceptEncoding        - value of the {@code Accept-Encoding} header, may be null
+     * @param encodings             - content codings of the variants, e.g. {@code gzip}, {@code identity}
+     * @return                      - preferred coding, or null if none is acceptable
+     */
+    public String negotiateEncoding(String acceptEncoding, String... encodings) {
+        final List<Preference> preferences = preferences(acceptEncoding);
+        return best(encodings, variant -> {
+            String coding = variant.toLowerCase(Locale.ROOT);
+            Preference wildcard = null;
+            for (Preference preference : preferences) {
+                if (preference.value.equals(coding)) {
+                    return preference.quality;
+                }
+                if (wildcard == null && preference.value.equals("*")) {
+                    wildcard = preference;
+                }
+            }
+            if (wildcard != null) {
+                return wildcard.quality;
+            }
+            // below every coding the client named, but still acceptable
+            return coding.equals("identity") ? 1 : 0;
+        });
+    }
+
+    private static String best(String[] variants, Quality quality) {
+        String best = null;
+        int bestQuality = 0;
+        for (String variant : variants) {
+            int q = quality.of(variant);
+            if (q > bestQuality) {
+                best = variant;
+                bestQuality = q;
+            }
+        }
+        return best;
+    }
+
+    private interface Quality {
+        /** @return quality of a variant, in thousandths */
+        int of(String variant);
+    }
+
+    /**
+     * Parses a comma separated list of values with parameters, e.g.
+     * {@code text/html;level=1, application/json;q=0.9, *}{@code /*;q=0.1}
+     */
+    static List<Preference> parse(String header) {
+        List<Preference> preferences = new ArrayList<>();
+        int order = 0;
+        for (String element : header.split(",")) {
+            String[] parts = element.split(";");
+            String value = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (value.isEmpty()) {
+                continue;
+            }
+            int quality = 1000;
+            StringBuilder parameters = new StringBuilder();
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    quality = parseQuality(parameter.substring(2).trim());
+                } else if (!parameter.isEmpty()) {
+                    parameters.append(';').append(parameter.toLowerCase(Locale.ROOT).replace(" ", ""));
+                }
+            }
+            preferences.add(new Preference(value, parameters.toString(), quality, order++));
+        }
+        Collections.sort(preferences, (a, b) -> {
+            if (a.quality != b.quality) {
+                return b.quality - a.quality;
+            }
+            if (a.specificity != b.specificity) {
+                return b.specificity - a.specificity;
+            }
+            return a.order - b.order;
+        });
+        return Collections.unmodifiableList(preferences);
+    }
+
+    /**
+     * @return q value in thousandths, 0 for malformed values
+     */
+    private static int parseQuality(String q) {
+        try {
+            double value = Double.parseDouble(q);
+            if (value < 0 || value > 1 || Double.isNaN(value)) {
+                return 0;
+            }
+            return (int) Math.round(value * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * One element of an {@code Accept*} header
+     */
+    public static final class Preference {
+        /** Media range, language range or coding, lowercase */
+        private final String value;
+        /** Parameters other than q, e.g. {@code ;level=1}, empty if there are none */
+        private final String parameters;
+        /** q value in thousandths */
+        private final int quality;
+        private final int specificity;
+        private final int order;
+
+        Preference(String value, String parameters, int quality, int order) {
+            this.value       = value;
+            this.parameters  = parameters;
+            this.quality     = quality;
+            this.order       = order;
+            this.specificity = value.equals("*") || value.equals("*/*") ? 0
+                    : value.endsWith("/*") ? 1
+                    : parameters.isEmpty() ? 2 : 3;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getParameters() {
+            return parameters;
+        }
+
+        /**
+         * @return                  - q value, between 0 and 1
+         */
+        public double getQuality() {
+            return quality / 1000.0;
+        }
+
+        /**
+         * @param mediaType         - media type of a variant, without parameters
+         * @return                  - whether this media range covers {@code mediaType}
+         */
+        boolean matchesMediaType(String mediaType) {
+            if (value.equals("*/*") || value.equals("*")) {
+                return true;
+            }
+            String type = mediaType.toLowerCase(Locale.ROOT);
+            if (value.endsWith("/*")) {
+                return type.startsWith(value.substring(0, value.length() - 1));
+            }
+            return value.equals(type);
+        }
+
+        @Override
+        public String toString() {
+            return value + parameters + ";q=" + getQuality();
+        }
+    }
+}
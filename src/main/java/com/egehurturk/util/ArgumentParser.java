@@ -69,6 +69,13 @@ public class ArgumentParser {
         return handler;
     }
 
+    /**
+     * @return true if pages should be pre-rendered into the web root instead of starting the server
+     */
+    public boolean isPrerender() {
+        return cmd != null && cmd.hasOption("prerender");
+    }
+
     private void generateOptions() {
         Options options = new Options();
         Option port = Option.builder()
@@ -113,6 +120,10 @@ public class ArgumentParser {
                 .hasArg()
                 .desc("Configuration system properties file for server" )
                 .build();
+        Option prerender = Option.builder()
+                .longOpt("prerender")
+                .desc("Render pre-rendered pages into the web root and exit" )
+                .build();
         this.options.addOption(port);
         this.options.addOption(host);
         this.options.addOption(name);
@@ -120,6 +131,7 @@ public class ArgumentParser {
         this.options.addOption(webroot);
         this.options.addOption(backlog);
         this.options.addOption(config);
+        this.options.addOption(prerender);
     }
 
 }
@@ -13,7 +13,12 @@ public enum HeaderEnum {
     CONTENT_TYPE(Constants.CCONTENT_TYPE, HeaderStatusEnum.General),
     CONTENT_LENGTH(Constants.CCONTENT_LENGTH, HeaderStatusEnum.General),
     CONTENT_ENCODING(Constants.CCONTENT_ENCODING, HeaderStatusEnum.General),
-    CONTENT_LANGUAGE(Constants.CCONTENT_LANGUAGE, HeaderStatusEnum.General)
+    CONTENT_LANGUAGE(Constants.CCONTENT_LANGUAGE, HeaderStatusEnum.General),
+    ETAG(Constants.CETAG, HeaderStatusEnum.Response),
+    LAST_MODIFIED(Constants.CLAST_MODIFIED, HeaderStatusEnum.Response),
+    VARY(Constants.CVARY, HeaderStatusEnum.Response),
+    TRANSFER_ENCODING(Constants.CTRANSFER_ENCODING, HeaderStatusEnum.General),
+    EXPECT(Constants.CEXPECT, HeaderStatusEnum.Request)
     ;
 
     public final String NAME;
@@ -37,5 +42,10 @@ public enum HeaderEnum {
         public static final String CCONTENT_LENGTH = "Content-Length: ";
         public static final String CCONTENT_ENCODING = "Content-Encoding: ";
         public static final String CCONTENT_LANGUAGE = "Content-Language: ";
+        public static final String CETAG = "ETag: ";
+        public static final String CLAST_MODIFIED = "Last-Modified: ";
+        public static final String CVARY = "Vary: ";
+        public static final String CTRANSFER_ENCODING = "Transfer-Encoding: ";
+        public static final String CEXPECT = "Expect: ";
     }
 }
@@ -1,6 +1,14 @@
 package com.egehurturk.util;
 
 public class Json {
+    /**
+     * Re-indents a JSON string, two spaces per level
+     * @param unformattedJsonString     - JSON document
+     * @return                          - indented document
+     * @deprecated walks the whole document again after it is built. Write it
+     *             with a pretty {@link JsonWriter} instead
+     */
+    @Deprecated
     public static String prettyPrintJSON(String unformattedJsonString) {
         StringBuilder prettyJSONBuilder = new StringBuilder();
         int indentLevel = 0;
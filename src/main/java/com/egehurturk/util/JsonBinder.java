@@ -0,0 +1,170 @@
+package com.egehurturk.util;
+
+import com.egehurturk.exceptions.MalformedJsonException;
+
+import java.io.IOException;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Binds values read by a {@link JsonReader} to Java types while they are read.
+ *
+ * <p>Supported types:
+ * <ul>
+ *     <li>{@link String}, primitives and their wrappers, {@link BigDecimal},
+ *     {@link BigInteger} and enums (by constant name)</li>
+ *     <li>arrays, {@link Collection}, {@link List} and {@link Set}; the element
+ *     type comes from the generic type of the field</li>
+ *     <li>{@link Map} with string keys</li>
+ *     <li>{@link Object}, bound with {@link JsonReader#readTree()}</li>
+ *     <li>any other class with a no-argument constructor, through its
+ *     {@link JsonCodec}</li>
+ * </ul>
+ */
+final class JsonBinder {
+
+    private JsonBinder() {}
+
+    @SuppressWarnings("unchecked")
+    static Object read(JsonReader in, Type type) throws IOException {
+        Class<?> raw = rawType(type);
+        JsonReader.Token token = in.peek();
+        if (token == JsonReader.Token.NULL) {
+            in.nextNull();
+            if (raw.isPrimitive()) {
+                throw in.syntaxError("null for a value of type " + raw.getName());
+            }
+            return null;
+        }
+
+        if (raw == String.class) {
+            return in.nextString();
+        } else if (raw == int.class || raw == Integer.class) {
+            return in.nextInt();
+        } else if (raw == long.class || raw == Long.class) {
+            return in.nextLong();
+        } else if (raw == double.class || raw == Double.class) {
+            return in.nextDouble();
+        } else if (raw == boolean.class || raw == Boolean.class) {
+            return in.nextBoolean();
+        } else if (raw == float.class || raw == Float.class) {
+            return (float) in.nextDouble();
+        } else if (raw == short.class || raw == Short.class) {
+            return (short) narrow(in, in.nextInt(), Short.MIN_VALUE, Short.MAX_VALUE);
+        } else if (raw == byte.class || raw == Byte.class) {
+            return (byte) narrow(in, in.nextInt(), Byte.MIN_VALUE, Byte.MAX_VALUE);
+        } else if (raw == char.class || raw == Character.class) {
+            String value = in.nextString();
+            if (value.length() != 1) {
+                throw in.syntaxError("Expected a single character but was \"" + value + "\"");
+            }
+            return value.charAt(0);
+        } else if (raw == BigDecimal.class) {
+            return new BigDecimal(number(in));
+        } else if (raw == BigInteger.class) {
+            return new BigInteger(number(in));
+        } else if (raw == Object.class) {
+            return in.readTree();
+        } else if (raw.isEnum()) {
+            return readEnum(in, raw);
+        } else if (raw.isArray()) {
+            List<Object> elements = readCollection(in, new ArrayList<>(), raw.getComponentType());
+            Object array = Array.newInstance(raw.getComponentType(), elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Array.set(array, i, elements.get(i));
+            }
+            return array;
+        } else if (Collection.class.isAssignableFrom(raw)) {
+            Collection<Object> collection = Set.class.isAssignableFrom(raw) ? new LinkedHashSet<>() : new ArrayList<>();
+            if (!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers())) {
+                collection = (Collection<Object>) instantiate(raw);
+            }
+            return readCollection(in, collection, typeArgument(type, 0));
+        } else if (Map.class.isAssignableFrom(raw)) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            if (!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers())) {
+                map = (Map<String, Object>) instantiate(raw);
+            }
+            Type valueType = typeArgument(type, 1);
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                map.put(name, read(in, valueType));
+            }
+            in.endObject();
+            return map;
+        }
+        return JsonCodec.of(raw).read(in);
+    }
+
+    private static <C extends Collection<Object>> C readCollection(JsonReader in, C collection, Type elementType) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            collection.add(read(in, elementType));
+        }
+        in.endArray();
+        return collection;
+    }
+
+    private static Object readEnum(JsonReader in, Class<?> raw) throws IOException {
+        String name = in.nextString();
+        for (Object constant : raw.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) {
+                return constant;
+            }
+        }
+        throw in.syntaxError("\"" + name + "\" is not a constant of " + raw.getSimpleName());
+    }
+
+    private static String number(JsonReader in) throws IOException {
+        if (in.peek() != JsonReader.Token.NUMBER) {
+            throw in.syntaxError("Expected NUMBER but was " + in.peek());
+        }
+        return in.nextString();
+    }
+
+    private static int narrow(JsonReader in, int value, int min, int max) throws MalformedJsonException {
+        if (value < min || value > max) {
+            throw in.syntaxError("Number " + value + " is out of range");
+        }
+        return value;
+    }
+
+    private static Object instantiate(Class<?> raw) {
+        try {
+            Constructor<?> constructor = raw.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(raw.getName() + " needs a no-argument constructor to be bound from JSON", e);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalArgumentException("Cannot create " + raw.getName(), e);
+        }
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return rawType(((WildcardType) type).getUpperBounds()[0]);
+        }
+        // type variables are bound as trees
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < arguments.length) {
+                return arguments[index];
+            }
+        }
+        return Object.class;
+    }
+}
@@ -0,0 +1,250 @@
+package com.egehurturk.util;
+
+import com.egehurturk.exceptions.MalformedJsonException;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the objects of one class to and from JSON through their fields.
+ *
+ * <p>A codec is built once per class, on first use, and kept in a
+ * {@link ClassValue}. Building it does the reflection: it finds the
+ * non-static, non-transient fields (inherited ones first, a field hides one
+ * of the same name in a superclass), turns them into {@link MethodHandle}
+ * getters and setters adapted to a fixed shape, and encodes every member name
+ * as escaped UTF-8 bytes. Writing an object afterwards only invokes the
+ * handles. {@code int}, {@code long}, {@code double} and {@code boolean} fields
+ * (and the narrower primitives) are read without boxing.
+ *
+ * <p>{@link JsonWriter#value(Object)} and {@link JsonReader#read(Class)} use
+ * codecs for every class they have no built-in conversion for. Classes of the
+ * {@code java.} and {@code javax.} packages are not taken apart.
+ *
+ * @param <T>                       - class of the objects
+ */
+public final class JsonCodec<T> {
+
+    private static final ClassValue<JsonCodec<?>> CODECS = new ClassValue<JsonCodec<?>>() {
+        @Override
+        protected JsonCodec<?> computeValue(Class<?> type) {
+            return new JsonCodec<>(type);
+        }
+    };
+
+    /** How a property is written, by the type of its field */
+    private static final int INT     = 0;
+    private static final int LONG    = 1;
+    private static final int DOUBLE  = 2;
+    private static final int BOOLEAN = 3;
+    private static final int OBJECT  = 4;
+
+    private static final MethodType GET_INT     = MethodType.methodType(int.class, Object.class);
+    private static final MethodType GET_LONG    = MethodType.methodType(long.class, Object.class);
+    private static final MethodType GET_DOUBLE  = MethodType.methodType(double.class, Object.class);
+    private static final MethodType GET_BOOLEAN = MethodType.methodType(boolean.class, Object.class);
+    private static final MethodType GET_OBJECT  = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SET         = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCT   = MethodType.methodType(Object.class);
+
+    private final Class<T> type;
+    private final Property[] properties;
+    private final Map<String, Property> byName;
+    /** No-argument constructor, null if there is none */
+    private final MethodHandle constructor;
+
+    /**
+     * @param type                  - class
+     * @param <T>                   - class
+     * @return                      - codec of {@code type}, built on first use
+     * @throws IllegalArgumentException - for classes of the {@code java.} packages, interfaces, arrays and primitives
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonCodec<T> of(Class<T> type) {
+        return (JsonCodec<T>) CODECS.get(type);
+    }
+
+    private JsonCodec(Class<T> type) {
+        String name = type.getName();
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || name.startsWith("java.") || name.startsWith("javax.")) {
+            throw new IllegalArgumentException("Cannot convert " + name + " to and from JSON by its fields");
+        }
+        this.type = type;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        Map<String, Field> fields = new LinkedHashMap<>();
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    fields.put(field.getName(), field);
+                }
+            }
+        }
+
+        this.properties = new Property[fields.size()];
+        this.byName     = new HashMap<>();
+        int i = 0;
+        for (Field field : fields.values()) {
+            Property property = new Property(lookup, field);
+            properties[i++] = property;
+            byName.put(property.name, property);
+        }
+        this.constructor = constructorOf(lookup, type);
+    }
+
+    private static MethodHandle constructorOf(MethodHandles.Lookup lookup, Class<?> type) {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return lookup.unreflectConstructor(constructor).asType(CONSTRUCT);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Writes {@code value} as an object with one member per field
+     * @param out                   - writer
+     * @param value                 - object, written as {@code null} if null
+     */
+    public void write(JsonWriter out, T value) {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        try {
+            for (Property property : properties) {
+                out.name(property.encodedName);
+                switch (property.kind) {
+                    case INT:
+                        out.value((int) property.getter.invokeExact((Object) value));
+                        break;
+                    case LONG:
+                        out.value((long) property.getter.invokeExact((Object) value));
+                        break;
+                    case DOUBLE:
+                        out.value((double) property.getter.invokeExact((Object) value));
+                        break;
+                    case BOOLEAN:
+                        out.value((boolean) property.getter.invokeExact((Object) value));
+                        break;
+                    default:
+                        out.value((Object) property.getter.invokeExact((Object) value));
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot read a field of " + type.getName(), e);
+        }
+        out.endObject();
+    }
+
+    /**
+     * Reads an object into a new instance. Members without a field are skipped,
+     * fields without a member keep the value the constructor gave them
+     * @param in                    - reader positioned before the object
+     * @return                      - new instance
+     * @throws MalformedJsonException - if a member does not match the type of its field
+     * @throws IllegalArgumentException - if the class has no no-argument constructor
+     */
+    public T read(JsonReader in) throws IOException {
+        if (constructor == null) {
+            throw new IllegalArgumentException(type.getName() + " needs a no-argument constructor to be bound from JSON");
+        }
+        Object instance;
+        try {
+            instance = (Object) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("Cannot create " + type.getName(), e);
+        }
+        in.beginObject();
+        while (in.hasNext()) {
+            Property property = byName.get(in.nextName());
+            if (property == null || property.setter == null) {
+                in.skipValue();
+                continue;
+            }
+            Object value = JsonBinder.read(in, property.genericType);
+            try {
+                property.setter.invokeExact(instance, value);
+            } catch (ClassCastException e) {
+                throw in.syntaxError("Member " + property.name + " does not match " + property.genericType.getTypeName());
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot set a field of " + type.getName(), e);
+            }
+        }
+        in.endObject();
+        return type.cast(instance);
+    }
+
+    /**
+     * One field, with its accessors adapted to {@code (Object)int}, {@code (Object)long},
+     * {@code (Object)double}, {@code (Object)boolean} or {@code (Object)Object}
+     * by {@link #kind}, and a setter adapted to {@code (Object, Object)void}
+     */
+    private static final class Property {
+        final String name;
+        final byte[] encodedName;
+        final Type genericType;
+        final int kind;
+        final MethodHandle getter;
+        /** Null for final fields */
+        final MethodHandle setter;
+
+        Property(MethodHandles.Lookup lookup, Field field) {
+            this.name        = field.getName();
+            this.encodedName = new JsonWriter(false).value(name).toByteArray();
+            this.genericType = field.getGenericType();
+            Class<?> type    = field.getType();
+            if (type == int.class || type == short.class || type == byte.class) {
+                this.kind = INT;
+            } else if (type == long.class) {
+                this.kind = LONG;
+            } else if (type == double.class || type == float.class) {
+                this.kind = DOUBLE;
+            } else if (type == boolean.class) {
+                this.kind = BOOLEAN;
+            } else {
+                this.kind = OBJECT;
+            }
+            MethodType getterType = (kind == INT) ? GET_INT : (kind == LONG) ? GET_LONG :
+                    (kind == DOUBLE) ? GET_DOUBLE : (kind == BOOLEAN) ? GET_BOOLEAN : GET_OBJECT;
+            field.setAccessible(true);
+            try {
+                this.getter = lookup.unreflectGetter(field).asType(getterType);
+                this.setter = Modifier.isFinal(field.getModifiers()) ? null : lookup.unreflectSetter(field).asType(SET);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot access " + field, e);
+            }
+        }
+    }
+}
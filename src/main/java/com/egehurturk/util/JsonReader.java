@@ -0,0 +1,608 @@
+package com.egehurturk.util;
+
+import com.egehurturk.exceptions.MalformedJsonException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pull parser for UTF-8 JSON read from a stream, e.g. a request body
+ * ({@link com.egehurturk.httpd.HttpRequest#getBodyStream()}).
+ *
+ * <p>The caller asks for the next {@link Token} with {@link #peek()} and
+ * consumes it with the matching method, so no document tree is built:
+ * <code>
+ *     JsonReader json = new JsonReader(request.getBodyStream());
+ *     json.beginObject();
+ *     while (json.hasNext()) {
+ *         String name = json.nextName();
+ *         if (name.equals("id")) {
+ *             id = json.nextLong();
+ *         } else {
+ *             json.skipValue();
+ *         }
+ *     }
+ *     json.endObject();
+ * </code>
+ *
+ * <p>The input is read through a fixed 8 KB buffer and the only other state is
+ * one scope per nesting level, so memory is proportional to the nesting depth
+ * (limited by {@code maxDepth}) and to the longest string, not to the payload.
+ * {@link #readTree()} builds plain maps and lists for small documents, and
+ * {@link #read(Class)} binds a value directly into an object.
+ *
+ * <p>Input that is not well formed throws a {@link MalformedJsonException}
+ * with the byte offset of the problem. Instances are not thread safe.
+ */
+public class JsonReader implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    public static final int DEFAULT_MAX_DEPTH = 256;
+
+    /** Nesting scopes */
+    private static final int EMPTY_DOCUMENT    = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT      = 2;
+    private static final int NONEMPTY_OBJECT   = 3;
+    private static final int DANGLING_NAME     = 4;
+    private static final int EMPTY_ARRAY       = 5;
+    private static final int NONEMPTY_ARRAY    = 6;
+
+    private final InputStream in;
+    private final int maxDepth;
+    private final byte[] buffer = new byte[8192];
+    private int pos;
+    private int limit;
+    /** Bytes consumed before {@link #buffer}, for error offsets */
+    private long offset;
+
+    private int[] stack = new int[32];
+    private int depth;
+    private Token peeked;
+    private boolean peekedBoolean;
+
+    /** Reused for the characters of strings and numbers */
+    private final StringBuilder chars = new StringBuilder();
+
+    public JsonReader(InputStream in) {
+        this(in, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param in                    - UTF-8 input
+     * @param maxDepth              - deepest nesting of objects and arrays accepted
+     */
+    public JsonReader(InputStream in, int maxDepth) {
+        this.in       = in;
+        this.maxDepth = maxDepth;
+        this.depth    = 1;
+        this.stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return                      - kind of the next token, without consuming it
+     * @throws IOException          - if the input is malformed or cannot be read
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int c;
+        switch (stack[depth - 1]) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != -1) {
+                    pos--;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (stack[depth - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a member name");
+                }
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            default:
+                if (nextNonWhitespace() != -1) {
+                    throw syntaxError("Expected the end of the document");
+                }
+                return peeked = Token.END_DOCUMENT;
+        }
+        return peeked = peekValue();
+    }
+
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+                expectLiteral("rue");
+                peekedBoolean = true;
+                return Token.BOOLEAN;
+            case 'f':
+                expectLiteral("alse");
+                peekedBoolean = false;
+                return Token.BOOLEAN;
+            case 'n':
+                expectLiteral("ull");
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * @return                      - true if the current object or array has another member or element
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * @return                      - string value, or the text of a number
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readNumber();
+        }
+        expect(Token.STRING);
+        return readString();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return peekedBoolean;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    public double nextDouble() throws IOException {
+        expect(Token.NUMBER);
+        String number = readNumber();
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid number " + number);
+        }
+    }
+
+    /**
+     * @return                      - integral number
+     * @throws MalformedJsonException - if the number has a fraction or does not fit
+     */
+    public long nextLong() throws IOException {
+        expect(Token.NUMBER);
+        String number = readNumber();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            try {
+                return new BigDecimal(number).longValueExact();
+            } catch (NumberFormatException | ArithmeticException notIntegral) {
+                throw syntaxError("Expected an integral number but was " + number);
+            }
+        }
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if ((int) value != value) {
+            throw syntaxError("Number " + value + " does not fit an int");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Skips the next value, including everything nested in it, without decoding it
+     */
+    public void skipValue() throws IOException {
+        int nested = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    nested++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    nested++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    nested--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    nested--;
+                    break;
+                case NAME:
+                case STRING:
+                    peeked = null;
+                    skipString();
+                    break;
+                case NUMBER:
+                    peeked = null;
+                    readNumber();
+                    break;
+                case BOOLEAN:
+                case NULL:
+                    peeked = null;
+                    break;
+                default:
+                    throw syntaxError("No value to skip");
+            }
+        } while (nested > 0);
+    }
+
+    /**
+     * Reads the next value as plain Java objects: {@link LinkedHashMap} for
+     * objects, {@link ArrayList} for arrays, {@link String}, {@link Long} for
+     * integral numbers that fit (otherwise {@link Double}, or {@link BigDecimal}
+     * for integers that do not fit), {@link Boolean} and {@code null}
+     * @return                      - value
+     */
+    public Object readTree() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new LinkedHashMap<>();
+                beginObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    object.put(name, readTree());
+                }
+                endObject();
+                return object;
+            case BEGIN_ARRAY:
+                List<Object> array = new ArrayList<>();
+                beginArray();
+                while (hasNext()) {
+                    array.add(readTree());
+                }
+                endArray();
+                return array;
+            case STRING:
+                return nextString();
+            case NUMBER:
+                peeked = null;
+                return toNumber(readNumber());
+            case BOOLEAN:
+                return nextBoolean();
+            case NULL:
+                nextNull();
+                return null;
+            default:
+                throw syntaxError("Expected a value but was " + peek());
+        }
+    }
+
+    /**
+     * Binds the next value to {@code type}. Objects are bound to the fields of
+     * a class with a no-argument constructor by name; members without a field
+     * are skipped. See {@link JsonBinder} for the supported types
+     * @param type                  - target type
+     * @param <T>                   - type
+     * @return                      - bound value
+     * @throws MalformedJsonException - if the value does not have the shape of the type
+     */
+    public <T> T read(Class<T> type) throws IOException {
+        return type.cast(JsonBinder.read(this, type));
+    }
+
+    /**
+     * @throws MalformedJsonException - if anything but whitespace follows the value read
+     */
+    public void endDocument() throws IOException {
+        if (peek() != Token.END_DOCUMENT) {
+            throw syntaxError("Expected the end of the document but was " + peek());
+        }
+    }
+
+    /**
+     * @return                      - number of bytes consumed so far
+     */
+    public long getOffset() {
+        return offset + pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + " at byte " + getOffset());
+    }
+
+    private void expect(Token token) throws IOException {
+        Token actual = peek();
+        if (actual != token) {
+            throw syntaxError("Expected " + token + " but was " + actual);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) throws MalformedJsonException {
+        if (depth > maxDepth) {
+            throw syntaxError("Nesting deeper than " + maxDepth);
+        }
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+    }
+
+    private static Object toNumber(String number) {
+        boolean integral = number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1;
+        if (integral) {
+            try {
+                return Long.parseLong(number);
+            } catch (NumberFormatException e) {
+                return new BigDecimal(number);
+            }
+        }
+        return Double.parseDouble(number);
+    }
+
+    /**
+     * @return                      - next byte, or -1 at the end of the input
+     */
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos   = 0;
+        limit = 0;
+        int n = in.read(buffer);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+        return c;
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    /**
+     * Reads a number as text. Follows the JSON grammar: optional minus, no
+     * leading zeros, optional fraction and exponent
+     */
+    private String readNumber() throws IOException {
+        chars.setLength(0);
+        int c = read();
+        if (c == '-') {
+            chars.append('-');
+            c = read();
+        }
+        if (c == '0') {
+            chars.append('0');
+            c = read();
+        } else if (c >= '1' && c <= '9') {
+            c = appendDigits(c);
+        } else {
+            throw syntaxError("Invalid number");
+        }
+        if (c == '.') {
+            chars.append('.');
+            c = read();
+            if (c < '0' || c > '9') {
+                throw syntaxError("Invalid number");
+            }
+            c = appendDigits(c);
+        }
+        if (c == 'e' || c == 'E') {
+            chars.append('e');
+            c = read();
+            if (c == '+' || c == '-') {
+                chars.append((char) c);
+                c = read();
+            }
+            if (c < '0' || c > '9') {
+                throw syntaxError("Invalid number");
+            }
+            c = appendDigits(c);
+        }
+        if (c != -1) {
+            pos--;
+        }
+        return chars.toString();
+    }
+
+    private int appendDigits(int c) throws IOException {
+        while (c >= '0' && c <= '9') {
+            chars.append((char) c);
+            c = read();
+        }
+        return c;
+    }
+
+    /**
+     * Reads a string after its opening quote, decoding escapes and UTF-8
+     */
+    private String readString() throws IOException {
+        chars.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return chars.toString();
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c < 0x20) {
+                throw syntaxError(c == -1 ? "Unterminated string" : "Unescaped control character in string");
+            } else if (c < 0x80) {
+                chars.append((char) c);
+            } else {
+                readMultiByte(c);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':  chars.append('"');  break;
+            case '\\': chars.append('\\'); break;
+            case '/':  chars.append('/');  break;
+            case 'b':  chars.append('\b'); break;
+            case 'f':  chars.append('\f'); break;
+            case 'n':  chars.append('\n'); break;
+            case 'r':  chars.append('\r'); break;
+            case 't':  chars.append('\t'); break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid \\u escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                chars.append((char) value);
+                break;
+            default:
+                throw syntaxError("Invalid escape");
+        }
+    }
+
+    private void readMultiByte(int lead) throws IOException {
+        int length, codePoint;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            length = 1;
+            codePoint = lead & 0x1F;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            length = 2;
+            codePoint = lead & 0x0F;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            length = 3;
+            codePoint = lead & 0x07;
+        } else {
+            throw syntaxError("Invalid UTF-8");
+        }
+        for (int i = 0; i < length; i++) {
+            int c = read();
+            if ((c & 0xC0) != 0x80) {
+                throw syntaxError("Invalid UTF-8");
+            }
+            codePoint = (codePoint << 6) | (c & 0x3F);
+        }
+        if ((length == 2 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint)))
+                || (length == 3 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT))) {
+            throw syntaxError("Invalid UTF-8");
+        }
+        chars.appendCodePoint(codePoint);
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                read();
+            } else if (c == -1) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package com.egehurturk.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes JSON as UTF-8 bytes in one pass, without building a {@code String}
+ * first. Strings are escaped and encoded character by character straight
+ * into a byte buffer.
+ *
+ * <p>A writer either keeps the whole document in its buffer (see
+ * {@link #toByteBuffer()}, {@link #writeTo(OutputStream)}) or, when created
+ * with a sink, writes the buffer to the sink every time it fills up so that
+ * large documents never have to fit in memory. Call {@link #flush()} at the end
+ * to write the rest. A writer can be reused for another document after
+ * {@link #reset()}, which keeps the buffer.
+ *
+ * <p>Usage:
+ * <code>
+ *     JsonWriter json = new JsonWriter(false);
+ *     json.beginObject()
+ *             .name("name").value("Ege")
+ *             .name("tags").beginArray().value("a").value("b").endArray()
+ *         .endObject();
+ * </code>
+ *
+ * <p>Pretty documents put every member and element on its own line, indented
+ * with two spaces, and do not put a space after the colon. This is the layout
+ * {@link Json#prettyPrintJSON(String)} produced.
+ *
+ * <p>Calls that would produce invalid JSON (a value where a name is expected,
+ * unbalanced {@code end} calls, a second top-level value) throw an
+ * {@link IllegalStateException}. A failing sink is reported as an
+ * {@link UncheckedIOException}. Instances are not thread safe.
+ */
+public class JsonWriter {
+
+    /** Nesting scopes */
+    private static final int EMPTY_DOCUMENT    = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT      = 2;
+    private static final int NONEMPTY_OBJECT   = 3;
+    private static final int DANGLING_NAME     = 4;
+    private static final int EMPTY_ARRAY       = 5;
+    private static final int NONEMPTY_ARRAY    = 6;
+
+    private static final int SINK_BUFFER_SIZE = 8192;
+    private static final int MAX_DEPTH        = 512;
+
+    private static final byte[] HEX   = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL  = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE  = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Escape sequences by ASCII code, null for characters that are written as they are
+     */
+    private static final byte[][] ESCAPES = new byte[128][];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = unicodeEscape((char) c);
+        }
+        ESCAPES['"']  = "\\\"".getBytes(StandardCharsets.US_ASCII);
+        ESCAPES['\\'] = "\\\\".getBytes(StandardCharsets.US_ASCII);
+        ESCAPES['\b'] = "\\b".getBytes(StandardCharsets.US_ASCII);
+        ESCAPES['\f'] = "\\f".getBytes(StandardCharsets.US_ASCII);
+        ESCAPES['\n'] = "\\n".getBytes(StandardCharsets.US_ASCII);
+        ESCAPES['\r'] = "\\r".getBytes(StandardCharsets.US_ASCII);
+        ESCAPES['\t'] = "\\t".getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private final OutputStream sink;
+    private final boolean pretty;
+    private byte[] buffer;
+    private int count;
+    private int[] stack = new int[32];
+    private int depth;
+
+    /**
+     * Writer that keeps the document in a growing buffer
+     * @param pretty                - indent the document
+     */
+    public JsonWriter(boolean pretty) {
+        this(null, pretty, 1024);
+    }
+
+    /**
+     * Writer that writes the document to {@code sink} in blocks of 8 KB
+     * @param sink                  - output, e.g. a response body stream
+     * @param pretty                - indent the document
+     */
+    public JsonWriter(OutputStream sink, boolean pretty) {
+        this(sink, pretty, SINK_BUFFER_SIZE);
+    }
+
+    private JsonWriter(OutputStream sink, boolean pretty, int capacity) {
+        this.sink   = sink;
+        this.pretty = pretty;
+        this.buffer = new byte[capacity];
+        reset();
+    }
+
+    public boolean isPretty() {
+        return pretty;
+    }
+
+    public JsonWriter beginObject() {
+        return open(EMPTY_OBJECT, '{');
+    }
+
+    public JsonWriter endObject() {
+        return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    public JsonWriter beginArray() {
+        return open(EMPTY_ARRAY, '[');
+    }
+
+    public JsonWriter endArray() {
+        return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    /**
+     * Writes the name of the next object member
+     * @param name                  - member name
+     * @return                      - this writer
+     */
+    public JsonWriter name(String name) {
+        if (name == null) {
+            throw new NullPointerException("Member name is null");
+        }
+        beforeName();
+        writeString(name);
+        writeByte(':');
+        stack[depth - 1] = DANGLING_NAME;
+        return this;
+    }
+
+    /**
+     * Writes a member name that is already quoted, escaped and encoded, as
+     * {@link JsonCodec} keeps them
+     * @param encoded               - name as a JSON string in UTF-8
+     */
+    void name(byte[] encoded) {
+        beforeName();
+        writeBytes(encoded);
+        writeByte(':');
+        stack[depth - 1] = DANGLING_NAME;
+    }
+
+    /**
+     * @param value                 - string, written as {@code null} if null
+     * @return                      - this writer
+     */
+    public JsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * @param value                 - finite number
+     * @return                      - this writer
+     * @throws IllegalArgumentException - for NaN and infinities, which JSON cannot represent
+     */
+    public JsonWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("JSON numbers must be finite: " + value);
+        }
+        beforeValue();
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            writeAscii(Long.toString((long) value));
+        } else {
+            writeAscii(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /**
+     * Writes a value of a common Java type: {@code null}, {@link String},
+     * {@link Character}, {@link Number}, {@link Boolean}, enums (by constant
+     * name), {@link Map} (keys are converted with {@link String#valueOf(Object)}),
+     * {@link Iterable} and arrays. Objects of any other class are written
+     * field by field with their {@link JsonCodec}. Everything is written recursively
+     * @param value                 - value
+     * @return                      - this writer
+     * @throws IllegalArgumentException - for classes of the {@code java.} packages that are none of the above
+     */
+    public JsonWriter value(Object value) {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            return value(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            beforeValue();
+            writeAscii(value.toString());
+            return this;
+        } else if (value instanceof Character) {
+            return value(value.toString());
+        } else if (value instanceof Enum) {
+            return value(((Enum<?>) value).name());
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                name(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+            return endObject();
+        } else if (value instanceof Iterable) {
+            beginArray();
+            for (Object element : (Iterable<?>) value) {
+                value(element);
+            }
+            return endArray();
+        } else if (value.getClass().isArray()) {
+            beginArray();
+            for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                value(Array.get(value, i));
+            }
+            return endArray();
+        }
+        writeObject(JsonCodec.of(value.getClass()), value);
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void writeObject(JsonCodec<T> codec, Object value) {
+        codec.write(this, (T) value);
+    }
+
+    /**
+     * Writes the rest of the buffer to the sink. Does nothing without a sink
+     * @return                      - this writer
+     */
+    public JsonWriter flush() {
+        if (sink != null && count > 0) {
+            drain();
+        }
+        return this;
+    }
+
+    /**
+     * Ends the current document with a line feed and starts the next one
+     * after it, keeping the bytes written so far. Used to write
+     * newline-delimited JSON, one document per line, through one writer
+     * @return                      - this writer
+     * @throws IllegalStateException - if the current document is not complete, or the writer is pretty
+     */
+    public JsonWriter endRecord() {
+        if (pretty) {
+            throw new IllegalStateException("Records are one line each, a pretty writer cannot write them");
+        }
+        if (depth != 1 || stack[0] != NONEMPTY_DOCUMENT) {
+            throw new IllegalStateException("The record is not complete");
+        }
+        writeByte('\n');
+        stack[0] = EMPTY_DOCUMENT;
+        return this;
+    }
+
+    /**
+     * Starts a new document, keeping the buffer
+     */
+    public void reset() {
+        count    = 0;
+        depth    = 1;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return                      - number of bytes in the buffer
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return                      - copy of the buffered bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * @return                      - buffered bytes without copying them. Valid until
+     *                                the writer is written to or {@link #reset()}
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buffer, 0, count);
+    }
+
+    /**
+     * @param out                   - output for the buffered bytes
+     * @throws IOException          - if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+
+    private JsonWriter open(int scope, char bracket) {
+        beforeValue();
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("Nesting deeper than " + MAX_DEPTH + ", the value may refer to itself");
+        }
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+        writeByte(bracket);
+        return this;
+    }
+
+    private JsonWriter close(int emptyScope, int nonemptyScope, char bracket) {
+        int scope = peek();
+        if (scope != emptyScope && scope != nonemptyScope) {
+            throw new IllegalStateException("Unbalanced '" + bracket + "'" +
+                    (scope == DANGLING_NAME ? ", the last member has no value" : ""));
+        }
+        depth--;
+        if (scope == nonemptyScope) {
+            newline();
+        }
+        writeByte(bracket);
+        return this;
+    }
+
+    private int peek() {
+        return stack[depth - 1];
+    }
+
+    private void beforeName() {
+        int scope = peek();
+        if (scope == NONEMPTY_OBJECT) {
+            writeByte(',');
+        } else if (scope != EMPTY_OBJECT) {
+            throw new IllegalStateException("A member name is only allowed inside an object, before its value");
+        }
+        newline();
+    }
+
+    private void beforeValue() {
+        switch (peek()) {
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                throw new IllegalStateException("A JSON document has a single top-level value. Call reset() to start another");
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                newline();
+                break;
+            case NONEMPTY_ARRAY:
+                writeByte(',');
+                newline();
+                break;
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                break;
+            default:
+                throw new IllegalStateException("Expected a member name before the value");
+        }
+    }
+
+    private void newline() {
+        if (!pretty) {
+            return;
+        }
+        int indent = (depth - 1) * 2;
+        require(indent + 1);
+        buffer[count++] = '\n';
+        for (int i = 0; i < indent; i++) {
+            buffer[count++] = ' ';
+        }
+    }
+
+    /**
+     * Escapes and encodes a string. Lone surrogates are written as {@code \\u}
+     * escapes so that the output is always valid UTF-8
+     */
+    private void writeString(String value) {
+        require(1);
+        buffer[count++] = '"';
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            // the longest output of one iteration is a six byte \\u escape
+            if (count + 6 > buffer.length) {
+                require(6);
+            }
+            if (c < 0x80) {
+                byte[] escape = ESCAPES[c];
+                if (escape == null) {
+                    buffer[count++] = (byte) c;
+                } else {
+                    System.arraycopy(escape, 0, buffer, count, escape.length);
+                    count += escape.length;
+                }
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xC0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c) || c == '\u2028' || c == '\u2029') {
+                // line and paragraph separators end a JavaScript string literal
+                byte[] escape = unicodeEscape(c);
+                System.arraycopy(escape, 0, buffer, count, escape.length);
+                count += escape.length;
+            } else {
+                buffer[count++] = (byte) (0xE0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        require(1);
+        buffer[count++] = '"';
+    }
+
+    private static byte[] unicodeEscape(char c) {
+        return new byte[]{'\\', 'u', HEX[(c >> 12) & 0xF], HEX[(c >> 8) & 0xF], HEX[(c >> 4) & 0xF], HEX[c & 0xF]};
+    }
+
+    private void writeAscii(String ascii) {
+        int length = ascii.length();
+        require(length);
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        require(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void writeByte(char c) {
+        require(1);
+        buffer[count++] = (byte) c;
+    }
+
+    /**
+     * Makes room for {@code n} more bytes, by writing the buffer to the sink
+     * or by growing it
+     */
+    private void require(int n) {
+        if (count + n <= buffer.length) {
+            return;
+        }
+        if (sink != null) {
+            drain();
+            if (n <= buffer.length) {
+                return;
+            }
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + n));
+    }
+
+    private void drain() {
+        try {
+            sink.write(buffer, 0, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+}
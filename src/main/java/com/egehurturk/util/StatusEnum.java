@@ -8,6 +8,11 @@ public enum StatusEnum {
     _404_NOT_FOUND(Constants.C404, Constants.CM404),
     _405_METHOD_NOT_ALLOWED(Constants.C405, Constants.CM405),
     _406_NOT_ACCEPTABLE(Constants.C406, Constants.CM406),
+    _408_REQUEST_TIMEOUT(Constants.C408, Constants.CM408),
+    _413_PAYLOAD_TOO_LARGE(Constants.C413, Constants.CM413),
+    _414_URI_TOO_LONG(Constants.C414, Constants.CM414),
+    _415_UNSUPPORTED_MEDIA_TYPE(Constants.C415, Constants.CM415),
+    _431_REQUEST_HEADER_FIELDS_TOO_LARGE(Constants.C431, Constants.CM431),
     _500_INTERNAL_ERROR(Constants.C500, Constants.CM500),
     _501_NOT_IMPLEMENTED(Constants.C501, Constants.CM501),
 
@@ -29,6 +34,11 @@ public enum StatusEnum {
         public static final int C404 = 404;
         public static final int C405 = 405;
         public static final int C406 = 406;
+        public static final int C408 = 408;
+        public static final int C413 = 413;
+        public static final int C414 = 414;
+        public static final int C415 = 415;
+        public static final int C431 = 431;
         public static final int C500 = 500;
         public static final int C501 = 501;
 
@@ -40,6 +50,11 @@ public enum StatusEnum {
         public static final String CM404 = "Not Found";
         public static final String CM405 = "Method Not Allowed";
         public static final String CM406 = "Not Acceptable";
+        public static final String CM408 = "Request Timeout";
+        public static final String CM413 = "Payload Too Large";
+        public static final String CM414 = "URI Too Long";
+        public static final String CM415 = "Unsupported Media Type";
+        public static final String CM431 = "Request Header Fields Too Large";
         public static final String CM500 = "Internal Server Error";
         public static final String CM501 = "Not Implemented";
 
@@ -1,12 +1,15 @@
 package com.egehurturk.util;
 
 import com.egehurturk.exceptions.FileSizeOverflowException;
+import com.egehurturk.readers.HeapReadStrategy;
+import com.egehurturk.readers.MappedReadStrategy;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -68,32 +71,7 @@ public class Utility {
      * @throws IOException                      - IO operation error
      */
     public static byte[] readFile_NIO(File file) throws IOException {
-        RandomAccessFile rFile = new RandomAccessFile(file.getName(), "rw");
-        FileChannel inChannel = rFile.getChannel();
-
-        ByteBuffer _buffer = ByteBuffer.allocate(1024);
-
-        // read from buffer to channel
-        int bytesRead = inChannel.read(_buffer);
-
-        while (bytesRead != -1) {
-            // flip buffer to read
-            _buffer.flip();
-
-            while (_buffer.hasRemaining()) {
-                // read from buffer and store it in byte
-                byte b = _buffer.get();
-            }
-            // clear for overflow
-            _buffer.clear();
-
-            // read the buffer again
-            bytesRead = inChannel.read(_buffer);
-        }
-        // close all channels
-        inChannel.close();
-        rFile.close();
-        return _buffer.array();
+        return toByteArray(new HeapReadStrategy().read(file));
     }
 
     /**
@@ -111,33 +89,62 @@ public class Utility {
     /**
      * A "fast" approach to read from a {@link File} with {@link MappedByteBuffer}
      * However, in my experiments, this resulted in the slowest performance, whereas
-     * {@link #readFile_IO(File)} was the fastest
+     * {@link #readFile_IO(File)} was the fastest. See {@link com.egehurturk.readers.ReadStrategyCalibrator}
+     * for measuring it on the actual disk
      *
      * @param file               - {@link File} to be read
      * @return                   - {@link MappedByteBuffer} object
      * @throws IOException       - IO operation error
      */
     public static MappedByteBuffer read_NIO_MAP(File file) throws IOException {
-        RandomAccessFile rFile = new RandomAccessFile(file.getName(), "rw");
-        FileChannel inChannel = rFile.getChannel();
-
-        // create a new mappedbyte buffer
-        MappedByteBuffer buffer = inChannel.map(
-                FileChannel.MapMode.READ_ONLY, 0, inChannel.size());
-
-        // load the buffer
-        buffer.load();
-        for (int i = 0; i < buffer.limit(); i++)
-        {
-            // get from buffer
-            byte a = buffer.get();
+        return (MappedByteBuffer) new MappedReadStrategy().read(file);
+    }
+
+    /**
+     * Checks that a file fits into a single {@link ByteBuffer}
+     * @param file               - file, used for the error message
+     * @param length             - file length
+     * @return                   - length as int
+     * @throws IOException       - file is larger than {@link Integer#MAX_VALUE} or {@link #MAX_FILE_LENGTH}
+     */
+    public static int checkedLength(File file, long length) throws IOException {
+        if (length > Integer.MAX_VALUE || length > MAX_FILE_LENGTH) {
+            throw new IOException("File " + file.getName() + " is too big to be read into a single buffer (" +
+                    length + " bytes)");
         }
-        buffer.clear();
+        return (int) length;
+    }
 
-        // close all the channels
-        inChannel.close();
-        rFile.close();
-        return buffer;
+    /**
+     * Reads from channel until the buffer is full or the channel is at EOF
+     * @param channel            - source channel
+     * @param buffer             - destination buffer
+     * @throws IOException       - IO operation error
+     */
+    public static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the remaining bytes of a buffer as an array. If the buffer is
+     * backed by an array of exactly that size the array is returned without copying.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer             - source buffer
+     * @return                   - {@code byte[]} array
+     */
+    public static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
     }
 
     /**
@@ -166,6 +173,24 @@ public class Utility {
             case "Method Not Allowed":
                 returnedVal =  "_405_METHOD_NOT_ALLOWED";
                 break;
+            case "Not Acceptable":
+                returnedVal =  "_406_NOT_ACCEPTABLE";
+                break;
+            case "Request Timeout":
+                returnedVal =  "_408_REQUEST_TIMEOUT";
+                break;
+            case "Payload Too Large":
+                returnedVal =  "_413_PAYLOAD_TOO_LARGE";
+                break;
+            case "URI Too Long":
+                returnedVal =  "_414_URI_TOO_LONG";
+                break;
+            case "Unsupported Media Type":
+                returnedVal =  "_415_UNSUPPORTED_MEDIA_TYPE";
+                break;
+            case "Request Header Fields Too Large":
+                returnedVal =  "_431_REQUEST_HEADER_FIELDS_TOO_LARGE";
+                break;
             case "Internal Server Error":
                 returnedVal =  "_500_INTERNAL_ERROR";
                 break;
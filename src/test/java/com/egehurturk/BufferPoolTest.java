@@ -0,0 +1,66 @@
+package com.egehurturk;
+
+import com.egehurturk.core.BufferPool;
+import com.egehurturk.core.ChannelInputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+@DisplayName("Buffer pool tests")
+public class BufferPoolTest {
+
+    @Test
+    @DisplayName("Buffers come from the smallest size class that fits and are reused once released")
+    public void buffersAreReused() {
+        BufferPool pool = new BufferPool(2, false);
+        ByteBuffer small = pool.acquire(100);
+        Assertions.assertTrue(small.isDirect());
+        Assertions.assertEquals(4096, small.capacity());
+        Assertions.assertEquals(16384, pool.acquire(8192).capacity());
+        ByteBuffer large = pool.acquire(1 << 20);
+        Assertions.assertEquals(1 << 20, large.capacity());
+
+        small.put((byte) 1);
+        pool.release(small);
+        ByteBuffer again = pool.acquire(4096);
+        Assertions.assertSame(small, again);
+        Assertions.assertEquals(0, again.position());
+
+        // only two released buffers of a class are kept
+        pool.release(again);
+        pool.release(pool.acquire(10));
+        ByteBuffer[] buffers = {pool.acquire(10), pool.acquire(10), pool.acquire(10)};
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        Assertions.assertEquals(2, pool.retained());
+        pool.release(large);
+        Assertions.assertEquals(1, pool.outstanding());
+    }
+
+    @Test
+    @DisplayName("In debug mode buffers never released are reported, a second release is ignored")
+    public void leaksAreRecordedInDebugMode() throws IOException {
+        BufferPool pool = new BufferPool(4, true);
+        ChannelInputStream in = new ChannelInputStream(Channels.newChannel(
+                new ByteArrayInputStream("GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1))), pool, 16384);
+        Assertions.assertEquals('G', in.read());
+        Assertions.assertEquals(1, pool.reportLeaks());
+        in.release();
+        in.release();
+        Assertions.assertThrows(IOException.class, in::read);
+
+        ByteBuffer buffer = pool.acquire(64);
+        pool.release(buffer);
+        pool.release(buffer);
+        Assertions.assertEquals(0, pool.outstanding());
+        Assertions.assertEquals(2, pool.retained());
+        Assertions.assertEquals(0, pool.reportLeaks());
+    }
+}
@@ -0,0 +1,75 @@
+package com.egehurturk;
+
+import com.egehurturk.handlers.JsonResponse;
+import com.egehurturk.httpd.HttpRequest;
+import com.egehurturk.resolvers.ContentNegotiator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.List;
+
+@DisplayName("Content negotiation tests")
+public class ContentNegotiatorTest {
+
+    private final ContentNegotiator negotiator = new ContentNegotiator(2);
+
+    @Test
+    @DisplayName("Preferences are ranked by quality, then specificity, then order, and memoized")
+    public void ranksAndMemoizesPreferences() {
+        String accept = "text/*;q=0.5, application/json, */*;q=0.1, text/html;level=1, bogus;q=x";
+        List<ContentNegotiator.Preference> preferences = negotiator.preferences(accept);
+        Assertions.assertEquals("[text/html;level=1;q=1.0, application/json;q=1.0, text/*;q=0.5, */*;q=0.1, bogus;q=0.0]",
+                preferences.toString());
+        Assertions.assertSame(preferences, negotiator.preferences(accept));
+
+        negotiator.preferences("a");
+        negotiator.preferences("b");
+        // evicted, parsed again
+        Assertions.assertNotSame(preferences, negotiator.preferences(accept));
+    }
+
+    @Test
+    @DisplayName("Media types are picked by the most specific matching range")
+    public void negotiatesMediaTypes() {
+        Assertions.assertEquals("application/json",
+                negotiator.negotiateMediaType("text/html;q=0.9, application/json", "text/html", "application/json"));
+        Assertions.assertEquals("text/html",
+                negotiator.negotiateMediaType("*/*", "text/html", "application/json"));
+        Assertions.assertNull(negotiator.negotiateMediaType("*/*, application/json;q=0", "application/json"));
+        Assertions.assertEquals("text/plain", negotiator.negotiateMediaType("text/*;q=0.3, image/png", "application/json", "text/plain"));
+        Assertions.assertEquals("application/json", negotiator.negotiateMediaType(null, "application/json"));
+    }
+
+    @Test
+    @DisplayName("Languages match by prefix and encodings keep identity acceptable")
+    public void negotiatesLanguagesAndEncodings() {
+        Assertions.assertEquals("tr", negotiator.negotiateLanguage("tr-TR, en;q=0.8", "en", "tr"));
+        Assertions.assertEquals("en", negotiator.negotiateLanguage("de, *;q=0.5, tr;q=0.1", "en", "tr"));
+        Assertions.assertNull(negotiator.negotiateLanguage("de", "en", "tr"));
+
+        Assertions.assertEquals("gzip", negotiator.negotiateEncoding("gzip, deflate, br", "gzip", "identity"));
+        Assertions.assertEquals("identity", negotiator.negotiateEncoding("gzip;q=0, br", "gzip", "identity"));
+        Assertions.assertEquals("identity", negotiator.negotiateEncoding(null, "gzip", "identity"));
+        Assertions.assertNull(negotiator.negotiateEncoding("*;q=0", "gzip", "identity"));
+    }
+
+    @Test
+    @DisplayName("JSON responses honour q-values and a missing Accept header")
+    public void jsonResponseUsesQValues() throws Exception {
+        JsonResponse refused = new JsonResponse(new PrintWriter(System.out, true), request("Accept: */*, application/json;q=0\r\n"));
+        Assertions.assertFalse(refused.isValid());
+        Assertions.assertEquals(406, refused.toHttpResponse().getCode());
+
+        JsonResponse any = new JsonResponse(new PrintWriter(System.out, true), request(""));
+        Assertions.assertTrue(any.isValid());
+    }
+
+    private static HttpRequest request(String headers) throws Exception {
+        String request = "GET /jsontest HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n";
+        return new HttpRequest(new BufferedReader(new StringReader(request)));
+    }
+}
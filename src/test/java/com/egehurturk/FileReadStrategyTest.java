@@ -0,0 +1,57 @@
+package com.egehurturk;
+
+import com.egehurturk.readers.FileReadStrategy;
+import com.egehurturk.readers.ReadStrategyCalibrator;
+import com.egehurturk.readers.ReadStrategySelector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+@DisplayName("File read strategy tests")
+public class FileReadStrategyTest {
+
+    @Test
+    @DisplayName("Every strategy returns and transfers the exact bytes of the file")
+    public void strategiesReturnFileContents(@TempDir Path root) throws Exception {
+        for (int size : new int[] {0, 1, 4095, 70000, 3 * 1024 * 1024 + 17}) {
+            byte[] content = new byte[size];
+            new Random(size).nextBytes(content);
+            File file = Files.write(root.resolve("file-" + size + ".bin"), content).toFile();
+
+            for (FileReadStrategy strategy : ReadStrategySelector.all()) {
+                ByteBuffer buffer = strategy.read(file);
+                Assertions.assertEquals(0, buffer.position(), strategy.getName());
+                byte[] read = new byte[buffer.remaining()];
+                buffer.get(read);
+                Assertions.assertArrayEquals(content, read, strategy.getName() + " read of " + size + " bytes");
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Assertions.assertEquals(size, strategy.transferTo(file, Channels.newChannel(out)), strategy.getName());
+                Assertions.assertArrayEquals(content, out.toByteArray(), strategy.getName() + " transfer of " + size + " bytes");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Calibration picks a strategy for every bucket and leaves no sample behind")
+    public void calibrationCleansUp(@TempDir Path root) throws Exception {
+        Path webRoot = Files.createDirectory(root.resolve("www"));
+        ReadStrategySelector selector = new ReadStrategyCalibrator().calibrate(webRoot.toFile());
+        for (long size : new long[] {1, 100000, 100L * 1024 * 1024}) {
+            Assertions.assertNotNull(selector.select(size));
+        }
+        try (Stream<Path> files = Files.list(root)) {
+            Assertions.assertEquals(1, files.count());
+        }
+    }
+}
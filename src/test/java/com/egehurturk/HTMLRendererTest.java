@@ -1,4 +1,314 @@
 package com.egehurturk;
 
+import com.egehurturk.handlers.Prerenderer;
+import com.egehurturk.httpd.HttpRequest;
+import com.egehurturk.httpd.HttpResponse;
+import com.egehurturk.renderers.FragmentCache;
+import com.egehurturk.renderers.HTMLRenderer;
+import com.egehurturk.renderers.HtmlEscaper;
+import com.egehurturk.renderers.Template;
+import com.egehurturk.renderers.TemplateCache;
+import com.egehurturk.util.StatusEnum;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@DisplayName("HTML renderer tests")
 public class HTMLRendererTest {
+
+    @Test
+    @DisplayName("The language variant preferred by Accept-Language is rendered")
+    public void languageVariantIsNegotiated(@TempDir Path dir) throws Exception {
+        Path html = dir.resolve("index.html");
+        Files.write(html, "<p>Hello [@name]</p>".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("index.tr.html"), "<p>Merhaba [@name]</p>".getBytes(StandardCharsets.UTF_8));
+
+        HTMLRenderer turkish = new HTMLRenderer(html.toString(), null, request("tr-TR,tr;q=0.9,en;q=0.8"), "en", "tr", "de");
+        turkish.setVar("name", "Ege");
+        Assertions.assertEquals("tr", turkish.getLanguage());
+        Assertions.assertEquals("<p>Merhaba Ege</p>", turkish.render());
+        HttpResponse response = turkish.toHttpResponse();
+        Assertions.assertEquals("tr", response.headers.get("Content-Language: "));
+        Assertions.assertEquals("Accept-Language", response.headers.get("Vary: "));
+
+        // no de variant on disk, the default is rendered
+        HTMLRenderer german = new HTMLRenderer(html.toString(), null, request("de"), "en", "tr", "de");
+        Assertions.assertEquals("en", german.getLanguage());
+        Assertions.assertEquals(html.toString(), german.getHtmlPath());
+    }
+
+    private static HttpRequest request(String acceptLanguage) throws Exception {
+        String request = "GET / HTTP/1.1\r\nHost: localhost\r\nAccept-Language: " + acceptLanguage + "\r\n\r\n";
+        return new HttpRequest(new BufferedReader(new StringReader(request)));
+    }
+
+    @Test
+    @DisplayName("Variables are replaced and newlines are kept")
+    public void rendersVariablesKeepingNewlines(@TempDir Path dir) throws Exception {
+        Path html = dir.resolve("user.html");
+        Files.write(html, "<title>[@title]</title>\n<p>[@name] is [@age], [@name]</p>\n".getBytes(StandardCharsets.UTF_8));
+
+        HTMLRenderer renderer = new HTMLRenderer(html.toString(), null);
+        renderer.setTemplateCache(new TemplateCache());
+        renderer.setVar("title", "Profile");
+        renderer.setVar("name", "Ege");
+        renderer.setVar("age", "23");
+
+        Assertions.assertEquals("<title>Profile</title>\n<p>Ege is 23, Ege</p>\n", renderer.render());
+        Assertions.assertEquals(StatusEnum._200_OK, renderer.getStatus());
+    }
+
+    @Test
+    @DisplayName("Unset placeholders and malformed tags are left as they are")
+    public void unknownPlaceholdersAreKept() {
+        Template template = Template.compile("a[@x]b[@ y]c[@]d[@z");
+        Assertions.assertArrayEquals(new String[]{"x"}, template.getNames());
+
+        Map<String, String> vars = new HashMap<>();
+        Assertions.assertEquals("a[@x]b[@ y]c[@]d[@z", template.render(vars));
+        vars.put("x", "[@x]");
+        Assertions.assertEquals("a[@x]b[@ y]c[@]d[@z", template.render(vars));
+    }
+
+    @Test
+    @DisplayName("Templates are compiled once and again when the file changes")
+    public void templateIsRecompiledWhenFileChanges(@TempDir Path dir) throws Exception {
+        TemplateCache cache = new TemplateCache();
+        File html = dir.resolve("page.html").toFile();
+        Files.write(html.toPath(), "<b>[@a]</b>".getBytes(StandardCharsets.UTF_8));
+
+        Template first = cache.get(html);
+        Assertions.assertSame(first, cache.get(html));
+
+        Files.write(html.toPath(), "<i>[@a]</i>".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertTrue(html.setLastModified(html.lastModified() + 2000));
+        Template second = cache.get(html);
+        Assertions.assertNotSame(first, second);
+
+        Map<String, String> vars = new HashMap<>();
+        vars.put("a", "1");
+        Assertions.assertEquals("<i>1</i>", second.render(vars));
+    }
+
+    @Test
+    @DisplayName("Missing template renders the 404 page")
+    public void missingTemplateIsNotFound(@TempDir Path dir) {
+        HTMLRenderer renderer = new HTMLRenderer(dir.resolve("missing.html").toString(), null);
+        renderer.render();
+        Assertions.assertEquals(StatusEnum._404_NOT_FOUND, renderer.getStatus());
+    }
+
+    @Test
+    @DisplayName("A template whose partial or layout cannot be loaded is answered with 500 before anything is rendered")
+    public void brokenIncludeIsInternalError(@TempDir Path dir) throws Exception {
+        Files.write(dir.resolve("page.html"), "<h1>[@title]</h1>[@include missing.html]".getBytes(StandardCharsets.UTF_8));
+        HTMLRenderer renderer = new HTMLRenderer(dir.resolve("page.html").toString(), null);
+        renderer.setTemplateCache(new TemplateCache());
+        Assertions.assertEquals(500, renderer.toHttpResponse().getCode());
+        Assertions.assertFalse(renderer.render().contains("<h1>"));
+        Assertions.assertEquals(StatusEnum._500_INTERNAL_ERROR, renderer.getStatus());
+
+        Files.write(dir.resolve("a.html"), "[@layout b.html]<a>[@content]</a>".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("b.html"), "[@include a.html]".getBytes(StandardCharsets.UTF_8));
+        HTMLRenderer cycle = new HTMLRenderer(dir.resolve("a.html").toString(), null);
+        cycle.setTemplateCache(new TemplateCache());
+        Assertions.assertEquals(500, cycle.toHttpResponse().getCode());
+    }
+
+    @Test
+    @DisplayName("Nested renderers are streamed in place into a chunked response")
+    public void nestedRendererIsStreamedChunked(@TempDir Path dir) throws Exception {
+        Path layout  = dir.resolve("layout.html");
+        Path content = dir.resolve("content.html");
+        Files.write(layout, "<title>[@title]</title>\n<main>[@content]</main>".getBytes(StandardCharsets.UTF_8));
+        Files.write(content, "<h1>[@name] profile</h1>".getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(socket, false);
+        HTMLRenderer contentRenderer = new HTMLRenderer(content.toString(), writer);
+        contentRenderer.setVar("name", "G\u00fcl");
+        HTMLRenderer layoutRenderer = new HTMLRenderer(layout.toString(), writer);
+        layoutRenderer.setVar("title", "Profile");
+        layoutRenderer.setVar("content", contentRenderer);
+
+        String expected = "<title>Profile</title>\n<main><h1>G\u00fcl profile</h1></main>";
+        Assertions.assertEquals(expected, layoutRenderer.render());
+
+        HttpResponse response = layoutRenderer.toHttpResponse();
+        response.setOutput(socket);
+        response.send();
+
+        String sent = new String(socket.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertTrue(sent.startsWith("HTTP/1.1 200 OK"));
+        Assertions.assertTrue(sent.contains("Transfer-Encoding: chunked"));
+        Assertions.assertFalse(sent.contains("Content-Length"));
+        int length = expected.getBytes(StandardCharsets.UTF_8).length;
+        Assertions.assertTrue(sent.endsWith(Integer.toHexString(length) + "\r\n" + expected + "\r\n0\r\n\r\n"));
+    }
+
+    @Test
+    @DisplayName("Each loops and if blocks render over the model")
+    public void loopsAndConditionals() {
+        Template template = Template.compile(
+                "<ul>[@each user in users]<li>[@user.name][@if user.admin] (admin)[@end]" +
+                "[@each tag in user.tags]#[@tag][@end]</li>[@end]</ul>" +
+                "[@if !users]none[@else][@title][@end]");
+
+        List<Map<String, Object>> users = new ArrayList<>();
+        Map<String, Object> ege = new HashMap<>();
+        ege.put("name", "Ege");
+        ege.put("admin", true);
+        ege.put("tags", Arrays.asList("a", "b"));
+        users.add(ege);
+        Map<String, Object> cem = new HashMap<>();
+        cem.put("name", "Cem");
+        cem.put("admin", false);
+        users.add(cem);
+
+        Map<String, Object> model = new HashMap<>();
+        model.put("users", users);
+        model.put("title", "Users");
+        Assertions.assertEquals("<ul><li>Ege (admin)#a#b</li><li>Cem</li></ul>Users", template.render(model));
+
+        model.put("users", new ArrayList<>());
+        Assertions.assertEquals("<ul></ul>none", template.render(model));
+    }
+
+    @Test
+    @DisplayName("Unbalanced blocks are rejected when compiling")
+    public void unbalancedBlocksAreRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Template.compile("[@if a]x"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Template.compile("x[@end]"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Template.compile("[@each a in b]x[@else]y[@end]"));
+    }
+
+    @Test
+    @DisplayName("Layouts wrap the template and partials are included with the same variables")
+    public void layoutsAndPartials(@TempDir Path dir) throws Exception {
+        Files.write(dir.resolve("base.html"), "<html>[@include nav.html]<main>[@content]</main></html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("nav.html"), "<nav>[@title]</nav>".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("page.html"), "[@layout base.html]<h1>[@title]</h1>".getBytes(StandardCharsets.UTF_8));
+
+        HTMLRenderer renderer = new HTMLRenderer(dir.resolve("page.html").toString(), null);
+        renderer.setTemplateCache(new TemplateCache());
+        renderer.setVar("title", "Home");
+        Assertions.assertEquals("<html><nav>Home</nav><main><h1>Home</h1></main></html>", renderer.render());
+    }
+
+    @Test
+    @DisplayName("A layout can have a layout of its own")
+    public void layoutsAreNested(@TempDir Path dir) throws Exception {
+        Files.write(dir.resolve("base.html"), "<html>[@content]</html>".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("mid.html"), "[@layout base.html]<main>[@content]</main>".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("page.html"), "[@layout mid.html]<h1>[@title]</h1>".getBytes(StandardCharsets.UTF_8));
+
+        HTMLRenderer renderer = new HTMLRenderer(dir.resolve("page.html").toString(), null);
+        renderer.setTemplateCache(new TemplateCache());
+        renderer.setVar("title", "Home");
+        Assertions.assertEquals("<html><main><h1>Home</h1></main></html>", renderer.render());
+    }
+
+    @Test
+    @DisplayName("Layouts that use each other fail at the include depth instead of overflowing the stack")
+    public void layoutCycleIsRejected(@TempDir Path dir) throws Exception {
+        Files.write(dir.resolve("a.html"), "[@layout b.html]<a>[@content]</a>".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("b.html"), "[@layout a.html]<b>[@content]</b>".getBytes(StandardCharsets.UTF_8));
+
+        Template template = new TemplateCache().get(dir.resolve("a.html").toFile());
+        IOException cycle = Assertions.assertThrows(IOException.class,
+                () -> template.renderTo(new ByteArrayOutputStream(), new HashMap<String, Object>()));
+        Assertions.assertTrue(cycle.getMessage().contains(Template.MAX_INCLUDE_DEPTH + " levels deep"));
+    }
+
+    @Test
+    @DisplayName("Cached fragments are served from memory until they expire")
+    public void fragmentsAreCachedUntilExpired(@TempDir Path dir) throws Exception {
+        Path html = dir.resolve("fragment.html");
+        Files.write(html, "<p>[@n]</p>".getBytes(StandardCharsets.UTF_8));
+        FragmentCache fragments = new FragmentCache(1024);
+
+        HTMLRenderer first = new HTMLRenderer(html.toString(), null).cache("fragment", 60000);
+        first.setFragmentCache(fragments);
+        first.setVar("n", "1");
+        Assertions.assertEquals("<p>1</p>", first.render());
+
+        HTMLRenderer second = new HTMLRenderer(html.toString(), null).cache("fragment", 60000);
+        second.setFragmentCache(fragments);
+        second.setVar("n", "2");
+        Assertions.assertEquals("<p>1</p>", second.render());
+
+        fragments.put("fragment", "<p>old</p>".getBytes(StandardCharsets.UTF_8), 0, TimeUnit.MILLISECONDS);
+        Assertions.assertNull(fragments.get("fragment"));
+        Assertions.assertEquals("<p>2</p>", second.render());
+        Assertions.assertFalse(fragments.put("big", new byte[2048], 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    @DisplayName("Values are escaped for text and attribute contexts unless raw")
+    public void valuesAreEscapedByContext() {
+        Template template = Template.compile(
+                "<a href=\"[@url]\" title='[@url]' data-x=[@url]>[@url]</a>[@!url]");
+        Map<String, Object> model = new HashMap<>();
+        model.put("url", "a\"b'c <d>&e f=g");
+        Assertions.assertEquals(
+                "<a href=\"a&quot;b&#39;c &lt;d&gt;&amp;e f=g\" title='a&quot;b&#39;c &lt;d&gt;&amp;e f=g' " +
+                "data-x=a&quot;b&#39;c&#32;&lt;d&gt;&amp;e&#32;f&#61;g>a\"b'c &lt;d&gt;&amp;e f=g</a>a\"b'c <d>&e f=g",
+                template.render(model));
+
+        Assertions.assertSame("G\u00fcl safe", HtmlEscaper.TEXT.escape("G\u00fcl safe"));
+        Assertions.assertEquals("G\u00fcl &lt;b&gt;", HtmlEscaper.TEXT.escape("G\u00fcl <b>"));
+    }
+
+    @Test
+    @DisplayName("Raw variables and nested renderers are not escaped")
+    public void rawVariablesAreNotEscaped(@TempDir Path dir) throws Exception {
+        Path html = dir.resolve("raw.html");
+        Files.write(html, "<div>[@html][@text]</div>".getBytes(StandardCharsets.UTF_8));
+        HTMLRenderer renderer = new HTMLRenderer(html.toString(), null);
+        renderer.setTemplateCache(new TemplateCache());
+        renderer.setRawVar("html", "<b>bold</b>");
+        renderer.setVar("text", "<script>");
+        Assertions.assertEquals("<div><b>bold</b>&lt;script&gt;</div>", renderer.render());
+    }
+
+    @Test
+    @DisplayName("Render-only pages are pre-rendered into the web root as index files")
+    public void pagesArePrerenderedIntoWebroot(@TempDir Path dir) throws Exception {
+        Path html = dir.resolve("about.tmpl");
+        Files.write(html, "<h1>[@title]</h1>".getBytes(StandardCharsets.UTF_8));
+        File root = Files.createDirectory(dir.resolve("www")).toFile();
+
+        Prerenderer prerenderer = new Prerenderer(root, "localhost");
+        File about = prerenderer.render("/about", (req, res) -> {
+            HTMLRenderer renderer = new HTMLRenderer(html.toString(), res.getStream());
+            renderer.setTemplateCache(new TemplateCache());
+            renderer.setVar("title", "About <us>");
+            return renderer.toHttpResponse();
+        });
+        Assertions.assertEquals(new File(root, "about" + File.separator + "index.html"), about);
+        Assertions.assertEquals("<h1>About &lt;us&gt;</h1>",
+                new String(Files.readAllBytes(about.toPath()), StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(new File(root, "feed.xml"), Prerenderer.targetOf(root, "/feed.xml"));
+        Assertions.assertNull(prerenderer.render("/missing", (req, res) ->
+                new HTMLRenderer(dir.resolve("none.tmpl").toString(), res.getStream()).toHttpResponse()));
+        Assertions.assertFalse(new File(root, "missing").exists());
+    }
 }
@@ -0,0 +1,125 @@
+package com.egehurturk;
+
+import com.egehurturk.core.HashedTimingWheel;
+import com.egehurturk.handlers.HandlerTemplate;
+import com.egehurturk.handlers.HttpController;
+import com.egehurturk.httpd.ConnectionTimeouts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@DisplayName("Hashed timing wheel and connection timeout tests")
+public class HashedTimingWheelTest {
+
+    private HashedTimingWheel wheel;
+
+    @BeforeEach
+    public void setUp() {
+        wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 8, "test-wheel");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        wheel.close();
+    }
+
+    @Test
+    @DisplayName("Timeouts fire once, never early, also after several turns of the wheel")
+    public void timeoutsFireAfterTheirDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(2);
+        AtomicLong shortElapsed = new AtomicLong();
+        AtomicLong longElapsed  = new AtomicLong();
+        long start = System.nanoTime();
+        wheel.newTimeout(() -> { shortElapsed.set(System.nanoTime() - start); fired.countDown(); }, 30, TimeUnit.MILLISECONDS);
+        // 25 ticks on a wheel of 8 buckets
+        HashedTimingWheel.Timeout later = wheel.newTimeout(() -> {
+            longElapsed.set(System.nanoTime() - start);
+            fired.countDown();
+        }, 250, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(fired.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(shortElapsed.get() >= TimeUnit.MILLISECONDS.toNanos(30));
+        Assertions.assertTrue(longElapsed.get() >= TimeUnit.MILLISECONDS.toNanos(250));
+        Assertions.assertTrue(later.isExpired());
+        Assertions.assertFalse(later.cancel());
+        Assertions.assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    @DisplayName("Cancelled timeouts never run, a hundred thousand of them are cheap")
+    public void cancelledTimeoutsNeverRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        List<HashedTimingWheel.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            timeouts.add(wheel.newTimeout(runs::incrementAndGet, 10000 + i % 1000, TimeUnit.MILLISECONDS));
+        }
+        Assertions.assertEquals(100000, wheel.pending());
+        for (HashedTimingWheel.Timeout timeout : timeouts) {
+            Assertions.assertTrue(timeout.cancel());
+        }
+        CountDownLatch fired = new CountDownLatch(1);
+        wheel.newTimeout(fired::countDown, 200, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(fired.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, runs.get());
+        Assertions.assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    @DisplayName("A request head that trickles in is answered with 408, a silent connection is closed")
+    public void stalledConnectionsAreClosed() throws Exception {
+        ConnectionTimeouts timeouts = new ConnectionTimeouts(150, 300, 1000, 1000);
+        try (ServerSocket server = new ServerSocket(0)) {
+            try (Socket client = new Socket("localhost", server.getLocalPort())) {
+                Thread worker = serve(server.accept(), timeouts);
+                client.getOutputStream().write("GET / HT".getBytes(StandardCharsets.ISO_8859_1));
+                // steady, but the head is never finished
+                for (int i = 0; i < 4; i++) {
+                    Thread.sleep(50);
+                    client.getOutputStream().write('T');
+                }
+                Assertions.assertTrue(readAll(client.getInputStream()).startsWith("HTTP/1.1 408 Request Timeout\r\n"));
+                worker.join(5000);
+                Assertions.assertFalse(worker.isAlive());
+            }
+            try (Socket client = new Socket("localhost", server.getLocalPort())) {
+                Thread worker = serve(server.accept(), timeouts);
+                Assertions.assertEquals("", readAll(client.getInputStream()));
+                worker.join(5000);
+                Assertions.assertFalse(worker.isAlive());
+            }
+        }
+    }
+
+    private Thread serve(Socket socket, ConnectionTimeouts timeouts) {
+        HttpController controller = new HttpController(socket, new ArrayList<HandlerTemplate>());
+        controller.setTimeouts(wheel, timeouts);
+        Thread worker = new Thread(controller);
+        worker.start();
+        return worker;
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -2,7 +2,10 @@ package com.egehurturk;
 
 
 import com.egehurturk.exceptions.HttpRequestException;
+import com.egehurturk.exceptions.RequestTooLargeException;
 import com.egehurturk.httpd.HttpRequest;
+import com.egehurturk.httpd.RequestLimits;
+import com.egehurturk.util.HeaderEnum;
 import org.junit.Assert;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -106,7 +109,7 @@ public class HttpOnlyGetRequestTest {
     @DisplayName("Test valid http request's header user-agent to be mozilla")
     public void testHttpRequestHeaderUserAgent(String http) throws IOException, HttpRequestException {
         testRequest = new HttpRequest(new BufferedReader(new InputStreamReader(prepareIncomingRequestStream(http))));
-        Assert.assertEquals(testRequest.headers.get("user-agent").trim(), "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/78.0.3904.97 Safari/537.36".toLowerCase());
+        Assert.assertEquals(testRequest.headers.get("user-agent").trim(), "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/78.0.3904.97 Safari/537.36");
     }
 
 
@@ -234,6 +237,113 @@ public class HttpOnlyGetRequestTest {
         );
     }
 
+    @Test
+    @DisplayName("Header names are case-insensitive, values keep their case and repeated headers are joined")
+    public void testHeaderTable() throws IOException, HttpRequestException {
+        String http = "GET / HTTP/1.1\r\n" +
+                "HOST: localhost:8080\r\n" +
+                "Cookie: SESSION=AbC123\r\n" +
+                "X-Forwarded-For: 10.0.0.1\r\n" +
+                "x-forwarded-for:10.0.0.2 \r\n" +
+                "Accept-Encoding: gzip\r\n" +
+                "\r\n";
+        testRequest = new HttpRequest(new BufferedReader(new InputStreamReader(prepareIncomingRequestStream(http))));
+        Assert.assertEquals("localhost:8080", testRequest.header(HeaderEnum.HOST));
+        Assert.assertEquals("localhost:8080", testRequest.header("host"));
+        Assert.assertEquals("SESSION=AbC123", testRequest.header("COOKIE"));
+        Assert.assertEquals("10.0.0.1, 10.0.0.2", testRequest.header("X-FORWARDED-FOR"));
+        Assert.assertNull(testRequest.header("Authorization"));
+        Assert.assertEquals(4, testRequest.headers.size());
+        Assert.assertEquals("Accept-Encoding: gzip\r\nHost: localhost:8080\r\nCookie: SESSION=AbC123\r\n" +
+                "X-Forwarded-For: 10.0.0.1, 10.0.0.2\r\n", testRequest.headers.toString());
+    }
+
+    @Test
+    @DisplayName("Query parameters are decoded on first use, repeated keys keep every value")
+    public void testQueryParameters() throws IOException, HttpRequestException {
+        String http = "GET /paramtest?name=John%20Doe&city=S%C3%A3o+Paulo&tag=a&tag=b&flag&&bad=%zz%4&x%3Dy=1%2B1 HTTP/1.1\r\n" +
+                "Host: localhost:8080\r\n" +
+                "\r\n";
+        testRequest = new HttpRequest(new BufferedReader(new InputStreamReader(prepareIncomingRequestStream(http))));
+        Assert.assertEquals("/paramtest", testRequest.getPath());
+        Assert.assertEquals("name=John%20Doe&city=S%C3%A3o+Paulo&tag=a&tag=b&flag&&bad=%zz%4&x%3Dy=1%2B1", testRequest.getRawQuery());
+        Assert.assertEquals("John Doe", testRequest.queryParam("name"));
+        Assert.assertEquals("S\u00e3o Paulo", testRequest.queryParam("city"));
+        Assert.assertEquals(java.util.Arrays.asList("a", "b"), testRequest.getQueryParameters().getAll("tag"));
+        Assert.assertEquals("", testRequest.queryParam("flag"));
+        Assert.assertEquals("%zz%4", testRequest.queryParam("bad"));
+        Assert.assertEquals("1+1", testRequest.queryParam("x=y"));
+        Assert.assertNull(testRequest.queryParam("missing"));
+        Assert.assertEquals(7, testRequest.getQueryParameters().size());
+        Assert.assertSame(testRequest.getQueryParameters(), testRequest.getQueryParameters());
+    }
+
+    @Test
+    @DisplayName("Requests over the limits are rejected while they are read, with 414, 431 and 413")
+    public void testRequestLimits() throws IOException, HttpRequestException {
+        RequestLimits limits = new RequestLimits(32, 64, 3, 10);
+
+        // a request line that never ends is not read further than the limit
+        InputStream endless = new InputStream() {
+            int sent = 0;
+            @Override
+            public int read() {
+                return (sent++ < 5) ? "GET /".charAt(sent - 1) : 'a';
+            }
+        };
+        RequestTooLargeException line = assertThrows(RequestTooLargeException.class,
+                () -> HttpRequest.fromStream(endless, limits));
+        Assert.assertEquals(414, line.code);
+
+        String longHeader = "GET / HTTP/1.1\r\nCookie: " + new String(new char[60]).replace('\0', 'c') + "\r\n\r\n";
+        Assert.assertEquals(431, assertThrows(RequestTooLargeException.class,
+                () -> HttpRequest.fromStream(prepareIncomingRequestStream(longHeader), limits)).code);
+        String manyHeaders = "GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\nC: 3\r\nD: 4\r\n\r\n";
+        Assert.assertEquals(431, assertThrows(RequestTooLargeException.class,
+                () -> HttpRequest.fromStream(prepareIncomingRequestStream(manyHeaders), limits)).code);
+        String largeBody = "POST / HTTP/1.1\r\nContent-Length: 11\r\n\r\n01234567890";
+        Assert.assertEquals(413, assertThrows(RequestTooLargeException.class,
+                () -> HttpRequest.fromStream(prepareIncomingRequestStream(largeBody), limits)).code);
+
+        // without a Content-Length the body fails once it passes the limit, and the request reports a 413
+        HttpRequest unbounded = HttpRequest.fromStream(prepareIncomingRequestStream("POST / HTTP/1.1\r\n\r\n01234567890"), limits);
+        unbounded.checkBodySize();
+        IOException overflow = assertThrows(IOException.class, () -> {
+            InputStream body = unbounded.getBodyStream();
+            while (body.read() != -1) { }
+        });
+        Assert.assertTrue(overflow.getCause() instanceof RequestTooLargeException);
+        Assert.assertEquals(413, assertThrows(RequestTooLargeException.class, unbounded::checkBodySize).code);
+
+        // a handler that reads it with getBody() gets null, the request still reports the 413
+        HttpRequest buffered = HttpRequest.fromStream(prepareIncomingRequestStream("POST / HTTP/1.1\r\n\r\n01234567890"), limits);
+        Assert.assertNull(buffered.getBody());
+        Assert.assertEquals(413, assertThrows(RequestTooLargeException.class, buffered::checkBodySize).code);
+
+        HttpRequest fits = HttpRequest.fromStream(prepareIncomingRequestStream(
+                "POST / HTTP/1.1\r\nA: 1\r\nB: 2\r\nContent-Length: 10\r\n\r\n0123456789"), limits);
+        Assert.assertEquals("0123456789", new String(fits.getBody()));
+    }
+
+    @Test
+    @DisplayName("100 Continue is sent once, by the first read of the body, and only to HTTP/1.1 clients")
+    public void testExpectContinue() throws IOException, HttpRequestException {
+        String http = "POST /upload HTTP/1.1\r\nExpect: 100-Continue\r\nContent-Length: 4\r\n\r\nbody";
+        testRequest = HttpRequest.fromStream(prepareIncomingRequestStream(http));
+        Assert.assertTrue(testRequest.expectsContinue());
+        ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        testRequest.continueOnRead(socket);
+        Assert.assertEquals(0, socket.size());
+        Assert.assertEquals("body", new String(testRequest.getBody()));
+        Assert.assertEquals("HTTP/1.1 100 Continue\r\n\r\n", socket.toString());
+
+        HttpRequest old = HttpRequest.fromStream(prepareIncomingRequestStream(http.replace("HTTP/1.1", "HTTP/1.0")));
+        Assert.assertFalse(old.expectsContinue());
+        ByteArrayOutputStream ignored = new ByteArrayOutputStream();
+        old.continueOnRead(ignored);
+        old.getBody();
+        Assert.assertEquals(0, ignored.size());
+    }
 
     public InputStream prepareIncomingRequestStream(String stream) throws IOException {
         InputStream inputStream = new ByteArrayInputStream(stream.getBytes());
@@ -0,0 +1,81 @@
+package com.egehurturk;
+
+import com.egehurturk.util.JsonCodec;
+import com.egehurturk.util.JsonWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing a small object to UTF-8 JSON bytes: by concatenating strings
+ * (as the example handlers used to) and with the per-class {@link JsonCodec}.
+ * Not a test. After {@code mvn test-compile}, run its main method with the
+ * test classpath, or JMH directly:
+ * <code>
+ *     java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main JsonCodecBenchmark
+ * </code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    public static class Profile {
+        String username = "monkey";
+        String name     = "Monkey \"man\"";
+        int age         = 23;
+        double score    = 97.5;
+        boolean active  = true;
+        List<String> languages = Arrays.asList("Java", "Python", "Go");
+    }
+
+    private final Profile profile = new Profile();
+    private final JsonWriter writer = new JsonWriter(false);
+
+    @Benchmark
+    public byte[] handBuiltString() {
+        StringBuilder languages = new StringBuilder();
+        for (String language : profile.languages) {
+            languages.append(languages.length() == 0 ? "" : ",").append("\"").append(escape(language)).append("\"");
+        }
+        String json = "{\"username\":\"" + escape(profile.username) + "\",\"name\":\"" + escape(profile.name) +
+                "\",\"age\":" + profile.age + ",\"score\":" + profile.score + ",\"active\":" + profile.active +
+                ",\"languages\":[" + languages + "]}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int codecIntoReusedWriter() {
+        writer.reset();
+        JsonCodec.of(Profile.class).write(writer, profile);
+        return writer.size();
+    }
+
+    @Benchmark
+    public byte[] codecIntoNewWriter() {
+        JsonWriter json = new JsonWriter(false);
+        JsonCodec.of(Profile.class).write(json, profile);
+        return json.toByteArray();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JsonCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,150 @@
+package com.egehurturk;
+
+import com.egehurturk.exceptions.MalformedJsonException;
+import com.egehurturk.httpd.HttpRequest;
+import com.egehurturk.util.JsonCodec;
+import com.egehurturk.util.JsonReader;
+import com.egehurturk.util.JsonWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+@DisplayName("Streaming JSON reader tests")
+public class JsonReaderTest {
+
+    @Test
+    @DisplayName("Tokens are pulled one by one and unknown values are skipped")
+    public void pullsTokensAndSkipsValues() throws Exception {
+        JsonReader json = reader("{\"id\": 42, \"skip\": {\"a\": [1, {\"b\": \"}\"}], \"c\": null}, \"name\": \"G\\u00fcl \\ud83d\\ude00\\n\"}");
+        json.beginObject();
+        Assertions.assertEquals("id", json.nextName());
+        Assertions.assertEquals(JsonReader.Token.NUMBER, json.peek());
+        Assertions.assertEquals(42, json.nextInt());
+        Assertions.assertEquals("skip", json.nextName());
+        json.skipValue();
+        Assertions.assertEquals("name", json.nextName());
+        Assertions.assertEquals("G\u00fcl \ud83d\ude00\n", json.nextString());
+        Assertions.assertFalse(json.hasNext());
+        json.endObject();
+        json.endDocument();
+    }
+
+    @Test
+    @DisplayName("Tree mode builds maps, lists, longs, doubles, booleans and nulls")
+    public void readsTree() throws Exception {
+        Object tree = reader("[{\"a\": 1, \"b\": -2.5e1}, true, null, \"x\", 123456789012345678901234]").readTree();
+        List<Object> expected = new ArrayList<>();
+        Map<String, Object> object = new LinkedHashMap<>();
+        object.put("a", 1L);
+        object.put("b", -25.0);
+        expected.add(object);
+        expected.add(true);
+        expected.add(null);
+        expected.add("x");
+        expected.add(new java.math.BigDecimal("123456789012345678901234"));
+        Assertions.assertEquals(expected, tree);
+    }
+
+    @Test
+    @DisplayName("A request body is bound to an object while it is read, up to Content-Length")
+    public void bindsRequestBody() throws Exception {
+        String body = "{\"name\": \"Ege\", \"age\": 23, \"role\": \"ADMIN\", \"tags\": [\"a\", \"b\"], " +
+                "\"scores\": [1, 2], \"address\": {\"city\": \"Istanbul\"}, \"extra\": [{}]}";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String request = "POST /users HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Content-Length: " + bytes.length + "\r\n" +
+                "\r\n" + body + "GET /next HTTP/1.1\r\n";
+        InputStream in = new ByteArrayInputStream(request.getBytes(StandardCharsets.UTF_8));
+
+        HttpRequest req = HttpRequest.fromStream(in);
+        Assertions.assertEquals("/users", req.getPath());
+        User user = req.readJson(User.class);
+        Assertions.assertEquals("Ege", user.name);
+        Assertions.assertEquals(23, user.age);
+        Assertions.assertEquals(Role.ADMIN, user.role);
+        Assertions.assertEquals(Arrays.asList("a", "b"), user.tags);
+        Assertions.assertArrayEquals(new int[]{1, 2}, user.scores);
+        Assertions.assertEquals("Istanbul", user.address.city);
+        Assertions.assertEquals("default", user.missing);
+        // the body stream ends at Content-Length
+        Assertions.assertEquals('G', in.read());
+    }
+
+    @Test
+    @DisplayName("Malformed input and values of the wrong shape are rejected")
+    public void rejectsMalformedInput() {
+        String[] malformed = {"{\"a\" 1}", "[1,]", "{\"a\": tru}", "[01]", "\"unterminated", "{} {}", "[\"\u0001\"]", "[[[[1]]]]"};
+        for (String input : malformed) {
+            Assertions.assertThrows(MalformedJsonException.class, () -> {
+                JsonReader json = new JsonReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), 3);
+                json.readTree();
+                json.endDocument();
+            }, input);
+        }
+        Assertions.assertThrows(MalformedJsonException.class, () -> reader("{\"age\": \"old\"}").read(User.class));
+        Assertions.assertThrows(MalformedJsonException.class, () -> reader("{\"age\": 1.5}").read(User.class));
+    }
+
+    @Test
+    @DisplayName("Objects are written and read back through the codec of their class")
+    public void codecRoundTrip() throws Exception {
+        Admin admin = new Admin();
+        admin.name    = "Ege \"root\"";
+        admin.age     = 23;
+        admin.role    = Role.ADMIN;
+        admin.tags    = Arrays.asList("a", "b");
+        admin.scores  = new int[]{7};
+        admin.level   = 3L;
+        admin.active  = true;
+        admin.address = new Address();
+        admin.address.city = "Istanbul";
+
+        JsonWriter json = new JsonWriter(false);
+        json.value(admin);
+        Assertions.assertEquals("{\"name\":\"Ege \\\"root\\\"\",\"age\":23,\"role\":\"ADMIN\",\"tags\":[\"a\",\"b\"]," +
+                "\"scores\":[7],\"address\":{\"city\":\"Istanbul\"},\"missing\":\"default\",\"level\":3," +
+                "\"active\":true,\"id\":1}", json.toString());
+
+        Admin read = reader(json.toString()).read(Admin.class);
+        Assertions.assertSame(JsonCodec.of(Admin.class), JsonCodec.of(Admin.class));
+        Assertions.assertEquals(admin.name, read.name);
+        Assertions.assertEquals(3L, read.level);
+        Assertions.assertTrue(read.active);
+        Assertions.assertEquals("Istanbul", read.address.city);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new JsonWriter(false).value(new Object()));
+    }
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    enum Role { USER, ADMIN }
+
+    static class Address {
+        String city;
+    }
+
+    static class User {
+        String name;
+        int age;
+        Role role;
+        List<String> tags;
+        int[] scores;
+        Address address;
+        String missing = "default";
+    }
+
+    static class Admin extends User {
+        long level;
+        boolean active;
+        final int id = 1;
+        transient String session = "secret";
+    }
+}
@@ -3,10 +3,12 @@ package com.egehurturk;
 import com.egehurturk.exceptions.HttpRequestException;
 import com.egehurturk.handlers.FileResponse;
 import com.egehurturk.handlers.JsonResponse;
+import com.egehurturk.handlers.NdjsonResponse;
 import com.egehurturk.httpd.HttpRequest;
 import com.egehurturk.httpd.HttpResponse;
 import com.egehurturk.util.HeaderEnum;
 import com.egehurturk.util.Json;
+import com.egehurturk.util.JsonWriter;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.DisplayName;
@@ -16,10 +18,16 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -396,6 +404,126 @@ public class JsonResponseTest {
     }
 
 
+    @Test
+    @DisplayName("JSON writer escapes strings and encodes them as UTF-8")
+    public void jsonWriterEscapesAndEncodes() {
+        Map<String, Object> model = new LinkedHashMap<>();
+        model.put("text", "a\"b\\c\n\u0001 G\u00fcl \ud83d\ude00 \ud83d");
+        model.put("numbers", Arrays.asList(1, -2L, 2.5, 3.0));
+        model.put("flags", new boolean[]{true, false});
+        model.put("none", null);
+
+        JsonWriter json = new JsonWriter(false);
+        json.value(model);
+        String expected = "{\"text\":\"a\\\"b\\\\c\\n\\u0001 G\u00fcl \ud83d\ude00 \\ud83d\"," +
+                "\"numbers\":[1,-2,2.5,3],\"flags\":[true,false],\"none\":null}";
+        Assertions.assertEquals(expected, new String(json.toByteArray(), StandardCharsets.UTF_8));
+
+        Assertions.assertThrows(IllegalStateException.class, () -> json.value("second document"));
+        json.reset();
+        Assertions.assertThrows(IllegalStateException.class, () -> json.beginObject().value(1));
+    }
+
+    @Test
+    @DisplayName("JSON writer indents pretty documents and streams to a sink")
+    public void jsonWriterPrettyAndSink() {
+        JsonWriter pretty = new JsonWriter(true);
+        pretty.beginObject()
+                .name("hi").beginObject().name("User").value("ege").name("list").beginArray().value(1).value(2).endArray().endObject()
+                .name("empty").beginArray().endArray()
+              .endObject();
+        Assertions.assertEquals("{\n" +
+                "  \"hi\":{\n" +
+                "    \"User\":\"ege\",\n" +
+                "    \"list\":[\n" +
+                "      1,\n" +
+                "      2\n" +
+                "    ]\n" +
+                "  },\n" +
+                "  \"empty\":[]\n" +
+                "}", pretty.toString());
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        JsonWriter streaming = new JsonWriter(sink, false);
+        streaming.beginArray();
+        for (int i = 0; i < 5000; i++) {
+            streaming.value("row " + i);
+        }
+        streaming.endArray();
+        Assertions.assertTrue(sink.size() > 0);
+        Assertions.assertTrue(streaming.size() < 8192);
+        streaming.flush();
+        String document = new String(sink.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertTrue(document.startsWith("[\"row 0\",\"row 1\","));
+        Assertions.assertTrue(document.endsWith(",\"row 4999\"]"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRequestWithAcceptJson")
+    @DisplayName("A JSON writer body is sent from the writer buffer with its length")
+    public void jsonResponseFromWriter(String requestBody) throws IOException, HttpRequestException {
+        request = new HttpRequest(new BufferedReader(new InputStreamReader(prepareIncomingRequestStream(requestBody))));
+        JsonResponse json = new JsonResponse(new PrintWriter(System.out, true), request);
+        JsonWriter writer = new JsonWriter(false);
+        writer.beginObject().name("name").value("G\u00fcl").endObject();
+        json.setBody(writer);
+        HttpResponse response = json.toHttpResponse();
+        Assertions.assertEquals("{\"name\":\"G\u00fcl\"}", new String(response.getBody(), StandardCharsets.UTF_8));
+        Assertions.assertEquals("15", response.headers.get(HeaderEnum.CONTENT_LENGTH.NAME));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRequestWithAcceptJson")
+    @DisplayName("NDJSON records are sent chunked, one line each, and the record stream is closed")
+    public void ndjsonResponseStreamsRecords(String requestBody) throws IOException, HttpRequestException {
+        request = new HttpRequest(new BufferedReader(new InputStreamReader(prepareIncomingRequestStream(requestBody))));
+        ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(socket, true);
+        AtomicBoolean closed = new AtomicBoolean();
+
+        NdjsonResponse ndjson = new NdjsonResponse(writer, request);
+        ndjson.setBatchSize(10);
+        ndjson.setRecords(IntStream.range(0, 1000).mapToObj(i -> {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("id", i);
+            record.put("name", "row\n" + i);
+            return record;
+        }).onClose(() -> closed.set(true)));
+        HttpResponse response = ndjson.toHttpResponse();
+        response.setOutput(socket);
+        response.send();
+
+        Assertions.assertTrue(closed.get());
+        String sent = new String(socket.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertTrue(sent.contains("application/x-ndjson"));
+        Assertions.assertTrue(sent.contains("Transfer-Encoding: chunked"));
+        // the first record is flushed as a chunk of its own
+        Assertions.assertTrue(sent.contains("\n19\r\n{\"id\":0,\"name\":\"row\\n0\"}\n\r\n"));
+        Assertions.assertTrue(sent.contains("{\"id\":999,\"name\":\"row\\n999\"}\n\r\n0\r\n\r\n"));
+        Assertions.assertThrows(IllegalStateException.class, () -> new JsonWriter(false).beginArray().endRecord());
+    }
+
+    @Test
+    @DisplayName("NDJSON records are not chunked for HTTP/1.0 clients, the body ends with the connection")
+    public void ndjsonResponseIsNotChunkedForHttp10() throws IOException, HttpRequestException {
+        request = new HttpRequest(new BufferedReader(new InputStreamReader(prepareIncomingRequestStream(
+                "GET /records HTTP/1.0\r\nAccept: application/x-ndjson\r\n\r\n"))));
+        ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(socket, true);
+
+        NdjsonResponse ndjson = new NdjsonResponse(writer, request);
+        ndjson.setRecords(IntStream.range(0, 3).boxed());
+        HttpResponse response = ndjson.toHttpResponse();
+        response.setOutput(socket);
+        response.send();
+
+        String sent = new String(socket.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertFalse(sent.contains("Transfer-Encoding"));
+        Assertions.assertFalse(sent.contains("Content-Length"));
+        Assertions.assertTrue(sent.contains("Connection: close"));
+        Assertions.assertTrue(sent.endsWith(System.lineSeparator() + "0\n1\n2\n"));
+    }
+
     /* ~ Helper Functions ~ */
     public InputStream prepareIncomingRequestStream(String stream) throws IOException {
         return new ByteArrayInputStream(stream.getBytes());
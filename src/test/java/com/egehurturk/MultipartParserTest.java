@@ -0,0 +1,155 @@
+package com.egehurturk;
+
+import com.egehurturk.exceptions.MalformedMultipartException;
+import com.egehurturk.httpd.HttpRequest;
+import com.egehurturk.httpd.MultipartParser;
+import com.egehurturk.httpd.Part;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+@DisplayName("Multipart form data parser tests")
+public class MultipartParserTest {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    @Test
+    @DisplayName("Fields and files of a request are parsed, large parts spill to disk")
+    public void parsesRequestAndSpillsLargeParts(@TempDir Path dir) throws Exception {
+        byte[] file = new byte[100000];
+        new Random(7).nextBytes(file);
+        // looks like the start of a delimiter, but is content
+        byte[] tricky = ("a\r\n--" + BOUNDARY.substring(0, 20) + "\r\n-").getBytes(StandardCharsets.ISO_8859_1);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, "preamble is ignored\r\n");
+        write(body, "--" + BOUNDARY + "\r\n");
+        write(body, "Content-Disposition: form-data; name=\"title\"\r\n\r\n");
+        write(body, "G\u00fcl");
+        write(body, "\r\n--" + BOUNDARY + "  \r\n");
+        write(body, "content-disposition: form-data; name=\"upload\"; filename=\"C:\\dir\\a \\\"b\\\".bin\"\r\n");
+        write(body, "Content-Type: application/octet-stream\r\n\r\n");
+        body.write(file);
+        write(body, "\r\n--" + BOUNDARY + "\r\n");
+        write(body, "Content-Disposition: form-data; name=\"tricky\"\r\n\r\n");
+        body.write(tricky);
+        write(body, "\r\n--" + BOUNDARY + "\r\n");
+        write(body, "Content-Disposition: form-data; name=\"empty\"\r\n\r\n");
+        write(body, "\r\n--" + BOUNDARY + "--\r\nepilogue");
+        byte[] bytes = body.toByteArray();
+
+        String head = "POST /upload HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Content-Type: multipart/form-data; boundary=\"" + BOUNDARY + "\"\r\n" +
+                "Content-Length: " + bytes.length + "\r\n\r\n";
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        write(request, head);
+        request.write(bytes);
+        HttpRequest req = HttpRequest.fromStream(new ByteArrayInputStream(request.toByteArray()));
+
+        File spilled;
+        try (MultipartParser form = MultipartParser.of(req)) {
+            form.setMemoryThreshold(1024);
+            form.setTempDirectory(dir.toFile());
+            List<Part> parts = form.readAll();
+            Assertions.assertEquals(4, parts.size());
+
+            Assertions.assertEquals("title", parts.get(0).getName());
+            Assertions.assertNull(parts.get(0).getFilename());
+            Assertions.assertEquals("text/plain", parts.get(0).getContentType());
+            Assertions.assertEquals("G\u00fcl", parts.get(0).getString());
+
+            Part upload = parts.get(1);
+            Assertions.assertEquals("C:\\dir\\a \"b\".bin", upload.getFilename());
+            Assertions.assertEquals("application/octet-stream", upload.getContentType());
+            Assertions.assertFalse(upload.isInMemory());
+            Assertions.assertEquals(file.length, upload.getSize());
+            spilled = upload.getFile();
+            Assertions.assertArrayEquals(file, Files.readAllBytes(spilled.toPath()));
+
+            Assertions.assertTrue(parts.get(2).isInMemory());
+            Assertions.assertArrayEquals(tricky, readAll(parts.get(2).getInputStream()));
+            Assertions.assertEquals("", parts.get(3).getString());
+            Assertions.assertNull(form.next());
+        }
+        Assertions.assertFalse(spilled.exists());
+    }
+
+    @Test
+    @DisplayName("A streamed part arrives intact through small reads, unread parts are skipped")
+    public void streamsPartsThroughSmallReads() throws Exception {
+        byte[] file = new byte[3 * 1024 * 1024];
+        new Random(11).nextBytes(file);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, "--b\r\nContent-Disposition: form-data; name=\"skipped\"\r\n\r\n");
+        body.write(file);
+        write(body, "\r\n--b\r\nContent-Disposition: form-data; name=\"file\"; filename=\"f\"\r\n\r\n");
+        body.write(file);
+        write(body, "\r\n--b--");
+
+        MultipartParser form = new MultipartParser(new TrickleInputStream(new ByteArrayInputStream(body.toByteArray())), "b");
+        Assertions.assertEquals("skipped", form.next().getName());
+        Part part = form.next();
+        Assertions.assertEquals("file", part.getName());
+        Assertions.assertEquals(-1, part.getSize());
+        Assertions.assertArrayEquals(file, readAll(part.getInputStream()));
+        Assertions.assertNull(form.next());
+    }
+
+    @Test
+    @DisplayName("Bodies without a closing boundary and requests that are not multipart are rejected")
+    public void rejectsMalformedBodies() throws Exception {
+        MultipartParser truncated = new MultipartParser(new ByteArrayInputStream(
+                "--b\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nvalue".getBytes(StandardCharsets.ISO_8859_1)), "b");
+        Part part = truncated.next();
+        Assertions.assertThrows(MalformedMultipartException.class, () -> readAll(part.getInputStream()));
+
+        MultipartParser noBoundary = new MultipartParser(new ByteArrayInputStream("no parts".getBytes(StandardCharsets.ISO_8859_1)), "b");
+        Assertions.assertThrows(MalformedMultipartException.class, noBoundary::next);
+
+        String json = "POST /upload HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: 2\r\n\r\n{}";
+        HttpRequest req = HttpRequest.fromStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.ISO_8859_1)));
+        Assertions.assertThrows(MalformedMultipartException.class, () -> MultipartParser.of(req));
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1000];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns at most 7 bytes per read, like a slow socket
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+        TrickleInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 7));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.egehurturk;
+
+import com.egehurturk.exceptions.BadRequest400Exception;
+import com.egehurturk.httpd.HttpRequest;
+import com.egehurturk.httpd.InflatingInputStream;
+import com.egehurturk.httpd.RequestLimits;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+@DisplayName("Request body content coding tests")
+public class RequestBodyDecodingTest {
+
+    @Test
+    @DisplayName("gzip bodies of several members are inflated while they are read")
+    public void inflatesGzipMembers() throws Exception {
+        byte[] text = text(200000);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(gzip(text));
+        body.write(gzip("tail".getBytes(StandardCharsets.UTF_8)));
+
+        HttpRequest req = request("gzip", body.toByteArray(), RequestLimits.getDefault());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(text);
+        expected.write("tail".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertArrayEquals(expected.toByteArray(), req.getBody());
+
+        // an empty encoded body is an empty body
+        Assertions.assertArrayEquals(new byte[0], request("gzip", new byte[0], RequestLimits.getDefault()).getBody());
+    }
+
+    @Test
+    @DisplayName("deflate bodies are inflated from zlib and raw deflate streams")
+    public void inflatesDeflate() throws Exception {
+        byte[] text = text(50000);
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(zlib)) {
+            out.write(text);
+        }
+        Assertions.assertArrayEquals(text, request("Deflate", zlib.toByteArray(), RequestLimits.getDefault()).getBody());
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(raw, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            out.write(text);
+        }
+        Assertions.assertArrayEquals(text, request("deflate", raw.toByteArray(), RequestLimits.getDefault()).getBody());
+
+        // codings are removed in the reverse order they were applied
+        Assertions.assertArrayEquals(text, request("deflate, gzip", gzip(zlib.toByteArray()), RequestLimits.getDefault()).getBody());
+    }
+
+    @Test
+    @DisplayName("Bodies that inflate past the limit, corrupt bodies and unknown codings are rejected")
+    public void rejectsBombsAndUnknownCodings() throws Exception {
+        byte[] bomb = gzip(new byte[4 * 1024 * 1024]);
+        Assertions.assertTrue(bomb.length < 8192);
+        RequestLimits limits = new RequestLimits(8192, 32768, 100, 8192, 1024 * 1024);
+        drain(request("gzip", gzip(text(100)), limits).getBodyStream());
+        int idle = InflatingInputStream.idle();
+        InputStream body = request("gzip", bomb, limits).getBodyStream();
+        IOException tooLarge = Assertions.assertThrows(IOException.class, () -> drain(body));
+        Assertions.assertTrue(tooLarge.getMessage().contains("larger than 1048576"));
+        // the inflater went back to the pool without the body being closed, later reads fail the same way
+        Assertions.assertEquals(idle, InflatingInputStream.idle());
+        Assertions.assertSame(tooLarge, Assertions.assertThrows(IOException.class, body::read));
+
+        byte[] corrupt = gzip(text(1000));
+        corrupt[corrupt.length - 5] ^= 1; // checksum
+        Assertions.assertThrows(ZipException.class, () -> drain(request("gzip", corrupt, limits).getBodyStream()));
+        Assertions.assertThrows(IOException.class, () -> drain(request("gzip", "plain".getBytes(StandardCharsets.UTF_8), limits).getBodyStream()));
+
+        BadRequest400Exception unsupported = Assertions.assertThrows(BadRequest400Exception.class,
+                () -> request("br", new byte[10], limits));
+        Assertions.assertEquals(415, unsupported.code);
+        Assertions.assertFalse(InflatingInputStream.supports("compress"));
+    }
+
+    private static HttpRequest request(String encoding, byte[] body, RequestLimits limits) throws Exception {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        request.write(("POST /json HTTP/1.1\r\nContent-Encoding: " + encoding + "\r\n" +
+                "Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        request.write(body);
+        return HttpRequest.fromStream(new ByteArrayInputStream(request.toByteArray()), limits);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] text(int length) {
+        Random random = new Random(3);
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return text;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] chunk = new byte[4096];
+        while (in.read(chunk) != -1) { }
+    }
+}
@@ -0,0 +1,164 @@
+package com.egehurturk;
+
+import com.egehurturk.caches.CachedContent;
+import com.egehurturk.caches.CacheWarmer;
+import com.egehurturk.caches.StaticContentCache;
+import com.egehurturk.readers.HeapReadStrategy;
+import com.egehurturk.readers.ReadStrategySelector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@DisplayName("Static content cache tests")
+public class StaticContentCacheTest {
+
+    @Test
+    @DisplayName("Small files are cached on the heap, large files off-heap")
+    public void filesAreStoredInTierMatchingTheirSize() {
+        StaticContentCache cache = new StaticContentCache(1024 * 1024, 1024 * 1024, 4096, 64 * 1024);
+        Assertions.assertTrue(cache.put("/small", ByteBuffer.wrap(new byte[100])));
+        Assertions.assertTrue(cache.put("/large", ByteBuffer.wrap(new byte[10000])));
+
+        Assertions.assertEquals(100, cache.getHeapBytes());
+        Assertions.assertEquals(10000, cache.getOffHeapBytes());
+    }
+
+    @Test
+    @DisplayName("Off-heap hits are read-only views of the stored bytes")
+    public void offHeapHitIsReadOnlyView() {
+        StaticContentCache cache = new StaticContentCache(0, 1024 * 1024, 1024, 64 * 1024);
+        byte[] content = new byte[5000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        cache.put("/file", ByteBuffer.wrap(content));
+
+        CachedContent hit = cache.acquire("/file");
+        ByteBuffer view = hit.buffer();
+        Assertions.assertTrue(view.isReadOnly());
+        Assertions.assertTrue(view.isDirect());
+        Assertions.assertEquals(content.length, view.remaining());
+        byte[] read = new byte[view.remaining()];
+        view.get(read);
+        Assertions.assertArrayEquals(content, read);
+        hit.release();
+    }
+
+    @Test
+    @DisplayName("Heap hits are read-only views, the cached array cannot be changed by a request")
+    public void heapHitIsReadOnlyView() {
+        StaticContentCache cache = new StaticContentCache(1024 * 1024, 0, 4096, 64 * 1024);
+        cache.put("/file", ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+        ByteBuffer view = cache.acquire("/file").buffer();
+        Assertions.assertTrue(view.isReadOnly());
+        Assertions.assertFalse(view.hasArray());
+        Assertions.assertThrows(ReadOnlyBufferException.class, () -> view.put(0, (byte) 9));
+        Assertions.assertEquals(1, cache.acquire("/file").buffer().get(0));
+    }
+
+    @Test
+    @DisplayName("A size class without a slab takes over the slab of the least recently used entry once the budget is spent")
+    public void newSizeClassTakesOverSlab() {
+        // two 8 KB slabs, both carved for other classes before the 8000 byte file arrives
+        StaticContentCache cache = new StaticContentCache(0, 16384, 1024, 8192);
+        Assertions.assertTrue(cache.put("/small", ByteBuffer.wrap(new byte[1100])));
+        Assertions.assertTrue(cache.put("/mid", ByteBuffer.wrap(new byte[3000])));
+        cache.acquire("/mid").release();
+
+        Assertions.assertTrue(cache.put("/big", ByteBuffer.wrap(new byte[8000])));
+        Assertions.assertNull(cache.acquire("/small"));
+        CachedContent mid = cache.acquire("/mid");
+        CachedContent big = cache.acquire("/big");
+        Assertions.assertNotNull(mid);
+        Assertions.assertEquals(8000, big.buffer().remaining());
+        mid.release();
+        big.release();
+
+        // and the memory flows back when the smaller files are wanted again
+        Assertions.assertTrue(cache.put("/small", ByteBuffer.wrap(new byte[1100])));
+        Assertions.assertNull(cache.acquire("/mid"));
+        Assertions.assertEquals(8000 + 1100, cache.getOffHeapBytes());
+    }
+
+    @Test
+    @DisplayName("Content read before an invalidation is not stored, in either tier")
+    public void putAfterInvalidationIsDropped() {
+        StaticContentCache cache = new StaticContentCache(1024 * 1024, 1024 * 1024, 4096, 64 * 1024);
+        long stamp = cache.generation();
+        cache.invalidateTree("/www/assets");
+        Assertions.assertFalse(cache.put("/www/assets/small", ByteBuffer.wrap(new byte[100]), true, stamp));
+        Assertions.assertFalse(cache.put("/www/assets/large", ByteBuffer.wrap(new byte[10000]), true, stamp));
+        Assertions.assertNull(cache.acquire("/www/assets/small"));
+        Assertions.assertNull(cache.acquire("/www/assets/large"));
+        Assertions.assertEquals(0, cache.getHeapBytes() + cache.getOffHeapBytes());
+
+        stamp = cache.generation();
+        Assertions.assertTrue(cache.put("/www/assets/small", ByteBuffer.wrap(new byte[100]), true, stamp));
+        // storing moves no generation, a concurrent reader of another file still caches it
+        Assertions.assertTrue(cache.put("/www/assets/large", ByteBuffer.wrap(new byte[10000]), true, stamp));
+    }
+
+    @Test
+    @DisplayName("Files larger than the maximum file size are not cached")
+    public void largeFilesAreNotCached() {
+        StaticContentCache cache = new StaticContentCache(1024 * 1024, 1024 * 1024, 1024, 8192);
+        Assertions.assertFalse(cache.put("/huge", ByteBuffer.wrap(new byte[10000])));
+        Assertions.assertNull(cache.acquire("/huge"));
+    }
+
+    @Test
+    @DisplayName("Least recently used off-heap entry is evicted when the budget is exhausted")
+    public void offHeapEvictsLeastRecentlyUsed() {
+        // a single 8 KB slab fits exactly one 8 KB chunk
+        StaticContentCache cache = new StaticContentCache(0, 8192, 1024, 8192);
+        Assertions.assertTrue(cache.put("/a", ByteBuffer.wrap(new byte[8000])));
+        Assertions.assertTrue(cache.put("/b", ByteBuffer.wrap(new byte[8000])));
+
+        Assertions.assertNull(cache.acquire("/a"));
+        CachedContent b = cache.acquire("/b");
+        Assertions.assertNotNull(b);
+        b.release();
+    }
+
+    @Test
+    @DisplayName("Evicted memory is not reused while a view is still borrowed")
+    public void borrowedEntryIsNotReused() {
+        StaticContentCache cache = new StaticContentCache(0, 8192, 1024, 8192);
+        cache.put("/a", ByteBuffer.wrap(new byte[8000]));
+        CachedContent a = cache.acquire("/a");
+
+        cache.invalidate("/a");
+        Assertions.assertFalse(cache.put("/b", ByteBuffer.wrap(new byte[8000])));
+
+        a.release();
+        Assertions.assertTrue(cache.put("/b", ByteBuffer.wrap(new byte[8000])));
+    }
+
+    @Test
+    @DisplayName("Warm-up loads the web root without exceeding the cache budget")
+    public void warmUpRespectsBudget(@TempDir Path root) throws Exception {
+        Path css = Files.createDirectories(root.resolve("css").resolve("vendor"));
+        Files.write(root.resolve("index.html"), new byte[300]);
+        Files.write(css.resolve("a.css"), new byte[300]);
+        Files.write(css.resolve("b.css"), new byte[300]);
+        Files.write(root.resolve("huge.bin"), new byte[5000]);
+
+        // room for two of the three small files, the large one is over the cutoff
+        StaticContentCache cache = new StaticContentCache(700, 0, 1024, 8192);
+        CacheWarmer warmer = new CacheWarmer(cache, ReadStrategySelector.fixed(new HeapReadStrategy()), 4096, 2);
+        warmer.warm(root.toFile());
+
+        Assertions.assertEquals(2, warmer.getFiles());
+        Assertions.assertEquals(600, warmer.getBytes());
+        Assertions.assertEquals(2, warmer.getSkipped());
+        Assertions.assertEquals(600, cache.getHeapBytes());
+        Assertions.assertNull(cache.acquire(root.resolve("huge.bin").toFile().getAbsolutePath()));
+    }
+}
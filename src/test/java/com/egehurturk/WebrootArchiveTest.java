@@ -0,0 +1,77 @@
+package com.egehurturk;
+
+import com.egehurturk.archives.WebrootArchive;
+import com.egehurturk.archives.WebrootPacker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+@DisplayName("Packed web root archive tests")
+public class WebrootArchiveTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    @DisplayName("Every packed file is found with its original contents")
+    public void packedFilesAreFound() throws IOException {
+        File archiveFile = temp.resolve("www.pack").toFile();
+        int count = new WebrootPacker(false).pack(new File("www"), archiveFile);
+        WebrootArchive archive = WebrootArchive.open(archiveFile);
+
+        Assertions.assertEquals(count, archive.size());
+        for (String path : new String[] {"/index.html", "/css/main.css", "/img/banzai.jpg", "/404.html"}) {
+            WebrootArchive.Entry entry = archive.find(path);
+            Assertions.assertNotNull(entry, path);
+            Assertions.assertArrayEquals(Files.readAllBytes(new File("www" + path).toPath()), bytes(entry.getContent()));
+            Assertions.assertTrue(entry.getETag().startsWith("\""));
+        }
+        Assertions.assertNull(archive.find("/missing.html"));
+        Assertions.assertNull(archive.find("/css"));
+    }
+
+    @Test
+    @DisplayName("gzip variants decompress to the original file")
+    public void gzipVariantMatchesOriginal() throws IOException {
+        Path root = Files.createDirectory(temp.resolve("root"));
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            html.append("<p>repeated paragraph</p>\n");
+        }
+        Files.write(root.resolve("page.html"), html.toString().getBytes());
+        File archiveFile = temp.resolve("root.pack").toFile();
+        new WebrootPacker(true).pack(root.toFile(), archiveFile);
+
+        WebrootArchive.Entry entry = WebrootArchive.open(archiveFile).find("/page.html");
+        Assertions.assertEquals("text/html", entry.getMimeType());
+        ByteBuffer gzip = entry.getGzipContent();
+        Assertions.assertNotNull(gzip);
+        Assertions.assertTrue(gzip.remaining() < entry.getContent().remaining());
+
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes(gzip)))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                inflated.write(buffer, 0, n);
+            }
+        }
+        Assertions.assertEquals(html.toString(), inflated.toString());
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
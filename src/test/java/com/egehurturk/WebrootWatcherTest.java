@@ -0,0 +1,62 @@
+package com.egehurturk;
+
+import com.egehurturk.caches.ResourceMetadata;
+import com.egehurturk.caches.ResourceMetadataCache;
+import com.egehurturk.caches.WebrootWatcher;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@DisplayName("Web root watcher tests")
+public class WebrootWatcherTest {
+
+    @Test
+    @DisplayName("Missing paths are remembered until invalidated")
+    public void negativeLookupsAreCached(@TempDir Path root) throws Exception {
+        ResourceMetadataCache metadata = new ResourceMetadataCache(100);
+        File file = root.resolve("late.html").toFile();
+        Assertions.assertFalse(metadata.lookup(file).exists());
+
+        Files.write(file.toPath(), "<html></html>".getBytes("UTF-8"));
+        Assertions.assertSame(ResourceMetadata.MISSING, metadata.lookup(file));
+
+        metadata.invalidate(root.toAbsolutePath().toString());
+        Assertions.assertTrue(metadata.lookup(file).exists());
+        Assertions.assertEquals(13, metadata.lookup(file).getLength());
+    }
+
+    @Test
+    @DisplayName("A burst of changes, including files in new directories, is delivered")
+    public void changesAreDebouncedAndDelivered(@TempDir Path root) throws Exception {
+        LinkedBlockingQueue<Set<Path>> deliveries = new LinkedBlockingQueue<>();
+        try (WebrootWatcher watcher = new WebrootWatcher(root, 50, deliveries::add)) {
+            watcher.start();
+            Path dir = Files.createDirectory(root.resolve("css"));
+            Files.write(dir.resolve("site.css"), new byte[10]);
+            Files.write(root.resolve("index.html"), new byte[10]);
+
+            Set<Path> changed = deliveries.poll(10, TimeUnit.SECONDS);
+            Assertions.assertNotNull(changed);
+            // a second batch may follow if the burst outlived the quiet period
+            Set<Path> more;
+            while ((more = deliveries.poll(500, TimeUnit.MILLISECONDS)) != null) {
+                changed.addAll(more);
+            }
+            Assertions.assertTrue(changed.contains(root.toAbsolutePath().resolve("css")));
+            Assertions.assertTrue(changed.contains(root.toAbsolutePath().resolve("index.html")));
+
+            Files.write(dir.resolve("site.css"), new byte[20]);
+            changed = deliveries.poll(10, TimeUnit.SECONDS);
+            Assertions.assertNotNull(changed);
+            Assertions.assertTrue(changed.contains(root.toAbsolutePath().resolve("css").resolve("site.css")));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.egehurturk;
+
+import com.egehurturk.core.BufferPool;
+import com.egehurturk.core.ChannelOutputStream;
+import com.egehurturk.core.WriteLoop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+@DisplayName("Write loop tests")
+public class WriteLoopTest {
+
+    private WriteLoop loop;
+    private BufferPool pool;
+    private ServerSocketChannel server;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        loop   = new WriteLoop("test-write-loop");
+        pool   = new BufferPool(16, true);
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+        loop.close();
+    }
+
+    @Test
+    @DisplayName("Closing the stream returns at once, the loop sends the response and closes the connection")
+    public void closeHandsTheResponseToTheLoop() throws IOException {
+        try (Socket client = connect()) {
+            SocketChannel channel = server.accept();
+            ChannelOutputStream out = new ChannelOutputStream(channel, loop, pool, 65536, 0);
+            out.write("HTTP/1.1 200 OK\r\n\r\nhello".getBytes(StandardCharsets.ISO_8859_1));
+            out.close();
+            Assertions.assertTrue(out.isAsync());
+            Assertions.assertEquals("HTTP/1.1 200 OK\r\n\r\nhello", new String(readAll(client.getInputStream()), StandardCharsets.ISO_8859_1));
+            Assertions.assertThrows(IOException.class, () -> out.write('x'));
+            Assertions.assertEquals(0, pool.outstanding());
+        }
+    }
+
+    @Test
+    @DisplayName("A writer ahead of a slow client waits at the write buffer size, nothing is lost")
+    public void writerWaitsForSlowClient() throws Exception {
+        int capacity = 65536;
+        int total    = 5 * 1024 * 1024;
+        try (Socket client = connect()) {
+            SocketChannel channel = server.accept();
+            ChannelOutputStream out = new ChannelOutputStream(channel, loop, pool, capacity, 0);
+            out.startAsync();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                try {
+                    byte[] chunk = new byte[8192];
+                    for (int written = 0; written < total; written += chunk.length) {
+                        for (int i = 0; i < chunk.length; i++) {
+                            chunk[i] = (byte) (written + i);
+                        }
+                        out.write(chunk);
+                    }
+                    out.close();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            writer.start();
+            Thread.sleep(300);
+            // the socket buffers are full, the rest waits in the writer
+            Assertions.assertTrue(writer.isAlive());
+            Assertions.assertTrue(out.queued() <= capacity + 8192);
+
+            byte[] received = readAll(client.getInputStream());
+            writer.join(5000);
+            Assertions.assertNull(failure.get());
+            Assertions.assertEquals(total, received.length);
+            for (int i = 0; i < total; i++) {
+                if (received[i] != (byte) i) {
+                    Assertions.fail("Byte " + i + " differs");
+                }
+            }
+            // every sent buffer went back to the pool and was reused
+            Assertions.assertEquals(0, pool.outstanding());
+            Assertions.assertTrue(pool.allocated() <= capacity / 16384 + 3);
+        }
+    }
+
+    @Test
+    @DisplayName("A client that stops reading is disconnected after the write timeout")
+    public void stalledClientIsDisconnected() throws Exception {
+        try (Socket client = connect()) {
+            SocketChannel channel = server.accept();
+            ChannelOutputStream out = new ChannelOutputStream(channel, loop, pool, 65536, 200);
+            out.startAsync();
+            byte[] chunk = new byte[65536];
+            Assertions.assertThrows(IOException.class, () -> {
+                for (int i = 0; i < 4096; i++) {
+                    out.write(chunk);
+                }
+            });
+            Assertions.assertFalse(channel.isOpen());
+            Assertions.assertEquals(0, pool.reportLeaks());
+        }
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket("localhost", server.socket().getLocalPort());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+}